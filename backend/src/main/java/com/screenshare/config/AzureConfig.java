@@ -1,7 +1,7 @@
 package com.screenshare.config;
 
 import com.azure.messaging.servicebus.ServiceBusClientBuilder;
-import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.azure.messaging.servicebus.ServiceBusSenderAsyncClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,7 +30,7 @@ public class AzureConfig {
     private String storageConnectionString;
 
     /**
-     * Creates a Service Bus Sender Client for sending messages to a queue
+     * Creates an asynchronous Service Bus Sender Client for sending messages to a queue
      * This replaces AWS SQS functionality
      * Only created if connection string is configured
      */
@@ -38,20 +38,20 @@ public class AzureConfig {
     @org.springframework.boot.autoconfigure.condition.ConditionalOnExpression(
         "!'${azure.servicebus.connection-string:}'.isEmpty()"
     )
-    public ServiceBusSenderClient serviceBusQueueSender() {
+    public ServiceBusSenderAsyncClient serviceBusQueueAsyncSender() {
         if (serviceBusConnectionString == null || serviceBusConnectionString.isEmpty()) {
             throw new IllegalStateException("Azure Service Bus connection string is not configured");
         }
-        
+
         return new ServiceBusClientBuilder()
                 .connectionString(serviceBusConnectionString)
                 .sender()
                 .queueName(queueName)
-                .buildClient();
+                .buildAsyncClient();
     }
 
     /**
-     * Creates a Service Bus Sender Client for publishing messages to a topic
+     * Creates an asynchronous Service Bus Sender Client for publishing messages to a topic
      * This replaces AWS SNS functionality
      * Only created if connection string is configured
      */
@@ -59,16 +59,16 @@ public class AzureConfig {
     @org.springframework.boot.autoconfigure.condition.ConditionalOnExpression(
         "!'${azure.servicebus.connection-string:}'.isEmpty()"
     )
-    public ServiceBusSenderClient serviceBusTopicSender() {
+    public ServiceBusSenderAsyncClient serviceBusTopicAsyncSender() {
         if (serviceBusConnectionString == null || serviceBusConnectionString.isEmpty()) {
             throw new IllegalStateException("Azure Service Bus connection string is not configured");
         }
-        
+
         return new ServiceBusClientBuilder()
                 .connectionString(serviceBusConnectionString)
                 .sender()
                 .topicName(topicName)
-                .buildClient();
+                .buildAsyncClient();
     }
 
     /**
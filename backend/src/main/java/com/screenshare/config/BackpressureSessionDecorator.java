@@ -0,0 +1,486 @@
+package com.screenshare.config;
+
+import com.screenshare.config.OutboundBackpressure.FrameClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WebSocket session with one bounded send queue per frame class
+ * sendMessage() only queues the frame and returns; a single drain task per session writes
+ * queued frames to the socket, signaling first, then chat, then screen share. A close request
+ * waits until frames already queued (such as a STOMP ERROR) have been written.
+ * Sessions that opt in to coalescing get every frame queued within a short window written as
+ * one WebSocket message holding several STOMP frames back to back. The drain task never waits
+ * for the window on its sender thread: while the batch is not ready it is rescheduled on the
+ * shared coalescing timer, and run early when a signaling frame arrives or the batch fills.
+ */
+public class BackpressureSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackpressureSessionDecorator.class);
+
+    private static final FrameClass[] DRAIN_ORDER = {FrameClass.SIGNALING, FrameClass.CHAT, FrameClass.SCREEN_SHARE};
+
+    // Upper bound on the characters written in one coalesced message
+    private static final int MAX_COALESCED_CHARS = 64 * 1024;
+
+    // Writes per drain task before it hands the thread back and resubmits itself
+    private static final int MAX_WRITES_PER_TURN = 16;
+
+    private final OutboundBackpressure backpressure;
+    private final Map<FrameClass, ArrayDeque<Frame>> queues = new EnumMap<>(FrameClass.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private boolean draining;
+    // The drain task is waiting on the coalescing timer rather than queued on a sender
+    private boolean scheduled;
+    // Bumped whenever a scheduled drain is run early or dropped, so its timer task does nothing
+    private long scheduleToken;
+    // When the batch being coalesced must go out; 0 while no window is open
+    private long windowDeadlineNanos;
+    private boolean discarded;
+    private CloseStatus pendingClose;
+    private long sent;
+    private long writes;
+    private long dropped;
+    private int maxQueued;
+    private long coalesceWindowMs;
+    private int coalesceMaxFrames = 1;
+
+    // Set on CONNECT, before any MESSAGE frame is queued
+    private volatile FrameCompressor compressor;
+
+    // System.nanoTime() when the socket write in progress started; 0 while not writing
+    private volatile long writeStartedNanos;
+
+    public BackpressureSessionDecorator(WebSocketSession delegate, OutboundBackpressure backpressure) {
+        super(delegate);
+        this.backpressure = backpressure;
+        for (FrameClass frameClass : FrameClass.values()) {
+            queues.put(frameClass, new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        Frame frame = Frame.of(message);
+        FrameCompressor compressor = this.compressor;
+        if (compressor != null && frame.message instanceof TextMessage text && compressor.accepts(text, frame.frameClass)) {
+            frame = frame.compressed();
+        }
+        boolean startDrain = false;
+        lock.lock();
+        try {
+            if (discarded || pendingClose != null) {
+                return;
+            }
+            ArrayDeque<Frame> queue = queues.get(frame.frameClass);
+            if (queue.size() >= backpressure.capacity(frame.frameClass)) {
+                if (frame.frameClass == FrameClass.CHAT) {
+                    clearQueues();
+                    discarded = true;
+                    backpressure.overflowed();
+                    throw new SessionLimitExceededException("Chat send queue full for session " + getId(),
+                            CloseStatus.SESSION_NOT_RELIABLE);
+                }
+                Frame oldest = queue.pollFirst();
+                dropped++;
+                backpressure.dropped(oldest.roomId);
+            }
+            queue.addLast(frame);
+            maxQueued = Math.max(maxQueued, queued());
+            if (scheduled && (frame.frameClass == FrameClass.SIGNALING || queued() >= coalesceMaxFrames)) {
+                // Signaling is latency sensitive and a full batch need not wait for the window
+                startDrain = unschedule();
+            }
+            if (!draining) {
+                draining = true;
+                startDrain = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (startDrain) {
+            backpressure.senders().execute(this::drain);
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        boolean deferred = false;
+        boolean startDrain = false;
+        lock.lock();
+        try {
+            if (!discarded && draining) {
+                // The drain task closes the session after the queued frames
+                pendingClose = status;
+                deferred = true;
+                startDrain = unschedule();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (startDrain) {
+            backpressure.senders().execute(this::drain);
+        } else if (!deferred) {
+            super.close(status);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    // Coalesce frames queued within windowMs, up to maxFrames per message
+    public void coalesce(long windowMs, int maxFrames) {
+        lock.lock();
+        try {
+            this.coalesceWindowMs = windowMs;
+            this.coalesceMaxFrames = Math.max(1, maxFrames);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isCoalescing() {
+        lock.lock();
+        try {
+            return coalesceWindowMs > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Deflate large message bodies from now on
+    public void compress(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public boolean isCompressing() {
+        return compressor != null;
+    }
+
+    private void drain() {
+        for (int turn = 0; turn < MAX_WRITES_PER_TURN; turn++) {
+            List<Frame> batch;
+            CloseStatus closeStatus = null;
+            lock.lock();
+            try {
+                if (!discarded && !batchReady()) {
+                    scheduleDrain();
+                    return;
+                }
+                windowDeadlineNanos = 0;
+                batch = discarded ? List.of() : nextBatch();
+                if (batch.isEmpty()) {
+                    draining = false;
+                    closeStatus = pendingClose;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (batch.isEmpty()) {
+                if (closeStatus != null) {
+                    closeQuietly(closeStatus);
+                }
+                return;
+            }
+            try {
+                writeStartedNanos = System.nanoTime();
+                getDelegate().sendMessage(batch.size() == 1 ? outgoing(batch.get(0)) : concat(batch));
+                writeStartedNanos = 0;
+                lock.lock();
+                try {
+                    sent += batch.size();
+                    writes++;
+                } finally {
+                    lock.unlock();
+                }
+                if (batch.size() > 1) {
+                    backpressure.coalesced(batch.size());
+                }
+            } catch (IOException | RuntimeException e) {
+                writeStartedNanos = 0;
+                logger.debug("Failed to send to WebSocket session {}: {}", getId(), e.getMessage());
+                discard();
+                closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+                return;
+            }
+        }
+        // Still draining; let the sessions queued behind this one have a turn
+        backpressure.senders().execute(this::drain);
+    }
+
+    // Whether the queued frames should be written now rather than wait for more; opens the window if none is open
+    private boolean batchReady() {
+        if (coalesceWindowMs <= 0 || pendingClose != null || !queues.get(FrameClass.SIGNALING).isEmpty()
+                || queued() == 0 || queued() >= coalesceMaxFrames) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (windowDeadlineNanos == 0) {
+            windowDeadlineNanos = now + TimeUnit.MILLISECONDS.toNanos(coalesceWindowMs);
+            return false;
+        }
+        return now - windowDeadlineNanos >= 0;
+    }
+
+    // Give the sender thread back and run the drain task again when the window ends
+    private void scheduleDrain() {
+        scheduled = true;
+        long token = ++scheduleToken;
+        long delayNanos = Math.max(0, windowDeadlineNanos - System.nanoTime());
+        backpressure.drainTimer().schedule(() -> windowEnded(token), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void windowEnded(long token) {
+        lock.lock();
+        try {
+            if (!scheduled || token != scheduleToken) {
+                return;
+            }
+            scheduled = false;
+        } finally {
+            lock.unlock();
+        }
+        backpressure.senders().execute(this::drain);
+    }
+
+    // Take back a scheduled drain task so the caller can run it now; true if there was one
+    private boolean unschedule() {
+        if (!scheduled) {
+            return false;
+        }
+        scheduled = false;
+        scheduleToken++;
+        return true;
+    }
+
+    // Frames marked for compression are deflated here, in the order they are written
+    private WebSocketMessage<?> outgoing(Frame frame) {
+        return frame.compress ? compressor.compress((TextMessage) frame.message) : frame.message;
+    }
+
+    // Next frames to write in one message; only text frames that stay uncompressed are coalesced
+    private List<Frame> nextBatch() {
+        List<Frame> batch = new ArrayList<>();
+        int chars = 0;
+        for (FrameClass frameClass : DRAIN_ORDER) {
+            ArrayDeque<Frame> queue = queues.get(frameClass);
+            while (!queue.isEmpty() && batch.size() < coalesceMaxFrames) {
+                Frame frame = queue.peekFirst();
+                boolean text = frame.message instanceof TextMessage && !frame.compress;
+                int length = text ? ((TextMessage) frame.message).getPayloadLength() : 0;
+                if (!batch.isEmpty() && (!text || chars + length > MAX_COALESCED_CHARS)) {
+                    return batch;
+                }
+                batch.add(queue.pollFirst());
+                chars += length;
+                if (!text) {
+                    return batch;
+                }
+            }
+        }
+        return batch;
+    }
+
+    private static TextMessage concat(List<Frame> batch) {
+        StringBuilder frames = new StringBuilder();
+        for (Frame frame : batch) {
+            frames.append(((TextMessage) frame.message).getPayload());
+        }
+        return new TextMessage(frames);
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            getDelegate().close(status);
+        } catch (IOException e) {
+            logger.debug("Failed to close WebSocket session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    // How long the socket write in progress has been blocked, or 0
+    long writingForMillis(long nowNanos) {
+        long started = writeStartedNanos;
+        return started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nowNanos - started);
+    }
+
+    // Give up on a session stuck in a socket write; closing the socket fails the write and frees its sender
+    void abort() {
+        logger.debug("Closing WebSocket session {} stuck in a socket write", getId());
+        discard();
+        closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    // Drop everything still queued once the connection is gone
+    void discard() {
+        lock.lock();
+        try {
+            discarded = true;
+            clearQueues();
+            if (unschedule()) {
+                // Nothing left for the drain task to write
+                draining = false;
+            }
+            if (compressor != null) {
+                compressor.end();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clearQueues() {
+        queues.values().forEach(ArrayDeque::clear);
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            int total = 0;
+            for (ArrayDeque<Frame> queue : queues.values()) {
+                total += queue.size();
+            }
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Integer> queuedByRoom() {
+        lock.lock();
+        try {
+            Map<String, Integer> byRoom = new HashMap<>();
+            for (ArrayDeque<Frame> queue : queues.values()) {
+                for (Frame frame : queue) {
+                    if (frame.roomId != null) {
+                        byRoom.merge(frame.roomId, 1, Integer::sum);
+                    }
+                }
+            }
+            return byRoom;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            return stats();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", getId());
+        Map<String, Integer> queued = new LinkedHashMap<>();
+        for (FrameClass frameClass : FrameClass.values()) {
+            queued.put(frameClass.getLabel(), queues.get(frameClass).size());
+        }
+        stats.put("queued", queued);
+        stats.put("maxQueued", maxQueued);
+        stats.put("sent", sent);
+        stats.put("writes", writes);
+        stats.put("coalesceWindowMs", coalesceWindowMs);
+        stats.put("screenShareDropped", dropped);
+        if (compressor != null) {
+            stats.put("compression", compressor.getStats());
+        }
+        return stats;
+    }
+
+    // Value of a header in an encoded STOMP frame, or null
+    static String headerValue(String frame, String name) {
+        int headersEnd = frame.indexOf("\n\n");
+        String headers = headersEnd >= 0 ? frame.substring(0, headersEnd + 1) : frame;
+        String key = "\n" + name + ":";
+        int start = headers.indexOf(key);
+        if (start < 0) {
+            return null;
+        }
+        start += key.length();
+        int end = headers.indexOf('\n', start);
+        String value = end < 0 ? headers.substring(start) : headers.substring(start, end);
+        return value.endsWith("\r") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    /**
+     * An encoded STOMP frame with the destination class and room it was sent to
+     */
+    private record Frame(WebSocketMessage<?> message, FrameClass frameClass, String roomId, boolean compress) {
+
+        static Frame of(WebSocketMessage<?> message) {
+            String headers = headerText(message);
+            String destination = destinationOf(headers);
+            if (destination != null && message instanceof TextMessage text
+                    && BinaryPayloadCodec.APPLICATION_CBOR.toString().equals(headerValue(headers, "content-type"))) {
+                // STOMP only sends octet-stream as binary; a CBOR body would not survive a text message
+                message = new BinaryMessage(text.asBytes());
+            }
+            return new Frame(message, FrameClass.of(destination), roomIdOf(destination), false);
+        }
+
+        Frame compressed() {
+            return new Frame(message, frameClass, roomId, true);
+        }
+
+        // Leading part of the frame, enough to hold the command and headers
+        private static String headerText(WebSocketMessage<?> message) {
+            if (message instanceof TextMessage text) {
+                return text.getPayload();
+            }
+            if (message instanceof BinaryMessage binary) {
+                ByteBuffer buffer = binary.getPayload().duplicate();
+                byte[] head = new byte[Math.min(buffer.remaining(), 1024)];
+                buffer.get(head);
+                return new String(head, StandardCharsets.UTF_8);
+            }
+            return "";
+        }
+
+        // destination header of a MESSAGE frame, or null
+        private static String destinationOf(String frame) {
+            return frame.startsWith("MESSAGE\n") ? headerValue(frame, "destination") : null;
+        }
+
+        // Room segment of /topic/{kind}/{roomId}[/...]
+        private static String roomIdOf(String destination) {
+            if (destination == null || !destination.startsWith("/topic/")) {
+                return null;
+            }
+            int kindEnd = destination.indexOf('/', "/topic/".length());
+            if (kindEnd < 0) {
+                return null;
+            }
+            int idEnd = destination.indexOf('/', kindEnd + 1);
+            String roomId = idEnd < 0 ? destination.substring(kindEnd + 1) : destination.substring(kindEnd + 1, idEnd);
+            return roomId.isEmpty() ? null : roomId;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.screenshare.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CBOR payloads for STOMP clients that ask for them
+ * Frames with content-type application/cbor are read and written with a CBOR ObjectMapper in
+ * which LocalDateTime values are epoch milliseconds and Base64Binary fields are raw byte
+ * strings. Inbound frames pick the converter by their own content-type. Outbound, a session
+ * that sent accept-content-type:application/cbor on CONNECT over a native WebSocket gets room
+ * broadcasts in CBOR; everything else stays JSON and each frame carries its content-type.
+ */
+@Component
+public class BinaryPayloadCodec {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    // Message header carrying the CBOR encoding of a broadcast next to its JSON payload
+    public static final String CBOR_PAYLOAD_HEADER = "cborPayload";
+
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor()
+            .modulesToInstall(new SimpleModule("EpochMillisLocalDateTime")
+                    .addSerializer(LocalDateTime.class, new EpochMillisSerializer())
+                    .addDeserializer(LocalDateTime.class, new EpochMillisDeserializer()))
+            .build();
+
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder bytesEncoded = new LongAdder();
+
+    public ObjectMapper getObjectMapper() {
+        return cborMapper;
+    }
+
+    // Converter for inbound frames sent as application/cbor; ignores all other frames
+    public MessageConverter messageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    public byte[] encode(Object payload) {
+        try {
+            byte[] bytes = cborMapper.writeValueAsBytes(payload);
+            encoded.increment();
+            bytesEncoded.add(bytes.length);
+            return bytes;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize CBOR payload", e);
+        }
+    }
+
+    // Whether broadcasts need a CBOR encoding at all
+    public boolean hasCborSessions() {
+        return !cborSessions.isEmpty();
+    }
+
+    public boolean isCborSession(String sessionId) {
+        return sessionId != null && cborSessions.contains(sessionId);
+    }
+
+    void accept(String sessionId) {
+        cborSessions.add(sessionId);
+    }
+
+    void release(String sessionId) {
+        cborSessions.remove(sessionId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cborSessions", cborSessions.size());
+        stats.put("cborEncoded", encoded.sum());
+        stats.put("cborBytesEncoded", bytesEncoded.sum());
+        return stats;
+    }
+
+    /**
+     * Writes a base64 string property as a raw byte string in binary formats such as CBOR and
+     * leaves it as text in JSON. Values that are not plain base64 (data: URLs, for example) stay text.
+     */
+    public static class Base64Binary extends JsonSerializer<String> {
+
+        @Override
+        public void serialize(String value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            if (gen.canWriteBinaryNatively()) {
+                byte[] bytes = decodeBase64(value);
+                if (bytes != null) {
+                    gen.writeBinary(bytes);
+                    return;
+                }
+            }
+            gen.writeString(value);
+        }
+
+        private static byte[] decodeBase64(String value) {
+            try {
+                return Base64.getDecoder().decode(value);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class EpochMillisSerializer extends JsonSerializer<LocalDateTime> {
+
+        @Override
+        public void serialize(LocalDateTime value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+    }
+
+    // Epoch millis, or an ISO string from clients that still send one
+    private static class EpochMillisDeserializer extends JsonDeserializer<LocalDateTime> {
+
+        @Override
+        public LocalDateTime deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(p.getLongValue()), ZoneId.systemDefault());
+            }
+            return LocalDateTime.parse(p.getValueAsString());
+        }
+    }
+}
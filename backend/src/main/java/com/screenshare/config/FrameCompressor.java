@@ -0,0 +1,123 @@
+package com.screenshare.config;
+
+import com.screenshare.config.OutboundBackpressure.FrameClass;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Deflate of STOMP MESSAGE bodies for one session
+ * Bodies of at least minSize bytes are raw-deflated by a single Deflater kept for the life of
+ * the session and sync-flushed after each frame, so keys and values repeated across messages
+ * compress against earlier frames. The client inflates the bodies, in order, with one stream.
+ * A compressed frame gets a content-encoding:deflate header and is sent as a binary WebSocket
+ * message. Screen-share frames are never compressed, as their image data already is.
+ * Only the session's drain task calls compress().
+ */
+public class FrameCompressor {
+
+    public static final String CONTENT_ENCODING = "deflate";
+
+    private final OutboundBackpressure backpressure;
+    private final Deflater deflater;
+    private final int minSize;
+    private final byte[] buffer = new byte[8192];
+
+    // Guarded by this
+    private boolean ended;
+    private long frames;
+    private long skipped;
+    private long bytesIn;
+    private long bytesOut;
+    private long nanos;
+
+    public FrameCompressor(OutboundBackpressure backpressure, int level, int minSize) {
+        this.backpressure = backpressure;
+        this.deflater = new Deflater(level, true);
+        this.minSize = minSize;
+    }
+
+    // Whether a queued frame would be compressed: a text MESSAGE frame, not screen share, with a large enough body
+    boolean accepts(TextMessage message, FrameClass frameClass) {
+        if (frameClass == FrameClass.SCREEN_SHARE || !message.getPayload().startsWith("MESSAGE\n")) {
+            return false;
+        }
+        String contentLength = BackpressureSessionDecorator.headerValue(message.getPayload(), "content-length");
+        try {
+            if (contentLength != null && Integer.parseInt(contentLength.trim()) >= minSize) {
+                return true;
+            }
+        } catch (NumberFormatException e) {
+            // Treated as too small
+        }
+        synchronized (this) {
+            skipped++;
+        }
+        return false;
+    }
+
+    // The frame with its body deflated; its bytes become part of the session's compression context
+    synchronized BinaryMessage compress(TextMessage message) {
+        if (ended) {
+            throw new IllegalStateException("Compressor already released");
+        }
+        long start = System.nanoTime();
+        String frame = message.getPayload();
+        int headersEnd = frame.indexOf("\n\n");
+        byte[] body = frame.substring(headersEnd + 2, frame.length() - 1).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2 + 64);
+        deflater.setInput(body);
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            compressed.write(buffer, 0, length);
+        } while (length == buffer.length);
+
+        StringBuilder headers = new StringBuilder(headersEnd + 64);
+        for (String line : frame.substring(0, headersEnd).split("\n")) {
+            if (!line.startsWith("content-length:")) {
+                headers.append(line).append('\n');
+            }
+        }
+        headers.append("content-encoding:").append(CONTENT_ENCODING).append('\n')
+                .append("content-length:").append(compressed.size()).append("\n\n");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(headers.length() + compressed.size() + 1);
+        out.writeBytes(headers.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(compressed.toByteArray(), 0, compressed.size());
+        out.write(0);
+
+        long elapsed = System.nanoTime() - start;
+        frames++;
+        bytesIn += body.length;
+        bytesOut += compressed.size();
+        nanos += elapsed;
+        backpressure.compressed(body.length, compressed.size(), elapsed);
+        return new BinaryMessage(out.toByteArray());
+    }
+
+    // Free the native deflate state once the session is gone
+    synchronized void end() {
+        if (!ended) {
+            ended = true;
+            deflater.end();
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("compressedFrames", frames);
+        stats.put("belowThreshold", skipped);
+        stats.put("bytesIn", bytesIn);
+        stats.put("bytesOut", bytesOut);
+        stats.put("ratio", bytesIn > 0 ? (double) bytesOut / bytesIn : 0.0);
+        stats.put("cpuMicrosPerFrame", frames > 0 ? nanos / frames / 1_000.0 : 0.0);
+        return stats;
+    }
+}
@@ -0,0 +1,31 @@
+package com.screenshare.config;
+
+import com.screenshare.entity.SnowflakeIdGenerator;
+import com.screenshare.entity.SnowflakeIdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Id Generator Configuration
+ * Creates this node's SnowflakeIdGenerator and hands it to Hibernate for @SnowflakeId entity
+ * ids. Every running instance must be given its own chat.node-id (0-1023) or ids can collide
+ * across nodes.
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator(@Value("${chat.node-id:0}") int nodeId) {
+        return new SnowflakeIdGenerator(nodeId);
+    }
+
+    /**
+     * Passes the generator of this context, not a JVM-wide one, to the persistence unit
+     */
+    @Bean
+    public HibernatePropertiesCustomizer snowflakeIdGeneratorSetting(SnowflakeIdGenerator snowflakeIdGenerator) {
+        return properties -> properties.put(SnowflakeIdentifierGenerator.GENERATOR_SETTING, snowflakeIdGenerator);
+    }
+}
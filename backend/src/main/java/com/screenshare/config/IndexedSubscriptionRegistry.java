@@ -0,0 +1,167 @@
+package com.screenshare.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscription registry for the simple broker, indexed by exact destination
+ * Each destination maps to an immutable snapshot of its subscribers (session id to
+ * subscription ids) that is replaced on every subscribe or unsubscribe. Publishing is a
+ * single hash lookup that returns the snapshot as is, with no locking, matching or copying.
+ * Subscribing costs a lookup plus a copy of that one destination's subscribers, independent
+ * of how many destinations exist.
+ *
+ * Pattern subscriptions (e.g. /topic/chat/**) are rare here and are handed to a
+ * DefaultSubscriptionRegistry, whose matches are merged in only while any exist.
+ */
+public class IndexedSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> NO_SUBSCRIBERS =
+            CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+    // Destination -> immutable session id -> subscription ids
+    private final Map<String, MultiValueMap<String, String>> destinations = new ConcurrentHashMap<>();
+
+    // Session id -> subscription id -> exact destination, for unsubscribe and disconnect
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+
+    private final DefaultSubscriptionRegistry patternRegistry = new DefaultSubscriptionRegistry();
+    private final AtomicInteger patternSubscriptions = new AtomicInteger();
+    private PathMatcher pathMatcher = new AntPathMatcher();
+
+    public IndexedSubscriptionRegistry() {
+        // Selector expressions are off by default on the simple broker, as they are here
+        patternRegistry.setSelectorHeaderName(null);
+    }
+
+    public void setPathMatcher(PathMatcher pathMatcher) {
+        this.pathMatcher = pathMatcher;
+        patternRegistry.setPathMatcher(pathMatcher);
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination, Message<?> message) {
+        if (pathMatcher.isPattern(destination)) {
+            patternRegistry.registerSubscription(message);
+            sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, "");
+            patternSubscriptions.incrementAndGet();
+            return;
+        }
+
+        String previous = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        if (previous != null && !previous.isEmpty()) {
+            // Re-used subscription id: the old destination no longer applies
+            removeFromDestination(previous, sessionId, subscriptionId);
+        }
+        destinations.compute(destination, (key, current) -> {
+            LinkedMultiValueMap<String, String> next = copyOf(current);
+            List<String> ids = next.computeIfAbsent(sessionId, id -> new ArrayList<>(1));
+            if (!ids.contains(subscriptionId)) {
+                ids.add(subscriptionId);
+            }
+            return CollectionUtils.unmodifiableMultiValueMap(next);
+        });
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> subscriptions = sessions.get(sessionId);
+        String destination = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination == null) {
+            return;
+        }
+        if (destination.isEmpty()) {
+            patternRegistry.unregisterSubscription(message);
+            patternSubscriptions.decrementAndGet();
+        } else {
+            removeFromDestination(destination, sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = sessions.remove(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        int patterns = 0;
+        for (Map.Entry<String, String> entry : subscriptions.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                patterns++;
+            } else {
+                removeFromDestination(entry.getValue(), sessionId, entry.getKey());
+            }
+        }
+        if (patterns > 0) {
+            patternRegistry.unregisterAllSubscriptions(sessionId);
+            patternSubscriptions.addAndGet(-patterns);
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        MultiValueMap<String, String> exact = destinations.getOrDefault(destination, NO_SUBSCRIBERS);
+        if (patternSubscriptions.get() == 0) {
+            return exact;
+        }
+        MultiValueMap<String, String> matched = patternRegistry.findSubscriptions(message);
+        if (matched.isEmpty()) {
+            return exact;
+        }
+        LinkedMultiValueMap<String, String> merged = copyOf(exact);
+        matched.forEach((sessionId, ids) -> {
+            List<String> existing = merged.computeIfAbsent(sessionId, id -> new ArrayList<>(ids.size()));
+            for (String id : ids) {
+                if (!existing.contains(id)) {
+                    existing.add(id);
+                }
+            }
+        });
+        return merged;
+    }
+
+    private void removeFromDestination(String destination, String sessionId, String subscriptionId) {
+        destinations.computeIfPresent(destination, (key, current) -> {
+            List<String> ids = current.get(sessionId);
+            if (ids == null || !ids.contains(subscriptionId)) {
+                return current;
+            }
+            LinkedMultiValueMap<String, String> next = copyOf(current);
+            List<String> remaining = next.get(sessionId);
+            remaining.remove(subscriptionId);
+            if (remaining.isEmpty()) {
+                next.remove(sessionId);
+            }
+            return next.isEmpty() ? null : CollectionUtils.unmodifiableMultiValueMap(next);
+        });
+    }
+
+    private static LinkedMultiValueMap<String, String> copyOf(MultiValueMap<String, String> source) {
+        LinkedMultiValueMap<String, String> copy = new LinkedMultiValueMap<>(source != null ? source.size() + 1 : 1);
+        if (source != null) {
+            source.forEach((sessionId, ids) -> copy.put(sessionId, new ArrayList<>(ids)));
+        }
+        return copy;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("destinations", destinations.size());
+        stats.put("sessions", sessions.size());
+        stats.put("patternSubscriptions", patternSubscriptions.get());
+        return stats;
+    }
+}
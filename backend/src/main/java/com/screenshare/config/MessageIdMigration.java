@@ -0,0 +1,67 @@
+package com.screenshare.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Chat message id column on SQL Server
+ * chat_messages.id used to be an IDENTITY column, which rejects the ids SnowflakeIdGenerator
+ * assigns, and ddl-auto=update cannot change that. With chat.db.migrate-message-ids the bundled
+ * script rebuilds the column at startup; otherwise startup fails while the column is still
+ * IDENTITY, instead of every message insert failing later. Other databases are left alone.
+ */
+@Component
+public class MessageIdMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdMigration.class);
+
+    public static final String SCRIPT = "db/sqlserver/chat-messages-snowflake-ids.sql";
+
+    private static final String IS_IDENTITY_SQL =
+            "SELECT COLUMNPROPERTY(OBJECT_ID('dbo.chat_messages'), 'id', 'IsIdentity')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${chat.db.migrate-message-ids:false}")
+    private boolean migrate;
+
+    @PostConstruct
+    public void migrateOrVerify() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (product == null || !product.contains("SQL Server")) {
+            return;
+        }
+        if (migrate) {
+            jdbcTemplate.execute(script());
+        }
+        Integer identity = jdbcTemplate.queryForObject(IS_IDENTITY_SQL, Integer.class);
+        if (identity != null && identity == 1) {
+            throw new IllegalStateException("chat_messages.id is still an IDENTITY column. Run " + SCRIPT
+                    + " against the database, or start once with chat.db.migrate-message-ids=true");
+        }
+        if (migrate) {
+            logger.info("chat_messages.id takes application-assigned ids");
+        }
+    }
+
+    private static String script() {
+        try {
+            return new ClassPathResource(SCRIPT).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + SCRIPT, e);
+        }
+    }
+}
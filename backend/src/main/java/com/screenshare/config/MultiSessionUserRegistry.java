@@ -0,0 +1,283 @@
+package com.screenshare.config;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpSubscriptionMatcher;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User registry for user destinations, with any number of sessions per user
+ * Replaces Spring's registry for convertAndSendToUser, so a message to a user reaches every
+ * device they are connected with. Sessions join a user through a principal set on CONNECT,
+ * a /user/{username}/ subscription or /app/screenshare.register, and leave on disconnect.
+ * Each user maps to an immutable snapshot of their sessions that is swapped on change, so
+ * lookups are a hash lookup returning the snapshot, with no locking or allocation. Changes
+ * for one session are serialised through the session map.
+ */
+@Component
+@Primary
+public class MultiSessionUserRegistry implements SimpUserRegistry {
+
+    private final ConcurrentHashMap<String, UserSessions> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder registrations = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+
+    /**
+     * Register a session for a user; a session already registered for another user is moved
+     */
+    public void register(String username, String sessionId) {
+        if (username == null || username.isEmpty() || sessionId == null) {
+            return;
+        }
+        sessions.compute(sessionId, (id, existing) -> {
+            if (existing != null && existing.username.equals(username)) {
+                return existing;
+            }
+            if (existing != null) {
+                detach(existing);
+                moves.increment();
+            }
+            Session session = new Session(id, username);
+            users.compute(username, (name, current) -> (current != null ? current : UserSessions.EMPTY).with(name, session));
+            registrations.increment();
+            return session;
+        });
+    }
+
+    public void unregister(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        sessions.computeIfPresent(sessionId, (id, existing) -> {
+            detach(existing);
+            removals.increment();
+            return null;
+        });
+    }
+
+    // Only called from inside sessions.compute for this session
+    private void detach(Session session) {
+        users.computeIfPresent(session.username, (name, current) -> current.without(session.getId()));
+    }
+
+    public String getUsername(String sessionId) {
+        Session session = sessions.get(sessionId);
+        return session != null ? session.username : null;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        if (user != null) {
+            register(user.getName(), SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()));
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        unregister(event.getSessionId());
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Session session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session != null && accessor.getSubscriptionId() != null && accessor.getDestination() != null) {
+            session.subscriptions.put(accessor.getSubscriptionId(),
+                    new Subscription(accessor.getSubscriptionId(), accessor.getDestination(), session));
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Session session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session != null && accessor.getSubscriptionId() != null) {
+            session.subscriptions.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @Override
+    public SimpUser getUser(String userName) {
+        return users.get(userName);
+    }
+
+    @Override
+    public Set<SimpUser> getUsers() {
+        return new HashSet<>(users.values());
+    }
+
+    @Override
+    public int getUserCount() {
+        return users.size();
+    }
+
+    @Override
+    public Set<SimpSubscription> findSubscriptions(SimpSubscriptionMatcher matcher) {
+        Set<SimpSubscription> result = new HashSet<>();
+        for (Session session : sessions.values()) {
+            for (SimpSubscription subscription : session.subscriptions.values()) {
+                if (matcher.match(subscription)) {
+                    result.add(subscription);
+                }
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<Integer, Integer> sessionsPerUser = new TreeMap<>();
+        int maxSessions = 0;
+        for (UserSessions user : users.values()) {
+            int count = user.byId.size();
+            sessionsPerUser.merge(count, 1, Integer::sum);
+            maxSessions = Math.max(maxSessions, count);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("registry", getClass().getSimpleName());
+        stats.put("users", users.size());
+        stats.put("sessions", sessions.size());
+        stats.put("avgSessionsPerUser", users.isEmpty() ? 0.0 : (double) sessions.size() / users.size());
+        stats.put("maxSessionsPerUser", maxSessions);
+        stats.put("usersBySessionCount", sessionsPerUser);
+        stats.put("registrations", registrations.sum());
+        stats.put("moves", moves.sum());
+        stats.put("removals", removals.sum());
+        return stats;
+    }
+
+    /**
+     * One user's sessions; never changed once published, replaced as a whole instead
+     */
+    private static final class UserSessions implements SimpUser {
+
+        static final UserSessions EMPTY = new UserSessions(null, Map.of());
+
+        private final String name;
+        private final Map<String, SimpSession> byId;
+        private final Set<SimpSession> sessions;
+
+        private UserSessions(String name, Map<String, SimpSession> byId) {
+            this.name = name;
+            this.byId = byId;
+            this.sessions = Set.copyOf(byId.values());
+        }
+
+        UserSessions with(String name, Session session) {
+            Map<String, SimpSession> next = new HashMap<>(byId);
+            next.put(session.getId(), session);
+            return new UserSessions(name, Collections.unmodifiableMap(next));
+        }
+
+        // Null once the last session is gone, which removes the user
+        UserSessions without(String sessionId) {
+            if (!byId.containsKey(sessionId)) {
+                return this;
+            }
+            if (byId.size() == 1) {
+                return null;
+            }
+            Map<String, SimpSession> next = new HashMap<>(byId);
+            next.remove(sessionId);
+            return new UserSessions(name, Collections.unmodifiableMap(next));
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public boolean hasSessions() {
+            return !byId.isEmpty();
+        }
+
+        @Override
+        public SimpSession getSession(String sessionId) {
+            return sessionId != null ? byId.get(sessionId) : null;
+        }
+
+        @Override
+        public Set<SimpSession> getSessions() {
+            return sessions;
+        }
+    }
+
+    private final class Session implements SimpSession {
+
+        private final String id;
+        private final String username;
+        private final Map<String, SimpSubscription> subscriptions = new ConcurrentHashMap<>();
+
+        private Session(String id, String username) {
+            this.id = id;
+            this.username = username;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public SimpUser getUser() {
+            return users.get(username);
+        }
+
+        @Override
+        public Set<SimpSubscription> getSubscriptions() {
+            return new HashSet<>(subscriptions.values());
+        }
+
+        @Override
+        public String toString() {
+            return "session " + id + " of " + username;
+        }
+    }
+
+    private record Subscription(String id, String destination, SimpSession session) implements SimpSubscription {
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public SimpSession getSession() {
+            return session;
+        }
+
+        @Override
+        public String getDestination() {
+            return destination;
+        }
+    }
+}
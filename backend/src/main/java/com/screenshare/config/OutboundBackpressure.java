@@ -0,0 +1,455 @@
+package com.screenshare.config;
+
+import jakarta.websocket.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded per-session send queues for the STOMP WebSocket endpoint
+ * Every session's outbound frames go through a BackpressureSessionDecorator, so a slow
+ * client only grows its own queues instead of holding clientOutboundChannel threads. What
+ * happens when a queue is full depends on the frame's destination class:
+ * chat frames are never dropped and the session is closed instead, screen-share data frames drop
+ * the oldest queued frame, and signaling (screen-share start/stop and WebRTC signals included, and
+ * non-MESSAGE frames) is never dropped.
+ * A client can also ask for coalesced delivery by sending coalesce-window-ms (and optionally
+ * coalesce-max-frames) headers on CONNECT; its queued frames are then written together.
+ * accept-content-type:application/cbor on CONNECT asks for CBOR broadcasts, which are sent as
+ * binary WebSocket messages and so are only granted to native (non-SockJS) sessions.
+ * accept-encoding:deflate asks for deflated message bodies (see FrameCompressor), also binary
+ * and so also native sessions only.
+ */
+@Component
+public class OutboundBackpressure implements WebSocketHandlerDecoratorFactory {
+
+    /**
+     * Destination classes with their own queue and overflow policy
+     */
+    public enum FrameClass {
+        CHAT("chat"), SCREEN_SHARE("screenShare"), SIGNALING("signaling");
+
+        private final String label;
+
+        FrameClass(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        // Class of a frame by destination; frames without one (CONNECTED, RECEIPT, ERROR) are never dropped
+        static FrameClass of(String destination) {
+            if (destination == null) {
+                return SIGNALING;
+            }
+            // Only screen data may be dropped; start/stop and signals on /topic/screenshare must arrive
+            if (destination.startsWith(SCREEN_SHARE_DATA_DESTINATION)) {
+                return SCREEN_SHARE;
+            }
+            if (destination.startsWith("/topic/screenshare") || destination.startsWith("/topic/signal/")
+                    || destination.startsWith("/user/")) {
+                return SIGNALING;
+            }
+            return CHAT;
+        }
+    }
+
+    // Screen data frames, optionally followed by /{roomId}; the only frames dropped on overflow
+    public static final String SCREEN_SHARE_DATA_DESTINATION = "/topic/screenshare-data";
+
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+    private static final String PER_MESSAGE_DEFLATE = "permessage-deflate";
+
+    // Idle sender threads retire after this long
+    private static final long SENDER_KEEP_ALIVE_SECONDS = 60;
+
+    // A drain task the saturated senders refused is offered again after this long
+    private static final long REFUSED_DRAIN_RETRY_MS = 50;
+
+    @Autowired(required = false)
+    private BinaryPayloadCodec binaryPayloadCodec;
+
+    @Value("${chat.outbound.backpressure.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.outbound.backpressure.chat-queue-capacity:1000}")
+    private int chatQueueCapacity;
+
+    @Value("${chat.outbound.backpressure.screen-share-queue-capacity:32}")
+    private int screenShareQueueCapacity;
+
+    @Value("${chat.websocket.send-time-limit-ms:15000}")
+    private long sendTimeLimitMs;
+
+    // Per-room drop counts are forgotten once the room has dropped nothing for this long
+    @Value("${chat.outbound.backpressure.room-drops-idle-ms:600000}")
+    private long roomDropsIdleMs;
+
+    @Value("${chat.outbound.coalescing.enabled:true}")
+    private boolean coalescingEnabled;
+
+    @Value("${chat.outbound.coalescing.max-window-ms:50}")
+    private long maxCoalesceWindowMs;
+
+    @Value("${chat.outbound.coalescing.max-frames:64}")
+    private int maxCoalesceFrames;
+
+    @Value("${chat.websocket.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    // Smaller bodies are sent as they are
+    @Value("${chat.websocket.compression.min-size:128}")
+    private int compressionMinSize;
+
+    @Value("${chat.websocket.compression.level:6}")
+    private int compressionLevel;
+
+    @Value("${" + VirtualThreadConfig.VIRTUAL_THREADS_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    // Most platform sender threads when virtual threads are off; 0 means eight per core
+    @Value("${chat.outbound.backpressure.sender-threads:0}")
+    private int senderThreads;
+
+    // Drain tasks waiting for a platform sender; when full they are retried shortly after
+    @Value("${chat.outbound.backpressure.sender-queue-capacity:10000}")
+    private int senderQueueCapacity;
+
+    // While every platform sender is busy, a write stuck for longer than this closes its session
+    @Value("${chat.outbound.backpressure.saturated-stall-close-ms:2000}")
+    private long saturatedStallCloseMs;
+
+    // Frames are written to the socket here, one drain task per session at a time; created on first use
+    private volatile ExecutorService senders;
+
+    // Runs drain tasks later: a coalescing session's once its window ends, and any the saturated senders
+    // refused; created on first use
+    private volatile ScheduledExecutorService drainTimer;
+
+    private final Map<String, BackpressureSessionDecorator> sessions = new ConcurrentHashMap<>();
+    private final Map<String, RoomDrops> roomDrops = new ConcurrentHashMap<>();
+
+    private final LongAdder screenShareDropped = new LongAdder();
+    private final LongAdder overflowCloses = new LongAdder();
+    private final LongAdder stalledCloses = new LongAdder();
+    private final LongAdder senderRefusals = new LongAdder();
+    private final LongAdder coalescedFrames = new LongAdder();
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder compressionBytesIn = new LongAdder();
+    private final LongAdder compressionBytesOut = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+
+    // Previous stats read, for the writes-saved rate
+    private long lastStatsNanos = System.nanoTime();
+    private long lastWritesSaved;
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return enabled ? new Handler(handler) : handler;
+    }
+
+    int capacity(FrameClass frameClass) {
+        return switch (frameClass) {
+            case CHAT -> chatQueueCapacity;
+            case SCREEN_SHARE -> screenShareQueueCapacity;
+            case SIGNALING -> Integer.MAX_VALUE;
+        };
+    }
+
+    ExecutorService senders() {
+        ExecutorService executor = senders;
+        if (executor == null) {
+            synchronized (this) {
+                executor = senders;
+                if (executor == null) {
+                    executor = newSenders();
+                    senders = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    ScheduledExecutorService drainTimer() {
+        ScheduledExecutorService timer = drainTimer;
+        if (timer == null) {
+            synchronized (this) {
+                timer = drainTimer;
+                if (timer == null) {
+                    // Only hands drain tasks to the senders, so one thread serves every session
+                    timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("ws-drain-timer").daemon().factory());
+                    drainTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    // A virtual thread per drain task in virtual-thread mode, otherwise a capped pool of daemon threads
+    // with a bounded queue; closeStalledSessions frees threads stuck on slow sockets once it is saturated
+    private ExecutorService newSenders() {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-send-", 0).factory());
+        }
+        int threads = maxSenderThreads();
+        // Core size equals the cap so a busy pool starts another thread before queueing, up to the cap
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, SENDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(senderQueueCapacity), Thread.ofPlatform().name("ws-send-", 0).daemon().factory(),
+                (task, executor) -> {
+                    senderRefusals.increment();
+                    drainTimer().schedule(() -> senders().execute(task), REFUSED_DRAIN_RETRY_MS, TimeUnit.MILLISECONDS);
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private int maxSenderThreads() {
+        return senderThreads > 0 ? senderThreads : Runtime.getRuntime().availableProcessors() * 8;
+    }
+
+    // Every platform sender is writing and drain tasks are waiting for one
+    private boolean sendersSaturated() {
+        return senders instanceof ThreadPoolExecutor pool
+                && pool.getActiveCount() >= pool.getMaximumPoolSize() && !pool.getQueue().isEmpty();
+    }
+
+    // Close sessions whose socket write is stuck: past the send-time limit always (SockJS sessions have no
+    // container timeout), and past saturated-stall-close-ms while they keep other sessions from a sender
+    @Scheduled(fixedDelayString = "${chat.outbound.backpressure.stall-check-interval-ms:1000}")
+    public void closeStalledSessions() {
+        long limitMs = sendersSaturated() ? Math.min(saturatedStallCloseMs, sendTimeLimitMs) : sendTimeLimitMs;
+        long now = System.nanoTime();
+        for (BackpressureSessionDecorator session : sessions.values()) {
+            if (session.writingForMillis(now) > limitMs) {
+                stalledCloses.increment();
+                session.abort();
+            }
+        }
+    }
+
+    void dropped(String roomId) {
+        screenShareDropped.increment();
+        if (roomId != null) {
+            roomDrops.computeIfAbsent(roomId, k -> new RoomDrops()).dropped(System.currentTimeMillis());
+        }
+    }
+
+    // Forget rooms that stopped dropping frames, so closed rooms do not stay in the stats for good
+    @Scheduled(fixedDelayString = "${chat.outbound.backpressure.room-drops-evict-interval-ms:60000}")
+    public void evictIdleRoomDrops() {
+        long cutoff = System.currentTimeMillis() - roomDropsIdleMs;
+        for (String roomId : roomDrops.keySet()) {
+            roomDrops.computeIfPresent(roomId, (id, drops) -> drops.lastDropMillis < cutoff ? null : drops);
+        }
+    }
+
+    void overflowed() {
+        overflowCloses.increment();
+    }
+
+    void coalesced(int frames) {
+        coalescedFrames.add(frames);
+        coalescedWrites.increment();
+    }
+
+    void compressed(int bytesIn, int bytesOut, long nanos) {
+        compressedFrames.increment();
+        compressionBytesIn.add(bytesIn);
+        compressionBytesOut.add(bytesOut);
+        compressionNanos.add(nanos);
+    }
+
+    // Apply the delivery headers of a client's CONNECT frame
+    void negotiate(BackpressureSessionDecorator session, String connectFrame) {
+        String accept = BackpressureSessionDecorator.headerValue(connectFrame, "accept-content-type");
+        if (binaryPayloadCodec != null && accept != null && accept.contains(BinaryPayloadCodec.APPLICATION_CBOR.toString())
+                && !(session.getDelegate() instanceof SockJsSession)) {
+            binaryPayloadCodec.accept(session.getId());
+        }
+        String encoding = BackpressureSessionDecorator.headerValue(connectFrame, "accept-encoding");
+        if (compressionEnabled && encoding != null && encoding.contains(FrameCompressor.CONTENT_ENCODING)
+                && !(session.getDelegate() instanceof SockJsSession) && !perMessageDeflated(session)) {
+            session.compress(new FrameCompressor(this, compressionLevel, compressionMinSize));
+        }
+        negotiateCoalescing(session, connectFrame);
+    }
+
+    // Frames of these sessions are already deflated by the container; deflating the bodies again only costs CPU
+    private static boolean perMessageDeflated(WebSocketSession session) {
+        return session.getExtensions().stream().anyMatch(extension -> PER_MESSAGE_DEFLATE.equals(extension.getName()));
+    }
+
+    // Coalescing as asked for by the client, capped by configuration
+    private void negotiateCoalescing(BackpressureSessionDecorator session, String connectFrame) {
+        String window = BackpressureSessionDecorator.headerValue(connectFrame, "coalesce-window-ms");
+        if (!coalescingEnabled || window == null) {
+            return;
+        }
+        try {
+            long windowMs = Math.min(Long.parseLong(window.trim()), maxCoalesceWindowMs);
+            String frames = BackpressureSessionDecorator.headerValue(connectFrame, "coalesce-max-frames");
+            int maxFrames = frames != null ? Math.min(Integer.parseInt(frames.trim()), maxCoalesceFrames) : maxCoalesceFrames;
+            if (windowMs > 0 && maxFrames > 1) {
+                session.coalesce(windowMs, maxFrames);
+            }
+        } catch (NumberFormatException e) {
+            // Malformed values leave the session uncoalesced
+        }
+    }
+
+    // Socket writes happen on the drain task, so the send-time limit is the container's blocking-send timeout
+    private void applySendTimeLimit(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession
+                && nativeSession.getNativeSession() instanceof Session socket) {
+            socket.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeLimitMs);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sessions", sessions.size());
+        stats.put("queuedFrames", sessions.values().stream().mapToInt(BackpressureSessionDecorator::queued).sum());
+        stats.put("screenShareDropped", screenShareDropped.sum());
+        stats.put("overflowCloses", overflowCloses.sum());
+        stats.put("stalledCloses", stalledCloses.sum());
+        stats.put("senderRefusals", senderRefusals.sum());
+        if (senders instanceof ThreadPoolExecutor pool) {
+            stats.put("senderThreads", pool.getPoolSize());
+            stats.put("maxSenderThreads", pool.getMaximumPoolSize());
+            stats.put("waitingDrains", pool.getQueue().size());
+        }
+        stats.put("coalescingSessions", sessions.values().stream().filter(BackpressureSessionDecorator::isCoalescing).count());
+        stats.put("coalescedFrames", coalescedFrames.sum());
+        stats.put("coalescedWrites", coalescedWrites.sum());
+        long writesSaved = coalescedFrames.sum() - coalescedWrites.sum();
+        stats.put("writesSaved", writesSaved);
+        stats.put("compressingSessions", sessions.values().stream().filter(BackpressureSessionDecorator::isCompressing).count());
+        stats.put("compressedFrames", compressedFrames.sum());
+        long bytesIn = compressionBytesIn.sum();
+        stats.put("compressionRatio", bytesIn > 0 ? (double) compressionBytesOut.sum() / bytesIn : 0.0);
+        stats.put("compressionBytesSaved", bytesIn - compressionBytesOut.sum());
+        long frames = compressedFrames.sum();
+        stats.put("compressionCpuMicrosPerFrame", frames > 0 ? compressionNanos.sum() / frames / 1_000.0 : 0.0);
+        synchronized (this) {
+            long now = System.nanoTime();
+            double seconds = (now - lastStatsNanos) / 1e9;
+            stats.put("writesSavedPerSecond", seconds > 0 ? (writesSaved - lastWritesSaved) / seconds : 0.0);
+            lastStatsNanos = now;
+            lastWritesSaved = writesSaved;
+        }
+
+        // Deepest queues first
+        List<Map<String, Object>> perSession = sessions.values().stream()
+                .sorted(Comparator.comparingInt(BackpressureSessionDecorator::queued).reversed())
+                .limit(100)
+                .map(BackpressureSessionDecorator::getStats)
+                .toList();
+        stats.put("perSession", perSession);
+
+        Map<String, Map<String, Long>> perRoom = new LinkedHashMap<>();
+        for (BackpressureSessionDecorator session : sessions.values()) {
+            session.queuedByRoom().forEach((roomId, depth) ->
+                    perRoom.computeIfAbsent(roomId, k -> newRoomStats()).merge("queued", (long) depth, Long::sum));
+        }
+        roomDrops.forEach((roomId, drops) -> perRoom.computeIfAbsent(roomId, k -> newRoomStats()).put("dropped", drops.count.sum()));
+        stats.put("perRoom", perRoom);
+        return stats;
+    }
+
+    private static Map<String, Long> newRoomStats() {
+        Map<String, Long> room = new LinkedHashMap<>();
+        room.put("queued", 0L);
+        room.put("dropped", 0L);
+        return room;
+    }
+
+    /**
+     * Screen-share frames dropped for one room, and when the last one was
+     */
+    private static final class RoomDrops {
+        private final LongAdder count = new LongAdder();
+        private volatile long lastDropMillis;
+
+        void dropped(long now) {
+            count.increment();
+            lastDropMillis = now;
+        }
+    }
+
+    /**
+     * Hands the decorated session to the STOMP handler for the lifetime of the connection
+     */
+    private class Handler extends WebSocketHandlerDecorator {
+
+        Handler(WebSocketHandler delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+            applySendTimeLimit(session);
+            BackpressureSessionDecorator decorated = new BackpressureSessionDecorator(session, OutboundBackpressure.this);
+            sessions.put(session.getId(), decorated);
+            super.afterConnectionEstablished(decorated);
+        }
+
+        @Override
+        public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+            WebSocketSession decorated = decorated(session);
+            if (decorated instanceof BackpressureSessionDecorator backpressured && message instanceof TextMessage text
+                    && (text.getPayload().startsWith("CONNECT") || text.getPayload().startsWith("STOMP"))) {
+                negotiate(backpressured, text.getPayload());
+            }
+            super.handleMessage(decorated, message);
+        }
+
+        @Override
+        public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+            super.handleTransportError(decorated(session), exception);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+            BackpressureSessionDecorator decorated = sessions.remove(session.getId());
+            if (decorated != null) {
+                decorated.discard();
+            }
+            if (binaryPayloadCodec != null) {
+                binaryPayloadCodec.release(session.getId());
+            }
+            super.afterConnectionClosed(decorated != null ? decorated : session, closeStatus);
+        }
+
+        private WebSocketSession decorated(WebSocketSession session) {
+            WebSocketSession decorated = sessions.get(session.getId());
+            return decorated != null ? decorated : session;
+        }
+    }
+}
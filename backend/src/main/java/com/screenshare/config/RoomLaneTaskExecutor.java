@@ -0,0 +1,173 @@
+package com.screenshare.config;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Inbound channel executor that keeps each room's frames in order
+ * Frames sent to a room destination (/app/{kind}/{roomId}/... or /app/{kind}/rooms/{roomId}/...)
+ * are hashed by room id onto a
+ * fixed set of single-threaded lanes, so frames for one room are handled one at a time in
+ * arrival order while different rooms run in parallel. Everything else (CONNECT, SUBSCRIBE,
+ * frames without a room) runs on the regular pool. In virtual-thread mode the lanes run on
+ * virtual threads and the regular pool is replaced by a virtual thread per task.
+ *
+ * Each lane queues at most laneQueueCapacity frames. A frame arriving at a full lane is refused
+ * with a TaskRejectedException rather than run out of order on the caller's thread; the STOMP
+ * handler then answers the sending session with an ERROR frame.
+ */
+public class RoomLaneTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private static final String ROOMS_SEGMENT = "rooms";
+
+    public static final int DEFAULT_LANE_QUEUE_CAPACITY = 10_000;
+
+    private final String applicationPrefix;
+    private final int laneCount;
+    private final int laneQueueCapacity;
+    private final boolean virtualThreads;
+    private ExecutorService virtualExecutor;
+    private final List<ThreadPoolExecutor> lanes = new ArrayList<>();
+    private final AtomicLongArray dispatched;
+    private final AtomicLongArray rejected;
+
+    public RoomLaneTaskExecutor(String applicationPrefix, int laneCount) {
+        this(applicationPrefix, laneCount, DEFAULT_LANE_QUEUE_CAPACITY, false);
+    }
+
+    public RoomLaneTaskExecutor(String applicationPrefix, int laneCount, int laneQueueCapacity, boolean virtualThreads) {
+        this.applicationPrefix = applicationPrefix.endsWith("/") ? applicationPrefix : applicationPrefix + "/";
+        this.laneCount = laneCount;
+        this.laneQueueCapacity = laneQueueCapacity;
+        this.virtualThreads = virtualThreads;
+        this.dispatched = new AtomicLongArray(laneCount);
+        this.rejected = new AtomicLongArray(laneCount);
+        // Same pool shape Spring gives the inbound channel by default
+        setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        setAllowCoreThreadTimeOut(true);
+        setThreadNamePrefix("clientInboundChannel-");
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+        ThreadFactory laneThreads = virtualThreads
+                ? Thread.ofVirtual().name("room-lane-", 0).factory()
+                : new CustomizableThreadFactory("room-lane-");
+        for (int i = 0; i < laneCount; i++) {
+            int lane = i;
+            lanes.add(new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(laneQueueCapacity), laneThreads, (task, executor) -> {
+                        rejected.incrementAndGet(lane);
+                        throw new TaskRejectedException("Room lane " + lane + " is full (" + laneQueueCapacity + " frames queued)");
+                    }));
+        }
+        if (virtualThreads) {
+            virtualExecutor = VirtualThreadTaskExecutor.newVirtualThreadExecutor(getThreadNamePrefix());
+            return virtualExecutor;
+        }
+        return super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        int lane = laneFor(task);
+        if (lane < 0 || lanes.isEmpty()) {
+            if (virtualExecutor != null) {
+                virtualExecutor.execute(task);
+            } else {
+                super.execute(task);
+            }
+            return;
+        }
+        lanes.get(lane).execute(task);
+        dispatched.incrementAndGet(lane);
+    }
+
+    // Lane for a message task, or -1 if it is not addressed to a room
+    private int laneFor(Runnable task) {
+        if (!(task instanceof MessageHandlingRunnable handling)) {
+            return -1;
+        }
+        return laneOf(SimpMessageHeaderAccessor.getDestination(handling.getMessage().getHeaders()));
+    }
+
+    // Lane for a destination, or -1 if it is not addressed to a room
+    int laneOf(String destination) {
+        String roomId = roomIdOf(destination);
+        return roomId != null ? (roomId.hashCode() & 0x7fffffff) % laneCount : -1;
+    }
+
+    // Room id segment from /app/{kind}/{roomId}[/...] or /app/{kind}/rooms/{roomId}[/...]
+    String roomIdOf(String destination) {
+        if (destination == null || !destination.startsWith(applicationPrefix)) {
+            return null;
+        }
+        int kindEnd = destination.indexOf('/', applicationPrefix.length());
+        if (kindEnd < 0) {
+            return null;
+        }
+        String roomId = segmentAfter(destination, kindEnd);
+        if (ROOMS_SEGMENT.equals(roomId)) {
+            roomId = segmentAfter(destination, kindEnd + ROOMS_SEGMENT.length() + 1);
+        }
+        return roomId == null || roomId.isEmpty() ? null : roomId;
+    }
+
+    // The segment following the slash at index, null if there is none
+    private static String segmentAfter(String destination, int slash) {
+        if (slash >= destination.length() || destination.charAt(slash) != '/') {
+            return null;
+        }
+        int end = destination.indexOf('/', slash + 1);
+        return end < 0 ? destination.substring(slash + 1) : destination.substring(slash + 1, end);
+    }
+
+    @Override
+    public void shutdown() {
+        lanes.forEach(ThreadPoolExecutor::shutdown);
+        super.shutdown();
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<Integer> depths = new ArrayList<>(lanes.size());
+        List<Long> counts = new ArrayList<>(lanes.size());
+        long rejectedTotal = 0;
+        for (int i = 0; i < lanes.size(); i++) {
+            depths.add(lanes.get(i).getQueue().size());
+            counts.add(dispatched.get(i));
+            rejectedTotal += rejected.get(i);
+        }
+        stats.put("lanes", laneCount);
+        stats.put("laneQueueCapacity", laneQueueCapacity);
+        stats.put("virtualThreads", virtualThreads);
+        stats.put("laneQueueDepths", depths);
+        stats.put("laneDispatched", counts);
+        stats.put("maxLaneQueueDepth", depths.stream().mapToInt(Integer::intValue).max().orElse(0));
+        stats.put("laneRejected", rejectedTotal);
+        if (!virtualThreads) {
+            stats.put("sharedPoolSize", getPoolSize());
+        }
+        stats.put("sharedQueueDepth", getQueueSize());
+        return stats;
+    }
+}
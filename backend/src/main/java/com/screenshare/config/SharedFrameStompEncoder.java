@@ -0,0 +1,216 @@
+package com.screenshare.config;
+
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * STOMP encoder that encodes a broadcast once for all of its subscribers
+ * The broker hands every subscriber of a destination the same payload array, and the MESSAGE
+ * frames differ only in their subscription and message-id headers. The shared part of the
+ * frame (the other headers, content-length, payload and terminator) is encoded on first use
+ * and cached by payload identity, so each further subscriber costs its own two headers plus
+ * one array copy. Payload arrays must not be modified after they are sent. Sessions that
+ * negotiated CBOR get the broadcast's CBOR encoding instead, when the broadcast carries one.
+ */
+public class SharedFrameStompEncoder extends StompEncoder {
+
+    private static final int CACHE_SLOTS = 64;
+
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUBSCRIPTION_KEY = "subscription:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_ID_KEY = "message-id:".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicReferenceArray<SharedFrame> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private final BinaryPayloadCodec binaryPayloadCodec;
+
+    public SharedFrameStompEncoder() {
+        this(null);
+    }
+
+    public SharedFrameStompEncoder(BinaryPayloadCodec binaryPayloadCodec) {
+        this.binaryPayloadCodec = binaryPayloadCodec;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (StompHeaderAccessor.getCommand(headers) != StompCommand.MESSAGE) {
+            return super.encode(headers, payload);
+        }
+        Map<String, List<String>> nativeHeaders =
+                (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders == null) {
+            return super.encode(headers, payload);
+        }
+        if (binaryPayloadCodec != null && headers.get(BinaryPayloadCodec.CBOR_PAYLOAD_HEADER) instanceof byte[] cbor
+                && binaryPayloadCodec.isCborSession(SimpMessageHeaderAccessor.getSessionId(headers))) {
+            payload = cbor;
+            nativeHeaders = new LinkedHashMap<>(nativeHeaders);
+            nativeHeaders.put(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER, List.of(BinaryPayloadCodec.APPLICATION_CBOR.toString()));
+        }
+
+        int slot = System.identityHashCode(payload) & (CACHE_SLOTS - 1);
+        SharedFrame shared = cache.get(slot);
+        if (shared == null || !shared.matches(payload, nativeHeaders)) {
+            shared = new SharedFrame(payload, nativeHeaders);
+            cache.set(slot, shared);
+        }
+
+        String subscription = first(nativeHeaders, StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER);
+        String messageId = first(nativeHeaders, StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER);
+        byte[] encodedSubscription = encodeIfNotPlain(subscription);
+        byte[] encodedMessageId = encodeIfNotPlain(messageId);
+
+        byte[] frame = new byte[MESSAGE_COMMAND.length
+                + lineLength(SUBSCRIPTION_KEY, subscription, encodedSubscription)
+                + lineLength(MESSAGE_ID_KEY, messageId, encodedMessageId)
+                + shared.tail.length];
+        int position = copy(MESSAGE_COMMAND, frame, 0);
+        position = writeLine(SUBSCRIPTION_KEY, subscription, encodedSubscription, frame, position);
+        position = writeLine(MESSAGE_ID_KEY, messageId, encodedMessageId, frame, position);
+        copy(shared.tail, frame, position);
+        return frame;
+    }
+
+    // Null for values that can be written char by char: ASCII with nothing to escape
+    private static byte[] encodeIfNotPlain(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || c == '\\' || c == ':' || c == '\n' || c == '\r') {
+                return escape(value).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static int lineLength(byte[] key, String value, byte[] encoded) {
+        if (value == null) {
+            return 0;
+        }
+        return key.length + (encoded != null ? encoded.length : value.length()) + 1;
+    }
+
+    private static int writeLine(byte[] key, String value, byte[] encoded, byte[] frame, int position) {
+        if (value == null) {
+            return position;
+        }
+        position = copy(key, frame, position);
+        if (encoded != null) {
+            position = copy(encoded, frame, position);
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                frame[position++] = (byte) value.charAt(i);
+            }
+        }
+        frame[position++] = '\n';
+        return position;
+    }
+
+    private static boolean isPerSubscriber(String header) {
+        return StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER.equals(header)
+                || StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER.equals(header)
+                || StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(header);
+    }
+
+    private static String first(Map<String, List<String>> nativeHeaders, String header) {
+        List<String> values = nativeHeaders.get(header);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    private static int copy(byte[] source, byte[] target, int position) {
+        System.arraycopy(source, 0, target, position, source.length);
+        return position + source.length;
+    }
+
+    // STOMP 1.2 header escaping, as applied to every frame except CONNECT and CONNECTED
+    private static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    /**
+     * Encoded headers, content-length, payload and terminator shared by all subscribers of one broadcast
+     */
+    private static final class SharedFrame {
+        private final byte[] payload;
+        private final List<String> headerNames = new ArrayList<>();
+        private final List<List<String>> headerValues = new ArrayList<>();
+        private final byte[] tail;
+
+        SharedFrame(byte[] payload, Map<String, List<String>> nativeHeaders) {
+            this.payload = payload;
+            StringBuilder headers = new StringBuilder(128);
+            for (Map.Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+                if (isPerSubscriber(entry.getKey())) {
+                    continue;
+                }
+                headerNames.add(entry.getKey());
+                headerValues.add(List.copyOf(entry.getValue()));
+                for (String value : entry.getValue()) {
+                    headers.append(escape(entry.getKey())).append(':').append(escape(value)).append('\n');
+                }
+            }
+            headers.append(StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER).append(':').append(payload.length).append("\n\n");
+
+            byte[] encodedHeaders = headers.toString().getBytes(StandardCharsets.UTF_8);
+            this.tail = new byte[encodedHeaders.length + payload.length + 1];
+            int position = copy(encodedHeaders, tail, 0);
+            copy(payload, tail, position);
+            // The last byte stays 0 as the frame terminator
+        }
+
+        // Same payload array and the same shared headers in the same order
+        boolean matches(byte[] candidate, Map<String, List<String>> nativeHeaders) {
+            if (candidate != payload) {
+                return false;
+            }
+            int index = 0;
+            for (Map.Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+                if (isPerSubscriber(entry.getKey())) {
+                    continue;
+                }
+                if (index >= headerNames.size()
+                        || !headerNames.get(index).equals(entry.getKey())
+                        || !headerValues.get(index).equals(entry.getValue())) {
+                    return false;
+                }
+                index++;
+            }
+            return index == headerNames.size();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.screenshare.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Virtual Thread Configuration
+ * spring.threads.virtual.enabled moves Tomcat request handling, @Async / MVC async work and
+ * scheduled tasks onto virtual threads (the STOMP channels are switched in WebSocketConfig).
+ * Since nothing then limits how many threads block on JPA at once, the DataSource is wrapped
+ * so that database work is capped at the connection pool size.
+ */
+@Configuration
+public class VirtualThreadConfig {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "spring.threads.virtual.enabled";
+
+    @Bean
+    public static BeanPostProcessor concurrencyLimitedDataSourceInstaller(Environment environment) {
+        boolean enabled = environment.getProperty(VIRTUAL_THREADS_PROPERTY, Boolean.class, false);
+        // 0 means use the connection pool's maximum size
+        int configured = environment.getProperty("chat.db.max-concurrency", Integer.class, 0);
+        long acquireTimeoutMs = environment.getProperty("chat.db.acquire-timeout-ms", Long.class, 30000L);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!enabled || !(bean instanceof DataSource dataSource) || bean instanceof ConcurrencyLimitedDataSource) {
+                    return bean;
+                }
+                int permits = configured > 0 ? configured : poolSize(dataSource);
+                return new ConcurrencyLimitedDataSource(dataSource, permits, acquireTimeoutMs);
+            }
+        };
+    }
+
+    // Hikari reports -1 until the pool starts and then applies its default of 10
+    private static int poolSize(DataSource dataSource) {
+        int size = dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : -1;
+        return size > 0 ? size : 10;
+    }
+}
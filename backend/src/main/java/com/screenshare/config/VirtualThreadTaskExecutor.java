@@ -0,0 +1,39 @@
+package com.screenshare.config;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Message channel executor that starts a virtual thread per task
+ * Extends ThreadPoolTaskExecutor only because that is the type ChannelRegistration accepts;
+ * no platform pool is created and the pool size settings are ignored.
+ */
+public class VirtualThreadTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private ExecutorService virtualExecutor;
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+        virtualExecutor = newVirtualThreadExecutor(getThreadNamePrefix());
+        return virtualExecutor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        try {
+            virtualExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            throw new TaskRejectedException("Executor [" + virtualExecutor + "] did not accept task: " + task, e);
+        }
+    }
+
+    static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
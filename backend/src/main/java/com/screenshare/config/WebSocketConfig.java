@@ -1,12 +1,39 @@
 package com.screenshare.config;
 
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -15,6 +42,47 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
     private WebSocketInterceptor webSocketInterceptor;
 
+    @Autowired
+    private OutboundBackpressure outboundBackpressure;
+
+    @Autowired
+    private BinaryPayloadCodec binaryPayloadCodec;
+
+    @Value("${chat.inbound.room-lanes.enabled:true}")
+    private boolean roomLanesEnabled;
+
+    // 0 means two lanes per core
+    @Value("${chat.inbound.room-lanes.count:0}")
+    private int roomLaneCount;
+
+    @Value("${chat.inbound.room-lanes.queue-capacity:" + RoomLaneTaskExecutor.DEFAULT_LANE_QUEUE_CAPACITY + "}")
+    private int roomLaneQueueCapacity;
+
+    @Value("${" + VirtualThreadConfig.VIRTUAL_THREADS_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    @Value("${chat.websocket.native.enabled:true}")
+    private boolean nativeEndpointEnabled;
+
+    @Value("${chat.websocket.native.path:/ws-native}")
+    private String nativeEndpointPath;
+
+    // Largest STOMP message accepted from a client, after reassembly of partial frames
+    @Value("${chat.websocket.message-size-limit:1048576}")
+    private int messageSizeLimit;
+
+    @Value("${chat.websocket.send-buffer-size-limit:4194304}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.websocket.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    // The container's permessage-deflate compresses every message, screen-share frames included, so only
+    // the SockJS endpoint offers it: SockJS sessions cannot take FrameCompressor's binary frames.
+    // Native sessions ask for FrameCompressor instead, which skips screen share and small bodies
+    @Value("${chat.websocket.compression.sockjs-permessage-deflate:true}")
+    private boolean sockJsPerMessageDeflate;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue");
@@ -24,13 +92,136 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // Plain STOMP over WebSocket, without SockJS framing and heartbeats
+        if (nativeEndpointEnabled) {
+            registry.addEndpoint(nativeEndpointPath)
+                    .setHandshakeHandler(new DefaultHandshakeHandler(new NoPerMessageDeflateUpgradeStrategy()))
+                    .setAllowedOriginPatterns("*");
+        }
+        // Fallback for clients that cannot open a WebSocket
         registry.addEndpoint("/ws")
+                .setHandshakeHandler(sockJsPerMessageDeflate
+                        ? new DefaultHandshakeHandler()
+                        : new DefaultHandshakeHandler(new NoPerMessageDeflateUpgradeStrategy()))
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
 
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Frames with content-type application/cbor; the default JSON converters are kept after it
+        messageConverters.add(binaryPayloadCodec.messageConverter());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Screen-share frames are far larger than the 64K/512K defaults
+        registration.setMessageSizeLimit(messageSizeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs);
+        // Bounded per-session send queues so a slow client cannot back up the outbound channel
+        registration.addDecoratorFactory(outboundBackpressure);
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(webSocketInterceptor);
+        if (roomLanesEnabled) {
+            // Per-room FIFO handling of @MessageMapping frames
+            int lanes = roomLaneCount > 0 ? roomLaneCount : Runtime.getRuntime().availableProcessors() * 2;
+            registration.taskExecutor(new RoomLaneTaskExecutor("/app", lanes, roomLaneQueueCapacity, virtualThreads));
+        } else if (virtualThreads) {
+            registration.taskExecutor(new VirtualThreadTaskExecutor());
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.taskExecutor(new VirtualThreadTaskExecutor());
+        }
+    }
+
+    // Container buffers: a single WebSocket message larger than these is rejected with 1009 (Tomcat's default is 8K)
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer(
+            @Value("${chat.websocket.text-buffer-size:262144}") int textBufferSize,
+            @Value("${chat.websocket.binary-buffer-size:262144}") int binaryBufferSize,
+            @Value("${chat.websocket.idle-timeout-ms:300000}") long idleTimeoutMs) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean() {
+            private boolean available;
+
+            @Override
+            public void setServletContext(ServletContext servletContext) {
+                // Absent under a mock servlet environment such as @SpringBootTest without a port
+                available = servletContext.getAttribute(ServerContainer.class.getName()) != null;
+                super.setServletContext(servletContext);
+            }
+
+            @Override
+            public void afterPropertiesSet() {
+                if (available) {
+                    super.afterPropertiesSet();
+                }
+            }
+        };
+        container.setMaxTextMessageBufferSize(textBufferSize);
+        container.setMaxBinaryMessageBufferSize(binaryBufferSize);
+        container.setMaxSessionIdleTimeout(idleTimeoutMs);
+        return container;
+    }
+
+    // Swap the simple broker's pattern-matching registry for the exact-destination index
+    @Bean
+    public static BeanPostProcessor indexedSubscriptionRegistryInstaller(Environment environment) {
+        boolean enabled = environment.getProperty("chat.broker.indexed-registry", Boolean.class, true);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (enabled && bean instanceof SimpleBrokerMessageHandler broker) {
+                    broker.setSubscriptionRegistry(new IndexedSubscriptionRegistry());
+                }
+                return bean;
+            }
+        };
+    }
+
+    // Encode each broadcast frame body once for all subscriber sessions
+    @Bean
+    public SmartInitializingSingleton sharedFrameStompEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") WebSocketHandler subProtocolWebSocketHandler,
+            BinaryPayloadCodec binaryPayloadCodec) {
+        return () -> ((SubProtocolWebSocketHandler) subProtocolWebSocketHandler).getProtocolHandlers().stream()
+                .filter(StompSubProtocolHandler.class::isInstance)
+                .forEach(handler -> ((StompSubProtocolHandler) handler).setEncoder(new SharedFrameStompEncoder(binaryPayloadCodec)));
+    }
+
+    /**
+     * Upgrade that hides the client's permessage-deflate offer from the container
+     * Tomcat negotiates extensions from the request headers itself, so the offer has to be
+     * removed from the request rather than filtered out of Spring's requested extensions.
+     */
+    private static class NoPerMessageDeflateUpgradeStrategy extends StandardWebSocketUpgradeStrategy {
+
+        @Override
+        protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                              ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+            super.upgradeHttpToWebSocket(new HttpServletRequestWrapper(request) {
+                @Override
+                public String getHeader(String name) {
+                    return isExtensions(name) ? null : super.getHeader(name);
+                }
+
+                @Override
+                public Enumeration<String> getHeaders(String name) {
+                    return isExtensions(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+                }
+            }, response, endpointConfig, pathParams);
+        }
+
+        private static boolean isExtensions(String name) {
+            return WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name);
+        }
     }
 }
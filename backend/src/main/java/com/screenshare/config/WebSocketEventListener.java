@@ -1,92 +1,51 @@
 package com.screenshare.config;
 
+import com.screenshare.service.PresenceService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
-import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.security.Principal;
 
 /**
- * WebSocket Event Listener to track user sessions
- * Maps usernames to WebSocket session IDs for user-specific routing
+ * WebSocket Event Listener to log session connects and disconnects
+ * Which user a session belongs to is tracked by MultiSessionUserRegistry; connects and
+ * disconnects are passed on to PresenceService, which derives the user's status from them
  */
 @Component
 public class WebSocketEventListener {
 
-    // Map username to session ID
-    private static final Map<String, String> usernameToSession = new ConcurrentHashMap<>();
-    // Map session ID to username
-    private static final Map<String, String> sessionToUsername = new ConcurrentHashMap<>();
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    @Autowired
+    private PresenceService presenceService;
 
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String sessionId = headerAccessor.getSessionId();
         System.out.println("WebSocket Connected: " + sessionId);
+        // Sessions without a principal are picked up by their first heartbeat once registered
+        Principal user = event.getUser();
+        if (user != null) {
+            presenceService.sessionOpened(sessionId, user.getName());
+        }
     }
 
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        String sessionId = headerAccessor.getSessionId();
-        String username = sessionToUsername.remove(sessionId);
+        String sessionId = event.getSessionId();
+        presenceService.sessionClosed(sessionId);
+        // The registry may already have dropped the session, depending on listener order
+        String username = userRegistry.getUsername(sessionId);
         if (username != null) {
-            usernameToSession.remove(username);
             System.out.println("WebSocket Disconnected: " + sessionId + " (username: " + username + ")");
         } else {
             System.out.println("WebSocket Disconnected: " + sessionId);
         }
     }
-
-    @EventListener
-    public void handleSubscribeEvent(SessionSubscribeEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        String sessionId = headerAccessor.getSessionId();
-        String destination = headerAccessor.getDestination();
-        
-        // Extract username from user-specific destination subscriptions
-        if (destination != null && destination.startsWith("/user/")) {
-            // Try to extract username from subscription headers or destination
-            Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
-            if (sessionAttributes != null && sessionAttributes.containsKey("username")) {
-                String username = (String) sessionAttributes.get("username");
-                registerUser(username, sessionId);
-            }
-        }
-    }
-
-    /**
-     * Register a username with a session ID
-     */
-    public static void registerUser(String username, String sessionId) {
-        // Remove old session if username was already registered
-        String oldSessionId = usernameToSession.remove(username);
-        if (oldSessionId != null) {
-            sessionToUsername.remove(oldSessionId);
-        }
-        
-        usernameToSession.put(username, sessionId);
-        sessionToUsername.put(sessionId, username);
-        System.out.println("Registered user: " + username + " -> session: " + sessionId);
-    }
-
-    /**
-     * Get session ID for a username
-     */
-    public static String getSessionId(String username) {
-        return usernameToSession.get(username);
-    }
-
-    /**
-     * Get username for a session ID
-     */
-    public static String getUsername(String sessionId) {
-        return sessionToUsername.get(sessionId);
-    }
 }
-
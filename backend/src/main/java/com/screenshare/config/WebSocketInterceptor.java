@@ -1,5 +1,8 @@
 package com.screenshare.config;
 
+import com.screenshare.service.PresenceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -19,6 +22,14 @@ import java.util.Map;
 @Component
 public class WebSocketInterceptor implements ChannelInterceptor {
 
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    // Lazy: PresenceService needs the messaging template, which is built from this interceptor's channel
+    @Autowired
+    @Lazy
+    private PresenceService presenceService;
+
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
@@ -37,7 +48,7 @@ public class WebSocketInterceptor implements ChannelInterceptor {
                             sessionAttributes.put("username", username);
                             String sessionId = accessor.getSessionId();
                             if (sessionId != null) {
-                                WebSocketEventListener.registerUser(username, sessionId);
+                                userRegistry.register(username, sessionId);
                                 // Set Principal for user destination routing
                                 accessor.setUser(new SimplePrincipal(username));
                             }
@@ -47,23 +58,24 @@ public class WebSocketInterceptor implements ChannelInterceptor {
             } else if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
                 // When subscribing to user-specific destination, extract username and set principal
                 String destination = accessor.getDestination();
-                if (destination != null && destination.startsWith("/user/")) {
+                if (destination != null && destination.startsWith("/user/") && isNamedUserDestination(destination)) {
                     // Extract username from destination: /user/{username}/queue/...
                     String[] parts = destination.split("/");
-                    if (parts.length >= 3) {
-                        String username = parts[2];
-                        Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
-                        if (sessionAttributes != null) {
-                            sessionAttributes.put("username", username);
-                        }
-                        String sessionId = accessor.getSessionId();
-                        if (sessionId != null) {
-                            WebSocketEventListener.registerUser(username, sessionId);
-                        }
-                        // Set Principal for user destination routing
-                        if (accessor.getUser() == null) {
-                            accessor.setUser(new SimplePrincipal(username));
-                        }
+                    String username = parts[2];
+                    Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+                    if (sessionAttributes != null) {
+                        sessionAttributes.put("username", username);
+                    }
+                    String sessionId = accessor.getSessionId();
+                    if (sessionId != null) {
+                        userRegistry.register(username, sessionId);
+                    }
+                    // Subscribe to the session's own queue, /user/queue/..., which is where
+                    // convertAndSendToUser delivers; the named form resolves to a different one
+                    accessor.setDestination("/user" + destination.substring(("/user/" + username).length()));
+                    // Set Principal for user destination routing
+                    if (accessor.getUser() == null) {
+                        accessor.setUser(new SimplePrincipal(username));
                     }
                 } else {
                     // Check if we already have username in session attributes
@@ -76,11 +88,22 @@ public class WebSocketInterceptor implements ChannelInterceptor {
                     }
                 }
             }
+
+            // Any frame from a client shows it is still there
+            if (!StompCommand.DISCONNECT.equals(accessor.getCommand())) {
+                presenceService.heartbeat(accessor.getSessionId());
+            }
         }
         
         return message;
     }
 
+    // /user/{username}/queue/... as opposed to /user/queue/...
+    private static boolean isNamedUserDestination(String destination) {
+        String[] parts = destination.split("/");
+        return parts.length >= 5 && !parts[2].isEmpty() && (parts[3].equals("queue") || parts[3].equals("topic"));
+    }
+
     /**
      * Simple Principal implementation for username-based routing
      */
@@ -1,19 +1,28 @@
 package com.screenshare.controller;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.screenshare.dto.*;
 import com.screenshare.entity.ChatRoom;
 import com.screenshare.entity.MessageType;
 import com.screenshare.entity.User;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import com.screenshare.service.ChatService;
+import com.screenshare.service.MessageExportService;
+import com.screenshare.service.ReadStateService;
+import com.screenshare.service.RoomBroadcaster;
+import com.screenshare.service.TypingIndicatorService;
+import com.screenshare.service.UnreadCounterService;
 import com.screenshare.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Map;
 
@@ -21,12 +30,20 @@ import jakarta.validation.Valid;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/chat")
 @CrossOrigin(origins = "*")
 public class ChatController {
 
+    private static final int MAX_MESSAGE_PAGE_SIZE = 200;
+
+    private static final int MAX_SYNC_ROOMS = 100;
+
+    @Value("${chat.sync.max-messages-per-room:100}")
+    private int maxSyncMessagesPerRoom;
+
     @Autowired
     private ChatService chatService;
 
@@ -34,7 +51,19 @@ public class ChatController {
     private UserService userService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private MessageExportService messageExportService;
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
 
     // WebSocket message handlers
     @MessageMapping("/chat/{roomId}/sendMessage")
@@ -44,30 +73,26 @@ public class ChatController {
             message.setTimestamp(LocalDateTime.now());
 
             // Only proceed if room exists and is active and sender is a member
-            if (chatService.getChatRoom(roomId).isPresent()) {
-                ChatRoom room = chatService.getChatRoom(roomId).get();
-                if (room.getIsActive() && (room.getRoomType() == com.screenshare.entity.RoomType.PUBLIC || chatService.isUserMemberOfRoom(roomId, message.getSenderId()))) {
-                    
-                    
-                    MessageType msgType = MessageType.TEXT; 
-                    if (message.getType() != null) {
-                        try {
-                            switch (message.getType()) {
-                                case CHAT -> msgType = MessageType.TEXT;
-                                case JOIN -> msgType = MessageType.SYSTEM;
-                                case LEAVE -> msgType = MessageType.SYSTEM;
-                                default -> msgType = MessageType.TEXT;
-                            }
-                        } catch (Exception e) {
-                            System.err.println("Error converting message type: " + e.getMessage());
-                            msgType = MessageType.TEXT; 
+            if (chatService.canAccessRoom(roomId, message.getSenderId())) {
+                MessageType msgType = MessageType.TEXT; 
+                if (message.getType() != null) {
+                    try {
+                        switch (message.getType()) {
+                            case CHAT -> msgType = MessageType.TEXT;
+                            case JOIN -> msgType = MessageType.SYSTEM;
+                            case LEAVE -> msgType = MessageType.SYSTEM;
+                            default -> msgType = MessageType.TEXT;
                         }
+                    } catch (Exception e) {
+                        System.err.println("Error converting message type: " + e.getMessage());
+                        msgType = MessageType.TEXT; 
                     }
-                    chatService.saveMessage(roomId, message.getSenderId(), message.getContent(), msgType);
-                    
-                    // Broadcast to all subscribers 
-                    messagingTemplate.convertAndSend("/topic/chat/" + roomId, message);
                 }
+                // The stored id lets clients use live messages as history and sync cursors
+                message.setId(chatService.acceptMessage(roomId, message.getSenderId(), message.getContent(), msgType));
+                
+                // Broadcast to all subscribers 
+                roomBroadcaster.chat(roomId, message);
             }
         } catch (Exception e) {
             System.err.println("Error processing message: " + e.getMessage());
@@ -78,50 +103,52 @@ public class ChatController {
     public void addUserToRoom(@DestinationVariable Long roomId, ChatMessage message) {
         message.setTimestamp(LocalDateTime.now());
         // Broadcast join event only if user is a member of the room and room is active
-        if (chatService.getChatRoom(roomId).isPresent()) {
-            ChatRoom room = chatService.getChatRoom(roomId).get();
-            if (room.getIsActive() && (room.getRoomType() == com.screenshare.entity.RoomType.PUBLIC || chatService.isUserMemberOfRoom(roomId, message.getSenderId()))) {
-                // Set content for join message if not already set
-                if (message.getContent() == null || message.getContent().isEmpty()) {
-                    message.setContent(message.getSender() + " joined!");
-                }
-                messagingTemplate.convertAndSend("/topic/chat/" + roomId, message);
+        if (chatService.canAccessRoom(roomId, message.getSenderId())) {
+            // Set content for join message if not already set
+            if (message.getContent() == null || message.getContent().isEmpty()) {
+                message.setContent(message.getSender() + " joined!");
             }
+            roomBroadcaster.chat(roomId, message);
         }
     }
 
+    // Typing state is coalesced per room and broadcast on /topic/typing/{roomId}, never stored
+    @MessageMapping("/chat/{roomId}/typing")
+    public void typing(@DestinationVariable Long roomId, TypingMessage message) {
+        typingIndicatorService.update(roomId, message.getUserId(), message.isTyping());
+    }
+
+    // Advance the sender's read watermark; receipts go out on /topic/read/{roomId} only when it moves
+    @MessageMapping("/chat/rooms/{roomId}/read")
+    public void markReadOverWebSocket(@DestinationVariable Long roomId, ReadMessage message) {
+        readStateService.markRead(roomId, message.getUserId(), message.getMessageId());
+    }
+
     @MessageMapping("/screenshare/{roomId}/start")
     public void startScreenShare(@DestinationVariable Long roomId, ScreenShareMessage message) {
         // Verify user is member of room and room is active
-        if (chatService.getChatRoom(roomId).isPresent()) {
-            ChatRoom room = chatService.getChatRoom(roomId).get();
-            if (room.getIsActive() && (room.getRoomType() == com.screenshare.entity.RoomType.PUBLIC || chatService.isUserMemberOfRoom(roomId, message.getUserId()))) {
-                message.setAction("start");
-                message.setTimestamp(LocalDateTime.now());
-                messagingTemplate.convertAndSend("/topic/screenshare/" + roomId, message);
-            }
+        if (chatService.canAccessRoom(roomId, message.getUserId())) {
+            message.setAction("start");
+            message.setTimestamp(LocalDateTime.now());
+            roomBroadcaster.screenShare(roomId, message);
         }
     }
 
     @MessageMapping("/screenshare/{roomId}/stop")
     public void stopScreenShare(@DestinationVariable Long roomId, ScreenShareMessage message) {
         // Verify user is member of room and room is active
-        if (chatService.getChatRoom(roomId).isPresent()) {
-            ChatRoom room = chatService.getChatRoom(roomId).get();
-            if (room.getIsActive() && chatService.isUserMemberOfRoom(roomId, message.getUserId())) {
-                message.setAction("stop");
-                message.setTimestamp(LocalDateTime.now());
-                messagingTemplate.convertAndSend("/topic/screenshare/" + roomId, message);
-            }
+        if (chatService.isActiveMemberOfRoom(roomId, message.getUserId())) {
+            message.setAction("stop");
+            message.setTimestamp(LocalDateTime.now());
+            roomBroadcaster.screenShare(roomId, message);
         }
     }
 
     // Relay WebRTC signaling messages between two peers in a chat room
     @MessageMapping("/signal/{roomId}")
-    @SendTo("/topic/signal/{roomId}")
-    public Map<String, Object> relaySignal(@DestinationVariable String roomId, Map<String, Object> payload) {
+    public void relaySignal(@DestinationVariable String roomId, Map<String, Object> payload) {
         // Simply forward the payload to all subscribers in that room
-        return payload;
+        roomBroadcaster.signal(roomId, payload);
     }
     
     // REST API endpoints
@@ -130,11 +157,17 @@ public class ChatController {
     @GetMapping("/rooms")
     public ResponseEntity<List<ChatRoomDto>> getUserChatRooms(@RequestParam Long userId) {
         try {
-            List<ChatRoomDto> rooms = chatService.getUserChatRooms(userId)
-                    .stream()
-                    .map(ChatRoomDto::new)
-                    .collect(Collectors.toList());
-            return ResponseEntity.ok(rooms);
+            return ResponseEntity.ok(chatService.getUserChatRoomDtos(userId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Unread counts for all of the user's rooms in one call; rooms without unread messages are left out
+    @GetMapping("/rooms/unread")
+    public ResponseEntity<Map<Long, Integer>> getUnreadCounts(@RequestParam Long userId) {
+        try {
+            return ResponseEntity.ok(unreadCounterService.getUnreadCounts(userId));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
@@ -162,6 +195,17 @@ public class ChatController {
         }
     }
 
+    // Leave a room
+    @PostMapping("/rooms/{roomId}/leave")
+    public ResponseEntity<Void> leaveRoom(@PathVariable Long roomId, @RequestParam Long userId) {
+        try {
+            chatService.leaveRoom(roomId, userId);
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // Create a chat invite
     @PostMapping("/invite")
     public ResponseEntity<ChatInviteDto> createInvite(@Valid @RequestBody CreateChatInviteRequest request, 
@@ -282,22 +326,123 @@ public class ChatController {
         }
     }
 
-    // Get messages for a chat room
+    // Get a page of messages for a chat room. Without a cursor the latest page is returned;
+    // pass nextCursor (or a before/after message id) to continue from there.
     @GetMapping("/rooms/{roomId}/messages")
-    public ResponseEntity<List<ChatMessageDto>> getRoomMessages(@PathVariable Long roomId, @RequestParam Long userId) {
+    public ResponseEntity<MessagePageDto> getRoomMessages(@PathVariable Long roomId, @RequestParam Long userId,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) Long before,
+                                                          @RequestParam(required = false) Long after,
+                                                          @RequestParam(defaultValue = "50") int limit) {
+        MessageCursor pageCursor;
         try {
-            List<ChatMessageDto> messages = chatService.getRoomMessages(roomId, userId)
-                    .stream()
-                    .map(ChatMessageDto::new)
-                    .collect(Collectors.toList());
-            return ResponseEntity.ok(messages);
+            if (cursor != null) {
+                pageCursor = MessageCursor.decode(cursor);
+            } else if (before != null) {
+                pageCursor = MessageCursor.before(before);
+            } else if (after != null) {
+                pageCursor = MessageCursor.after(after);
+            } else {
+                pageCursor = null;
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            int pageSize = Math.max(1, Math.min(limit, MAX_MESSAGE_PAGE_SIZE));
+            return ResponseEntity.ok(chatService.getMessagePage(roomId, userId, pageCursor, pageSize));
         } catch (Exception e) {
             return ResponseEntity.status(403).build();
         }
     }
 
+    // Export a room's full history as NDJSON, streamed in constant memory. Room admins only.
+    @GetMapping("/rooms/{roomId}/export")
+    public ResponseEntity<StreamingResponseBody> exportRoom(@PathVariable Long roomId, @RequestParam Long userId,
+                                                            @RequestParam(defaultValue = "false") boolean gzip) {
+        if (!messageExportService.canExport(roomId, userId)) {
+            return ResponseEntity.status(403).build();
+        }
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+                messageExportService.exportRoom(roomId, gzipOut);
+                gzipOut.finish();
+            } else {
+                messageExportService.exportRoom(roomId, out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"room-" + roomId + ".ndjson\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    // Fetch messages missed while disconnected, for every open room in one call
+    @PostMapping("/sync")
+    public ResponseEntity<SyncResponse> syncRooms(@RequestBody SyncRequest request, @RequestParam Long userId) {
+        if (request.getRooms() == null || request.getRooms().size() > MAX_SYNC_ROOMS) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(chatService.syncRooms(userId, request.getRooms(), maxSyncMessagesPerRoom));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Advance a user's read watermark in a room; returns the watermark, which never moves back
+    @PostMapping("/rooms/{roomId}/read")
+    public ResponseEntity<ReadStateService.ReadReceipt> markRead(@PathVariable Long roomId, @RequestParam Long userId,
+                                                                 @RequestBody ReadMessage message) {
+        if (!chatService.isActiveMemberOfRoom(roomId, userId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        readStateService.markRead(roomId, userId, message.getMessageId());
+        return ResponseEntity.ok(new ReadStateService.ReadReceipt(roomId, userId, readStateService.getLastRead(roomId, userId)));
+    }
+
+    // Get a user's read watermark in a room
+    @GetMapping("/rooms/{roomId}/read")
+    public ResponseEntity<ReadStateService.ReadReceipt> getReadState(@PathVariable Long roomId, @RequestParam Long userId) {
+        if (!chatService.isActiveMemberOfRoom(roomId, userId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(new ReadStateService.ReadReceipt(roomId, userId, readStateService.getLastRead(roomId, userId)));
+    }
+
+    // Edit a message
+    @PutMapping("/messages/{messageId}")
+    public ResponseEntity<ChatMessageDto> editMessage(@PathVariable Long messageId, @RequestParam Long userId,
+                                                      @RequestBody Map<String, String> body) {
+        try {
+            return ResponseEntity.ok(new ChatMessageDto(chatService.editMessage(messageId, userId, body.get("content"))));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Delete a message
+    @DeleteMapping("/messages/{messageId}")
+    public ResponseEntity<Void> deleteMessage(@PathVariable Long messageId, @RequestParam Long userId) {
+        try {
+            chatService.deleteMessage(messageId, userId);
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // WebSocket message class
     public static class ChatMessage {
+        @JsonSerialize(using = ToStringSerializer.class)
+        private Long id;
         private String content;
         private String sender;
         private Long senderId;
@@ -309,6 +454,9 @@ public class ChatController {
         }
 
         // Getters and setters
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
         public String getContent() { return content; }
         public void setContent(String content) { this.content = content; }
         
@@ -324,6 +472,37 @@ public class ChatController {
         public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
     }
 
+    // Typing indicator message class
+    public static class TypingMessage {
+        private Long userId;
+        // Ignored; the name shown is taken from the user record
+        private String username;
+        private boolean typing;
+
+        // Getters and setters
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public boolean isTyping() { return typing; }
+        public void setTyping(boolean typing) { this.typing = typing; }
+    }
+
+    // Read watermark message class; message ids may be sent as strings
+    public static class ReadMessage {
+        private Long userId;
+        private Long messageId;
+
+        // Getters and setters
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+
+        public Long getMessageId() { return messageId; }
+        public void setMessageId(Long messageId) { this.messageId = messageId; }
+    }
+
     // Screen share message class
     public static class ScreenShareMessage {
         private Long userId;
@@ -1,14 +1,36 @@
 package com.screenshare.controller;
 
+import com.screenshare.config.BinaryPayloadCodec;
+import com.screenshare.config.ConcurrencyLimitedDataSource;
+import com.screenshare.config.IndexedSubscriptionRegistry;
+import com.screenshare.config.MultiSessionUserRegistry;
+import com.screenshare.config.OutboundBackpressure;
+import com.screenshare.config.RoomLaneTaskExecutor;
 import com.screenshare.repository.UserRepository;
+import com.screenshare.service.AzureMessageService;
+import com.screenshare.service.ClusterInvalidationService;
+import com.screenshare.service.MessageWriteBehindService;
+import com.screenshare.service.OutboxService;
+import com.screenshare.service.PresenceService;
+import com.screenshare.service.ReadStateService;
+import com.screenshare.service.RecentMessageCache;
+import com.screenshare.service.RoomAccessCache;
+import com.screenshare.service.RoomActivityTracker;
+import com.screenshare.service.RoomBroadcaster;
+import com.screenshare.service.TypingIndicatorService;
+import com.screenshare.service.UnreadCounterService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.env.Environment;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.sql.DataSource;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,6 +45,61 @@ public class DebugController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private RoomActivityTracker roomActivityTracker;
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private OutboundBackpressure outboundBackpressure;
+
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private BinaryPayloadCodec binaryPayloadCodec;
+
+    @Autowired
+    private ClusterInvalidationService clusterInvalidationService;
+
+    @Autowired(required = false)
+    private AzureMessageService azureMessageService;
+
+    @Autowired(required = false)
+    private SimpleBrokerMessageHandler simpleBrokerMessageHandler;
+
+    @Autowired(required = false)
+    @Qualifier("clientInboundChannelExecutor")
+    private ThreadPoolTaskExecutor clientInboundChannelExecutor;
+
     @GetMapping("/env")
     public ResponseEntity<Map<String, Object>> envInfo() {
         Map<String, Object> info = new HashMap<>();
@@ -44,4 +121,106 @@ public class DebugController {
         res.put("userCount", count);
         return ResponseEntity.ok(res);
     }
+
+    @GetMapping("/metrics/write-behind")
+    public ResponseEntity<Map<String, Object>> writeBehindMetrics() {
+        return ResponseEntity.ok(messageWriteBehindService.getStats());
+    }
+
+    @GetMapping("/metrics/room-access")
+    public ResponseEntity<Map<String, Object>> roomAccessMetrics() {
+        return ResponseEntity.ok(roomAccessCache.getStats());
+    }
+
+    @GetMapping("/metrics/room-activity")
+    public ResponseEntity<Map<String, Object>> roomActivityMetrics() {
+        return ResponseEntity.ok(roomActivityTracker.getStats());
+    }
+
+    @GetMapping("/metrics/broadcast")
+    public ResponseEntity<Map<String, Object>> broadcastMetrics() {
+        Map<String, Object> stats = new HashMap<>(roomBroadcaster.getStats());
+        stats.putAll(binaryPayloadCodec.getStats());
+        stats.put("invalidations", clusterInvalidationService.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/metrics/broker")
+    public ResponseEntity<Map<String, Object>> brokerMetrics() {
+        Map<String, Object> stats = new HashMap<>();
+        if (simpleBrokerMessageHandler != null) {
+            stats.put("registry", simpleBrokerMessageHandler.getSubscriptionRegistry().getClass().getSimpleName());
+            if (simpleBrokerMessageHandler.getSubscriptionRegistry() instanceof IndexedSubscriptionRegistry registry) {
+                stats.putAll(registry.getStats());
+            }
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/metrics/users")
+    public ResponseEntity<Map<String, Object>> userMetrics() {
+        return ResponseEntity.ok(userRegistry.getStats());
+    }
+
+    @GetMapping("/metrics/presence")
+    public ResponseEntity<Map<String, Object>> presenceMetrics() {
+        return ResponseEntity.ok(presenceService.getStats());
+    }
+
+    @GetMapping("/metrics/typing")
+    public ResponseEntity<Map<String, Object>> typingMetrics() {
+        return ResponseEntity.ok(typingIndicatorService.getStats());
+    }
+
+    @GetMapping("/metrics/read-state")
+    public ResponseEntity<Map<String, Object>> readStateMetrics() {
+        return ResponseEntity.ok(readStateService.getStats());
+    }
+
+    @GetMapping("/metrics/unread")
+    public ResponseEntity<Map<String, Object>> unreadMetrics() {
+        return ResponseEntity.ok(unreadCounterService.getStats());
+    }
+
+    @GetMapping("/metrics/inbound")
+    public ResponseEntity<Map<String, Object>> inboundMetrics() {
+        Map<String, Object> stats = new HashMap<>();
+        if (clientInboundChannelExecutor instanceof RoomLaneTaskExecutor lanes) {
+            stats.putAll(lanes.getStats());
+        } else if (clientInboundChannelExecutor != null) {
+            stats.put("poolSize", clientInboundChannelExecutor.getPoolSize());
+            stats.put("queueDepth", clientInboundChannelExecutor.getQueueSize());
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/metrics/outbound")
+    public ResponseEntity<Map<String, Object>> outboundMetrics() {
+        return ResponseEntity.ok(outboundBackpressure.getStats());
+    }
+
+    @GetMapping("/metrics/outbox")
+    public ResponseEntity<Map<String, Object>> outboxMetrics() {
+        return ResponseEntity.ok(outboxService.getStats());
+    }
+
+    @GetMapping("/metrics/servicebus")
+    public ResponseEntity<Map<String, Object>> serviceBusMetrics() {
+        return ResponseEntity.ok(azureMessageService != null ? azureMessageService.getStats() : Map.of());
+    }
+
+    @GetMapping("/metrics/db")
+    public ResponseEntity<Map<String, Object>> dbMetrics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("virtualThreads", Thread.currentThread().isVirtual());
+        if (dataSource instanceof ConcurrencyLimitedDataSource limited) {
+            stats.putAll(limited.getStats());
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/metrics/recent-messages")
+    public ResponseEntity<Map<String, Object>> recentMessageMetrics() {
+        return ResponseEntity.ok(recentMessageCache.getStats());
+    }
 }
@@ -1,60 +1,106 @@
 package com.screenshare.controller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
-import com.screenshare.config.WebSocketEventListener;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.screenshare.config.BinaryPayloadCodec;
+import com.screenshare.config.MultiSessionUserRegistry;
+import com.screenshare.config.OutboundBackpressure;
 import com.screenshare.model.SignalMessage;
+import com.screenshare.service.RoomBroadcaster;
+import com.screenshare.service.UserDestinationRouter;
+
+import java.security.Principal;
 
 @Controller
 public class ScreenShareController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ScreenShareController.class);
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    @Autowired
+    private UserDestinationRouter userDestinationRouter;
+
     @MessageMapping("/screenshare.start")
-    @SendTo("/topic/screenshare")
-    public ScreenShareMessage startScreenShare(ScreenShareMessage message) {
+    public void startScreenShare(ScreenShareMessage message) {
         message.setAction("start");
-        return message;
+        roomBroadcaster.broadcast("/topic/screenshare", message);
     }
 
     @MessageMapping("/screenshare.stop")
-    @SendTo("/topic/screenshare")
-    public ScreenShareMessage stopScreenShare(ScreenShareMessage message) {
+    public void stopScreenShare(ScreenShareMessage message) {
         message.setAction("stop");
-        return message;
+        roomBroadcaster.broadcast("/topic/screenshare", message);
     }
 
+    // Screen data has its own destination: it may be dropped for slow viewers, start/stop may not
     @MessageMapping("/screenshare.data")
-    @SendTo("/topic/screenshare")
-    public ScreenShareMessage handleScreenData(ScreenShareMessage message) {
+    public void handleScreenData(ScreenShareMessage message, SimpMessageHeaderAccessor accessor) {
         message.setAction("data");
-        return message;
+        String roomId = message.getRoomId();
+        boolean sent = roomBroadcaster.broadcastClusterWide(roomId != null && !roomId.isEmpty()
+                ? OutboundBackpressure.SCREEN_SHARE_DATA_DESTINATION + "/" + roomId
+                : OutboundBackpressure.SCREEN_SHARE_DATA_DESTINATION, message);
+        if (!sent) {
+            // Viewers on other nodes could not get the frame, so nobody does; the sharer is told why
+            rejectScreenData(message, accessor);
+        }
+    }
+
+    private void rejectScreenData(ScreenShareMessage message, SimpMessageHeaderAccessor accessor) {
+        int limit = roomBroadcaster.getMaxClusterPayloadBytes();
+        logger.warn("Refused screen data for room {}: frames above {} bytes cannot reach the other nodes",
+                message.getRoomId(), limit);
+        Principal user = accessor.getUser();
+        if (user == null || accessor.getSessionId() == null) {
+            return;
+        }
+        ScreenShareMessage rejected = new ScreenShareMessage();
+        rejected.setAction("rejected");
+        rejected.setUserId(message.getUserId());
+        rejected.setRoomId(message.getRoomId());
+        rejected.setReason("Screen data frames must be at most " + limit + " bytes");
+        // Only the sending session, not every device of the user
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(accessor.getSessionId());
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(user.getName(), "/queue/screenshare", rejected, headers.getMessageHeaders());
     }
 
     @MessageMapping("/screenshare.signal")
     public void handleSignal(SignalMessage message) {
         // Route signal to specific user if 'to' field is provided, otherwise broadcast
         if (message.getTo() != null && !message.getTo().isEmpty() && !message.getTo().equals("all")) {
-            // Try to send using Spring's user destination feature
-            // This requires the username to be registered in our session mapping
-            // and the user to be subscribed to /user/{username}/queue/screenshare
+            // Delivered to every session of the user subscribed to /user/queue/screenshare
+            // (or /user/{username}/queue/screenshare), on whichever node they are connected to
             try {
-                messagingTemplate.convertAndSendToUser(message.getTo(), "/queue/screenshare", message);
+                userDestinationRouter.sendToUser(message.getTo(), "/queue/screenshare", message);
             } catch (Exception e) {
                 // Fallback: if user destination doesn't work, try direct topic
                 System.err.println("Failed to send to user " + message.getTo() + ": " + e.getMessage());
-                messagingTemplate.convertAndSend("/topic/screenshare", message);
+                roomBroadcaster.broadcast("/topic/screenshare", message);
             }
         } else {
             // Broadcast to all subscribers (fallback)
-            messagingTemplate.convertAndSend("/topic/screenshare", message);
+            roomBroadcaster.broadcast("/topic/screenshare", message);
         }
     }
 
@@ -62,14 +108,19 @@ public class ScreenShareController {
     public void registerUser(@Header("simpSessionId") String sessionId,
                             @Payload String username) {
         // Register username with session for user-specific routing
-        WebSocketEventListener.registerUser(username, sessionId);
+        userRegistry.register(username, sessionId);
     }
 
     public static class ScreenShareMessage {
         private String action;
         private String userId;
         private String roomId;
-        private String data; 
+        // Base64 screen data; sent as raw bytes to CBOR clients
+        @JsonSerialize(using = BinaryPayloadCodec.Base64Binary.class)
+        private String data;
+        // Why the server refused the frame, on "rejected" messages
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String reason;
 
         // Getters and setters
         public String getAction() { return action; }
@@ -83,5 +134,8 @@ public class ScreenShareController {
         
         public String getData() { return data; }
         public void setData(String data) { this.data = data; }
+
+        public String getReason() { return reason; }
+        public void setReason(String reason) { this.reason = reason; }
     }
 }
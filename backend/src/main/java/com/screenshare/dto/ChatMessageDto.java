@@ -1,11 +1,15 @@
 package com.screenshare.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.screenshare.entity.ChatMessage;
 import com.screenshare.entity.MessageType;
 
 import java.time.LocalDateTime;
 
 public class ChatMessageDto {
+    // Snowflake ids exceed JavaScript's safe integer range, so they go over the wire as strings
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
     private Long senderId;
     private String senderUsername;
@@ -24,6 +24,7 @@ public class ChatRoomDto {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private LocalDateTime lastActivityAt;
+    private Integer unreadCount;
 
     // Constructors
     public ChatRoomDto() {}
@@ -179,4 +180,12 @@ public class ChatRoomDto {
     public void setLastActivityAt(LocalDateTime lastActivityAt) {
         this.lastActivityAt = lastActivityAt;
     }
+
+    public Integer getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(Integer unreadCount) {
+        this.unreadCount = unreadCount;
+    }
 }
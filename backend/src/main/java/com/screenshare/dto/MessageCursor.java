@@ -0,0 +1,60 @@
+package com.screenshare.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor for message history pages
+ * Encodes a direction and the message id to seek from.
+ */
+public class MessageCursor {
+
+    public enum Direction {
+        BEFORE, AFTER
+    }
+
+    private final Direction direction;
+    private final long messageId;
+
+    public MessageCursor(Direction direction, long messageId) {
+        this.direction = direction;
+        this.messageId = messageId;
+    }
+
+    public static MessageCursor before(long messageId) {
+        return new MessageCursor(Direction.BEFORE, messageId);
+    }
+
+    public static MessageCursor after(long messageId) {
+        return new MessageCursor(Direction.AFTER, messageId);
+    }
+
+    public String encode() {
+        String raw = (direction == Direction.BEFORE ? "b:" : "a:") + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            long messageId = Long.parseLong(raw.substring(2));
+            if (raw.startsWith("b:")) {
+                return before(messageId);
+            }
+            if (raw.startsWith("a:")) {
+                return after(messageId);
+            }
+        } catch (RuntimeException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+}
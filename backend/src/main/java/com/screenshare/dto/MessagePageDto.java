@@ -0,0 +1,43 @@
+package com.screenshare.dto;
+
+import java.util.List;
+
+public class MessagePageDto {
+    private List<ChatMessageDto> messages;
+    private String nextCursor;
+    private Boolean hasMore;
+
+    // Default constructor
+    public MessagePageDto() {}
+
+    public MessagePageDto(List<ChatMessageDto> messages, String nextCursor, Boolean hasMore) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and setters
+    public List<ChatMessageDto> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<ChatMessageDto> messages) {
+        this.messages = messages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
@@ -0,0 +1,22 @@
+package com.screenshare.dto;
+
+import java.util.Map;
+
+public class SyncRequest {
+    // Room id -> id of the last message the client has seen (null or 0 if none)
+    private Map<Long, Long> rooms;
+
+    public SyncRequest() {}
+
+    public SyncRequest(Map<Long, Long> rooms) {
+        this.rooms = rooms;
+    }
+
+    public Map<Long, Long> getRooms() {
+        return rooms;
+    }
+
+    public void setRooms(Map<Long, Long> rooms) {
+        this.rooms = rooms;
+    }
+}
@@ -0,0 +1,59 @@
+package com.screenshare.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SyncResponse {
+    private Map<Long, RoomDelta> rooms = new LinkedHashMap<>();
+    private List<Long> deniedRoomIds = new ArrayList<>();
+
+    public SyncResponse() {}
+
+    public Map<Long, RoomDelta> getRooms() {
+        return rooms;
+    }
+
+    public void setRooms(Map<Long, RoomDelta> rooms) {
+        this.rooms = rooms;
+    }
+
+    public List<Long> getDeniedRoomIds() {
+        return deniedRoomIds;
+    }
+
+    public void setDeniedRoomIds(List<Long> deniedRoomIds) {
+        this.deniedRoomIds = deniedRoomIds;
+    }
+
+    // Messages newer than the client's last seen id for one room
+    public static class RoomDelta {
+        private List<ChatMessageDto> messages;
+        // More new messages than the per-room cap; the client should reload the latest page instead
+        private boolean gapTooLarge;
+
+        public RoomDelta() {}
+
+        public RoomDelta(List<ChatMessageDto> messages, boolean gapTooLarge) {
+            this.messages = messages;
+            this.gapTooLarge = gapTooLarge;
+        }
+
+        public List<ChatMessageDto> getMessages() {
+            return messages;
+        }
+
+        public void setMessages(List<ChatMessageDto> messages) {
+            this.messages = messages;
+        }
+
+        public boolean isGapTooLarge() {
+            return gapTooLarge;
+        }
+
+        public void setGapTooLarge(boolean gapTooLarge) {
+            this.gapTooLarge = gapTooLarge;
+        }
+    }
+}
@@ -8,19 +8,19 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
-import java.util.HashSet;
 import java.util.Objects;
-import java.util.Set;
 
 @Entity
 @Table(name = "chat_messages", indexes = {
     @Index(name = "idx_chat_room_created", columnList = "chat_room_id,createdAt"),
+    @Index(name = "idx_chat_room_id", columnList = "chat_room_id,id"),
     @Index(name = "idx_sender_created", columnList = "sender_id,createdAt")
 })
 public class ChatMessage {
 
+    // Time-ordered ids assigned in memory, so message inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @NotNull(message = "Sender is required")
@@ -76,15 +76,6 @@ public class ChatMessage {
     @Column
     private LocalDateTime deletedAt;
 
-    // Read receipts - users who have read this message
-    @ManyToMany(fetch = FetchType.LAZY)
-    @JoinTable(
-        name = "message_read_receipts",
-        joinColumns = @JoinColumn(name = "message_id"),
-        inverseJoinColumns = @JoinColumn(name = "user_id")
-    )
-    private Set<User> readByUsers = new HashSet<>();
-
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -109,14 +100,6 @@ public class ChatMessage {
     }
 
     // Helper methods
-    public void markAsRead(User user) {
-        this.readByUsers.add(user);
-    }
-
-    public boolean isReadBy(User user) {
-        return this.readByUsers.contains(user);
-    }
-
     public void editMessage(String newContent) {
         this.content = newContent;
         this.isEdited = true;
@@ -253,14 +236,6 @@ public class ChatMessage {
         this.deletedAt = deletedAt;
     }
 
-    public Set<User> getReadByUsers() {
-        return readByUsers;
-    }
-
-    public void setReadByUsers(Set<User> readByUsers) {
-        this.readByUsers = readByUsers;
-    }
-
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,99 @@
+package com.screenshare.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A domain event waiting to be published, written in the same transaction as the change it describes
+ * Rows are inserted and claimed with plain JDBC by OutboxService; the mapping defines the table.
+ * claimedBy/claimedUntil form a lease held by one relay while it publishes the row. After a
+ * failed attempt claimedUntil is reused as the earliest time the row may be claimed again.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+    @Index(name = "idx_outbox_pending", columnList = "publishedAt,claimedUntil,id"),
+    @Index(name = "idx_outbox_claimed_by", columnList = "claimedBy")
+})
+public class OutboxEvent {
+
+    // Snowflake ids, so id order is creation order
+    @Id
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String eventType;
+
+    private Long aggregateId;
+
+    @Column(nullable = false, length = 4000)
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(length = 36)
+    private String claimedBy;
+
+    private LocalDateTime claimedUntil;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(length = 500)
+    private String lastError;
+
+    private LocalDateTime publishedAt;
+
+    protected OutboxEvent() {
+    }
+
+    public OutboxEvent(Long id, String eventType, Long aggregateId, String payload, LocalDateTime createdAt, int attempts) {
+        this.id = id;
+        this.eventType = eventType;
+        this.aggregateId = aggregateId;
+        this.payload = payload;
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Long getAggregateId() {
+        return aggregateId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public LocalDateTime getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+}
@@ -0,0 +1,101 @@
+package com.screenshare.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * How far one user has read in one room, as the id of the last message they read
+ * Message ids are time-ordered, so every message up to and including lastReadMessageId counts
+ * as read. Rows are written with plain JDBC by ReadStateService and only ever move forward;
+ * the mapping defines the table.
+ */
+@Entity
+@Table(name = "room_read_state", indexes = {
+    @Index(name = "idx_read_state_room", columnList = "chatRoomId")
+})
+@IdClass(RoomReadState.Key.class)
+public class RoomReadState {
+
+    @Id
+    private Long userId;
+
+    @Id
+    private Long chatRoomId;
+
+    @Column(nullable = false)
+    private Long lastReadMessageId;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    protected RoomReadState() {
+    }
+
+    public RoomReadState(Long userId, Long chatRoomId, Long lastReadMessageId, LocalDateTime updatedAt) {
+        this.userId = userId;
+        this.chatRoomId = chatRoomId;
+        this.lastReadMessageId = lastReadMessageId;
+        this.updatedAt = updatedAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getChatRoomId() {
+        return chatRoomId;
+    }
+
+    public Long getLastReadMessageId() {
+        return lastReadMessageId;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Primary key: one row per user and room
+     */
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long chatRoomId;
+
+        public Key() {
+        }
+
+        public Key(Long userId, Long chatRoomId) {
+            this.userId = userId;
+            this.chatRoomId = chatRoomId;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public Long getChatRoomId() {
+            return chatRoomId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(userId, key.userId) && Objects.equals(chatRoomId, key.chatRoomId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, chatRoomId);
+        }
+
+        @Override
+        public String toString() {
+            return "user " + userId + " in room " + chatRoomId;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.screenshare.entity;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered 64-bit id generator
+ * Layout, from the most significant bit: 1 unused sign bit, 41 bits of milliseconds since
+ * 2024-01-01T00:00:00Z (about 69 years), 12 bits of per-millisecond sequence and 10 bits of
+ * node id. Ids from one node are strictly increasing; ids from different nodes sort by time.
+ *
+ * Allocation is a single compare-and-set, with no database round-trip. If the sequence runs
+ * out within a millisecond, or the clock steps backwards, the generator carries on from its
+ * last id rather than waiting, so it never blocks and never repeats an id.
+ */
+public final class SnowflakeIdGenerator {
+
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_INCREMENT = 1L << NODE_BITS;
+
+    private final long nodeId;
+    private final AtomicLong lastId = new AtomicLong();
+
+    public SnowflakeIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    public long nextId() {
+        long floor = ((System.currentTimeMillis() - EPOCH_MILLIS) << TIMESTAMP_SHIFT) | nodeId;
+        while (true) {
+            long last = lastId.get();
+            // Same or earlier millisecond: bump the sequence, which carries into the timestamp on overflow
+            long next = Math.max(floor, last + SEQUENCE_INCREMENT);
+            if (lastId.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    public int getNodeId() {
+        return (int) nodeId;
+    }
+
+    // Milliseconds since the Unix epoch at which an id was generated
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH_MILLIS;
+    }
+
+    public static int nodeIdOf(long id) {
+        return (int) (id & MAX_NODE_ID);
+    }
+
+    // Smallest id that could have been generated at the given time, for time-based range queries
+    public static long minIdAt(long epochMillis) {
+        return (epochMillis - EPOCH_MILLIS) << TIMESTAMP_SHIFT;
+    }
+}
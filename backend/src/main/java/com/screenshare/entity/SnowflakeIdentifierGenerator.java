@@ -0,0 +1,35 @@
+package com.screenshare.entity;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+
+/**
+ * Hibernate glue for {@link SnowflakeId}
+ * Uses the SnowflakeIdGenerator handed to this persistence unit under GENERATOR_SETTING, so
+ * several application contexts in one JVM each allocate with their own node id.
+ */
+public class SnowflakeIdentifierGenerator implements IdentifierGenerator {
+
+    public static final String GENERATOR_SETTING = "com.screenshare.snowflake-id-generator";
+
+    private final SnowflakeIdGenerator generator;
+
+    public SnowflakeIdentifierGenerator(SnowflakeId config, Member member, CustomIdGeneratorCreationContext context) {
+        Object configured = context.getServiceRegistry().getService(ConfigurationService.class)
+                .getSettings().get(GENERATOR_SETTING);
+        if (!(configured instanceof SnowflakeIdGenerator snowflake)) {
+            throw new IllegalStateException("No SnowflakeIdGenerator configured under " + GENERATOR_SETTING
+                    + " for " + member.getDeclaringClass().getSimpleName() + "." + member.getName());
+        }
+        this.generator = snowflake;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return generator.nextId();
+    }
+}
@@ -3,18 +3,24 @@ package com.screenshare.repository;
 import com.screenshare.entity.ChatMessage;
 import com.screenshare.entity.ChatRoom;
 import com.screenshare.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
+
+    int EXPORT_FETCH_SIZE = 500;
     
     // Find messages in a chat room 
     @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoom.id = :roomId AND cm.isDeleted = false ORDER BY cm.createdAt ASC")
@@ -31,9 +37,25 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoom.id = :roomId AND cm.createdAt > :timestamp AND cm.isDeleted = false ORDER BY cm.createdAt ASC")
     List<ChatMessage> findByChatRoomIdAndCreatedAtAfterAndIsDeletedFalse(@Param("roomId") Long roomId, @Param("timestamp") LocalDateTime timestamp);
     
-    // Count unread messages for a user in a room 
-    @Query("SELECT COUNT(cm) FROM ChatMessage cm WHERE cm.chatRoom.id = :roomId AND cm.sender.id != :userId AND cm.isDeleted = false")
-    long countUnreadMessagesInRoom(@Param("roomId") Long roomId, @Param("userId") Long userId);
+    // Find the latest messages in a chat room with their senders, newest first
+    @Query("SELECT cm FROM ChatMessage cm JOIN FETCH cm.sender WHERE cm.chatRoom.id = :roomId AND cm.isDeleted = false ORDER BY cm.id DESC")
+    List<ChatMessage> findLatestWithSender(@Param("roomId") Long roomId, Pageable pageable);
+    
+    // Keyset page of messages older than a message id, with senders, newest first
+    @Query("SELECT cm FROM ChatMessage cm JOIN FETCH cm.sender WHERE cm.chatRoom.id = :roomId AND cm.isDeleted = false AND cm.id < :beforeId ORDER BY cm.id DESC")
+    List<ChatMessage> findPageBefore(@Param("roomId") Long roomId, @Param("beforeId") Long beforeId, Pageable pageable);
+    
+    // Keyset page of messages newer than a message id, with senders, oldest first
+    @Query("SELECT cm FROM ChatMessage cm JOIN FETCH cm.sender WHERE cm.chatRoom.id = :roomId AND cm.isDeleted = false AND cm.id > :afterId ORDER BY cm.id ASC")
+    List<ChatMessage> findPageAfter(@Param("roomId") Long roomId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    // Stream all messages of a room with their senders in id order, for export. Must be consumed inside a transaction.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT cm FROM ChatMessage cm JOIN FETCH cm.sender WHERE cm.chatRoom.id = :roomId AND cm.isDeleted = false ORDER BY cm.id ASC")
+    Stream<ChatMessage> streamByChatRoomId(@Param("roomId") Long roomId);
     
     // Find latest message in a chat room
     @Query("SELECT cm FROM ChatMessage cm WHERE cm.chatRoom.id = :roomId AND cm.isDeleted = false ORDER BY cm.createdAt DESC")
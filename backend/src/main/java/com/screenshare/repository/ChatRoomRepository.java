@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -41,4 +42,17 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
     // Check if user is member of room
     @Query("SELECT CASE WHEN COUNT(m) > 0 THEN true ELSE false END FROM ChatRoom cr JOIN cr.members m WHERE cr.id = :roomId AND m.id = :userId")
     boolean isUserMemberOfRoom(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Of the given rooms, find the ids of those that are active and either public or have the user as a member
+    @Query("SELECT DISTINCT cr.id FROM ChatRoom cr LEFT JOIN cr.members m WHERE cr.id IN :roomIds AND cr.isActive = true " +
+           "AND (cr.roomType = com.screenshare.entity.RoomType.PUBLIC OR m.id = :userId)")
+    List<Long> findAccessibleRoomIds(@Param("roomIds") Collection<Long> roomIds, @Param("userId") Long userId);
+
+    // Check if user is admin of room
+    @Query("SELECT CASE WHEN COUNT(a) > 0 THEN true ELSE false END FROM ChatRoom cr JOIN cr.admins a WHERE cr.id = :roomId AND a.id = :userId")
+    boolean isUserAdminOfRoom(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Get the ids of all members of a room
+    @Query("SELECT m.id FROM ChatRoom cr JOIN cr.members m WHERE cr.id = :roomId")
+    List<Long> findMemberIds(@Param("roomId") Long roomId);
 }
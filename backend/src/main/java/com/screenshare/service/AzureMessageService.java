@@ -1,123 +1,215 @@
 package com.screenshare.service;
 
+import com.azure.core.amqp.exception.AmqpException;
 import com.azure.messaging.servicebus.ServiceBusMessage;
-import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.azure.messaging.servicebus.ServiceBusSenderAsyncClient;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Service for sending messages using Azure Service Bus
  * This replaces AWS SQS and SNS functionality
  * Only created if Azure Service Bus connection string is configured
+ * Messages are buffered and sent in batches by the asynchronous clients, so callers get a
+ * future instead of waiting for a network round-trip.
  */
 @Service
 @Profile("production")
 @ConditionalOnExpression("!'${azure.servicebus.connection-string:}'.isEmpty()")
-public class AzureMessageService {
+public class AzureMessageService implements SmartLifecycle {
 
     private static final Logger logger = LoggerFactory.getLogger(AzureMessageService.class);
 
-    private final ServiceBusSenderClient queueSender;
-    private final ServiceBusSenderClient topicSender;
+    private final ServiceBusSenderAsyncClient queueSender;
+    private final ServiceBusSenderAsyncClient topicSender;
+
+    @Value("${azure.servicebus.sender.buffer-capacity:10000}")
+    private int bufferCapacity;
+
+    @Value("${azure.servicebus.sender.max-batch-messages:100}")
+    private int maxBatchMessages;
+
+    // How long the first message of a batch may wait for others to join it
+    @Value("${azure.servicebus.sender.linger-ms:20}")
+    private long lingerMs;
+
+    @Value("${azure.servicebus.sender.max-in-flight:4}")
+    private int maxInFlight;
+
+    @Value("${azure.servicebus.sender.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${azure.servicebus.sender.retry-base-ms:100}")
+    private long retryBaseMs;
+
+    @Value("${azure.servicebus.sender.retry-max-ms:5000}")
+    private long retryMaxMs;
+
+    @Value("${azure.servicebus.sender.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private ServiceBusBatcher queueBatcher;
+    private ServiceBusBatcher topicBatcher;
 
     @Autowired
     public AzureMessageService(
-            @Qualifier("serviceBusQueueSender") ServiceBusSenderClient queueSender,
-            @Qualifier("serviceBusTopicSender") ServiceBusSenderClient topicSender) {
+            @Qualifier("serviceBusQueueAsyncSender") ServiceBusSenderAsyncClient queueSender,
+            @Qualifier("serviceBusTopicAsyncSender") ServiceBusSenderAsyncClient topicSender) {
         this.queueSender = queueSender;
         this.topicSender = topicSender;
     }
 
+    @PostConstruct
+    public void createBatchers() {
+        ServiceBusBatcher.Settings settings = new ServiceBusBatcher.Settings(bufferCapacity, maxBatchMessages,
+                lingerMs, maxInFlight, maxAttempts, retryBaseMs, retryMaxMs, shutdownTimeoutMs);
+        queueBatcher = new ServiceBusBatcher("queue", new AsyncClientBatchSender(queueSender), settings);
+        topicBatcher = new ServiceBusBatcher("topic", new AsyncClientBatchSender(topicSender), settings);
+    }
+
     /**
      * Send a message to the Azure Service Bus Queue
      * This is similar to AWS SQS sendMessage
-     * 
+     *
      * @param messageBody The message content
+     * @return completes once the message is on the queue
      */
-    public void sendToQueue(String messageBody) {
-        try {
-            ServiceBusMessage message = new ServiceBusMessage(messageBody);
-            queueSender.sendMessage(message);
-            logger.info("Message sent to queue: {}", messageBody);
-        } catch (Exception e) {
-            logger.error("Error sending message to queue", e);
-            throw new RuntimeException("Failed to send message to queue", e);
-        }
+    public CompletableFuture<Void> sendToQueue(String messageBody) {
+        return queueBatcher.submit(new ServiceBusMessage(messageBody));
     }
 
     /**
      * Publish a message to the Azure Service Bus Topic
      * This is similar to AWS SNS publish
-     * 
+     *
      * @param messageBody The message content
+     * @return completes once the message is on the topic
      */
-    public void publishToTopic(String messageBody) {
-        try {
-            ServiceBusMessage message = new ServiceBusMessage(messageBody);
-            topicSender.sendMessage(message);
-            logger.info("Message published to topic: {}", messageBody);
-        } catch (Exception e) {
-            logger.error("Error publishing message to topic", e);
-            throw new RuntimeException("Failed to publish message to topic", e);
-        }
+    public CompletableFuture<Void> publishToTopic(String messageBody) {
+        return topicBatcher.submit(new ServiceBusMessage(messageBody));
     }
 
     /**
      * Send a message with custom properties
-     * 
+     *
      * @param messageBody The message content
      * @param subject The message subject/type
      * @param properties Additional custom properties
+     * @return completes once the message is on the queue
      */
-    public void sendToQueueWithProperties(String messageBody, String subject, 
-                                          java.util.Map<String, Object> properties) {
-        try {
-            ServiceBusMessage message = new ServiceBusMessage(messageBody);
-            message.setSubject(subject);
-            
-            if (properties != null) {
-                properties.forEach((key, value) -> 
-                    message.getApplicationProperties().put(key, value));
-            }
-            
-            queueSender.sendMessage(message);
-            logger.info("Message with properties sent to queue: {}", messageBody);
-        } catch (Exception e) {
-            logger.error("Error sending message with properties", e);
-            throw new RuntimeException("Failed to send message with properties", e);
-        }
+    public CompletableFuture<Void> sendToQueueWithProperties(String messageBody, String subject,
+                                                             Map<String, Object> properties) {
+        return queueBatcher.submit(message(messageBody, subject, properties));
     }
 
     /**
      * Publish a message to topic with custom properties
-     * 
+     *
      * @param messageBody The message content
      * @param subject The message subject/type
      * @param properties Additional custom properties
+     * @return completes once the message is on the topic
      */
-    public void publishToTopicWithProperties(String messageBody, String subject,
-                                             java.util.Map<String, Object> properties) {
-        try {
-            ServiceBusMessage message = new ServiceBusMessage(messageBody);
-            message.setSubject(subject);
-            
-            if (properties != null) {
-                properties.forEach((key, value) ->
-                    message.getApplicationProperties().put(key, value));
-            }
-            
-            topicSender.sendMessage(message);
-            logger.info("Message with properties published to topic: {}", messageBody);
-        } catch (Exception e) {
-            logger.error("Error publishing message with properties", e);
-            throw new RuntimeException("Failed to publish message with properties", e);
+    public CompletableFuture<Void> publishToTopicWithProperties(String messageBody, String subject,
+                                                                Map<String, Object> properties) {
+        return topicBatcher.submit(message(messageBody, subject, properties));
+    }
+
+    private static ServiceBusMessage message(String messageBody, String subject, Map<String, Object> properties) {
+        ServiceBusMessage message = new ServiceBusMessage(messageBody);
+        message.setSubject(subject);
+        if (properties != null) {
+            message.getApplicationProperties().putAll(properties);
         }
+        return message;
     }
-}
 
+    @Override
+    public void start() {
+        queueBatcher.start();
+        topicBatcher.start();
+        logger.info("Azure Service Bus batching senders started");
+    }
 
+    @Override
+    public void stop() {
+        queueBatcher.stop();
+        topicBatcher.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return queueBatcher.isRunning();
+    }
+
+    // Stop before other lifecycle beans so messages sent during their shutdown still go out
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 100;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queue", queueBatcher.getStats());
+        stats.put("topic", topicBatcher.getStats());
+        return stats;
+    }
+
+    /**
+     * Sends a batch with the async client, packing it into as few ServiceBusMessageBatch
+     * instances as the link's size limit allows. If a later part fails, retrying the whole
+     * batch sends the earlier parts again; receivers already treat delivery as at-least-once.
+     */
+    static class AsyncClientBatchSender implements ServiceBusBatcher.BatchSender {
+
+        private final ServiceBusSenderAsyncClient client;
+
+        AsyncClientBatchSender(ServiceBusSenderAsyncClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public CompletableFuture<Void> send(List<ServiceBusMessage> messages) {
+            return sendFrom(messages, 0);
+        }
+
+        private CompletableFuture<Void> sendFrom(List<ServiceBusMessage> messages, int from) {
+            return client.createMessageBatch().toFuture().thenCompose(batch -> {
+                int next = from;
+                while (next < messages.size() && batch.tryAddMessage(messages.get(next))) {
+                    next++;
+                }
+                if (next == from) {
+                    return CompletableFuture.failedFuture(new IllegalArgumentException(
+                            "Message of " + messages.get(from).getBody().toBytes().length + " bytes exceeds the batch size limit of "
+                                    + batch.getMaxSizeInBytes()));
+                }
+                int end = next;
+                CompletableFuture<Void> sent = client.sendMessages(batch).toFuture();
+                return end < messages.size() ? sent.thenCompose(ignored -> sendFrom(messages, end)) : sent;
+            });
+        }
+
+        // Service Bus says which of its errors are transient; an oversized message is never retried
+        @Override
+        public boolean isTransient(Throwable error) {
+            if (error instanceof AmqpException amqp) {
+                return amqp.isTransient();
+            }
+            return !(error instanceof IllegalArgumentException);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.OutboxEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes outbox events to the Azure Service Bus topic
+ * The event type becomes the message subject, so subscribers can filter on it.
+ */
+@Service
+@Profile("production")
+@ConditionalOnExpression("!'${azure.servicebus.connection-string:}'.isEmpty()")
+public class AzureOutboxPublisher implements OutboxPublisher {
+
+    @Autowired
+    private AzureMessageService azureMessageService;
+
+    @Override
+    public CompletableFuture<Void> publish(OutboxEvent event) {
+        Map<String, Object> properties = event.getAggregateId() != null
+                ? Map.of("eventId", event.getId(), "aggregateId", event.getAggregateId())
+                : Map.of("eventId", event.getId());
+        return azureMessageService.publishToTopicWithProperties(event.getPayload(), event.getEventType(), properties);
+    }
+}
@@ -0,0 +1,182 @@
+package com.screenshare.service;
+
+import com.azure.messaging.servicebus.ServiceBusClientBuilder;
+import com.azure.messaging.servicebus.ServiceBusErrorContext;
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusProcessorClient;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusSenderAsyncClient;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * ClusterBus over the Azure Service Bus topic
+ * Events are published through a ServiceBusBatcher on the asynchronous topic sender, so a
+ * broadcast never waits for Service Bus, and received through this node's own subscription
+ * (chat.cluster.azure.subscription), which has to exist on the topic. Room events carry the
+ * subject "room-event" and a short time-to-live; other messages published to the topic are
+ * skipped, so the subscription is best given a filter on that subject.
+ */
+@Service
+@Profile("production")
+@ConditionalOnProperty(name = "chat.cluster.bus", havingValue = "azure")
+public class AzureServiceBusClusterBus implements ClusterBus, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(AzureServiceBusClusterBus.class);
+
+    static final String SUBJECT = "room-event";
+
+    private final ServiceBusSenderAsyncClient topicSender;
+
+    @Value("${azure.servicebus.connection-string:}")
+    private String connectionString;
+
+    @Value("${azure.servicebus.topic-name:screenshare-topic}")
+    private String topicName;
+
+    @Value("${chat.cluster.azure.subscription:node-0}")
+    private String subscriptionName;
+
+    // Room events are only worth delivering while the receivers' clients are still waiting for them
+    @Value("${chat.cluster.azure.time-to-live-ms:30000}")
+    private long timeToLiveMs;
+
+    // Short, so other nodes see a broadcast about as soon as local subscribers do
+    @Value("${chat.cluster.azure.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${chat.cluster.azure.buffer-capacity:10000}")
+    private int bufferCapacity;
+
+    @Value("${azure.servicebus.sender.max-batch-messages:100}")
+    private int maxBatchMessages;
+
+    @Value("${azure.servicebus.sender.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder receiveErrors = new LongAdder();
+
+    private volatile Consumer<ClusterEvent> listener;
+    private ServiceBusBatcher sender;
+    private ServiceBusProcessorClient processor;
+
+    @Autowired
+    public AzureServiceBusClusterBus(@Qualifier("serviceBusTopicAsyncSender") ServiceBusSenderAsyncClient topicSender) {
+        this.topicSender = topicSender;
+    }
+
+    // One batch in flight keeps events in publish order; events older than their time-to-live are not worth retrying
+    @PostConstruct
+    public void createSender() {
+        ServiceBusBatcher.Settings settings = new ServiceBusBatcher.Settings(bufferCapacity, maxBatchMessages,
+                lingerMs, 1, 3, 100, 1000, shutdownTimeoutMs);
+        sender = new ServiceBusBatcher("cluster", new AzureMessageService.AsyncClientBatchSender(topicSender), settings);
+    }
+
+    @Override
+    public void publish(ClusterEvent event) {
+        ServiceBusMessage message = new ServiceBusMessage(event.payload());
+        message.setSubject(SUBJECT);
+        message.setContentType("application/json");
+        message.setTimeToLive(Duration.ofMillis(timeToLiveMs));
+        message.getApplicationProperties().put("originNode", event.originNode());
+        message.getApplicationProperties().put("originInstance", event.originInstance());
+        message.getApplicationProperties().put("sequence", event.sequence());
+        message.getApplicationProperties().put("destination", event.destination());
+        sender.submit(message).whenComplete((ignored, error) -> {
+            if (error == null) {
+                published.increment();
+            } else {
+                publishFailures.increment();
+                logger.debug("Failed to publish {} to the cluster: {}", event.destination(), error.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEvent> listener) {
+        this.listener = listener;
+    }
+
+    private void receive(ServiceBusReceivedMessage message) {
+        Map<String, Object> properties = message.getApplicationProperties();
+        if (!SUBJECT.equals(message.getSubject()) || listener == null) {
+            skipped.increment();
+            return;
+        }
+        received.increment();
+        listener.accept(new ClusterEvent(
+                ((Number) properties.get("originNode")).intValue(),
+                (String) properties.get("originInstance"),
+                ((Number) properties.get("sequence")).longValue(),
+                (String) properties.get("destination"),
+                message.getBody().toBytes()));
+    }
+
+    private void receiveError(ServiceBusErrorContext context) {
+        receiveErrors.increment();
+        logger.warn("Cluster bus receive error on {}/{}: {}", topicName, subscriptionName, context.getException().getMessage());
+    }
+
+    @Override
+    public void start() {
+        sender.start();
+        processor = new ServiceBusClientBuilder()
+                .connectionString(connectionString)
+                .processor()
+                .topicName(topicName)
+                .subscriptionName(subscriptionName)
+                .maxConcurrentCalls(1)
+                .processMessage(context -> receive(context.getMessage()))
+                .processError(this::receiveError)
+                .buildProcessorClient();
+        processor.start();
+        logger.info("Cluster bus receiving from {}/{}", topicName, subscriptionName);
+    }
+
+    @Override
+    public void stop() {
+        if (processor != null) {
+            processor.close();
+            processor = null;
+        }
+        sender.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return sender.isRunning();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bus", "azure");
+        stats.put("subscription", topicName + "/" + subscriptionName);
+        stats.put("published", published.sum());
+        stats.put("publishFailures", publishFailures.sum());
+        stats.put("received", received.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("receiveErrors", receiveErrors.sum());
+        stats.put("sender", sender.getStats());
+        return stats;
+    }
+}
@@ -1,18 +1,33 @@
 package com.screenshare.service;
 
+import com.screenshare.dto.ChatMessageDto;
+import com.screenshare.dto.ChatRoomDto;
+import com.screenshare.dto.MessageCursor;
+import com.screenshare.dto.MessagePageDto;
+import com.screenshare.dto.SyncResponse;
 import com.screenshare.entity.*;
 import com.screenshare.repository.ChatInviteRepository;
 import com.screenshare.repository.ChatRoomRepository;
 import com.screenshare.repository.ChatMessageRepository;
 import com.screenshare.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -30,6 +45,30 @@ public class ChatService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private RoomActivityTracker roomActivityTracker;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private ClusterInvalidationService clusterInvalidationService;
+
     // Create a direct message chat between two users
     public ChatRoom createDirectMessageChat(Long userId1, Long userId2, String description) {
         // Check if direct message already exists
@@ -63,6 +102,21 @@ public class ChatService {
         return chatRoomRepository.findVisibleRoomsForUser(userId);
     }
 
+    // Get all chat rooms for a user as DTOs, most recently active first, including activity not yet flushed
+    // and the user's unread count in each
+    public List<ChatRoomDto> getUserChatRoomDtos(Long userId) {
+        List<ChatRoomDto> rooms = new ArrayList<>();
+        Map<Long, Integer> unreadCounts = unreadCounterService.getUnreadCounts(userId);
+        for (ChatRoom room : chatRoomRepository.findVisibleRoomsForUser(userId)) {
+            ChatRoomDto dto = new ChatRoomDto(room);
+            dto.setLastActivityAt(roomActivityTracker.effectiveLastActivity(room.getId(), room.getLastActivityAt()));
+            dto.setUnreadCount(unreadCounts.getOrDefault(room.getId(), 0));
+            rooms.add(dto);
+        }
+        rooms.sort(Comparator.comparing(ChatRoomDto::getLastActivityAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        return rooms;
+    }
+
     // Create a group chat. The roomType is immutable after creation.
     public ChatRoom createGroupChat(Long creatorId, String name, String description, boolean isPrivate) {
         User creator = userRepository.findById(creatorId)
@@ -80,7 +134,9 @@ public class ChatService {
         chatRoom.setIsActive(true);
         chatRoom.setRoomType(isPrivate ? RoomType.PRIVATE : RoomType.PUBLIC);
 
-        return chatRoomRepository.save(chatRoom);
+        ChatRoom savedRoom = chatRoomRepository.save(chatRoom);
+        roomAccessCache.roomSaved(savedRoom);
+        return savedRoom;
     }
 
     // Join a public room. Returns the updated room.
@@ -102,11 +158,32 @@ public class ChatService {
         if (!room.isMember(user)) {
             room.addMember(user);
             chatRoomRepository.save(room);
+            roomAccessCache.memberAdded(roomId, userId);
+            recordMemberJoined(roomId, userId, "public");
+            afterCommit(() -> membershipChanged(roomId, userId));
         }
 
         return room;
     }
 
+    // Leave a room. Removes the user from members and admins.
+    public void leaveRoom(Long roomId, Long userId) {
+        ChatRoom room = chatRoomRepository.findById(roomId)
+                .orElseThrow(() -> new RuntimeException("Chat room not found: " + roomId));
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found: " + userId));
+
+        if (!room.isMember(user)) {
+            throw new RuntimeException("User is not a member of this room");
+        }
+
+        room.removeMember(user);
+        chatRoomRepository.save(room);
+        roomAccessCache.memberRemoved(roomId, userId);
+        afterCommit(() -> membershipChanged(roomId, userId));
+    }
+
     // Create a chat invite
     public ChatInvite createChatInvite(Long inviterId, Long invitedUserId, String description) {
         // Get users
@@ -127,7 +204,9 @@ public class ChatService {
     // Create invite 
     ChatInvite invite = new ChatInvite(chatRoom, invitedUser, inviter, null);
         invite.setExpiresAt(LocalDateTime.now().plusDays(7));
-        return chatInviteRepository.save(invite);
+        ChatInvite savedInvite = chatInviteRepository.save(invite);
+        recordInviteCreated(savedInvite);
+        return savedInvite;
     }
 
     // Create an invite for an existing chat room 
@@ -158,7 +237,9 @@ public class ChatService {
         ChatInvite invite = new ChatInvite(chatRoom, invitedUser, inviter, null);
         invite.setExpiresAt(LocalDateTime.now().plusDays(7));
 
-        return chatInviteRepository.save(invite);
+        ChatInvite savedInvite = chatInviteRepository.save(invite);
+        recordInviteCreated(savedInvite);
+        return savedInvite;
     }
 
     // Accept a chat invite
@@ -196,14 +277,23 @@ public class ChatService {
         if (!chatRoom.isMember(inviter)) {
             chatRoom.addMember(inviter);
             chatRoom.addAdmin(inviter);
+            recordMemberJoined(chatRoom.getId(), inviter.getId(), "invite");
         }
 
         // Add the invited user
         if (!chatRoom.isMember(invite.getInvitedUser())) {
             chatRoom.addMember(invite.getInvitedUser());
+            recordMemberJoined(chatRoom.getId(), userId, "invite");
         }
 
         chatRoomRepository.save(chatRoom);
+        roomAccessCache.roomSaved(chatRoom);
+        Long roomId = chatRoom.getId();
+        Long inviterId = inviter.getId();
+        afterCommit(() -> {
+            membershipChanged(roomId, inviterId);
+            membershipChanged(roomId, userId);
+        });
 
         return chatRoom;
     }
@@ -263,7 +353,17 @@ public class ChatService {
 
     // Check if user is member of room
     public boolean isUserMemberOfRoom(Long roomId, Long userId) {
-        return chatRoomRepository.isUserMemberOfRoom(roomId, userId);
+        return roomAccessCache.isMember(roomId, userId);
+    }
+
+    // Check if room is active and either public or the user is a member
+    public boolean canAccessRoom(Long roomId, Long userId) {
+        return roomAccessCache.canAccess(roomId, userId);
+    }
+
+    // Check if room is active and the user is a member, regardless of room type
+    public boolean isActiveMemberOfRoom(Long roomId, Long userId) {
+        return roomAccessCache.isActiveMember(roomId, userId);
     }
 
     // Generate unique room code
@@ -287,45 +387,259 @@ public class ChatService {
 
     // Save a chat message to the database
     public ChatMessage saveMessage(Long roomId, Long senderId, String content, MessageType messageType) {
-        // Get the chat room
-        ChatRoom chatRoom = chatRoomRepository.findById(roomId)
-                .orElseThrow(() -> new RuntimeException("Chat room not found: " + roomId));
-        
-        // Get the sender
-        User sender = userRepository.findById(senderId)
-                .orElseThrow(() -> new RuntimeException("User not found: " + senderId));
-        
         // Verify room is active and either it's public or sender is a member
-        if (!chatRoom.getIsActive() || !(chatRoom.getRoomType() == RoomType.PUBLIC || isUserMemberOfRoom(roomId, senderId))) {
-            throw new RuntimeException("User is not authorized to send messages in this room");
-        }
+        assertCanSendMessage(roomId, senderId);
+
+        // The room is only referenced for the foreign key; its activity goes through the tracker
+        ChatRoom chatRoom = chatRoomRepository.getReferenceById(roomId);
+
+        // The sender only needs to be referenced for the foreign key, unless the message
+        // is going into a primed history buffer and needs the sender's names
+        boolean cacheMessage = recentMessageCache.isPrimed(roomId);
+        User sender = cacheMessage
+                ? userRepository.findById(senderId).orElseThrow(() -> new RuntimeException("User not found: " + senderId))
+                : userRepository.getReferenceById(senderId);
         
         // Create and save the message
         ChatMessage message = new ChatMessage(sender, content, chatRoom);
         message.setMessageType(messageType != null ? messageType : MessageType.TEXT);
         
         ChatMessage savedMessage = chatMessageRepository.save(message);
+        outboxService.record(OutboxService.MESSAGE_SENT, roomId,
+                messageSentPayload(savedMessage.getId(), roomId, senderId, message.getMessageType()));
+
+        ChatMessageDto dto = cacheMessage ? new ChatMessageDto(savedMessage) : null;
+        LocalDateTime activityAt = savedMessage.getCreatedAt() != null ? savedMessage.getCreatedAt() : LocalDateTime.now();
+        Long messageId = savedMessage.getId();
+        afterCommit(() -> {
+            recentMessageCache.messageSaved(roomId, dto);
+            roomActivityTracker.touch(roomId, activityAt);
+            readStateService.messageAccepted(roomId, messageId);
+            unreadCounterService.messageSaved(roomId, senderId, messageId);
+            clusterInvalidationService.messageSaved(roomId, senderId, messageId);
+        });
         
-        // Update room's last activity
-        chatRoom.setLastActivityAt(LocalDateTime.now());
-        chatRoomRepository.save(chatRoom);
-        
         return savedMessage;
     }
 
+    // Edit a message. Only the sender can edit their own messages.
+    public ChatMessage editMessage(Long messageId, Long userId, String content) {
+        ChatMessage message = chatMessageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("Message not found: " + messageId));
+
+        if (message.getIsDeleted() || !message.getSender().getId().equals(userId)) {
+            throw new RuntimeException("User not authorized to edit this message");
+        }
+        if (content == null || content.isBlank() || content.length() > 5000) {
+            throw new RuntimeException("Message content must be between 1 and 5000 characters");
+        }
+
+        message.editMessage(content);
+        ChatMessage savedMessage = chatMessageRepository.save(message);
+
+        Long roomId = savedMessage.getChatRoom().getId();
+        ChatMessageDto dto = new ChatMessageDto(savedMessage);
+        afterCommit(() -> {
+            recentMessageCache.messageEdited(roomId, dto);
+            clusterInvalidationService.messageEdited(roomId);
+        });
+        return savedMessage;
+    }
+
+    // Delete a message. Only the sender can delete their own messages.
+    public void deleteMessage(Long messageId, Long userId) {
+        ChatMessage message = chatMessageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("Message not found: " + messageId));
+
+        if (!message.getSender().getId().equals(userId)) {
+            throw new RuntimeException("User not authorized to delete this message");
+        }
+
+        message.deleteMessage();
+        chatMessageRepository.save(message);
+
+        Long roomId = message.getChatRoom().getId();
+        afterCommit(() -> {
+            recentMessageCache.messageDeleted(roomId, messageId);
+            unreadCounterService.messageDeleted(roomId);
+            clusterInvalidationService.messageDeleted(roomId);
+        });
+    }
+
+    // Domain events for the outbox, written with the change they describe
+    static Map<String, Object> messageSentPayload(Long messageId, Long roomId, Long senderId, MessageType messageType) {
+        return Map.of("messageId", messageId, "roomId", roomId, "senderId", senderId, "messageType", messageType.name());
+    }
+
+    private void recordInviteCreated(ChatInvite invite) {
+        outboxService.record(OutboxService.INVITE_CREATED, invite.getChatRoom().getId(), Map.of(
+                "inviteId", invite.getId(),
+                "roomId", invite.getChatRoom().getId(),
+                "inviterId", invite.getInviter().getId(),
+                "invitedUserId", invite.getInvitedUser().getId()));
+    }
+
+    private void recordMemberJoined(Long roomId, Long userId, String via) {
+        outboxService.record(OutboxService.MEMBER_JOINED, roomId, Map.of("roomId", roomId, "userId", userId, "via", via));
+    }
+
+    // Joining a room brings its history into the user's unread counts; leaving drops it
+    private void membershipChanged(Long roomId, Long userId) {
+        unreadCounterService.membershipChanged(userId);
+        clusterInvalidationService.membershipChanged(roomId, userId);
+    }
+
+    // Run an in-memory update once the current transaction has committed
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Accept a chat message from the WebSocket path. In write-behind mode the message is
+    // queued for the background writer; if that is disabled or full it is saved synchronously.
+    // Returns the message id either way.
+    public Long acceptMessage(Long roomId, Long senderId, String content, MessageType messageType) {
+        if (messageWriteBehindService.isEnabled()) {
+            if (senderId == null) {
+                throw new RuntimeException("Sender is required");
+            }
+            if (content == null || content.isBlank() || content.length() > 5000) {
+                throw new RuntimeException("Message content must be between 1 and 5000 characters");
+            }
+
+            assertCanSendMessage(roomId, senderId);
+
+            Long messageId = messageWriteBehindService.offer(roomId, senderId, content, messageType);
+            if (messageId != null) {
+                // Readers may mark it read before the writer gets to it
+                readStateService.messageAccepted(roomId, messageId);
+                return messageId;
+            }
+        }
+        return saveMessage(roomId, senderId, content, messageType).getId();
+    }
+
+    private void assertCanSendMessage(Long roomId, Long senderId) {
+        if (senderId == null || !roomAccessCache.canAccess(roomId, senderId)) {
+            throw new RuntimeException("User is not authorized to send messages in this room");
+        }
+    }
+
     // Get messages for a chat room
     public List<ChatMessage> getRoomMessages(Long roomId, Long userId) {
         // Allow viewing messages if user is a member or the room is public
-        ChatRoom chatRoom = chatRoomRepository.findById(roomId)
-                .orElseThrow(() -> new RuntimeException("Chat room not found: " + roomId));
-
-        if (!chatRoom.getIsActive() || !(chatRoom.getRoomType() == RoomType.PUBLIC || isUserMemberOfRoom(roomId, userId))) {
+        if (!roomAccessCache.canAccess(roomId, userId)) {
             throw new RuntimeException("User is not authorized to view messages in this room");
         }
 
         return chatMessageRepository.findByChatRoomIdAndIsDeletedFalseOrderByCreatedAtAsc(roomId);
     }
 
+    // Get a page of message history using keyset pagination on message id. Without a cursor
+    // the latest page is returned. Pages are served from the recent-message buffer when it covers them.
+    @Transactional(readOnly = true)
+    public MessagePageDto getMessagePage(Long roomId, Long userId, MessageCursor cursor, int limit) {
+        if (!roomAccessCache.canAccess(roomId, userId)) {
+            throw new RuntimeException("User is not authorized to view messages in this room");
+        }
+
+        // Fetch one extra message to know whether the page has a successor
+        if (cursor == null || cursor.getDirection() == MessageCursor.Direction.BEFORE) {
+            long beforeId = cursor != null ? cursor.getMessageId() : Long.MAX_VALUE;
+            List<ChatMessageDto> page = recentMessageCache.before(roomId, beforeId, limit + 1)
+                    .orElseGet(() -> loadMessagesBefore(roomId, cursor, limit + 1));
+            boolean hasMore = page.size() > limit;
+            if (hasMore) {
+                page = page.subList(1, page.size());
+            }
+            return new MessagePageDto(page, hasMore ? MessageCursor.before(page.get(0).getId()).encode() : null, hasMore);
+        }
+
+        long afterId = cursor.getMessageId();
+        List<ChatMessageDto> page = recentMessageCache.after(roomId, afterId, limit + 1)
+                .orElseGet(() -> toDtos(chatMessageRepository.findPageAfter(roomId, afterId, PageRequest.ofSize(limit + 1))));
+        boolean hasMore = page.size() > limit;
+        if (hasMore) {
+            page = page.subList(0, limit);
+        }
+        return new MessagePageDto(page, hasMore ? MessageCursor.after(page.get(page.size() - 1).getId()).encode() : null, hasMore);
+    }
+
+    /**
+     * Delta sync for reconnecting clients. For each room, returns the messages newer than
+     * the client's last seen id, up to maxPerRoom; rooms with more than that are flagged
+     * with gapTooLarge instead. Rooms not in the access cache are authorized with one query.
+     * Rooms whose history buffer cannot answer cost one message query each, so a sync touches
+     * the database at most once per requested room (capped at 100 by the controller).
+     */
+    @Transactional(readOnly = true)
+    public SyncResponse syncRooms(Long userId, Map<Long, Long> lastSeenByRoom, int maxPerRoom) {
+        SyncResponse response = new SyncResponse();
+
+        Set<Long> allowed = new HashSet<>();
+        List<Long> uncached = new ArrayList<>();
+        for (Long roomId : lastSeenByRoom.keySet()) {
+            Optional<RoomAccessCache.RoomAccess> access = roomAccessCache.peek(roomId);
+            if (access.isEmpty()) {
+                uncached.add(roomId);
+            } else if (access.get().canAccess(userId)) {
+                allowed.add(roomId);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            allowed.addAll(chatRoomRepository.findAccessibleRoomIds(uncached, userId));
+        }
+
+        for (Map.Entry<Long, Long> entry : lastSeenByRoom.entrySet()) {
+            Long roomId = entry.getKey();
+            if (!allowed.contains(roomId)) {
+                response.getDeniedRoomIds().add(roomId);
+                continue;
+            }
+
+            long afterId = entry.getValue() != null ? entry.getValue() : 0L;
+            List<ChatMessageDto> messages = recentMessageCache.after(roomId, afterId, maxPerRoom + 1)
+                    .orElseGet(() -> toDtos(chatMessageRepository.findPageAfter(roomId, afterId, PageRequest.ofSize(maxPerRoom + 1))));
+            if (messages.size() > maxPerRoom) {
+                response.getRooms().put(roomId, new SyncResponse.RoomDelta(List.of(), true));
+            } else {
+                response.getRooms().put(roomId, new SyncResponse.RoomDelta(messages, false));
+            }
+        }
+        return response;
+    }
+
+    // Load messages older than the cursor in ascending order. The latest page also primes the buffer.
+    private List<ChatMessageDto> loadMessagesBefore(Long roomId, MessageCursor cursor, int count) {
+        if (cursor != null) {
+            List<ChatMessageDto> page = toDtos(chatMessageRepository.findPageBefore(roomId, cursor.getMessageId(), PageRequest.ofSize(count)));
+            Collections.reverse(page);
+            return page;
+        }
+
+        // Load at least a full window so the buffer can be primed from the same query
+        long stamp = recentMessageCache.writeStamp(roomId);
+        int fetchSize = Math.max(count, recentMessageCache.getWindowSize());
+        List<ChatMessageDto> latest = toDtos(chatMessageRepository.findLatestWithSender(roomId, PageRequest.ofSize(fetchSize)));
+        Collections.reverse(latest);
+        recentMessageCache.prime(roomId, latest, latest.size() < fetchSize, stamp);
+        return latest.size() > count ? latest.subList(latest.size() - count, latest.size()) : latest;
+    }
+
+    private List<ChatMessageDto> toDtos(List<ChatMessage> messages) {
+        return messages.stream()
+                .map(ChatMessageDto::new)
+                .collect(Collectors.toList());
+    }
+
     // Save a simple text message
     public ChatMessage saveTextMessage(Long roomId, Long senderId, String content) {
         return saveMessage(roomId, senderId, content, MessageType.TEXT);
@@ -0,0 +1,20 @@
+package com.screenshare.service;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Publish/subscribe transport for room broadcasts between backend nodes
+ * Every node publishes the room events it broadcasts locally and receives the events of
+ * all nodes, its own included, like a topic with one subscription per node. Delivery may be
+ * at-least-once; RoomBroadcaster drops its own events and duplicates.
+ */
+public interface ClusterBus {
+
+    void publish(ClusterEvent event);
+
+    // Register the handler for events from the bus; called once at startup
+    void subscribe(Consumer<ClusterEvent> listener);
+
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,11 @@
+package com.screenshare.service;
+
+/**
+ * A room broadcast as carried between nodes by a ClusterBus
+ * The payload is the JSON body exactly as it was sent to local subscribers on the origin
+ * node, so receiving nodes forward it without deserializing. originNode is the sender's
+ * chat.node-id and originInstance identifies its process; sequence increases per process,
+ * so a restarted node starting over at 1 is not mistaken for duplicates.
+ */
+public record ClusterEvent(int originNode, String originInstance, long sequence, String destination, byte[] payload) {
+}
@@ -0,0 +1,140 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Carries the writes that per-node caches depend on to the other nodes of a cluster
+ * RoomAccessCache, RecentMessageCache, ReadStateService and UnreadCounterService are kept
+ * current by the writes made on their own node. With a ClusterBus configured, each of those
+ * writes is also published as a cluster-only event once committed, and the other nodes apply
+ * it: a membership change evicts the room's access entry and the user's unread counts, a saved,
+ * edited or deleted message drops the room's history buffer and updates unread counts, and a
+ * read mark catches up the reader's watermark. Without a cluster bus nothing is published.
+ */
+@Service
+public class ClusterInvalidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterInvalidationService.class);
+
+    static final String DESTINATION = RoomBroadcaster.CLUSTER_ONLY_PREFIX + "invalidate";
+
+    enum Kind { MEMBERSHIP, MESSAGE_SAVED, MESSAGE_EDITED, MESSAGE_DELETED, READ }
+
+    /**
+     * One write as published to the other nodes; userId is the member, sender or reader
+     */
+    record Invalidation(Kind kind, Long roomId, Long userId, Long messageId) {
+    }
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder unreadable = new LongAdder();
+
+    @PostConstruct
+    public void subscribe() {
+        if (roomBroadcaster.isClustered()) {
+            roomBroadcaster.onClusterEvent(DESTINATION, this::receive);
+            readStateService.addListener(this::watermarkAdvanced);
+        }
+    }
+
+    public void membershipChanged(Long roomId, Long userId) {
+        publish(new Invalidation(Kind.MEMBERSHIP, roomId, userId, null));
+    }
+
+    public void messageSaved(Long roomId, Long senderId, long messageId) {
+        publish(new Invalidation(Kind.MESSAGE_SAVED, roomId, senderId, messageId));
+    }
+
+    public void messageEdited(Long roomId) {
+        publish(new Invalidation(Kind.MESSAGE_EDITED, roomId, null, null));
+    }
+
+    public void messageDeleted(Long roomId) {
+        publish(new Invalidation(Kind.MESSAGE_DELETED, roomId, null, null));
+    }
+
+    // Only told about marks made on this node; those from other nodes are not published again
+    private void watermarkAdvanced(Long roomId, Long userId, long lastReadMessageId) {
+        publish(new Invalidation(Kind.READ, roomId, userId, lastReadMessageId));
+    }
+
+    private void publish(Invalidation invalidation) {
+        if (roomBroadcaster.isClustered()) {
+            roomBroadcaster.publishToCluster(DESTINATION, invalidation);
+            published.increment();
+        }
+    }
+
+    // A write made on another node; the database already has it
+    void receive(byte[] payload) {
+        Invalidation invalidation;
+        try {
+            invalidation = objectMapper.readValue(payload, Invalidation.class);
+        } catch (IOException e) {
+            unreadable.increment();
+            logger.warn("Skipping unreadable cache invalidation: {}", e.getMessage());
+            return;
+        }
+        Long roomId = invalidation.roomId();
+        switch (invalidation.kind()) {
+            case MEMBERSHIP -> {
+                roomAccessCache.evict(roomId);
+                unreadCounterService.membershipChanged(invalidation.userId());
+            }
+            case MESSAGE_SAVED -> {
+                // The buffer cannot take the message without its DTO; it is primed again on the next read
+                recentMessageCache.roomWritten(roomId);
+                readStateService.messageAccepted(roomId, invalidation.messageId());
+                unreadCounterService.messageSaved(roomId, invalidation.userId(), invalidation.messageId());
+            }
+            case MESSAGE_EDITED -> recentMessageCache.roomWritten(roomId);
+            case MESSAGE_DELETED -> {
+                recentMessageCache.roomWritten(roomId);
+                unreadCounterService.messageDeleted(roomId);
+            }
+            case READ -> {
+                readStateService.advancedElsewhere(roomId, invalidation.userId(), invalidation.messageId());
+                unreadCounterService.watermarkAdvanced(roomId, invalidation.userId(), invalidation.messageId());
+            }
+        }
+        applied.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("clustered", roomBroadcaster.isClustered());
+        stats.put("published", published.sum());
+        stats.put("applied", applied.sum());
+        stats.put("unreadable", unreadable.sum());
+        return stats;
+    }
+}
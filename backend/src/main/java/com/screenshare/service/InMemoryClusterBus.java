@@ -0,0 +1,103 @@
+package com.screenshare.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * ClusterBus between the application contexts of one JVM
+ * All instances in the process share one static member list, so several Spring contexts
+ * started side by side (as in a multi-node test) behave like nodes on a real topic. Each
+ * member receives events on its own thread, in publish order, and never on the publisher's.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.cluster.bus", havingValue = "in-memory")
+public class InMemoryClusterBus implements ClusterBus, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryClusterBus.class);
+
+    private static final List<InMemoryClusterBus> members = new CopyOnWriteArrayList<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    private volatile Consumer<ClusterEvent> listener;
+    private ExecutorService receiver;
+    private volatile boolean running;
+
+    @Override
+    public void publish(ClusterEvent event) {
+        published.increment();
+        for (InMemoryClusterBus member : members) {
+            member.deliver(event);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEvent> listener) {
+        this.listener = listener;
+    }
+
+    private void deliver(ClusterEvent event) {
+        try {
+            receiver.execute(() -> {
+                received.increment();
+                try {
+                    listener.accept(event);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to handle cluster event for {}: {}", event.destination(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // This member stopped while the event was being published
+        }
+    }
+
+    @Override
+    public void start() {
+        receiver = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-bus-receiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        if (listener != null) {
+            members.add(this);
+        }
+    }
+
+    // Leave the cluster; events already handed to this member are still delivered
+    @Override
+    public void stop() {
+        running = false;
+        members.remove(this);
+        receiver.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bus", "in-memory");
+        stats.put("members", members.size());
+        stats.put("published", published.sum());
+        stats.put("received", received.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,85 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.screenshare.dto.ChatMessageDto;
+import com.screenshare.entity.ChatMessage;
+import com.screenshare.repository.ChatMessageRepository;
+import com.screenshare.repository.ChatRoomRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams a room's full message history as NDJSON
+ * Rows are read through a forward-only cursor with a fixed fetch size and the persistence
+ * context is cleared as the export proceeds, so memory use does not grow with room size.
+ */
+@Service
+public class MessageExportService {
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Only room admins can export
+    @Transactional(readOnly = true)
+    public boolean canExport(Long roomId, Long userId) {
+        return chatRoomRepository.isUserAdminOfRoom(roomId, userId);
+    }
+
+    /**
+     * Write every non-deleted message of a room to the stream, one JSON object per line
+     *
+     * @return the number of messages written
+     */
+    @Transactional(readOnly = true)
+    public long exportRoom(Long roomId, OutputStream out) throws IOException {
+        // Left on, every message would be flushed through to the servlet stream on its own
+        ObjectWriter writer = objectMapper.writerFor(ChatMessageDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long count = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Stream<ChatMessage> messages = chatMessageRepository.streamByChatRoomId(roomId)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+
+            Iterator<ChatMessage> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, new ChatMessageDto(iterator.next()));
+                count++;
+                // Detach what has been written so the persistence context stays small
+                if (count % ChatMessageRepository.EXPORT_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                    generator.flush();
+                }
+            }
+            if (count > 0) {
+                generator.writeRaw('\n');
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count;
+    }
+}
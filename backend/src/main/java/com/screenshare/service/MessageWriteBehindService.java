@@ -0,0 +1,357 @@
+package com.screenshare.service;
+
+import com.screenshare.dto.ChatMessageDto;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind persistence for chat messages
+ * Accepted messages are placed on a bounded in-memory queue and a single background
+ * writer drains them into multi-row JDBC batch inserts. The queue is flushed on shutdown.
+ */
+@Service
+public class MessageWriteBehindService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehindService.class);
+
+    private static final String INSERT_MESSAGE_SQL =
+            "INSERT INTO chat_messages (id, sender_id, chat_room_id, content, message_type, is_edited, is_deleted, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Value("${chat.persistence.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.persistence.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.persistence.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.persistence.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.persistence.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private RoomActivityTracker roomActivityTracker;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ClusterInvalidationService clusterInvalidationService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private BlockingQueue<PendingMessage> queue;
+    private TransactionTemplate transactionTemplate;
+    private Thread writerThread;
+    private volatile boolean running;
+    private final ReadWriteLock offerLock = new ReentrantReadWriteLock();
+
+    // Durability metrics
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+    private final AtomicLong maxFlushMillis = new AtomicLong();
+    private final AtomicLong oldestPendingAgeMillis = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a message for the background writer
+     *
+     * @return the id the message will be stored under, or null if write-behind is not running
+     *         or the queue is full; the caller is then expected to persist the message synchronously
+     */
+    public Long offer(Long roomId, Long senderId, String content, MessageType messageType) {
+        // Held until the message is queued, so stop() cannot let the writer exit in between
+        offerLock.readLock().lock();
+        try {
+            if (!running) {
+                return null;
+            }
+            PendingMessage message = new PendingMessage(idGenerator.nextId(), roomId, senderId, content,
+                    messageType != null ? messageType : MessageType.TEXT, LocalDateTime.now());
+            if (queue.offer(message)) {
+                accepted.increment();
+                return message.id;
+            }
+            rejected.increment();
+            return null;
+        } finally {
+            offerLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        writerThread = new Thread(this::runWriter, "chat-write-behind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Chat message write-behind started (capacity={}, batchSize={}, flushIntervalMs={})",
+                queueCapacity, batchSize, flushIntervalMs);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // Stop accepting new messages once in-flight offers are queued; the writer drains whatever is still queued
+        offerLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            offerLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.error("Write-behind shutdown timed out with {} messages still queued", queue.size());
+        } else {
+            logger.info("Chat message write-behind flushed and stopped");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop before other lifecycle beans so the data source is still available for the final flush
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 100;
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Wait at most one flush interval for the batch to fill up
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Keep draining; stop() is what ends the loop
+                Thread.interrupted();
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (Exception e) {
+                logger.error("Unexpected error in write-behind writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        long start = System.currentTimeMillis();
+        oldestPendingAgeMillis.set(Duration.between(batch.get(0).createdAt, LocalDateTime.now()).toMillis());
+        Map<Long, User> senders = sendersForPrimedRooms(batch);
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeBatch(batch));
+            persisted.add(batch.size());
+            batch.forEach(message -> written(message, senders));
+        } catch (Exception e) {
+            logger.warn("Batch insert of {} messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (PendingMessage message : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeBatch(List.of(message)));
+                    persisted.increment();
+                    written(message, senders);
+                } catch (Exception rowError) {
+                    failed.increment();
+                    logger.error("Dropping message for room {} from sender {}: {}",
+                            message.roomId, message.senderId, rowError.getMessage());
+                }
+            }
+        }
+        batches.increment();
+        long elapsed = System.currentTimeMillis() - start;
+        lastFlushMillis.set(elapsed);
+        maxFlushMillis.accumulateAndGet(elapsed, Math::max);
+    }
+
+    // In-memory updates for a committed message; primed history buffers get it appended
+    private void written(PendingMessage message, Map<Long, User> senders) {
+        User sender = senders.get(message.senderId);
+        recentMessageCache.messageSaved(message.roomId, sender != null ? message.toDto(sender) : null);
+        roomActivityTracker.touch(message.roomId, message.createdAt);
+        unreadCounterService.messageSaved(message.roomId, message.senderId, message.id);
+        clusterInvalidationService.messageSaved(message.roomId, message.senderId, message.id);
+    }
+
+    // Senders whose messages go into a primed history buffer and need their names; a room that
+    // is not listed here gets a null DTO, which evicts it if it was primed in the meantime
+    private Map<Long, User> sendersForPrimedRooms(List<PendingMessage> batch) {
+        Set<Long> senderIds = new HashSet<>();
+        for (PendingMessage message : batch) {
+            if (recentMessageCache.isPrimed(message.roomId)) {
+                senderIds.add(message.senderId);
+            }
+        }
+        if (senderIds.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            Map<Long, User> senders = new HashMap<>();
+            userRepository.findAllById(senderIds).forEach(user -> senders.put(user.getId(), user));
+            return senders;
+        } catch (Exception e) {
+            logger.warn("Could not load senders for buffered rooms, their buffers will be dropped: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, batch, batch.size(), (ps, message) -> {
+            ps.setLong(1, message.id);
+            ps.setLong(2, message.senderId);
+            ps.setLong(3, message.roomId);
+            ps.setString(4, message.content);
+            ps.setString(5, message.messageType.name());
+            ps.setBoolean(6, false);
+            ps.setBoolean(7, false);
+            ps.setObject(8, message.createdAt);
+            ps.setObject(9, message.createdAt);
+        });
+        if (outboxService.isEnabled()) {
+            List<OutboxService.Event> events = new ArrayList<>(batch.size());
+            for (PendingMessage message : batch) {
+                events.add(new OutboxService.Event(OutboxService.MESSAGE_SENT, message.roomId,
+                        ChatService.messageSentPayload(message.id, message.roomId, message.senderId, message.messageType)));
+            }
+            outboxService.record(events);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running);
+        stats.put("queueDepth", queue != null ? queue.size() : 0);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("persisted", persisted.sum());
+        stats.put("failed", failed.sum());
+        stats.put("batches", batches.sum());
+        stats.put("lastFlushMillis", lastFlushMillis.get());
+        stats.put("maxFlushMillis", maxFlushMillis.get());
+        stats.put("oldestPendingAgeMillis", oldestPendingAgeMillis.get());
+        return stats;
+    }
+
+    private static class PendingMessage {
+        private final long id;
+        private final Long roomId;
+        private final Long senderId;
+        private final String content;
+        private final MessageType messageType;
+        private final LocalDateTime createdAt;
+
+        PendingMessage(long id, Long roomId, Long senderId, String content, MessageType messageType, LocalDateTime createdAt) {
+            this.id = id;
+            this.roomId = roomId;
+            this.senderId = senderId;
+            this.content = content;
+            this.messageType = messageType;
+            this.createdAt = createdAt;
+        }
+
+        // The message as the save path would have cached it
+        ChatMessageDto toDto(User sender) {
+            ChatMessageDto dto = new ChatMessageDto();
+            dto.setId(id);
+            dto.setSenderId(senderId);
+            dto.setSenderUsername(sender.getUsername());
+            dto.setSenderDisplayName(sender.getDisplayName());
+            dto.setChatRoomId(roomId);
+            dto.setContent(content);
+            dto.setMessageType(messageType);
+            dto.setCreatedAt(createdAt);
+            dto.setIsEdited(false);
+            return dto;
+        }
+    }
+}
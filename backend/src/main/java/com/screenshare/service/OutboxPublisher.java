@@ -0,0 +1,14 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.OutboxEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where the outbox relay sends domain events
+ * The future completes once the bus has accepted the event; until then the row stays in the outbox.
+ */
+public interface OutboxPublisher {
+
+    CompletableFuture<Void> publish(OutboxEvent event);
+}
@@ -0,0 +1,333 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenshare.entity.OutboxEvent;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transactional outbox for domain events
+ * record() inserts event rows with the caller's transaction, so an event exists exactly when the
+ * change it describes was committed. A relay thread claims pending rows in batches, publishes
+ * them through the OutboxPublisher and then deletes them (or marks them published).
+ * Claiming is a single UPDATE that stamps a claim token and lease on rows nobody holds, the
+ * portable equivalent of SELECT ... FOR UPDATE SKIP LOCKED: relays on other nodes skip the
+ * claimed rows, and rows of a relay that died are claimed again once the lease runs out.
+ * Delivery is at least once and not ordered, so consumers should dedupe on eventId.
+ */
+@Service
+public class OutboxService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    public static final String MESSAGE_SENT = "message.sent";
+    public static final String INVITE_CREATED = "invite.created";
+    public static final String MEMBER_JOINED = "member.joined";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO outbox_events (id, event_type, aggregate_id, payload, created_at, attempts) VALUES (?, ?, ?, ?, ?, 0)";
+
+    // The inner select picks the oldest free rows; the outer condition is checked again on each
+    // locked row, so two relays racing for the same rows cannot both claim them
+    private static final String CLAIM_SQL =
+            "UPDATE outbox_events SET claimed_by = ?, claimed_until = ? " +
+            "WHERE published_at IS NULL AND (claimed_until IS NULL OR claimed_until < ?) AND id IN (" +
+            "SELECT id FROM outbox_events WHERE published_at IS NULL AND (claimed_until IS NULL OR claimed_until < ?) " +
+            "ORDER BY id OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY)";
+
+    private static final String SELECT_CLAIMED_SQL =
+            "SELECT id, event_type, aggregate_id, payload, created_at, attempts FROM outbox_events WHERE claimed_by = ? ORDER BY id";
+
+    private static final String DELETE_SQL = "DELETE FROM outbox_events WHERE id = ? AND claimed_by = ?";
+
+    private static final String MARK_PUBLISHED_SQL =
+            "UPDATE outbox_events SET published_at = ?, claimed_by = NULL, claimed_until = NULL WHERE id = ? AND claimed_by = ?";
+
+    private static final String RELEASE_SQL =
+            "UPDATE outbox_events SET claimed_by = NULL, claimed_until = ?, attempts = attempts + 1, last_error = ? " +
+            "WHERE id = ? AND claimed_by = ?";
+
+    @Value("${chat.outbox.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chat.outbox.poll-interval-ms:200}")
+    private long pollIntervalMs;
+
+    // How long a relay owns the rows it claimed; publishing a batch has to finish well within it
+    @Value("${chat.outbox.lease-ms:30000}")
+    private long leaseMs;
+
+    @Value("${chat.outbox.retry-base-ms:1000}")
+    private long retryBaseMs;
+
+    @Value("${chat.outbox.retry-max-ms:60000}")
+    private long retryMaxMs;
+
+    // delete: remove rows once published; mark: keep them with published_at set
+    @Value("${chat.outbox.on-publish:delete}")
+    private String onPublish;
+
+    @Value("${chat.outbox.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private OutboxPublisher publisher;
+
+    private Thread relayThread;
+    private volatile boolean running;
+    private volatile long startedAtMillis;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private final AtomicLong lastBatchMillis = new AtomicLong();
+
+    /**
+     * An event to record; the payload is serialised to JSON
+     */
+    public record Event(String type, Long aggregateId, Map<String, Object> payload) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Record one event in the current transaction
+    public void record(String type, Long aggregateId, Map<String, Object> payload) {
+        record(List.of(new Event(type, aggregateId, payload)));
+    }
+
+    // Record events in the current transaction with one batched insert
+    public void record(List<Event> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (ps, event) -> {
+            ps.setLong(1, idGenerator.nextId());
+            ps.setString(2, event.type());
+            ps.setObject(3, event.aggregateId());
+            ps.setString(4, toJson(event.payload()));
+            ps.setObject(5, now);
+        });
+        recorded.add(events.size());
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialise outbox event", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        if (publisher == null) {
+            logger.warn("Outbox is enabled but no OutboxPublisher is configured; events are kept until one is");
+            return;
+        }
+        running = true;
+        startedAtMillis = System.currentTimeMillis();
+        relayThread = new Thread(this::runRelay, "chat-outbox-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+        logger.info("Outbox relay started (batchSize={}, pollIntervalMs={}, onPublish={})", batchSize, pollIntervalMs, onPublish);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // The batch being published is finished; anything left is picked up after restart
+        running = false;
+        try {
+            relayThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Outbox relay stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop before the Service Bus sender, so the last batch can still be sent
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 50;
+    }
+
+    private void runRelay() {
+        while (running) {
+            int relayed = 0;
+            try {
+                relayed = relayBatch();
+            } catch (Exception e) {
+                logger.error("Outbox relay failed to process a batch", e);
+            }
+            // A full batch suggests a backlog, so go straight on to the next one
+            if (relayed < batchSize) {
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Claim, publish and settle one batch; returns the number of rows claimed
+    int relayBatch() {
+        String claimToken = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        int count = jdbcTemplate.update(CLAIM_SQL, claimToken, now.plus(Duration.ofMillis(leaseMs)), now, now, batchSize);
+        if (count == 0) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        claimed.add(count);
+        List<OutboxEvent> events = jdbcTemplate.query(SELECT_CLAIMED_SQL, (rs, rowNum) -> new OutboxEvent(
+                rs.getLong("id"),
+                rs.getString("event_type"),
+                (Long) rs.getObject("aggregate_id", Long.class),
+                rs.getString("payload"),
+                rs.getObject("created_at", LocalDateTime.class),
+                rs.getInt("attempts")), claimToken);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            CompletableFuture<Void> future;
+            try {
+                future = publisher.publish(event);
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            futures.add(future);
+        }
+        // Wait for the bus, but not past half the lease, after which another relay may take the rows
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(leaseMs / 2, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // Settled per event below
+        }
+
+        List<Object[]> done = new ArrayList<>();
+        List<Object[]> retry = new ArrayList<>();
+        LocalDateTime settledAt = LocalDateTime.now();
+        for (int i = 0; i < events.size(); i++) {
+            OutboxEvent event = events.get(i);
+            CompletableFuture<Void> future = futures.get(i);
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                done.add("mark".equals(onPublish)
+                        ? new Object[]{settledAt, event.getId(), claimToken}
+                        : new Object[]{event.getId(), claimToken});
+                long lag = Duration.between(event.getCreatedAt(), settledAt).toMillis();
+                lastLagMillis.set(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+            } else {
+                String error = future.isDone() ? failure(future) : "timed out";
+                retry.add(new Object[]{settledAt.plus(Duration.ofMillis(backoffMillis(event.getAttempts() + 1))),
+                        error.length() > 500 ? error.substring(0, 500) : error, event.getId(), claimToken});
+            }
+        }
+        if (!done.isEmpty()) {
+            jdbcTemplate.batchUpdate("mark".equals(onPublish) ? MARK_PUBLISHED_SQL : DELETE_SQL, done);
+            published.add(done.size());
+        }
+        if (!retry.isEmpty()) {
+            jdbcTemplate.batchUpdate(RELEASE_SQL, retry);
+            publishFailures.add(retry.size());
+            logger.warn("Outbox relay could not publish {} of {} events; they will be retried", retry.size(), events.size());
+        }
+        batches.increment();
+        lastBatchMillis.set(System.currentTimeMillis() - start);
+        return count;
+    }
+
+    private static String failure(CompletableFuture<Void> future) {
+        try {
+            future.join();
+            return "unknown";
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        }
+    }
+
+    // Exponential backoff with jitter, so a bus outage does not make every row retry at once
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(retryMaxMs, retryBaseMs << Math.min(attempt - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running);
+        stats.put("publisher", publisher != null ? publisher.getClass().getSimpleName() : null);
+        stats.put("recorded", recorded.sum());
+        stats.put("claimed", claimed.sum());
+        stats.put("published", published.sum());
+        stats.put("publishFailures", publishFailures.sum());
+        stats.put("batches", batches.sum());
+        long uptimeMillis = running ? System.currentTimeMillis() - startedAtMillis : 0;
+        stats.put("publishedPerSecond", uptimeMillis > 0 ? published.sum() * 1000.0 / uptimeMillis : 0.0);
+        stats.put("lastLagMillis", lastLagMillis.get());
+        stats.put("maxLagMillis", maxLagMillis.get());
+        stats.put("lastBatchMillis", lastBatchMillis.get());
+        if (enabled) {
+            Map<String, Object> pending = jdbcTemplate.queryForMap(
+                    "SELECT COUNT(*) AS pending, MIN(created_at) AS oldest FROM outbox_events WHERE published_at IS NULL");
+            Object oldest = pending.get("oldest");
+            stats.put("pending", ((Number) pending.get("pending")).longValue());
+            stats.put("oldestPendingAgeMillis", oldest instanceof Timestamp timestamp
+                    ? Duration.between(timestamp.toLocalDateTime(), LocalDateTime.now()).toMillis() : 0L);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,636 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenshare.config.MultiSessionUserRegistry;
+import com.screenshare.entity.UserStatus;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * In-memory presence of users connected to this node
+ * WebSocket sessions opening and closing move a user between ONLINE and OFFLINE, and any frame
+ * from a session counts as a heartbeat that advances lastSeenAt. A user whose last session
+ * closes stays ONLINE for offline-grace-ms, so a reconnecting client does not flap. Every tick
+ * the settled changes are pushed, one message per recipient, to /user/queue/presence of the
+ * connected users who share a room with the changed user. status and last_seen_at are written
+ * in one batched UPDATE per flush interval; lastSeenAt alone only once it has moved by
+ * last-seen-granularity-ms.
+ * With a ClusterBus configured, each node publishes which users gained or lost their last
+ * session on it every tick, and announces all the users it holds every cluster-announce-ms.
+ * A user counts as ONLINE while any node holds a session for them, so every node settles and
+ * pushes the same changes to its own connected peers. Only the nodes the user was connected
+ * to write the change, and OFFLINE only once no node holds a session. A node that shuts down
+ * leaves its users to the others, which write them OFFLINE if they have not reconnected
+ * within the grace period; users last announced by a node that went silent are treated the same.
+ */
+@Service
+public class PresenceService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    public static final String PRESENCE_DESTINATION = "/queue/presence";
+
+    private static final String UPDATE_PRESENCE_SQL = "UPDATE users SET status = ?, last_seen_at = ? WHERE username = ?";
+
+    // Everyone who shares a room with one of the given users
+    private static final String ROOM_PEERS_SQL =
+            "SELECT DISTINCT subject.username AS subject, peer.username AS peer FROM users subject " +
+            "JOIN chat_room_members m1 ON m1.user_id = subject.id " +
+            "JOIN chat_room_members m2 ON m2.chat_room_id = m1.chat_room_id AND m2.user_id <> subject.id " +
+            "JOIN users peer ON peer.id = m2.user_id " +
+            "WHERE subject.username IN (%s)";
+
+    // Users per peer lookup, well under the 2100 bind parameters SQL Server allows in one statement
+    static final int PEER_LOOKUP_CHUNK = 500;
+
+    static final String DESTINATION = RoomBroadcaster.CLUSTER_ONLY_PREFIX + "presence";
+
+    // Usernames per cluster event, well under the cluster payload limit
+    static final int ANNOUNCE_CHUNK = 500;
+
+    // A node not heard from for this many announce intervals no longer holds anyone
+    private static final int MISSED_ANNOUNCES = 3;
+
+    /**
+     * Users that gained (online) or lost (offline) their last session on a node. A leaving node
+     * lists all of its users as offline for the other nodes to settle and write
+     */
+    record NodePresence(int node, List<String> online, List<String> offline, boolean leaving) {
+    }
+
+    @Value("${chat.presence.offline-grace-ms:5000}")
+    private long offlineGraceMs;
+
+    @Value("${chat.presence.last-seen-granularity-ms:60000}")
+    private long lastSeenGranularityMs;
+
+    @Value("${chat.presence.cluster-announce-ms:30000}")
+    private long clusterAnnounceMs;
+
+    @Value("${chat.node-id:0}")
+    private int nodeId;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<String, Presence> users = new ConcurrentHashMap<>();
+    private final Map<String, Presence> sessions = new ConcurrentHashMap<>();
+    // Users whose status may be about to change, and users with values not yet written
+    private final Set<String> unsettled = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Settled changes whose peers could not be looked up, pushed again on the next tick
+    private final Queue<PresenceDelta> unpushed = new ConcurrentLinkedQueue<>();
+    // Other nodes holding a session for a user, with when each last said so
+    private final Map<String, Map<Integer, Long>> heldElsewhere = new ConcurrentHashMap<>();
+    // When each other node was last heard from; removed when it leaves
+    private final Map<Integer, Long> nodesHeard = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder statusChanges = new LongAdder();
+    private final LongAdder flapsSuppressed = new LongAdder();
+    private final LongAdder deltaMessages = new LongAdder();
+    private final LongAdder deltasPushed = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder peerLookupFailures = new LongAdder();
+    private final LongAdder clusterPublished = new LongAdder();
+    private final LongAdder clusterReceived = new LongAdder();
+    private final LongAdder clusterExpired = new LongAdder();
+    private final LongAdder clusterUnreadable = new LongAdder();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+
+    /**
+     * A settled status change, as pushed to room peers
+     */
+    public record PresenceDelta(String username, UserStatus status, LocalDateTime lastSeenAt) {
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (roomBroadcaster.isClustered()) {
+            roomBroadcaster.onClusterEvent(DESTINATION, this::receive);
+        }
+    }
+
+    // A session now belongs to a user; repeated calls for the same session are ignored
+    public void sessionOpened(String sessionId, String username) {
+        if (sessionId == null || username == null || username.isEmpty()) {
+            return;
+        }
+        // Bound while holding the user's entry, so flush() cannot forget the Presence in between
+        boolean[] opened = new boolean[1];
+        users.compute(username, (name, current) -> {
+            Presence presence = current != null ? current : new Presence(name);
+            if (sessions.putIfAbsent(sessionId, presence) == null) {
+                presence.opened(System.currentTimeMillis());
+                opened[0] = true;
+            }
+            return presence;
+        });
+        if (opened[0]) {
+            unsettled.add(username);
+        }
+    }
+
+    public void sessionClosed(String sessionId) {
+        Presence presence = sessionId != null ? sessions.remove(sessionId) : null;
+        if (presence != null) {
+            presence.closed(System.currentTimeMillis());
+            unsettled.add(presence.username);
+        }
+    }
+
+    // Activity on a session; sessions whose user was registered later are picked up here
+    public void heartbeat(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        Presence presence = sessions.get(sessionId);
+        if (presence == null) {
+            String username = userRegistry.getUsername(sessionId);
+            if (username == null) {
+                return;
+            }
+            sessionOpened(sessionId, username);
+            presence = sessions.get(sessionId);
+            if (presence == null) {
+                return;
+            }
+        }
+        heartbeats.increment();
+        if (presence.seen(System.currentTimeMillis(), lastSeenGranularityMs)) {
+            dirty.add(presence.username);
+        }
+    }
+
+    public UserStatus getStatus(String username) {
+        Presence presence = users.get(username);
+        return presence != null ? presence.published : UserStatus.OFFLINE;
+    }
+
+    // Settle pending status changes and push them to the users who share a room with them
+    @Scheduled(fixedDelayString = "${chat.presence.tick-ms:250}")
+    public void tick() {
+        if (unsettled.isEmpty() && unpushed.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<PresenceDelta> changes = new ArrayList<>();
+        List<String> gained = new ArrayList<>();
+        List<String> lost = new ArrayList<>();
+        // Retried first, so a newer change for the same user replaces them
+        for (PresenceDelta delta; (delta = unpushed.poll()) != null; ) {
+            changes.add(delta);
+        }
+        // Put back after the loop: re-adding while iterating can hand the same users back forever
+        List<String> pending = new ArrayList<>();
+        for (String username : unsettled) {
+            unsettled.remove(username);
+            Presence presence = users.get(username);
+            if (presence == null) {
+                continue;
+            }
+            Boolean holding = presence.announce();
+            if (holding != null) {
+                (holding ? gained : lost).add(username);
+            }
+            boolean elsewhere = isHeldElsewhere(username);
+            PresenceDelta delta = presence.settle(now, offlineGraceMs, elsewhere);
+            if (delta != null) {
+                changes.add(delta);
+                if (presence.writesStatus()) {
+                    dirty.add(username);
+                } else if (delta.status() == UserStatus.OFFLINE) {
+                    // Only ever connected elsewhere; nothing to write, so flush() would not forget it
+                    users.computeIfPresent(username, (name, current) ->
+                            current.isSettledOffline() && !unsettled.contains(name) ? null : current);
+                }
+                statusChanges.increment();
+            } else if (presence.isPendingOffline(elsewhere)) {
+                // Still within the grace period; look again next tick
+                pending.add(username);
+            } else if (presence.reconnectedWithinGrace()) {
+                flapsSuppressed.increment();
+            }
+        }
+        unsettled.addAll(pending);
+        if (!gained.isEmpty() || !lost.isEmpty()) {
+            publish(gained, lost, false);
+        }
+        if (!changes.isEmpty()) {
+            push(changes);
+        }
+    }
+
+    private boolean isHeldElsewhere(String username) {
+        Map<Integer, Long> nodes = heldElsewhere.get(username);
+        return nodes != null && !nodes.isEmpty();
+    }
+
+    // Tell the other nodes which users gained or lost their last session here
+    private void publish(List<String> online, List<String> offline, boolean leaving) {
+        if (!roomBroadcaster.isClustered()) {
+            return;
+        }
+        // At least one event, so a node holding nobody is still heard from
+        for (int from = 0; from == 0 || from < Math.max(online.size(), offline.size()); from += ANNOUNCE_CHUNK) {
+            roomBroadcaster.publishToCluster(DESTINATION, new NodePresence(nodeId,
+                    online.subList(Math.min(from, online.size()), Math.min(from + ANNOUNCE_CHUNK, online.size())),
+                    offline.subList(Math.min(from, offline.size()), Math.min(from + ANNOUNCE_CHUNK, offline.size())),
+                    leaving));
+            clusterPublished.increment();
+        }
+    }
+
+    // Users gaining or losing their last session on another node are settled with the local ones
+    void receive(byte[] payload) {
+        NodePresence event;
+        try {
+            event = objectMapper.readValue(payload, NodePresence.class);
+        } catch (IOException e) {
+            clusterUnreadable.increment();
+            logger.warn("Skipping unreadable presence event: {}", e.getMessage());
+            return;
+        }
+        clusterReceived.increment();
+        long now = System.currentTimeMillis();
+        if (event.leaving()) {
+            nodesHeard.remove(event.node());
+        } else {
+            nodesHeard.put(event.node(), now);
+        }
+        if (event.online() != null) {
+            for (String username : event.online()) {
+                heldElsewhere.computeIfAbsent(username, name -> new ConcurrentHashMap<>()).put(event.node(), now);
+                touch(username, presence -> presence.seenElsewhere(now));
+            }
+        }
+        if (event.offline() != null) {
+            for (String username : event.offline()) {
+                heldElsewhere.computeIfPresent(username, (name, nodes) -> {
+                    nodes.remove(event.node());
+                    return nodes.isEmpty() ? null : nodes;
+                });
+                touch(username, presence -> presence.closedElsewhere(now, event.leaving()));
+            }
+        }
+    }
+
+    // Update a user's entry and have it settled on the next tick; atomic with flush() forgetting it
+    private void touch(String username, Consumer<Presence> change) {
+        users.compute(username, (name, current) -> {
+            Presence presence = current != null ? current : new Presence(name);
+            change.accept(presence);
+            unsettled.add(name);
+            return presence;
+        });
+    }
+
+    // Remind the other nodes of every user held here, and let go of nodes that went silent
+    @Scheduled(fixedDelayString = "${chat.presence.cluster-announce-ms:30000}")
+    public void announce() {
+        if (!roomBroadcaster.isClustered()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<String> holding = new ArrayList<>();
+        for (Presence presence : users.values()) {
+            if (presence.isAnnouncedHolding()) {
+                holding.add(presence.username);
+            }
+        }
+        publish(holding, List.of(), false);
+
+        long silentSince = now - clusterAnnounceMs * MISSED_ANNOUNCES;
+        nodesHeard.values().removeIf(heard -> heard < silentSince);
+        for (String username : new ArrayList<>(heldElsewhere.keySet())) {
+            boolean[] expired = new boolean[1];
+            heldElsewhere.computeIfPresent(username, (name, nodes) -> {
+                expired[0] = nodes.values().removeIf(heard -> heard < silentSince);
+                return nodes.isEmpty() ? null : nodes;
+            });
+            if (expired[0]) {
+                clusterExpired.increment();
+                touch(username, presence -> presence.closedElsewhere(now, true));
+            }
+        }
+    }
+
+    // Runs before any lifecycle bean stops, while the cluster bus can still carry the event
+    @EventListener(ContextClosedEvent.class)
+    public void leaveCluster() {
+        List<String> holding = new ArrayList<>();
+        for (Presence presence : users.values()) {
+            if (presence.isAnnouncedHolding()) {
+                holding.add(presence.username);
+            }
+        }
+        publish(List.of(), holding, true);
+    }
+
+    // Whether another node has been heard from recently enough to settle this node's users
+    private boolean othersRemain() {
+        long silentSince = System.currentTimeMillis() - clusterAnnounceMs * MISSED_ANNOUNCES;
+        return nodesHeard.values().stream().anyMatch(heard -> heard >= silentSince);
+    }
+
+    private void push(List<PresenceDelta> changes) {
+        Map<String, PresenceDelta> byUser = new HashMap<>();
+        changes.forEach(delta -> byUser.put(delta.username(), delta));
+        List<String> subjects = new ArrayList<>(byUser.keySet());
+
+        Map<String, List<PresenceDelta>> byRecipient = new HashMap<>();
+        for (int from = 0; from < subjects.size(); from += PEER_LOOKUP_CHUNK) {
+            List<String> chunk = subjects.subList(from, Math.min(from + PEER_LOOKUP_CHUNK, subjects.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            Map<String, List<PresenceDelta>> found = new HashMap<>();
+            try {
+                jdbcTemplate.query(String.format(ROOM_PEERS_SQL, placeholders), rs -> {
+                    String peer = rs.getString("peer");
+                    // Only peers connected to this node have a session to push to; the
+                    // other nodes settle the same change and push it to their own
+                    if (userRegistry.getUser(peer) != null) {
+                        found.computeIfAbsent(peer, p -> new ArrayList<>()).add(byUser.get(rs.getString("subject")));
+                    }
+                }, chunk.toArray());
+            } catch (Exception e) {
+                // Only this chunk waits for the next tick; the others are still pushed
+                peerLookupFailures.increment();
+                chunk.forEach(username -> unpushed.add(byUser.get(username)));
+                logger.warn("Could not look up room peers for {} presence changes: {}", chunk.size(), e.getMessage());
+                continue;
+            }
+            found.forEach((peer, deltas) -> byRecipient.computeIfAbsent(peer, p -> new ArrayList<>()).addAll(deltas));
+        }
+        byRecipient.forEach((recipient, deltas) -> {
+            messagingTemplate.convertAndSendToUser(recipient, PRESENCE_DESTINATION, deltas);
+            deltaMessages.increment();
+            deltasPushed.add(deltas.size());
+        });
+    }
+
+    // Write status and lastSeenAt of every changed user in one batch
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:5000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Object[]> args = new ArrayList<>(dirty.size());
+        List<String> written = new ArrayList<>(dirty.size());
+        for (String username : dirty) {
+            dirty.remove(username);
+            Presence presence = users.get(username);
+            if (presence != null) {
+                args.add(presence.row());
+                written.add(username);
+            }
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_PRESENCE_SQL, args);
+        } catch (Exception e) {
+            // Keep the values and try again on the next interval
+            flushFailures.increment();
+            dirty.addAll(written);
+            logger.warn("Failed to write presence for {} users: {}", written.size(), e.getMessage());
+            return;
+        }
+        flushes.increment();
+        rowsWritten.add(args.size());
+        lastFlushMillis.set(System.currentTimeMillis() - start);
+
+        // Forget users who are offline for good and fully written
+        for (String username : written) {
+            users.computeIfPresent(username, (name, presence) ->
+                    presence.isSettledOffline() && !dirty.contains(name) && !unsettled.contains(name) ? null : presence);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    // Sessions are gone at shutdown. With other nodes still running, as in a rolling restart, they
+    // write users who do not reconnect OFFLINE after the grace period; otherwise this node does now
+    @Override
+    public void stop() {
+        running = false;
+        long now = System.currentTimeMillis();
+        for (String sessionId : new ArrayList<>(sessions.keySet())) {
+            sessionClosed(sessionId);
+        }
+        if (!othersRemain()) {
+            for (Presence presence : users.values()) {
+                if (presence.settle(now, 0, false) != null && presence.writesStatus()) {
+                    dirty.add(presence.username);
+                }
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 200;
+    }
+
+    public Map<String, Object> getStats() {
+        long online = users.values().stream().filter(presence -> presence.published == UserStatus.ONLINE).count();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedUsers", users.size());
+        stats.put("onlineUsers", online);
+        stats.put("sessions", sessions.size());
+        stats.put("unsettledUsers", unsettled.size());
+        stats.put("dirtyUsers", dirty.size());
+        stats.put("heartbeats", heartbeats.sum());
+        stats.put("statusChanges", statusChanges.sum());
+        stats.put("flapsSuppressed", flapsSuppressed.sum());
+        stats.put("deltaMessages", deltaMessages.sum());
+        stats.put("deltasPushed", deltasPushed.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("rowsWritten", rowsWritten.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("peerLookupFailures", peerLookupFailures.sum());
+        stats.put("unpushedDeltas", unpushed.size());
+        stats.put("lastFlushMillis", lastFlushMillis.get());
+        if (roomBroadcaster.isClustered()) {
+            Map<String, Object> cluster = new LinkedHashMap<>();
+            cluster.put("nodesHeard", nodesHeard.size());
+            cluster.put("usersHeldElsewhere", heldElsewhere.size());
+            cluster.put("eventsPublished", clusterPublished.sum());
+            cluster.put("eventsReceived", clusterReceived.sum());
+            cluster.put("expired", clusterExpired.sum());
+            cluster.put("unreadable", clusterUnreadable.sum());
+            stats.put("cluster", cluster);
+        }
+        return stats;
+    }
+
+    /**
+     * Presence of one user; its methods are synchronized on the instance
+     */
+    private static final class Presence {
+        private final String username;
+        private int openSessions;
+        private long lastSeenMillis;
+        private long persistedLastSeenMillis;
+        private long lastClosedMillis;
+        private boolean closedSinceSettle;
+        // Whether the other nodes were last told this node holds a session for the user
+        private boolean announcedHolding;
+        // Connected here at some point, or left behind by a node that went away: writes its changes
+        private boolean writesStatus;
+        private volatile UserStatus published = UserStatus.OFFLINE;
+
+        private Presence(String username) {
+            this.username = username;
+        }
+
+        synchronized void opened(long now) {
+            openSessions++;
+            lastSeenMillis = now;
+            writesStatus = true;
+        }
+
+        synchronized void closed(long now) {
+            openSessions = Math.max(0, openSessions - 1);
+            lastSeenMillis = now;
+            if (openSessions == 0) {
+                lastClosedMillis = now;
+                closedSinceSettle = true;
+            }
+        }
+
+        synchronized void seenElsewhere(long now) {
+            lastSeenMillis = Math.max(lastSeenMillis, now);
+        }
+
+        // Another node lost the user's last session; a node that left or went silent cannot write it
+        synchronized void closedElsewhere(long now, boolean nodeGone) {
+            lastSeenMillis = Math.max(lastSeenMillis, now);
+            if (openSessions == 0) {
+                lastClosedMillis = Math.max(lastClosedMillis, now);
+            }
+            if (nodeGone) {
+                writesStatus = true;
+            }
+        }
+
+        // Whether this node now holds a session, if that changed since the other nodes were told
+        synchronized Boolean announce() {
+            boolean holding = openSessions > 0;
+            if (holding == announcedHolding) {
+                return null;
+            }
+            announcedHolding = holding;
+            return holding;
+        }
+
+        synchronized boolean isAnnouncedHolding() {
+            return announcedHolding;
+        }
+
+        synchronized boolean writesStatus() {
+            return writesStatus;
+        }
+
+        // Whether lastSeenAt has moved far enough to be worth writing
+        synchronized boolean seen(long now, long granularityMs) {
+            lastSeenMillis = now;
+            return now - persistedLastSeenMillis >= granularityMs;
+        }
+
+        // The new status if it changed; going offline waits out the grace period
+        synchronized PresenceDelta settle(long now, long graceMs, boolean heldElsewhere) {
+            UserStatus status;
+            if (openSessions > 0 || heldElsewhere) {
+                status = UserStatus.ONLINE;
+            } else if (now - lastClosedMillis >= graceMs) {
+                status = UserStatus.OFFLINE;
+            } else {
+                return null;
+            }
+            if (status == published) {
+                return null;
+            }
+            published = status;
+            closedSinceSettle = false;
+            return new PresenceDelta(username, status, toDateTime(lastSeenMillis));
+        }
+
+        synchronized boolean isPendingOffline(boolean heldElsewhere) {
+            return openSessions == 0 && !heldElsewhere && published == UserStatus.ONLINE;
+        }
+
+        // Online throughout, although its sessions closed and reopened since the last settle
+        synchronized boolean reconnectedWithinGrace() {
+            boolean flapped = closedSinceSettle && openSessions > 0 && published == UserStatus.ONLINE;
+            closedSinceSettle = false;
+            return flapped;
+        }
+
+        synchronized boolean isSettledOffline() {
+            return openSessions == 0 && published == UserStatus.OFFLINE;
+        }
+
+        synchronized Object[] row() {
+            persistedLastSeenMillis = lastSeenMillis;
+            return new Object[]{published.name(), toDateTime(lastSeenMillis), username};
+        }
+
+        private static LocalDateTime toDateTime(long millis) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        }
+    }
+}
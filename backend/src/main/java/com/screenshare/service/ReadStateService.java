@@ -0,0 +1,360 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.screenshare.entity.RoomReadState;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read watermarks: the last message each user has read in each room
+ * A mark only ever moves the watermark forward, as an in-memory max. Marks that advance it are
+ * broadcast as a read receipt on /topic/read/{roomId}; all others are dropped without a
+ * broadcast or a write. Advanced watermarks are written in batches once per flush interval,
+ * so a user scrolling through a room costs one row update per interval, not one per message.
+ * Watermarks not advanced for evict-after-ms are dropped from memory once written.
+ *
+ * A mark is only accepted up to the newest message the room is known to have, so a made-up id
+ * cannot mark messages read that do not exist yet. Messages accepted on this node are known as
+ * soon as they are accepted, before write-behind has inserted them; anything newer is looked
+ * up in the database before the mark is rejected.
+ */
+@Service
+public class ReadStateService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadStateService.class);
+
+    private static final String SELECT_SQL =
+            "SELECT last_read_message_id FROM room_read_state WHERE user_id = ? AND chat_room_id = ?";
+
+    // Never moves a watermark backwards, whatever another node wrote in between
+    private static final String UPDATE_SQL =
+            "UPDATE room_read_state SET last_read_message_id = ?, updated_at = ? " +
+            "WHERE user_id = ? AND chat_room_id = ? AND last_read_message_id < ?";
+
+    private static final String NEWEST_MESSAGE_SQL =
+            "SELECT MAX(id) FROM chat_messages WHERE chat_room_id = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO room_read_state (user_id, chat_room_id, last_read_message_id, updated_at) VALUES (?, ?, ?, ?)";
+
+    @Value("${chat.read-state.evict-after-ms:600000}")
+    private long evictAfterMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    // Entries are only changed inside compute, which serialises them per key
+    private final Map<RoomReadState.Key, Watermark> watermarks = new ConcurrentHashMap<>();
+    private final Set<RoomReadState.Key> dirty = ConcurrentHashMap.newKeySet();
+    private final List<WatermarkListener> listeners = new CopyOnWriteArrayList<>();
+    // Newest message id seen per room; dropped once older than evict-after-ms
+    private final Map<Long, Long> newestMessages = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    private final LongAdder marks = new LongAdder();
+    private final LongAdder advances = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder newestLookups = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rowsUpdated = new LongAdder();
+    private final LongAdder rowsInserted = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+
+    /**
+     * A user's read watermark in a room, as broadcast and returned by the API
+     */
+    public record ReadReceipt(Long roomId, Long userId,
+                              @JsonSerialize(using = ToStringSerializer.class) Long lastReadMessageId) {
+    }
+
+    /**
+     * Told about every watermark advance, on the thread that made it
+     */
+    @FunctionalInterface
+    public interface WatermarkListener {
+        void advanced(Long roomId, Long userId, long lastReadMessageId);
+    }
+
+    public void addListener(WatermarkListener listener) {
+        listeners.add(listener);
+    }
+
+    // A message was accepted into a room, possibly before it reaches the database
+    public void messageAccepted(Long roomId, long messageId) {
+        newestMessages.merge(roomId, messageId, Math::max);
+    }
+
+    // Move a member's watermark up to messageId; false if not a member, not a message of the
+    // room yet or not an advance
+    public boolean markRead(Long roomId, Long userId, Long messageId) {
+        if (roomId == null || userId == null || messageId == null || messageId <= 0
+                || !roomAccessCache.isActiveMember(roomId, userId) || messageId > newestMessage(roomId, messageId)) {
+            rejected.increment();
+            return false;
+        }
+        marks.increment();
+        RoomReadState.Key key = new RoomReadState.Key(userId, roomId);
+        Watermark loaded = watermarks.containsKey(key) ? null : load(key);
+        long now = System.currentTimeMillis();
+        boolean[] advanced = new boolean[1];
+        watermarks.compute(key, (k, current) -> {
+            // Evicted again since the check above; rare enough to load in place
+            Watermark watermark = current != null ? current : loaded != null ? loaded : load(k);
+            advanced[0] = watermark.advance(messageId, now);
+            return watermark;
+        });
+        if (!advanced[0]) {
+            stale.increment();
+            return false;
+        }
+        dirty.add(key);
+        advances.increment();
+        for (WatermarkListener listener : listeners) {
+            listener.advanced(roomId, userId, messageId);
+        }
+        // Receipts for concurrent marks may arrive out of order; clients keep the highest
+        roomBroadcaster.broadcast("/topic/read/" + roomId, new ReadReceipt(roomId, userId, messageId));
+        return true;
+    }
+
+    // Another node advanced a watermark and writes it; catch up the copy held here, if any,
+    // without writing or broadcasting it again
+    public void advancedElsewhere(Long roomId, Long userId, long lastReadMessageId) {
+        newestMessages.merge(roomId, lastReadMessageId, Math::max);
+        watermarks.computeIfPresent(new RoomReadState.Key(userId, roomId), (k, watermark) -> {
+            watermark.caughtUp(lastReadMessageId);
+            return watermark;
+        });
+    }
+
+    // The id of the last message the user has read in the room, 0 if none
+    public long getLastRead(Long roomId, Long userId) {
+        RoomReadState.Key key = new RoomReadState.Key(userId, roomId);
+        Watermark watermark = watermarks.get(key);
+        return watermark != null ? watermark.lastRead : load(key).lastRead;
+    }
+
+    // The in-memory watermark, 0 if not held; unwritten watermarks are always held
+    public long getCachedLastRead(Long roomId, Long userId) {
+        Watermark watermark = watermarks.get(new RoomReadState.Key(userId, roomId));
+        return watermark != null ? watermark.lastRead : 0;
+    }
+
+    // The newest message id of the room, asking the database if the one held is older than wanted
+    private long newestMessage(Long roomId, long wanted) {
+        Long known = newestMessages.get(roomId);
+        if (known != null && known >= wanted) {
+            return known;
+        }
+        newestLookups.increment();
+        Long newest = jdbcTemplate.queryForObject(NEWEST_MESSAGE_SQL, Long.class, roomId);
+        return newest != null ? newestMessages.merge(roomId, newest, Math::max) : known != null ? known : 0;
+    }
+
+    private Watermark load(RoomReadState.Key key) {
+        loads.increment();
+        List<Long> rows = jdbcTemplate.queryForList(SELECT_SQL, Long.class, key.getUserId(), key.getChatRoomId());
+        return rows.isEmpty() ? new Watermark(0, false) : new Watermark(rows.get(0), true);
+    }
+
+    // Write every advanced watermark; existing rows in one batch, new rows in another
+    @Scheduled(fixedDelayString = "${chat.read-state.flush-interval-ms:1000}")
+    public void flush() {
+        if (!dirty.isEmpty()) {
+            write();
+        }
+        evictIdle();
+    }
+
+    private void write() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        Map<RoomReadState.Key, Long> updates = new LinkedHashMap<>();
+        Map<RoomReadState.Key, Long> inserts = new LinkedHashMap<>();
+        for (RoomReadState.Key key : dirty) {
+            dirty.remove(key);
+            Watermark watermark = watermarks.get(key);
+            if (watermark != null && watermark.lastRead > watermark.persisted) {
+                (watermark.rowExists ? updates : inserts).put(key, watermark.lastRead);
+            }
+        }
+        if (updates.isEmpty() && inserts.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (!updates.isEmpty()) {
+                List<Object[]> args = new ArrayList<>(updates.size());
+                updates.forEach((key, lastRead) -> args.add(
+                        new Object[]{lastRead, now, key.getUserId(), key.getChatRoomId(), lastRead}));
+                jdbcTemplate.batchUpdate(UPDATE_SQL, args);
+                rowsUpdated.add(updates.size());
+            }
+            if (!inserts.isEmpty()) {
+                insert(inserts, now);
+            }
+        } catch (Exception e) {
+            // Keep the values and try again on the next interval
+            flushFailures.increment();
+            dirty.addAll(updates.keySet());
+            dirty.addAll(inserts.keySet());
+            logger.warn("Failed to write {} read watermarks: {}", updates.size() + inserts.size(), e.getMessage());
+            return;
+        }
+
+        updates.forEach(this::persisted);
+        inserts.forEach(this::persisted);
+        flushes.increment();
+        lastFlushMillis.set(System.currentTimeMillis() - start);
+    }
+
+    private void insert(Map<RoomReadState.Key, Long> inserts, LocalDateTime now) {
+        List<Object[]> args = new ArrayList<>(inserts.size());
+        inserts.forEach((key, lastRead) -> args.add(
+                new Object[]{key.getUserId(), key.getChatRoomId(), lastRead, now}));
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, args);
+            rowsInserted.add(inserts.size());
+        } catch (DuplicateKeyException e) {
+            // Another node created some of the rows since they were loaded; go row by row
+            inserts.forEach((key, lastRead) -> {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, key.getUserId(), key.getChatRoomId(), lastRead, now);
+                    rowsInserted.increment();
+                } catch (DuplicateKeyException exists) {
+                    jdbcTemplate.update(UPDATE_SQL, lastRead, now, key.getUserId(), key.getChatRoomId(), lastRead);
+                    rowsUpdated.increment();
+                }
+            });
+        }
+    }
+
+    private void persisted(RoomReadState.Key key, Long lastRead) {
+        watermarks.computeIfPresent(key, (k, watermark) -> {
+            watermark.persisted = Math.max(watermark.persisted, lastRead);
+            watermark.rowExists = true;
+            return watermark;
+        });
+    }
+
+    // Drop written watermarks that have not moved for a while; they are loaded again on use
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - evictAfterMs;
+        for (RoomReadState.Key key : watermarks.keySet()) {
+            watermarks.computeIfPresent(key, (k, watermark) -> {
+                if (watermark.lastRead <= watermark.persisted && watermark.touchedMillis < cutoff) {
+                    evictions.increment();
+                    return null;
+                }
+                return watermark;
+            });
+        }
+        // Messages this old are in the database, which answers for them
+        long oldestId = SnowflakeIdGenerator.minIdAt(cutoff);
+        newestMessages.values().removeIf(id -> id < oldestId);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    // Write out whatever is still pending on shutdown
+    @Override
+    public void stop() {
+        running = false;
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 200;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("watermarks", watermarks.size());
+        stats.put("dirty", dirty.size());
+        stats.put("marks", marks.sum());
+        stats.put("advances", advances.sum());
+        stats.put("stale", stale.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("loads", loads.sum());
+        stats.put("rooms", newestMessages.size());
+        stats.put("newestLookups", newestLookups.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("rowsUpdated", rowsUpdated.sum());
+        stats.put("rowsInserted", rowsInserted.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("lastFlushMillis", lastFlushMillis.get());
+        return stats;
+    }
+
+    /**
+     * One user's watermark in one room; changed only inside compute for its key
+     */
+    private static final class Watermark {
+        private volatile long lastRead;
+        private volatile long persisted;
+        private volatile boolean rowExists;
+        private volatile long touchedMillis;
+
+        private Watermark(long persisted, boolean rowExists) {
+            this.lastRead = persisted;
+            this.persisted = persisted;
+            this.rowExists = rowExists;
+            this.touchedMillis = System.currentTimeMillis();
+        }
+
+        boolean advance(long messageId, long now) {
+            touchedMillis = now;
+            if (messageId <= lastRead) {
+                return false;
+            }
+            lastRead = messageId;
+            return true;
+        }
+
+        // Written by the node that advanced it, so nothing is left to write here up to that point
+        void caughtUp(long messageId) {
+            lastRead = Math.max(lastRead, messageId);
+            persisted = Math.max(persisted, messageId);
+        }
+    }
+}
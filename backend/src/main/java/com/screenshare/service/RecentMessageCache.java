@@ -0,0 +1,362 @@
+package com.screenshare.service;
+
+import com.screenshare.dto.ChatMessageDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-room ring buffer of the most recent chat messages
+ * A room's buffer holds every non-deleted message from its oldest entry onwards, so any
+ * history read that fits inside the buffer can be served from memory. Buffers are created
+ * by a history read (primed from the database) and then fed from the save path.
+ * Total memory is capped by message count; the least recently used rooms are evicted first.
+ * Rooms keep no access order, so finding the coldest ones scans and sorts every buffered room.
+ * To keep that O(rooms log rooms) pass off the common path, going over the cap evicts down to
+ * nine tenths of it, and the next pass only comes after another tenth has been filled.
+ *
+ * Every committed write to a room bumps a striped write stamp. A buffer is only primed if
+ * no write landed between the database read and the prime, so a message committed while
+ * history was loading can never go missing from the buffer.
+ */
+@Service
+public class RecentMessageCache {
+
+    @Value("${chat.history.recent-window:200}")
+    private int windowSize;
+
+    @Value("${chat.history.max-cached-messages:100000}")
+    private long maxCachedMessages;
+
+    private static final int STRIPES = 256;
+
+    private final Map<Long, RoomBuffer> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong cachedMessages = new AtomicLong();
+    private final long[] writeStamps = new long[STRIPES];
+    private final Object[] stripeLocks = new Object[STRIPES];
+    private final Object evictionLock = new Object();
+
+    {
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new Object();
+        }
+    }
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    // Latest messages of a room in ascending order, if the buffer can answer for that many
+    public Optional<List<ChatMessageDto>> latest(Long roomId, int limit) {
+        return before(roomId, Long.MAX_VALUE, limit);
+    }
+
+    // Up to limit messages older than beforeId in ascending order, if the buffer covers them
+    public Optional<List<ChatMessageDto>> before(Long roomId, long beforeId, int limit) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return record(buffer != null ? buffer.before(beforeId, limit) : null);
+    }
+
+    // Up to limit messages newer than afterId in ascending order, if the buffer covers them
+    public Optional<List<ChatMessageDto>> after(Long roomId, long afterId, int limit) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return record(buffer != null ? buffer.after(afterId, limit) : null);
+    }
+
+    private Optional<List<ChatMessageDto>> record(List<ChatMessageDto> result) {
+        if (result == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(result);
+    }
+
+    // Take the write stamp for a room before reading its history from the database
+    public long writeStamp(Long roomId) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            return writeStamps[stripe];
+        }
+    }
+
+    /**
+     * Seed a room's buffer from the database
+     *
+     * @param latestAscending the most recent messages in ascending id order
+     * @param complete        true if these are all of the room's messages
+     * @param stamp           write stamp taken before the database read
+     * @return false if the room was written to since the stamp and the buffer was not primed
+     */
+    public boolean prime(Long roomId, List<ChatMessageDto> latestAscending, boolean complete, long stamp) {
+        int from = Math.max(0, latestAscending.size() - windowSize);
+        RoomBuffer buffer = new RoomBuffer(windowSize);
+        for (ChatMessageDto dto : latestAscending.subList(from, latestAscending.size())) {
+            buffer.insert(dto);
+        }
+        buffer.complete = complete && from == 0;
+
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            if (writeStamps[stripe] != stamp) {
+                return false;
+            }
+            RoomBuffer previous = rooms.put(roomId, buffer);
+            cachedMessages.addAndGet(buffer.size - (previous != null ? previous.size() : 0));
+        }
+        enforceLimit(roomId);
+        return true;
+    }
+
+    /**
+     * Record a committed message. The DTO is appended if the room is buffered; a null DTO
+     * (the caller did not build one because the room was not buffered at save time) evicts
+     * the buffer instead so it cannot miss the message.
+     */
+    public void messageSaved(Long roomId, ChatMessageDto dto) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            writeStamps[stripe]++;
+            RoomBuffer buffer = rooms.get(roomId);
+            if (buffer == null) {
+                return;
+            }
+            if (dto == null || dto.getId() == null) {
+                evict(roomId);
+                return;
+            }
+            cachedMessages.addAndGet(buffer.insert(dto));
+        }
+        enforceLimit(roomId);
+    }
+
+    // Replace an edited message in place
+    public void messageEdited(Long roomId, ChatMessageDto dto) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            writeStamps[stripe]++;
+            RoomBuffer buffer = rooms.get(roomId);
+            if (buffer != null) {
+                buffer.replace(dto);
+            }
+        }
+    }
+
+    // Drop a deleted message
+    public void messageDeleted(Long roomId, Long messageId) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            writeStamps[stripe]++;
+            RoomBuffer buffer = rooms.get(roomId);
+            if (buffer != null) {
+                cachedMessages.addAndGet(buffer.remove(messageId));
+            }
+        }
+    }
+
+    // Record writes made outside the entity path (e.g. batch inserts) by dropping the buffer
+    public void roomWritten(Long roomId) {
+        messageSaved(roomId, null);
+    }
+
+    private static int stripe(Long roomId) {
+        return (Long.hashCode(roomId) & 0x7fffffff) % STRIPES;
+    }
+
+    public boolean isPrimed(Long roomId) {
+        return rooms.containsKey(roomId);
+    }
+
+    public void evict(Long roomId) {
+        RoomBuffer buffer = rooms.remove(roomId);
+        if (buffer != null) {
+            cachedMessages.addAndGet(-buffer.size());
+            evictions.increment();
+        }
+    }
+
+    // Once over budget, evict the coldest rooms until a tenth of the budget is free again
+    private void enforceLimit(Long keepRoomId) {
+        if (cachedMessages.get() <= maxCachedMessages) {
+            return;
+        }
+        synchronized (evictionLock) {
+            if (cachedMessages.get() <= maxCachedMessages) {
+                return;
+            }
+            // Access times are copied first; they keep moving while the rooms are sorted
+            List<long[]> candidates = new ArrayList<>(rooms.size());
+            for (Map.Entry<Long, RoomBuffer> entry : rooms.entrySet()) {
+                if (!entry.getKey().equals(keepRoomId)) {
+                    candidates.add(new long[]{entry.getValue().lastAccess, entry.getKey()});
+                }
+            }
+            candidates.sort(Comparator.comparingLong(candidate -> candidate[0]));
+            long target = maxCachedMessages - maxCachedMessages / 10;
+            for (long[] candidate : candidates) {
+                if (cachedMessages.get() <= target) {
+                    return;
+                }
+                evict(candidate[1]);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rooms", rooms.size());
+        stats.put("cachedMessages", cachedMessages.get());
+        stats.put("maxCachedMessages", maxCachedMessages);
+        stats.put("windowSize", windowSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    /**
+     * Fixed-size ring of message DTOs kept in ascending id order
+     */
+    private static final class RoomBuffer {
+        private final ChatMessageDto[] ring;
+        private int start;
+        private int size;
+        private boolean complete;
+        private volatile long lastAccess = System.nanoTime();
+
+        RoomBuffer(int capacity) {
+            this.ring = new ChatMessageDto[capacity];
+        }
+
+        private ChatMessageDto at(int index) {
+            return ring[(start + index) % ring.length];
+        }
+
+        private void set(int index, ChatMessageDto dto) {
+            ring[(start + index) % ring.length] = dto;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        // Null if older messages outside the buffer could belong in the result
+        synchronized List<ChatMessageDto> before(long beforeId, int limit) {
+            lastAccess = System.nanoTime();
+            int end = size;
+            while (end > 0 && at(end - 1).getId() >= beforeId) {
+                end--;
+            }
+            if (limit > end && !complete) {
+                return null;
+            }
+            return copy(Math.max(0, end - limit), end);
+        }
+
+        // Null if the gap after afterId reaches back past the start of the buffer
+        synchronized List<ChatMessageDto> after(long afterId, int limit) {
+            lastAccess = System.nanoTime();
+            if (!complete && (size == 0 || afterId < at(0).getId())) {
+                return null;
+            }
+            int from = size;
+            while (from > 0 && at(from - 1).getId() > afterId) {
+                from--;
+            }
+            return copy(from, Math.min(size, from + limit));
+        }
+
+        private List<ChatMessageDto> copy(int from, int to) {
+            List<ChatMessageDto> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                result.add(at(i));
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        // Insert in id order; returns the change in size
+        synchronized int insert(ChatMessageDto dto) {
+            lastAccess = System.nanoTime();
+            int position = size;
+            while (position > 0 && at(position - 1).getId() > dto.getId()) {
+                position--;
+            }
+            if (position > 0 && at(position - 1).getId().equals(dto.getId())) {
+                set(position - 1, dto);
+                return 0;
+            }
+
+            if (size == ring.length) {
+                if (position == 0) {
+                    // Older than everything in a full window
+                    return 0;
+                }
+                // Drop the oldest entry to make room
+                ring[start] = null;
+                start = (start + 1) % ring.length;
+                size--;
+                position--;
+                complete = false;
+                shiftRightFrom(position);
+                set(position, dto);
+                size++;
+                return 0;
+            }
+
+            shiftRightFrom(position);
+            set(position, dto);
+            size++;
+            return 1;
+        }
+
+        private void shiftRightFrom(int position) {
+            for (int i = size; i > position; i--) {
+                set(i, at(i - 1));
+            }
+        }
+
+        synchronized void replace(ChatMessageDto dto) {
+            int index = indexOf(dto.getId());
+            if (index >= 0) {
+                set(index, dto);
+            }
+        }
+
+        // Remove by id; returns the change in size
+        synchronized int remove(Long messageId) {
+            int index = indexOf(messageId);
+            if (index < 0) {
+                return 0;
+            }
+            for (int i = index; i < size - 1; i++) {
+                set(i, at(i + 1));
+            }
+            set(size - 1, null);
+            size--;
+            return -1;
+        }
+
+        private int indexOf(Long messageId) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (at(i).getId().equals(messageId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.RoomType;
+import com.screenshare.entity.User;
+import com.screenshare.repository.ChatRoomRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory authorization data for chat rooms
+ * Holds the active flag, room type and member ids of each room so the STOMP handlers
+ * can authorize frames without touching the database. Entries are loaded on first use
+ * and kept current by the ChatService methods that change membership.
+ *
+ * Every membership write and eviction bumps a striped generation. A loaded entry is only
+ * installed if no write landed on its stripe since the load started, so a load racing a
+ * join or leave cannot put back the membership from before it. Entries expire a while after
+ * they were loaded, as a bound on anything changed behind the cache's back, and room ids
+ * that do not exist are remembered for a short time so repeated lookups skip the database.
+ * The number of rooms is capped; going over it evicts the least recently used down to nine
+ * tenths of the cap, as RecentMessageCache does.
+ */
+@Service
+public class RoomAccessCache {
+
+    private static final int STRIPES = 256;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Value("${chat.access.max-rooms:50000}")
+    private int maxRooms;
+
+    @Value("${chat.access.expire-after-write-ms:600000}")
+    private long expireAfterWriteMs;
+
+    @Value("${chat.access.unknown-room-ttl-ms:30000}")
+    private long unknownRoomTtlMs;
+
+    private final Map<Long, RoomAccess> rooms = new ConcurrentHashMap<>();
+    private final long[] generations = new long[STRIPES];
+    private final Object[] stripeLocks = new Object[STRIPES];
+    private final Object evictionLock = new Object();
+
+    {
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new Object();
+        }
+    }
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder unknownHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+
+    // Get access data for a room, loading it on a miss. Empty if the room does not exist.
+    public Optional<RoomAccess> get(Long roomId) {
+        if (roomId == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        RoomAccess access = current(roomId, now);
+        if (access != null) {
+            if (!access.exists) {
+                unknownHits.increment();
+                return Optional.empty();
+            }
+            hits.increment();
+            return Optional.of(access);
+        }
+        misses.increment();
+
+        // Taken before reading, so a membership write during the read keeps the result out
+        long generation = generation(roomId);
+        Optional<ChatRoom> room = chatRoomRepository.findById(roomId);
+        RoomAccess loaded = room.isEmpty()
+                ? RoomAccess.unknown(now + unknownRoomTtlMs)
+                : new RoomAccess(room.get().getIsActive(), room.get().getRoomType(),
+                        chatRoomRepository.findMemberIds(roomId), now + expireAfterWriteMs);
+        RoomAccess installed = install(roomId, loaded, generation, now);
+        return installed.exists ? Optional.of(installed) : Optional.empty();
+    }
+
+    // Access data for a room if it is already cached; never loads
+    public Optional<RoomAccess> peek(Long roomId) {
+        RoomAccess access = current(roomId, System.currentTimeMillis());
+        if (access == null || !access.exists) {
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(access);
+    }
+
+    // The cached entry unless it has expired, which drops it
+    private RoomAccess current(Long roomId, long now) {
+        RoomAccess access = rooms.get(roomId);
+        if (access == null) {
+            return null;
+        }
+        if (now >= access.expiresAt) {
+            if (rooms.remove(roomId, access)) {
+                expirations.increment();
+            }
+            return null;
+        }
+        access.lastAccess = now;
+        return access;
+    }
+
+    // Cache a loaded entry unless a write landed since its generation was taken
+    private RoomAccess install(Long roomId, RoomAccess loaded, long generation, long now) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            if (generations[stripe] != generation) {
+                staleLoads.increment();
+                return loaded;
+            }
+            RoomAccess existing = rooms.get(roomId);
+            if (existing != null && now < existing.expiresAt) {
+                return existing;
+            }
+            rooms.put(roomId, loaded);
+        }
+        enforceLimit(roomId);
+        return loaded;
+    }
+
+    private long generation(Long roomId) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            return generations[stripe];
+        }
+    }
+
+    // Bump the room's generation and apply a change to its entry in one step
+    private void write(Long roomId, Runnable change) {
+        int stripe = stripe(roomId);
+        synchronized (stripeLocks[stripe]) {
+            generations[stripe]++;
+            change.run();
+        }
+    }
+
+    private static int stripe(Long roomId) {
+        return (Long.hashCode(roomId) & 0x7fffffff) % STRIPES;
+    }
+
+    // Active room that is public or has the user as a member
+    public boolean canAccess(Long roomId, Long userId) {
+        return get(roomId).map(access -> access.canAccess(userId)).orElse(false);
+    }
+
+    // Active room that has the user as a member, regardless of room type
+    public boolean isActiveMember(Long roomId, Long userId) {
+        return get(roomId).map(access -> access.isActive() && access.isMember(userId)).orElse(false);
+    }
+
+    public boolean isMember(Long roomId, Long userId) {
+        return get(roomId).map(access -> access.isMember(userId)).orElse(false);
+    }
+
+    // Replace the entry for a room from an entity whose members are already loaded
+    public void roomSaved(ChatRoom room) {
+        boolean active = Boolean.TRUE.equals(room.getIsActive());
+        RoomType roomType = room.getRoomType();
+        List<Long> memberIds = room.getMembers().stream().map(User::getId).collect(Collectors.toList());
+        applyNowAndAfterCommit(room.getId(), () -> write(room.getId(), () -> rooms.put(room.getId(),
+                new RoomAccess(active, roomType, memberIds, System.currentTimeMillis() + expireAfterWriteMs))));
+        enforceLimit(room.getId());
+    }
+
+    public void memberAdded(Long roomId, Long userId) {
+        applyNowAndAfterCommit(roomId, () -> write(roomId, () -> {
+            RoomAccess access = rooms.get(roomId);
+            if (access != null && !access.exists) {
+                // A room thought not to exist has members after all
+                rooms.remove(roomId);
+            } else if (access != null) {
+                access.memberIds.add(userId);
+            }
+        }));
+    }
+
+    public void memberRemoved(Long roomId, Long userId) {
+        applyNowAndAfterCommit(roomId, () -> write(roomId, () -> {
+            RoomAccess access = rooms.get(roomId);
+            if (access != null) {
+                access.memberIds.remove(userId);
+            }
+        }));
+    }
+
+    // Also keeps out any load that was already under way
+    public void evict(Long roomId) {
+        write(roomId, () -> {
+            if (rooms.remove(roomId) != null) {
+                evictions.increment();
+            }
+        });
+    }
+
+    // Once over the cap, evict the least recently used rooms until a tenth of it is free again
+    private void enforceLimit(Long keepRoomId) {
+        if (rooms.size() <= maxRooms) {
+            return;
+        }
+        synchronized (evictionLock) {
+            if (rooms.size() <= maxRooms) {
+                return;
+            }
+            // Access times are copied first; they keep moving while the rooms are sorted
+            List<long[]> candidates = new ArrayList<>(rooms.size());
+            for (Map.Entry<Long, RoomAccess> entry : rooms.entrySet()) {
+                if (!entry.getKey().equals(keepRoomId)) {
+                    candidates.add(new long[]{entry.getValue().lastAccess, entry.getKey()});
+                }
+            }
+            candidates.sort(Comparator.comparingLong(candidate -> candidate[0]));
+            int target = maxRooms - maxRooms / 10;
+            for (long[] candidate : candidates) {
+                if (rooms.size() <= target) {
+                    return;
+                }
+                if (rooms.remove(candidate[1]) != null) {
+                    capacityEvictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply an update right away so the caller sees it, and again after commit in case a
+     * concurrent miss loaded the pre-commit state in between. Updates are idempotent.
+     * On rollback the entry is evicted and reloaded on next use.
+     */
+    private void applyNowAndAfterCommit(Long roomId, Runnable update) {
+        update.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        update.run();
+                    } else {
+                        evict(roomId);
+                    }
+                }
+            });
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        stats.put("rooms", rooms.size());
+        stats.put("maxRooms", maxRooms);
+        stats.put("hits", hitCount);
+        stats.put("unknownRoomHits", unknownHits.sum());
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("staleLoads", staleLoads.sum());
+        stats.put("capacityEvictions", capacityEvictions.sum());
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+
+    public static class RoomAccess {
+        private final boolean active;
+        private final RoomType roomType;
+        private final Set<Long> memberIds = ConcurrentHashMap.newKeySet();
+        // False for a room id that was looked up and not found
+        private final boolean exists;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        RoomAccess(boolean active, RoomType roomType, List<Long> memberIds, long expiresAt) {
+            this(true, active, roomType, memberIds, expiresAt);
+        }
+
+        private RoomAccess(boolean exists, boolean active, RoomType roomType, List<Long> memberIds, long expiresAt) {
+            this.exists = exists;
+            this.active = active;
+            this.roomType = roomType;
+            this.memberIds.addAll(memberIds);
+            this.expiresAt = expiresAt;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        static RoomAccess unknown(long expiresAt) {
+            return new RoomAccess(false, false, null, List.of(), expiresAt);
+        }
+
+        public boolean isActive() { return active; }
+
+        public RoomType getRoomType() { return roomType; }
+
+        public boolean isMember(Long userId) {
+            return userId != null && memberIds.contains(userId);
+        }
+
+        public boolean canAccess(Long userId) {
+            return active && (roomType == RoomType.PUBLIC || isMember(userId));
+        }
+
+        // Read-only view of the member ids
+        public Set<Long> getMemberIds() {
+            return Collections.unmodifiableSet(memberIds);
+        }
+    }
+}
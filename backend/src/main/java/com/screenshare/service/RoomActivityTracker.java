@@ -0,0 +1,147 @@
+package com.screenshare.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces chat room lastActivityAt updates
+ * Message saves record the latest activity per room in memory. A scheduled flush writes every
+ * dirty room in one batched UPDATE, so a busy room costs one row update per interval instead of
+ * one per message. Until a value is flushed, readers get it from here through lastActivity().
+ */
+@Service
+public class RoomActivityTracker implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomActivityTracker.class);
+
+    // Never moves a room's activity backwards
+    private static final String UPDATE_ROOM_ACTIVITY_SQL =
+            "UPDATE chat_rooms SET last_activity_at = ? WHERE id = ? AND (last_activity_at IS NULL OR last_activity_at < ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Latest unflushed activity per room; entries are removed once written
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+
+    private final LongAdder touches = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder roomsWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+
+    // Record activity in a room; the newest timestamp wins
+    public void touch(Long roomId, LocalDateTime at) {
+        if (roomId == null || at == null) {
+            return;
+        }
+        pending.merge(roomId, at, (current, candidate) -> candidate.isAfter(current) ? candidate : current);
+        dirty.add(roomId);
+        touches.increment();
+    }
+
+    // Activity that has not reached the database yet, if any
+    public Optional<LocalDateTime> lastActivity(Long roomId) {
+        return Optional.ofNullable(pending.get(roomId));
+    }
+
+    // The fresher of the persisted value and the unflushed in-memory value
+    public LocalDateTime effectiveLastActivity(Long roomId, LocalDateTime persisted) {
+        LocalDateTime fresh = pending.get(roomId);
+        if (fresh == null) {
+            return persisted;
+        }
+        return persisted == null || fresh.isAfter(persisted) ? fresh : persisted;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.activity.flush-interval-ms:1000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        Map<Long, LocalDateTime> snapshot = new LinkedHashMap<>();
+        for (Long roomId : dirty) {
+            dirty.remove(roomId);
+            LocalDateTime at = pending.get(roomId);
+            if (at != null) {
+                snapshot.put(roomId, at);
+            }
+        }
+        if (snapshot.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(snapshot.size());
+        snapshot.forEach((roomId, at) -> args.add(new Object[]{at, roomId, at}));
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_ROOM_ACTIVITY_SQL, args);
+        } catch (Exception e) {
+            // Keep the values and try again on the next interval
+            flushFailures.increment();
+            dirty.addAll(snapshot.keySet());
+            logger.warn("Failed to flush activity for {} rooms: {}", snapshot.size(), e.getMessage());
+            return;
+        }
+
+        // Drop entries that did not change while the update ran; readers now get them from the database
+        snapshot.forEach(pending::remove);
+        flushes.increment();
+        roomsWritten.add(snapshot.size());
+        lastFlushMillis.set(System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    // Write out whatever is still pending on shutdown
+    @Override
+    public void stop() {
+        running = false;
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop after the message write-behind so its final batch is flushed here too
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 200;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingRooms", pending.size());
+        stats.put("dirtyRooms", dirty.size());
+        stats.put("touches", touches.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("roomsWritten", roomsWritten.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("lastFlushMillis", lastFlushMillis.get());
+        return stats;
+    }
+}
@@ -0,0 +1,269 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenshare.config.BinaryPayloadCodec;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts room events to topic subscribers
+ * The payload is serialized to JSON exactly once. The resulting array is treated as immutable
+ * and shared by the broker with every subscriber session, where SharedFrameStompEncoder reuses
+ * the encoded frame body instead of encoding it per session. While any session takes CBOR,
+ * the payload is also encoded once in CBOR and sent along for those sessions.
+ * With a ClusterBus configured, every broadcast is also published for the other nodes, and
+ * their events are re-delivered to this node's subscribers. Events that originated here or
+ * that were already delivered are dropped by origin node id and sequence. Destinations under
+ * CLUSTER_ONLY_PREFIX are not for subscribers: they are published to the other nodes only and
+ * handed to the handler registered for them there, as ClusterInvalidationService does.
+ * Broadcasts larger than the cluster payload limit reach this node's subscribers only, unless
+ * sent with broadcastClusterWide, which refuses them instead.
+ */
+@Service
+public class RoomBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomBroadcaster.class);
+
+    private static final int MAX_ORIGINS = 256;
+
+    public static final String CLUSTER_ONLY_PREFIX = "cluster:";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BinaryPayloadCodec binaryPayloadCodec;
+
+    @Autowired(required = false)
+    private ClusterBus clusterBus;
+
+    @Value("${chat.node-id:0}")
+    private int nodeId;
+
+    // Larger payloads, such as screen-share image frames, stay on the node they were sent to
+    @Value("${chat.cluster.max-payload-bytes:32768}")
+    private int maxClusterPayloadBytes;
+
+    // Sequences already delivered, per origin process, kept for as many events as this
+    @Value("${chat.cluster.dedupe-window:10000}")
+    private int dedupeWindow;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+    // Keyed by origin instance, as a restarted node starts its sequence over; least recently heard from go first
+    private final Map<String, Set<Long>> delivered = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Set<Long>> eldest) {
+            return size() > MAX_ORIGINS;
+        }
+    });
+    private final Map<String, Consumer<byte[]>> clusterHandlers = new ConcurrentHashMap<>();
+    private volatile boolean nodeIdClashLogged;
+
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder bytesEncoded = new LongAdder();
+    private final LongAdder clusterPublished = new LongAdder();
+    private final LongAdder clusterTooLarge = new LongAdder();
+    private final LongAdder clusterRefused = new LongAdder();
+    private final LongAdder clusterPublishFailures = new LongAdder();
+    private final LongAdder clusterDelivered = new LongAdder();
+    private final LongAdder clusterHandled = new LongAdder();
+    private final LongAdder clusterOwnSuppressed = new LongAdder();
+    private final LongAdder clusterDuplicates = new LongAdder();
+
+    @PostConstruct
+    public void subscribeToCluster() {
+        if (clusterBus != null) {
+            clusterBus.subscribe(this::receive);
+        }
+    }
+
+    public void chat(Long roomId, Object payload) {
+        broadcast("/topic/chat/" + roomId, payload);
+    }
+
+    public void screenShare(Long roomId, Object payload) {
+        broadcast("/topic/screenshare/" + roomId, payload);
+    }
+
+    public void signal(String roomId, Object payload) {
+        broadcast("/topic/signal/" + roomId, payload);
+    }
+
+    // Serialize once and send the bytes to every subscriber of the destination
+    public void broadcast(String destination, Object payload) {
+        byte[] cbor = binaryPayloadCodec.hasCborSessions() ? binaryPayloadCodec.encode(payload) : null;
+        send(destination, encode(payload), cbor);
+    }
+
+    // Like broadcast, but a payload too large for the cluster bus is refused rather than reaching
+    // only this node's subscribers; returns whether it was sent
+    public boolean broadcastClusterWide(String destination, Object payload) {
+        byte[] json = encode(payload);
+        if (clusterBus != null && json.length > maxClusterPayloadBytes) {
+            clusterRefused.increment();
+            return false;
+        }
+        byte[] cbor = binaryPayloadCodec.hasCborSessions() ? binaryPayloadCodec.encode(payload) : null;
+        send(destination, json, cbor);
+        return true;
+    }
+
+    public int getMaxClusterPayloadBytes() {
+        return maxClusterPayloadBytes;
+    }
+
+    // Serialize a payload for one or more send calls
+    public byte[] encode(Object payload) {
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(payload);
+            bytesEncoded.add(bytes.length);
+            return bytes;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize broadcast payload", e);
+        }
+    }
+
+    // Send already-encoded JSON. The array must not be modified afterwards.
+    public void send(String destination, byte[] json) {
+        send(destination, json, null);
+    }
+
+    private void send(String destination, byte[] json, byte[] cbor) {
+        deliver(destination, json, cbor);
+        if (clusterBus != null) {
+            publish(destination, json);
+        }
+    }
+
+    public boolean isClustered() {
+        return clusterBus != null;
+    }
+
+    // Send an event to the other nodes only, for the handler registered for its destination there
+    public void publishToCluster(String destination, Object payload) {
+        if (!destination.startsWith(CLUSTER_ONLY_PREFIX)) {
+            throw new IllegalArgumentException("Cluster-only destinations start with " + CLUSTER_ONLY_PREFIX);
+        }
+        if (clusterBus != null) {
+            publish(destination, encode(payload));
+        }
+    }
+
+    // Take the cluster-only events for a destination that other nodes publish
+    public void onClusterEvent(String destination, Consumer<byte[]> handler) {
+        clusterHandlers.put(destination, handler);
+    }
+
+    // Hand the event to the other nodes; local subscribers already have it
+    private void publish(String destination, byte[] json) {
+        if (json.length > maxClusterPayloadBytes) {
+            clusterTooLarge.increment();
+            return;
+        }
+        try {
+            clusterBus.publish(new ClusterEvent(nodeId, instanceId, sequence.incrementAndGet(), destination, json));
+            clusterPublished.increment();
+        } catch (RuntimeException e) {
+            clusterPublishFailures.increment();
+            logger.warn("Failed to publish {} to the cluster bus: {}", destination, e.getMessage());
+        }
+    }
+
+    // An event from the bus: deliver it here unless it started here or was seen before
+    void receive(ClusterEvent event) {
+        if (event.originNode() == nodeId) {
+            if (instanceId.equals(event.originInstance())) {
+                clusterOwnSuppressed.increment();
+                return;
+            }
+            if (!nodeIdClashLogged) {
+                nodeIdClashLogged = true;
+                logger.error("Another node also uses chat.node-id {}; give every node its own id", nodeId);
+            }
+        }
+        Set<Long> seen = delivered.computeIfAbsent(event.originInstance(), k -> newDedupeWindow());
+        if (!seen.add(event.sequence())) {
+            clusterDuplicates.increment();
+            return;
+        }
+        if (event.destination().startsWith(CLUSTER_ONLY_PREFIX)) {
+            Consumer<byte[]> handler = clusterHandlers.get(event.destination());
+            if (handler != null) {
+                handler.accept(event.payload());
+                clusterHandled.increment();
+            }
+            return;
+        }
+        deliver(event.destination(), event.payload(), null);
+        clusterDelivered.increment();
+    }
+
+    private Set<Long> newDedupeWindow() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > dedupeWindow;
+            }
+        }));
+    }
+
+    private void deliver(String destination, byte[] json, byte[] cbor) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (cbor != null) {
+            accessor.setHeader(BinaryPayloadCodec.CBOR_PAYLOAD_HEADER, cbor);
+        }
+        accessor.setLeaveMutable(true);
+        MessageHeaders headers = accessor.getMessageHeaders();
+        Message<byte[]> message = MessageBuilder.createMessage(json, headers);
+        messagingTemplate.send(destination, message);
+        broadcasts.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("broadcasts", broadcasts.sum());
+        stats.put("bytesEncoded", bytesEncoded.sum());
+        if (clusterBus != null) {
+            Map<String, Object> cluster = new LinkedHashMap<>(clusterBus.getStats());
+            cluster.put("nodeId", nodeId);
+            cluster.put("eventsPublished", clusterPublished.sum());
+            cluster.put("tooLarge", clusterTooLarge.sum());
+            cluster.put("refused", clusterRefused.sum());
+            cluster.put("publishFailures", clusterPublishFailures.sum());
+            cluster.put("eventsDelivered", clusterDelivered.sum());
+            cluster.put("eventsHandled", clusterHandled.sum());
+            cluster.put("ownSuppressed", clusterOwnSuppressed.sum());
+            cluster.put("duplicatesSuppressed", clusterDuplicates.sum());
+            stats.put("cluster", cluster);
+        }
+        return stats;
+    }
+}
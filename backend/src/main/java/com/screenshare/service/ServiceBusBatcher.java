@@ -0,0 +1,288 @@
+package com.screenshare.service;
+
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batching, asynchronous sender for one Service Bus queue or topic
+ * Messages go into a bounded buffer and are answered with a future straight away. A flusher
+ * thread sends a batch once it holds maxMessages or its first message has waited lingerMs.
+ * Up to maxInFlight batches are sent at the same time. Batches that fail with a transient
+ * error are retried with exponential backoff and jitter, up to maxAttempts sends in total.
+ * The BatchSender does the actual I/O, so the batching can run without Azure.
+ */
+public class ServiceBusBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceBusBatcher.class);
+
+    /**
+     * Sends one batch of messages; the future completes once all of them are accepted
+     */
+    public interface BatchSender {
+
+        CompletableFuture<Void> send(List<ServiceBusMessage> messages);
+
+        // Whether a failed send is worth retrying
+        default boolean isTransient(Throwable error) {
+            return true;
+        }
+    }
+
+    public record Settings(int bufferCapacity, int maxMessages, long lingerMs, int maxInFlight,
+                           int maxAttempts, long retryBaseMs, long retryMaxMs, long shutdownTimeoutMs) {
+    }
+
+    private final String name;
+    private final BatchSender sender;
+    private final Settings settings;
+    private final BlockingQueue<Pending> buffer;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService retryScheduler;
+    // Batches waiting for their next attempt, each still holding an in-flight permit
+    private final Set<List<Pending>> awaitingRetry = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private Thread flusherThread;
+    private volatile boolean running;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final AtomicLong lastSendMillis = new AtomicLong();
+    private final AtomicLong maxSendMillis = new AtomicLong();
+
+    public ServiceBusBatcher(String name, BatchSender sender, Settings settings) {
+        this.name = name;
+        this.sender = sender;
+        this.settings = settings;
+        this.buffer = new ArrayBlockingQueue<>(settings.bufferCapacity());
+        this.inFlight = new Semaphore(settings.maxInFlight());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "servicebus-retry-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Buffer a message for the next batch
+     *
+     * @return a future completed when the message is sent, or failed once it is given up on;
+     *         it fails at once if the batcher is stopped or the buffer is full
+     */
+    public CompletableFuture<Void> submit(ServiceBusMessage message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running) {
+            rejected.increment();
+            future.completeExceptionally(new RuntimeException("Sender for " + name + " is not running"));
+        } else if (buffer.offer(new Pending(message, future, System.nanoTime()))) {
+            accepted.increment();
+        } else {
+            rejected.increment();
+            future.completeExceptionally(new RuntimeException("Send buffer for " + name + " is full"));
+        }
+        return future;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flusherThread = new Thread(this::runFlusher, "servicebus-batcher-" + name);
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    // Send everything still buffered, waiting at most shutdownTimeoutMs for it to go out
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long deadline = System.currentTimeMillis() + settings.shutdownTimeoutMs();
+        try {
+            flusherThread.join(settings.shutdownTimeoutMs());
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            if (inFlight.tryAcquire(settings.maxInFlight(), remaining, TimeUnit.MILLISECONDS)) {
+                inFlight.release(settings.maxInFlight());
+            } else {
+                logger.error("Service Bus sender for {} stopped with batches still in flight", name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retryScheduler.shutdownNow();
+        for (List<Pending> batch : new ArrayList<>(awaitingRetry)) {
+            if (awaitingRetry.remove(batch)) {
+                inFlight.release();
+                fail(batch, new RuntimeException("Sender for " + name + " stopped before the message was sent"));
+            }
+        }
+
+        List<Pending> unsent = new ArrayList<>();
+        buffer.drainTo(unsent);
+        if (!unsent.isEmpty()) {
+            logger.error("Service Bus sender for {} stopped with {} messages unsent", name, unsent.size());
+            fail(unsent, new RuntimeException("Sender for " + name + " stopped before the message was sent"));
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void runFlusher() {
+        int maxMessages = settings.maxMessages();
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.lingerMs());
+        while (running || !buffer.isEmpty()) {
+            List<Pending> batch = new ArrayList<>(maxMessages);
+            try {
+                Pending first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger is counted from when the oldest message was buffered
+                long deadline = first.bufferedAt + lingerNanos;
+                while (batch.size() < maxMessages) {
+                    buffer.drainTo(batch, maxMessages - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxMessages || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Pending next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                inFlight.acquire();
+                dispatch(batch, 1);
+            } catch (InterruptedException e) {
+                // Keep draining; stop() is what ends the loop
+                Thread.interrupted();
+                if (!batch.isEmpty()) {
+                    fail(batch, new RuntimeException("Sender for " + name + " was interrupted"));
+                }
+            } catch (Exception e) {
+                logger.error("Unexpected error in Service Bus batcher for {}", name, e);
+                fail(batch, e);
+            }
+        }
+    }
+
+    // One send attempt; holds an in-flight permit until the batch is sent or given up on
+    private void dispatch(List<Pending> batch, int attempt) {
+        List<ServiceBusMessage> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            messages.add(pending.message);
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> send;
+        try {
+            send = sender.send(messages);
+        } catch (Exception e) {
+            send = CompletableFuture.failedFuture(e);
+        }
+        send.whenComplete((ignored, error) -> {
+            long elapsed = System.currentTimeMillis() - start;
+            lastSendMillis.set(elapsed);
+            maxSendMillis.accumulateAndGet(elapsed, Math::max);
+            if (error == null) {
+                batches.increment();
+                sent.add(batch.size());
+                inFlight.release();
+                batch.forEach(pending -> pending.future.complete(null));
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (attempt < settings.maxAttempts() && sender.isTransient(cause) && !retryScheduler.isShutdown()) {
+                retries.increment();
+                long delay = backoffMillis(attempt);
+                logger.debug("Retrying batch of {} messages to {} in {} ms: {}", batch.size(), name, delay, cause.getMessage());
+                awaitingRetry.add(batch);
+                try {
+                    retryScheduler.schedule(() -> {
+                        if (awaitingRetry.remove(batch)) {
+                            dispatch(batch, attempt + 1);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (Exception rejectedRetry) {
+                    // Scheduler shut down in between; give up below unless stop() already did
+                    if (!awaitingRetry.remove(batch)) {
+                        return;
+                    }
+                }
+            }
+            inFlight.release();
+            logger.warn("Dropping batch of {} messages to {} after {} attempts: {}", batch.size(), name, attempt, cause.getMessage());
+            fail(batch, new RuntimeException("Failed to send message to " + name, cause));
+        });
+    }
+
+    // Exponential backoff capped at retryMaxMs; the delay is drawn from the upper half so retries spread out
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(settings.retryMaxMs(), settings.retryBaseMs() << Math.min(attempt - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private void fail(List<Pending> batch, Throwable error) {
+        failed.add(batch.size());
+        batch.forEach(pending -> pending.future.completeExceptionally(error));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    public Map<String, Object> getStats() {
+        long batchCount = batches.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running);
+        stats.put("buffered", buffer.size());
+        stats.put("bufferCapacity", settings.bufferCapacity());
+        stats.put("inFlightBatches", settings.maxInFlight() - inFlight.availablePermits());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("sent", sent.sum());
+        stats.put("failed", failed.sum());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount > 0 ? (double) sent.sum() / batchCount : 0.0);
+        stats.put("retries", retries.sum());
+        stats.put("lastSendMillis", lastSendMillis.get());
+        stats.put("maxSendMillis", maxSendMillis.get());
+        return stats;
+    }
+
+    private record Pending(ServiceBusMessage message, CompletableFuture<Void> future, long bufferedAt) {
+    }
+}
@@ -0,0 +1,310 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenshare.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Who is typing in each room, kept in memory only
+ * Each user's updates for a room are accepted at most once per min-update-interval-ms,
+ * except when they switch between typing and stopped. A user counts as typing until ttl-ms
+ * after their last accepted update. Every broadcast interval the sorted set of typing users
+ * is sent to /topic/typing/{roomId} for each room whose set changed, so a room costs at most
+ * one message per interval however many of its members are typing. Names come from the user
+ * record of the member's id, never from the client's frame.
+ * With a ClusterBus configured, each room where this node accepted updates during the interval
+ * has this node's typing members published once, with the time each has left. The other nodes
+ * replace that node's part of their state with it, keyed by the node it came from, and each
+ * node broadcasts the merged set to its own subscribers. Members connected to different nodes
+ * see each other typing, and cluster traffic follows rooms and intervals, not keystrokes.
+ */
+@Service
+public class TypingIndicatorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypingIndicatorService.class);
+
+    static final String DESTINATION = RoomBroadcaster.CLUSTER_ONLY_PREFIX + "typing";
+
+    @Value("${chat.typing.min-update-interval-ms:1000}")
+    private long minUpdateIntervalMs;
+
+    @Value("${chat.typing.ttl-ms:5000}")
+    private long ttlMs;
+
+    @Value("${chat.node-id:0}")
+    private int nodeId;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final Map<Long, RoomTyping> rooms = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder usernameLookups = new LongAdder();
+    private final LongAdder clusterPublished = new LongAdder();
+    private final LongAdder clusterApplied = new LongAdder();
+    private final LongAdder clusterUnreadable = new LongAdder();
+
+    /**
+     * The typing users of a room, as broadcast to its subscribers
+     */
+    public record TypingUpdate(Long roomId, List<String> typing) {
+    }
+
+    /**
+     * The members typing in a room on one node, as published to the other nodes once per interval
+     */
+    record NodeTyping(int node, Long roomId, List<TypingMember> typing) {
+    }
+
+    /**
+     * A member typing on the publishing node, for expiresInMs more
+     */
+    record TypingMember(Long userId, String username, long expiresInMs) {
+    }
+
+    /**
+     * A member's typing state as reported by one node
+     */
+    private record TypistKey(int node, Long userId) {
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (roomBroadcaster.isClustered()) {
+            roomBroadcaster.onClusterEvent(DESTINATION, this::receive);
+        }
+    }
+
+    // Record that a member started or stopped typing; false if dropped
+    public boolean update(Long roomId, Long userId, boolean typing) {
+        if (roomId == null || userId == null) {
+            rejected.increment();
+            return false;
+        }
+        if (!roomAccessCache.isActiveMember(roomId, userId)) {
+            rejected.increment();
+            return false;
+        }
+        TypistKey key = new TypistKey(nodeId, userId);
+        String username = usernameOf(roomId, key);
+        if (username == null) {
+            rejected.increment();
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean[] applied = new boolean[1];
+        // compute keeps the update atomic with the tick removing an idle room
+        rooms.compute(roomId, (id, room) -> {
+            RoomTyping target = room != null ? room : new RoomTyping();
+            applied[0] = target.update(key, username, typing, now, minUpdateIntervalMs, ttlMs);
+            return target;
+        });
+        (applied[0] ? accepted : rateLimited).increment();
+        return applied[0];
+    }
+
+    // Known while the member has an entry in the room, so only read once per typing spell
+    private String usernameOf(Long roomId, TypistKey key) {
+        RoomTyping room = rooms.get(roomId);
+        String username = room != null ? room.usernameOf(key) : null;
+        if (username != null) {
+            return username;
+        }
+        usernameLookups.increment();
+        return userRepository.findUsernameById(key.userId()).orElse(null);
+    }
+
+    // Another node's typing members for a room; they were rate limited and checked for membership there
+    void receive(byte[] payload) {
+        NodeTyping update;
+        try {
+            update = objectMapper.readValue(payload, NodeTyping.class);
+        } catch (IOException e) {
+            clusterUnreadable.increment();
+            logger.warn("Skipping unreadable typing update: {}", e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<TypingMember> typing = update.typing() != null ? update.typing() : List.of();
+        rooms.compute(update.roomId(), (id, room) -> {
+            RoomTyping target = room != null ? room : new RoomTyping();
+            target.replaceNode(update.node(), typing, now, ttlMs);
+            return target;
+        });
+        clusterApplied.increment();
+    }
+
+    // Send the typing set of every room where it changed since the last broadcast
+    @Scheduled(fixedDelayString = "${chat.typing.broadcast-interval-ms:250}")
+    public void broadcastChanges() {
+        if (rooms.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Long roomId : rooms.keySet()) {
+            RoomTyping room = rooms.get(roomId);
+            if (room == null) {
+                continue;
+            }
+            List<String> changed = room.changedTyping(now, expired);
+            if (changed != null) {
+                messagingTemplate.convertAndSend("/topic/typing/" + roomId, new TypingUpdate(roomId, changed));
+                broadcasts.increment();
+            }
+            List<TypingMember> local = room.takeLocalChanges(nodeId, now);
+            if (local != null && roomBroadcaster.isClustered()) {
+                roomBroadcaster.publishToCluster(DESTINATION, new NodeTyping(nodeId, roomId, local));
+                clusterPublished.increment();
+            }
+            rooms.computeIfPresent(roomId, (id, current) -> current.isIdle(now, minUpdateIntervalMs) ? null : current);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rooms", rooms.size());
+        stats.put("accepted", accepted.sum());
+        stats.put("rateLimited", rateLimited.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("expired", expired.sum());
+        stats.put("broadcasts", broadcasts.sum());
+        stats.put("usernameLookups", usernameLookups.sum());
+        if (roomBroadcaster.isClustered()) {
+            Map<String, Object> cluster = new LinkedHashMap<>();
+            cluster.put("published", clusterPublished.sum());
+            cluster.put("applied", clusterApplied.sum());
+            cluster.put("unreadable", clusterUnreadable.sum());
+            stats.put("cluster", cluster);
+        }
+        return stats;
+    }
+
+    /**
+     * Typing state of one room's members, per node they type on; its methods are synchronized on the instance
+     */
+    private static final class RoomTyping {
+        private final Map<TypistKey, Typist> typists = new HashMap<>();
+        private List<String> lastSent = List.of();
+        // An update was accepted on this node since its members were last published
+        private boolean localChanged;
+
+        synchronized boolean update(TypistKey key, String username, boolean typing, long now, long minIntervalMs, long ttlMs) {
+            Typist typist = typists.get(key);
+            if (typist != null && typist.isTyping(now) == typing && now - typist.lastAcceptedMillis < minIntervalMs) {
+                return false;
+            }
+            typist = typists.computeIfAbsent(key, k -> new Typist(username));
+            typist.lastAcceptedMillis = now;
+            typist.expiresAtMillis = typing ? now + ttlMs : 0;
+            localChanged = true;
+            return true;
+        }
+
+        synchronized String usernameOf(TypistKey key) {
+            Typist typist = typists.get(key);
+            return typist != null ? typist.username : null;
+        }
+
+        // Another node's typing members stand in for everything it said before
+        synchronized void replaceNode(int node, List<TypingMember> typing, long now, long ttlMs) {
+            typists.keySet().removeIf(key -> key.node() == node);
+            for (TypingMember member : typing) {
+                Typist typist = new Typist(member.username());
+                typist.lastAcceptedMillis = now;
+                typist.expiresAtMillis = now + Math.max(0, Math.min(member.expiresInMs(), ttlMs));
+                typists.put(new TypistKey(node, member.userId()), typist);
+            }
+        }
+
+        // This node's typing members if an update was accepted here since the last call, otherwise null
+        synchronized List<TypingMember> takeLocalChanges(int node, long now) {
+            if (!localChanged) {
+                return null;
+            }
+            localChanged = false;
+            List<TypingMember> typing = new ArrayList<>();
+            typists.forEach((key, typist) -> {
+                if (key.node() == node && typist.isTyping(now)) {
+                    typing.add(new TypingMember(key.userId(), typist.username, typist.expiresAtMillis - now));
+                }
+            });
+            return typing;
+        }
+
+        // The sorted typing usernames if they differ from the last broadcast, otherwise null;
+        // a member typing on several nodes is listed once
+        synchronized List<String> changedTyping(long now, LongAdder expired) {
+            Set<String> typing = new TreeSet<>();
+            for (Typist typist : typists.values()) {
+                if (typist.isTyping(now)) {
+                    typing.add(typist.username);
+                } else if (typist.expiresAtMillis != 0) {
+                    // Never sent a stop; clear it so it is only counted once
+                    typist.expiresAtMillis = 0;
+                    expired.increment();
+                }
+            }
+            List<String> sorted = List.copyOf(typing);
+            if (sorted.equals(lastSent)) {
+                return null;
+            }
+            lastSent = sorted;
+            return lastSent;
+        }
+
+        // Nothing left to send and nobody still inside their rate-limit interval
+        synchronized boolean isIdle(long now, long minIntervalMs) {
+            typists.values().removeIf(typist -> !typist.isTyping(now) && now - typist.lastAcceptedMillis >= minIntervalMs);
+            return typists.isEmpty() && lastSent.isEmpty() && !localChanged;
+        }
+    }
+
+    private static final class Typist {
+        private final String username;
+        private long lastAcceptedMillis;
+        private long expiresAtMillis;
+
+        private Typist(String username) {
+            this.username = username;
+        }
+
+        boolean isTyping(long now) {
+            return expiresAtMillis > now;
+        }
+    }
+}
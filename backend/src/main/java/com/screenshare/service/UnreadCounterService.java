@@ -0,0 +1,378 @@
+package com.screenshare.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unread message counts per user and room, kept up to date as messages are saved and read
+ * A user's counts are loaded on first use with one grouped query over the messages after their
+ * read watermark in each of their rooms, then held as sorted primitive arrays of room ids and
+ * counts. Each saved message increments the count of every loaded member but the sender,
+ * unless the member's watermark already covers it (read before write-behind inserted it). A
+ * watermark that reaches the newest counted message resets the count to 0; one that stops
+ * short, a deleted message or a membership change marks the user stale, and the next read
+ * reloads them. Increments that arrive during a load are replayed on top of its result when
+ * they are newer than what it counted. Users not read for evict-after-ms are dropped.
+ */
+@Service
+public class UnreadCounterService {
+
+    // Messages after the persisted watermark in each of the user's rooms
+    private static final String LOAD_SQL =
+            "SELECT m.chat_room_id, r.last_read_message_id, COUNT(*) AS unread, MAX(m.id) AS last_id " +
+            "FROM chat_room_members rm " +
+            "JOIN chat_messages m ON m.chat_room_id = rm.chat_room_id " +
+            "LEFT JOIN room_read_state r ON r.user_id = rm.user_id AND r.chat_room_id = rm.chat_room_id " +
+            "WHERE rm.user_id = ? AND m.sender_id <> rm.user_id AND m.is_deleted = ? " +
+            "AND m.id > COALESCE(r.last_read_message_id, 0) " +
+            "GROUP BY m.chat_room_id, r.last_read_message_id";
+
+    // One room, for watermarks that moved ahead of the persisted one
+    private static final String COUNT_ROOM_SQL =
+            "SELECT COUNT(*) AS unread, MAX(id) AS last_id FROM chat_messages " +
+            "WHERE chat_room_id = ? AND sender_id <> ? AND is_deleted = ? AND id > ?";
+
+    private static final long LOAD_WAIT_MS = 10_000;
+
+    @Value("${chat.unread.evict-after-ms:1800000}")
+    private long evictAfterMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    private final Map<Long, Counters> users = new ConcurrentHashMap<>();
+
+    private final LongAdder increments = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder roomRecounts = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void listenForWatermarks() {
+        readStateService.addListener(this::watermarkAdvanced);
+    }
+
+    // The user's unread count in each of their rooms with any unread messages
+    public Map<Long, Integer> getUnreadCounts(Long userId) {
+        if (userId == null) {
+            return Map.of();
+        }
+        for (int attempt = 0; ; attempt++) {
+            Counters counters = users.computeIfAbsent(userId, id -> new Counters());
+            Map<Long, Integer> counts = counters.awaitCounts(System.currentTimeMillis());
+            if (counts != null) {
+                return counts;
+            }
+            if (counters.claimLoad()) {
+                load(userId, counters);
+            } else if (attempt > 100) {
+                throw new RuntimeException("Timed out loading unread counts for user " + userId);
+            }
+        }
+    }
+
+    public int getUnreadCount(Long roomId, Long userId) {
+        return getUnreadCounts(userId).getOrDefault(roomId, 0);
+    }
+
+    // A message is in the database; counts for every loaded member except the sender and
+    // members who marked it read while it waited for write-behind
+    public void messageSaved(Long roomId, Long senderId, long messageId) {
+        roomAccessCache.get(roomId).ifPresent(access -> {
+            for (Long memberId : access.getMemberIds()) {
+                Counters counters = memberId.equals(senderId) ? null : users.get(memberId);
+                if (counters != null && readStateService.getCachedLastRead(roomId, memberId) < messageId) {
+                    counters.increment(roomId, messageId);
+                    increments.increment();
+                }
+            }
+        });
+    }
+
+    // A deleted message may have been counted by any member
+    public void messageDeleted(Long roomId) {
+        roomAccessCache.peek(roomId).ifPresent(access -> access.getMemberIds().forEach(this::invalidate));
+    }
+
+    // Joining a room brings its history; leaving drops it
+    public void membershipChanged(Long userId) {
+        invalidate(userId);
+    }
+
+    // Also told by ClusterInvalidationService about watermarks advanced on other nodes
+    void watermarkAdvanced(Long roomId, Long userId, long lastReadMessageId) {
+        Counters counters = users.get(userId);
+        if (counters == null) {
+            return;
+        }
+        if (counters.read(roomId, lastReadMessageId)) {
+            resets.increment();
+        } else {
+            invalidations.increment();
+        }
+    }
+
+    private void invalidate(Long userId) {
+        Counters counters = users.get(userId);
+        if (counters != null) {
+            counters.invalidate();
+            invalidations.increment();
+        }
+    }
+
+    private void load(Long userId, Counters counters) {
+        loads.increment();
+        Loaded loaded = new Loaded();
+        try {
+            jdbcTemplate.query(LOAD_SQL, rs -> {
+                long roomId = rs.getLong("chat_room_id");
+                long persistedLastRead = rs.getLong("last_read_message_id");
+                // A watermark not written yet counts from where the reader really is
+                long lastRead = readStateService.getCachedLastRead(roomId, userId);
+                if (lastRead > persistedLastRead) {
+                    loaded.deferred(roomId, lastRead);
+                } else {
+                    loaded.add(roomId, rs.getInt("unread"), rs.getLong("last_id"));
+                }
+            }, userId, false);
+            for (int i = 0; i < loaded.deferredSize; i++) {
+                long roomId = loaded.deferredRooms[i];
+                roomRecounts.increment();
+                jdbcTemplate.query(COUNT_ROOM_SQL, rs -> {
+                    loaded.add(roomId, rs.getInt("unread"), rs.getLong("last_id"));
+                }, roomId, userId, false, loaded.deferredLastRead[i]);
+            }
+        } catch (RuntimeException e) {
+            counters.loadFailed();
+            throw e;
+        }
+        replayed.add(counters.loaded(loaded));
+    }
+
+    // Drop users nobody has asked about for a while; their counts are loaded again on use
+    @Scheduled(fixedDelayString = "${chat.unread.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - evictAfterMs;
+        for (Long userId : users.keySet()) {
+            users.computeIfPresent(userId, (id, counters) -> {
+                if (counters.isIdleSince(cutoff)) {
+                    evictions.increment();
+                    return null;
+                }
+                return counters;
+            });
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", users.size());
+        stats.put("increments", increments.sum());
+        stats.put("resets", resets.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("loads", loads.sum());
+        stats.put("roomRecounts", roomRecounts.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    /**
+     * Room counts read by one load, sorted into place by Counters
+     */
+    private static final class Loaded {
+        private final RoomCounts rooms = new RoomCounts();
+        private long[] deferredRooms = new long[0];
+        private long[] deferredLastRead = new long[0];
+        private int deferredSize;
+
+        void add(long roomId, int unread, long through) {
+            if (unread > 0) {
+                int index = rooms.indexFor(roomId);
+                rooms.counts[index] = unread;
+                rooms.through[index] = through;
+            }
+        }
+
+        void deferred(long roomId, long lastRead) {
+            if (deferredSize == deferredRooms.length) {
+                deferredRooms = Arrays.copyOf(deferredRooms, Math.max(4, deferredSize * 2));
+                deferredLastRead = Arrays.copyOf(deferredLastRead, deferredRooms.length);
+            }
+            deferredRooms[deferredSize] = roomId;
+            deferredLastRead[deferredSize++] = lastRead;
+        }
+    }
+
+    /**
+     * Room ids in ascending order with their unread count and the newest message id counted
+     */
+    private static final class RoomCounts {
+        private long[] roomIds = new long[4];
+        private int[] counts = new int[4];
+        private long[] through = new long[4];
+        private int size;
+
+        int find(long roomId) {
+            return Arrays.binarySearch(roomIds, 0, size, roomId);
+        }
+
+        // Index of the room, inserting it with a zero count if absent
+        int indexFor(long roomId) {
+            int index = find(roomId);
+            if (index >= 0) {
+                return index;
+            }
+            index = -index - 1;
+            if (size == roomIds.length) {
+                roomIds = Arrays.copyOf(roomIds, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+                through = Arrays.copyOf(through, size * 2);
+            }
+            System.arraycopy(roomIds, index, roomIds, index + 1, size - index);
+            System.arraycopy(counts, index, counts, index + 1, size - index);
+            System.arraycopy(through, index, through, index + 1, size - index);
+            roomIds[index] = roomId;
+            counts[index] = 0;
+            through[index] = 0;
+            size++;
+            return index;
+        }
+
+        Map<Long, Integer> toMap() {
+            Map<Long, Integer> map = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (counts[i] > 0) {
+                    map.put(roomIds[i], counts[i]);
+                }
+            }
+            return map;
+        }
+    }
+
+    /**
+     * One user's counts; its methods are synchronized on the instance
+     * While loading, increments are kept as (room id, message id) pairs to replay afterwards.
+     */
+    private static final class Counters {
+        private RoomCounts rooms;
+        private boolean loading;
+        private boolean stale = true;
+        private long[] pending = new long[0];
+        private int pendingSize;
+        private volatile long accessedMillis = System.currentTimeMillis();
+
+        // The counts, waiting for a load in progress; null if the caller has to load
+        synchronized Map<Long, Integer> awaitCounts(long now) {
+            accessedMillis = now;
+            long deadline = now + LOAD_WAIT_MS;
+            while (loading) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted waiting for unread counts", e);
+                }
+            }
+            return stale ? null : rooms.toMap();
+        }
+
+        synchronized boolean claimLoad() {
+            if (loading || !stale) {
+                return false;
+            }
+            loading = true;
+            stale = false;
+            pendingSize = 0;
+            return true;
+        }
+
+        // Install a load's result and replay what arrived meanwhile; returns the replayed count
+        synchronized int loaded(Loaded result) {
+            int replayedCount = 0;
+            for (int i = 0; i < pendingSize; i += 2) {
+                long roomId = pending[i];
+                long messageId = pending[i + 1];
+                int index = result.rooms.find(roomId);
+                if (index < 0 || messageId > result.rooms.through[index]) {
+                    index = result.rooms.indexFor(roomId);
+                    result.rooms.counts[index]++;
+                    result.rooms.through[index] = Math.max(result.rooms.through[index], messageId);
+                    replayedCount++;
+                }
+            }
+            rooms = result.rooms;
+            pendingSize = 0;
+            loading = false;
+            notifyAll();
+            return replayedCount;
+        }
+
+        synchronized void loadFailed() {
+            loading = false;
+            stale = true;
+            notifyAll();
+        }
+
+        synchronized void increment(long roomId, long messageId) {
+            if (loading) {
+                if (pendingSize == pending.length) {
+                    pending = Arrays.copyOf(pending, Math.max(16, pendingSize * 2));
+                }
+                pending[pendingSize++] = roomId;
+                pending[pendingSize++] = messageId;
+            } else if (!stale) {
+                int index = rooms.indexFor(roomId);
+                rooms.counts[index]++;
+                rooms.through[index] = Math.max(rooms.through[index], messageId);
+            }
+        }
+
+        // True if the watermark covers everything counted, which resets the room
+        synchronized boolean read(long roomId, long lastReadMessageId) {
+            if (!loading && !stale) {
+                int index = rooms.find(roomId);
+                if (index < 0) {
+                    return true;
+                }
+                if (lastReadMessageId >= rooms.through[index]) {
+                    rooms.counts[index] = 0;
+                    return true;
+                }
+            }
+            stale = true;
+            return false;
+        }
+
+        synchronized void invalidate() {
+            stale = true;
+        }
+
+        synchronized boolean isIdleSince(long cutoff) {
+            return !loading && accessedMillis < cutoff;
+        }
+    }
+}
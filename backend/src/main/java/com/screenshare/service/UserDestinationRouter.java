@@ -0,0 +1,125 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenshare.config.MultiSessionUserRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends messages to a user's sessions on every node of a cluster
+ * convertAndSendToUser only reaches the sessions in this node's MultiSessionUserRegistry. With a
+ * ClusterBus configured, each message is also published as a cluster-only event naming the user,
+ * and every node that holds sessions for them delivers it through its own registry. The payload
+ * is serialized once and the same bytes are delivered on every node.
+ */
+@Service
+public class UserDestinationRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDestinationRouter.class);
+
+    static final String DESTINATION = RoomBroadcaster.CLUSTER_ONLY_PREFIX + "user";
+
+    /**
+     * One message for a user's sessions, with the destination they subscribed to under /user
+     */
+    record UserMessage(String username, String destination, byte[] payload) {
+    }
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder tooLarge = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder noSessions = new LongAdder();
+    private final LongAdder unreadable = new LongAdder();
+
+    @PostConstruct
+    public void subscribe() {
+        if (roomBroadcaster.isClustered()) {
+            roomBroadcaster.onClusterEvent(DESTINATION, this::receive);
+        }
+    }
+
+    // Deliver to the user's sessions here and hand the message to the other nodes for theirs
+    public void sendToUser(String username, String destination, Object payload) {
+        byte[] json = roomBroadcaster.encode(payload);
+        deliver(username, destination, json);
+        sent.increment();
+        if (!roomBroadcaster.isClustered()) {
+            return;
+        }
+        // The bus carries the payload base64-encoded, a third larger
+        if ((json.length + 2) / 3 * 4 > roomBroadcaster.getMaxClusterPayloadBytes()) {
+            tooLarge.increment();
+            logger.warn("Message to {} on {} is too large for the cluster bus ({} bytes); only sessions on this node get it",
+                    username, destination, json.length);
+            return;
+        }
+        roomBroadcaster.publishToCluster(DESTINATION, new UserMessage(username, destination, json));
+        published.increment();
+    }
+
+    // A message sent on another node; delivered only if the user has sessions here
+    void receive(byte[] payload) {
+        UserMessage message;
+        try {
+            message = objectMapper.readValue(payload, UserMessage.class);
+        } catch (IOException e) {
+            unreadable.increment();
+            logger.warn("Skipping unreadable user message: {}", e.getMessage());
+            return;
+        }
+        if (message.username() == null || userRegistry.getUser(message.username()) == null) {
+            noSessions.increment();
+            return;
+        }
+        deliver(message.username(), message.destination(), message.payload());
+        delivered.increment();
+    }
+
+    // The same /user/{username}/... destination convertAndSendToUser resolves through the registry
+    private void deliver(String username, String destination, byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+        messagingTemplate.send("/user/" + username.replace("/", "%2F") + destination, message);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("clustered", roomBroadcaster.isClustered());
+        stats.put("sent", sent.sum());
+        stats.put("published", published.sum());
+        stats.put("tooLarge", tooLarge.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("noSessions", noSessions.sum());
+        stats.put("unreadable", unreadable.sum());
+        return stats;
+    }
+}
@@ -80,9 +80,8 @@ public class UserService {
                 return AuthResponse.error("Invalid email or password");
             }
             
-            // Update last seen and status
+            // Status follows the user's WebSocket sessions, see PresenceService
             user.setLastSeenAt(LocalDateTime.now());
-            user.setStatus(UserStatus.ONLINE);
             userRepository.save(user);
             
             return AuthResponse.success("Login successful", user);
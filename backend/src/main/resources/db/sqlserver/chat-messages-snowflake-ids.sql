@@ -0,0 +1,99 @@
+-- chat_messages.id: from an IDENTITY column to ids assigned by SnowflakeIdGenerator
+--
+-- Explicit ids cannot be inserted into an IDENTITY column, and ddl-auto=update does not drop the
+-- IDENTITY property. The column is rebuilt in place: foreign keys referencing it and indexes
+-- containing it are dropped, its values are copied into a plain BIGINT column, and the primary
+-- key, indexes and foreign keys are recreated under their original names. Existing ids are kept;
+-- they are far below any generated id, so message order does not change.
+--
+-- Safe to run more than once and from several nodes at once: an application lock serializes the
+-- runs and the later ones find nothing to do. Runs as one batch, without GO separators.
+
+SET XACT_ABORT ON;
+
+BEGIN TRANSACTION;
+
+EXEC sp_getapplock @Resource = N'chat_messages.id', @LockMode = N'Exclusive', @LockOwner = N'Transaction',
+     @LockTimeout = 600000;
+
+IF OBJECT_ID(N'dbo.chat_messages', N'U') IS NOT NULL
+        AND COLUMNPROPERTY(OBJECT_ID(N'dbo.chat_messages'), N'id', N'IsIdentity') = 1
+BEGIN
+    DECLARE @table INT = OBJECT_ID(N'dbo.chat_messages');
+    DECLARE @idColumn INT = COLUMNPROPERTY(@table, N'id', N'ColumnId');
+    DECLARE @sql NVARCHAR(MAX);
+
+    -- Foreign keys referencing chat_messages (reply_to_message_id, message_read_receipts.message_id, ...)
+    DECLARE @foreignKeys TABLE (drop_sql NVARCHAR(MAX), create_sql NVARCHAR(MAX));
+    INSERT INTO @foreignKeys (drop_sql, create_sql)
+    SELECT N'ALTER TABLE ' + QUOTENAME(SCHEMA_NAME(parent.schema_id)) + N'.' + QUOTENAME(parent.name)
+               + N' DROP CONSTRAINT ' + QUOTENAME(fk.name),
+           N'ALTER TABLE ' + QUOTENAME(SCHEMA_NAME(parent.schema_id)) + N'.' + QUOTENAME(parent.name)
+               + N' WITH CHECK ADD CONSTRAINT ' + QUOTENAME(fk.name) + N' FOREIGN KEY ('
+               + (SELECT STRING_AGG(CAST(QUOTENAME(COL_NAME(c.parent_object_id, c.parent_column_id)) AS NVARCHAR(MAX)), N', ')
+                         WITHIN GROUP (ORDER BY c.constraint_column_id)
+                  FROM sys.foreign_key_columns c WHERE c.constraint_object_id = fk.object_id)
+               + N') REFERENCES dbo.chat_messages ('
+               + (SELECT STRING_AGG(CAST(QUOTENAME(COL_NAME(c.referenced_object_id, c.referenced_column_id)) AS NVARCHAR(MAX)), N', ')
+                         WITHIN GROUP (ORDER BY c.constraint_column_id)
+                  FROM sys.foreign_key_columns c WHERE c.constraint_object_id = fk.object_id)
+               + N') ON DELETE ' + REPLACE(fk.delete_referential_action_desc, N'_', N' ')
+               + N' ON UPDATE ' + REPLACE(fk.update_referential_action_desc, N'_', N' ')
+    FROM sys.foreign_keys fk
+    JOIN sys.tables parent ON parent.object_id = fk.parent_object_id
+    WHERE fk.referenced_object_id = @table;
+
+    -- Secondary indexes containing id, such as idx_chat_room_id (chat_room_id, id)
+    DECLARE @indexes TABLE (drop_sql NVARCHAR(MAX), create_sql NVARCHAR(MAX));
+    INSERT INTO @indexes (drop_sql, create_sql)
+    SELECT N'DROP INDEX ' + QUOTENAME(i.name) + N' ON dbo.chat_messages',
+           N'CREATE ' + CASE WHEN i.is_unique = 1 THEN N'UNIQUE ' ELSE N'' END + N'INDEX ' + QUOTENAME(i.name)
+               + N' ON dbo.chat_messages ('
+               + (SELECT STRING_AGG(CAST(QUOTENAME(COL_NAME(ic.object_id, ic.column_id))
+                                         + CASE WHEN ic.is_descending_key = 1 THEN N' DESC' ELSE N'' END AS NVARCHAR(MAX)), N', ')
+                         WITHIN GROUP (ORDER BY ic.key_ordinal)
+                  FROM sys.index_columns ic
+                  WHERE ic.object_id = i.object_id AND ic.index_id = i.index_id AND ic.is_included_column = 0)
+               + N')'
+               + ISNULL(N' INCLUDE ('
+                   + (SELECT STRING_AGG(CAST(QUOTENAME(COL_NAME(ic.object_id, ic.column_id)) AS NVARCHAR(MAX)), N', ')
+                      FROM sys.index_columns ic
+                      WHERE ic.object_id = i.object_id AND ic.index_id = i.index_id AND ic.is_included_column = 1)
+                   + N')', N'')
+    FROM sys.indexes i
+    WHERE i.object_id = @table AND i.type > 0 AND i.is_primary_key = 0 AND i.is_unique_constraint = 0
+      AND EXISTS (SELECT 1 FROM sys.index_columns ic
+                  WHERE ic.object_id = i.object_id AND ic.index_id = i.index_id AND ic.column_id = @idColumn);
+
+    DECLARE @primaryKey SYSNAME, @primaryKeyType NVARCHAR(60);
+    SELECT @primaryKey = i.name, @primaryKeyType = i.type_desc
+    FROM sys.indexes i
+    WHERE i.object_id = @table AND i.is_primary_key = 1;
+
+    SELECT @sql = STRING_AGG(drop_sql, N'; ') FROM @foreignKeys;
+    IF @sql IS NOT NULL EXEC (@sql);
+    SELECT @sql = STRING_AGG(drop_sql, N'; ') FROM @indexes;
+    IF @sql IS NOT NULL EXEC (@sql);
+    IF @primaryKey IS NOT NULL
+    BEGIN
+        SET @sql = N'ALTER TABLE dbo.chat_messages DROP CONSTRAINT ' + QUOTENAME(@primaryKey);
+        EXEC (@sql);
+    END
+
+    -- Each step compiles separately, since the batch cannot refer to id_snowflake before it exists
+    EXEC (N'ALTER TABLE dbo.chat_messages ADD id_snowflake BIGINT NULL');
+    EXEC (N'UPDATE dbo.chat_messages SET id_snowflake = id');
+    EXEC (N'ALTER TABLE dbo.chat_messages ALTER COLUMN id_snowflake BIGINT NOT NULL');
+    EXEC (N'ALTER TABLE dbo.chat_messages DROP COLUMN id');
+    EXEC sp_rename N'dbo.chat_messages.id_snowflake', N'id', N'COLUMN';
+
+    SET @sql = N'ALTER TABLE dbo.chat_messages ADD CONSTRAINT ' + QUOTENAME(ISNULL(@primaryKey, N'PK_chat_messages'))
+        + N' PRIMARY KEY ' + ISNULL(@primaryKeyType, N'CLUSTERED') + N' (id)';
+    EXEC (@sql);
+    SELECT @sql = STRING_AGG(create_sql, N'; ') FROM @indexes;
+    IF @sql IS NOT NULL EXEC (@sql);
+    SELECT @sql = STRING_AGG(create_sql, N'; ') FROM @foreignKeys;
+    IF @sql IS NOT NULL EXEC (@sql);
+END
+
+COMMIT TRANSACTION;
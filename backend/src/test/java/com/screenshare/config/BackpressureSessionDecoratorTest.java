@@ -0,0 +1,432 @@
+package com.screenshare.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackpressureSessionDecoratorTest {
+
+    private OutboundBackpressure backpressure;
+    private BlockingSession socket;
+    private BackpressureSessionDecorator session;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        backpressure = new OutboundBackpressure();
+        ReflectionTestUtils.setField(backpressure, "enabled", true);
+        ReflectionTestUtils.setField(backpressure, "chatQueueCapacity", 3);
+        ReflectionTestUtils.setField(backpressure, "screenShareQueueCapacity", 2);
+        ReflectionTestUtils.setField(backpressure, "coalescingEnabled", true);
+        ReflectionTestUtils.setField(backpressure, "maxCoalesceWindowMs", 200L);
+        ReflectionTestUtils.setField(backpressure, "maxCoalesceFrames", 3);
+        socket = new BlockingSession();
+        session = new BackpressureSessionDecorator(socket, backpressure);
+
+        // The first frame occupies the drain task until the socket is released
+        session.sendMessage(frame("/topic/chat/1", "first"));
+        assertTrue(socket.writing.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void screenShareOverflow_dropsOldestFrames() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            session.sendMessage(frame("/topic/screenshare-data/7", "frame" + i));
+        }
+        assertEquals(Map.of("chat", 0, "screenShare", 2, "signaling", 0), session.getStats().get("queued"));
+        assertEquals(3L, session.getStats().get("screenShareDropped"));
+
+        socket.release.countDown();
+        awaitSent(3);
+        assertEquals(List.of("first", "frame3", "frame4"), socket.bodies());
+        assertTrue(backpressure.getStats().toString().contains("7={queued=0, dropped=3}"));
+    }
+
+    @Test
+    public void screenShareDataFlood_neverDropsStartStopOrSignals() throws Exception {
+        session.sendMessage(frame("/topic/screenshare/7", "start"));
+        for (int i = 0; i < 20; i++) {
+            session.sendMessage(frame("/topic/screenshare-data/7", "data" + i));
+            if (i == 10) {
+                session.sendMessage(frame("/topic/screenshare", "offer"));
+            }
+        }
+        session.sendMessage(frame("/topic/screenshare/7", "stop"));
+        assertEquals(18L, session.getStats().get("screenShareDropped"));
+
+        socket.release.countDown();
+        awaitSent(6);
+        assertEquals(List.of("first", "start", "offer", "stop", "data18", "data19"), socket.bodies());
+    }
+
+    @Test
+    public void roomDrops_areForgottenOnceTheRoomGoesIdle() throws Exception {
+        ReflectionTestUtils.setField(backpressure, "roomDropsIdleMs", 60_000L);
+        for (int i = 0; i < 3; i++) {
+            session.sendMessage(frame("/topic/screenshare-data/7", "frame" + i));
+        }
+        backpressure.evictIdleRoomDrops();
+        assertEquals(Map.of("7", Map.of("queued", 0L, "dropped", 1L)), backpressure.getStats().get("perRoom"));
+
+        ReflectionTestUtils.setField(backpressure, "roomDropsIdleMs", 0L);
+        Thread.sleep(5);
+        backpressure.evictIdleRoomDrops();
+        assertEquals(Map.of(), backpressure.getStats().get("perRoom"));
+        assertEquals(1L, backpressure.getStats().get("screenShareDropped"));
+    }
+
+    @Test
+    public void chatOverflow_closesInsteadOfDropping() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            session.sendMessage(frame("/topic/chat/1", "chat" + i));
+        }
+        assertThrows(SessionLimitExceededException.class, () -> session.sendMessage(frame("/topic/chat/1", "chat3")));
+        assertEquals(0, session.queued());
+    }
+
+    @Test
+    public void signaling_isNeverDroppedAndDrainsFirst() throws Exception {
+        session.sendMessage(frame("/topic/chat/1", "chat"));
+        for (int i = 0; i < 50; i++) {
+            session.sendMessage(frame("/topic/signal/1", "signal" + i));
+        }
+        socket.release.countDown();
+        awaitSent(52);
+        assertEquals("signal0", socket.bodies().get(1));
+        assertEquals("chat", socket.bodies().get(51));
+    }
+
+    @Test
+    public void close_waitsForQueuedFrames() throws Exception {
+        session.sendMessage(new TextMessage("ERROR\nmessage:bad frame\n\n\u0000"));
+        session.close(CloseStatus.PROTOCOL_ERROR);
+        assertNull(socket.closeStatus);
+
+        socket.release.countDown();
+        awaitSent(2);
+        for (int i = 0; i < 100 && socket.closeStatus == null; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(CloseStatus.PROTOCOL_ERROR, socket.closeStatus);
+    }
+
+    @Test
+    public void coalescingSession_writesQueuedFramesTogether() throws Exception {
+        ReflectionTestUtils.setField(backpressure, "chatQueueCapacity", 10);
+        BlockingSession coalescedSocket = new BlockingSession();
+        coalescedSocket.release.countDown();
+        BackpressureSessionDecorator coalesced = new BackpressureSessionDecorator(coalescedSocket, backpressure);
+        backpressure.negotiate(coalesced, "CONNECT\naccept-version:1.2\ncoalesce-window-ms:500\n\n\u0000");
+        assertEquals(200L, coalesced.getStats().get("coalesceWindowMs"));
+
+        for (int i = 0; i < 5; i++) {
+            coalesced.sendMessage(frame("/topic/chat/1", "chat" + i));
+        }
+        for (int i = 0; i < 100 && coalescedSocket.sent.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        // A full batch goes out at once, the rest when the window ends
+        assertEquals(2, coalescedSocket.sent.size());
+        assertEquals(3, coalescedSocket.sent.get(0).split("\u0000").length);
+        assertEquals(2, coalescedSocket.sent.get(1).split("\u0000").length);
+        assertEquals(5L, coalesced.getStats().get("sent"));
+        assertEquals(2L, coalesced.getStats().get("writes"));
+        assertEquals(3L, backpressure.getStats().get("writesSaved"));
+    }
+
+    @Test
+    public void coalescingWindow_doesNotHoldASenderThread() throws Exception {
+        OutboundBackpressure fresh = new OutboundBackpressure();
+        ReflectionTestUtils.setField(fresh, "chatQueueCapacity", 10);
+        ReflectionTestUtils.setField(fresh, "coalescingEnabled", true);
+        ReflectionTestUtils.setField(fresh, "maxCoalesceWindowMs", 300L);
+        ReflectionTestUtils.setField(fresh, "maxCoalesceFrames", 10);
+        BlockingSession coalescedSocket = new BlockingSession();
+        coalescedSocket.release.countDown();
+        BackpressureSessionDecorator coalesced = new BackpressureSessionDecorator(coalescedSocket, fresh);
+        fresh.negotiate(coalesced, "CONNECT\naccept-version:1.2\ncoalesce-window-ms:300\n\n\u0000");
+
+        coalesced.sendMessage(frame("/topic/chat/1", "chat0"));
+        coalesced.sendMessage(frame("/topic/chat/1", "chat1"));
+        Thread.sleep(100);
+        // The window is open, yet no sender is busy with it
+        assertEquals(0, ((ThreadPoolExecutor) fresh.senders()).getActiveCount());
+        assertEquals(0, coalescedSocket.sent.size());
+
+        // A signaling frame ends the window early
+        coalesced.sendMessage(frame("/topic/signal/1", "offer"));
+        for (int i = 0; i < 100 && coalescedSocket.sent.size() < 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, coalescedSocket.sent.size());
+        assertEquals(3L, coalesced.getStats().get("sent"));
+    }
+
+    @Test
+    public void sessionWithoutCoalescingHeader_writesFramesOneByOne() throws Exception {
+        ReflectionTestUtils.setField(backpressure, "chatQueueCapacity", 10);
+        BlockingSession plainSocket = new BlockingSession();
+        plainSocket.release.countDown();
+        BackpressureSessionDecorator plain = new BackpressureSessionDecorator(plainSocket, backpressure);
+        backpressure.negotiate(plain, "CONNECT\naccept-version:1.2\n\n\u0000");
+
+        for (int i = 0; i < 5; i++) {
+            plain.sendMessage(frame("/topic/chat/1", "chat" + i));
+        }
+        for (int i = 0; i < 100 && plainSocket.sent.size() < 5; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, plainSocket.sent.size());
+        assertFalse(plain.isCoalescing());
+    }
+
+    @Test
+    public void compressingSession_deflatesLargeChatBodiesAgainstEarlierFrames() throws Exception {
+        ReflectionTestUtils.setField(backpressure, "chatQueueCapacity", 10);
+        ReflectionTestUtils.setField(backpressure, "compressionEnabled", true);
+        ReflectionTestUtils.setField(backpressure, "compressionMinSize", 100);
+        ReflectionTestUtils.setField(backpressure, "compressionLevel", 6);
+        BlockingSession compressedSocket = new BlockingSession();
+        compressedSocket.release.countDown();
+        BackpressureSessionDecorator compressed = new BackpressureSessionDecorator(compressedSocket, backpressure);
+        backpressure.negotiate(compressed, "CONNECT\naccept-version:1.2\naccept-encoding:gzip, deflate\n\n\u0000");
+        assertTrue(compressed.isCompressing());
+
+        String first = chatJson("Sure, I'll push the fix after lunch and ping you when the build is green");
+        String second = chatJson("Build is green, the fix is pushed, ping me if anything else breaks");
+        compressed.sendMessage(sizedFrame("/topic/chat/1", first));
+        compressed.sendMessage(sizedFrame("/topic/chat/1", "ok"));
+        compressed.sendMessage(sizedFrame("/topic/screenshare-data/1", first));
+        compressed.sendMessage(sizedFrame("/topic/chat/1", second));
+        for (int i = 0; i < 100 && compressedSocket.messages.size() < 4; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, compressedSocket.messages.size());
+
+        // Small and screen-share frames stay text; both chat bodies inflate from one stream
+        List<WebSocketMessage<?>> binary = compressedSocket.messages.stream().filter(BinaryMessage.class::isInstance).toList();
+        assertEquals(2, binary.size());
+        assertEquals(2, compressedSocket.sent.size());
+        Inflater inflater = new Inflater(true);
+        byte[] firstFrame = binaryPayload(binary.get(0));
+        byte[] secondFrame = binaryPayload(binary.get(1));
+        assertTrue(new String(firstFrame, StandardCharsets.UTF_8).contains("\ncontent-encoding:deflate\n"));
+        assertEquals(first, inflate(inflater, firstFrame));
+        assertEquals(second, inflate(inflater, secondFrame));
+        assertTrue(secondFrame.length < firstFrame.length);
+
+        Map<?, ?> stats = (Map<?, ?>) compressed.getStats().get("compression");
+        assertEquals(2L, stats.get("compressedFrames"));
+        assertEquals(1L, stats.get("belowThreshold"));
+        assertTrue((Double) backpressure.getStats().get("compressionRatio") < 1.0);
+    }
+
+    @Test
+    public void perMessageDeflatedSession_isNotCompressedAgain() {
+        ReflectionTestUtils.setField(backpressure, "compressionEnabled", true);
+        BlockingSession deflatedSocket = new BlockingSession();
+        deflatedSocket.extensions = List.of(new WebSocketExtension("permessage-deflate"));
+        BackpressureSessionDecorator deflated = new BackpressureSessionDecorator(deflatedSocket, backpressure);
+        backpressure.negotiate(deflated, "CONNECT\naccept-version:1.2\naccept-encoding:deflate\n\n\u0000");
+        assertFalse(deflated.isCompressing());
+    }
+
+    @Test
+    public void senders_useVirtualThreadsOnlyWhenEnabled() throws Exception {
+        assertFalse(backpressure.senders().submit(() -> Thread.currentThread().isVirtual()).get(5, TimeUnit.SECONDS));
+
+        OutboundBackpressure virtual = new OutboundBackpressure();
+        ReflectionTestUtils.setField(virtual, "virtualThreads", true);
+        assertTrue(virtual.senders().submit(() -> Thread.currentThread().isVirtual()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void saturatedSenders_closeStalledSessionsSoHealthyOnesAreServed() throws Exception {
+        OutboundBackpressure shared = new OutboundBackpressure();
+        ReflectionTestUtils.setField(shared, "enabled", true);
+        ReflectionTestUtils.setField(shared, "chatQueueCapacity", 10);
+        ReflectionTestUtils.setField(shared, "senderThreads", 2);
+        ReflectionTestUtils.setField(shared, "senderQueueCapacity", 100);
+        ReflectionTestUtils.setField(shared, "sendTimeLimitMs", 15_000L);
+        ReflectionTestUtils.setField(shared, "saturatedStallCloseMs", 100L);
+        WebSocketHandler handler = shared.decorate(new CapturingHandler());
+
+        // More stalled sessions than sender threads
+        List<BlockingSession> stalled = List.of(new BlockingSession("stalled-1"), new BlockingSession("stalled-2"),
+                new BlockingSession("stalled-3"));
+        for (BlockingSession stalledSocket : stalled) {
+            connected(handler, stalledSocket).sendMessage(frame("/topic/chat/1", "stuck"));
+        }
+        assertTrue(stalled.get(0).writing.await(5, TimeUnit.SECONDS));
+        assertTrue(stalled.get(1).writing.await(5, TimeUnit.SECONDS));
+
+        BlockingSession healthySocket = new BlockingSession("healthy");
+        healthySocket.release.countDown();
+        connected(handler, healthySocket).sendMessage(frame("/topic/chat/1", "hello"));
+        Thread.sleep(200);
+        assertEquals(0, healthySocket.sent.size());
+        assertEquals(2, shared.getStats().get("senderThreads"));
+
+        // Writes stuck past the saturated limit are closed, which frees their senders
+        shared.closeStalledSessions();
+        for (int i = 0; i < 500 && healthySocket.sent.size() < 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, healthySocket.sent.size());
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, stalled.get(0).closeStatus);
+        assertTrue((Long) shared.getStats().get("stalledCloses") >= 2);
+        stalled.forEach(stalledSocket -> stalledSocket.release.countDown());
+    }
+
+    @Test
+    public void unsaturatedSenders_leaveSlowWritesToTheSendTimeLimit() throws Exception {
+        OutboundBackpressure shared = new OutboundBackpressure();
+        ReflectionTestUtils.setField(shared, "enabled", true);
+        ReflectionTestUtils.setField(shared, "senderThreads", 4);
+        ReflectionTestUtils.setField(shared, "senderQueueCapacity", 100);
+        ReflectionTestUtils.setField(shared, "sendTimeLimitMs", 15_000L);
+        ReflectionTestUtils.setField(shared, "saturatedStallCloseMs", 0L);
+        BlockingSession slow = new BlockingSession("slow");
+        connected(shared.decorate(new CapturingHandler()), slow).sendMessage(frame("/topic/chat/1", "slow"));
+        assertTrue(slow.writing.await(5, TimeUnit.SECONDS));
+
+        shared.closeStalledSessions();
+        assertNull(slow.closeStatus);
+        slow.release.countDown();
+    }
+
+    // Open a session through the decorated handler and return what the STOMP handler would get
+    private static WebSocketSession connected(WebSocketHandler handler, WebSocketSession socket) throws Exception {
+        handler.afterConnectionEstablished(socket);
+        return CapturingHandler.last;
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && socket.sent.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, socket.sent.size());
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\n\n" + body + "\u0000");
+    }
+
+    private static TextMessage sizedFrame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\ncontent-length:"
+                + body.getBytes(StandardCharsets.UTF_8).length + "\n\n" + body + "\u0000");
+    }
+
+    private static String chatJson(String content) {
+        return "{\"id\":\"1234567890123456\",\"content\":\"" + content + "\",\"sender\":\"alice\","
+                + "\"senderId\":3,\"type\":\"CHAT\",\"timestamp\":\"2025-03-14T09:26:53.123\"}";
+    }
+
+    private static byte[] binaryPayload(WebSocketMessage<?> message) {
+        ByteBuffer payload = ((BinaryMessage) message).getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    // Inflate the body of a compressed frame, continuing the stream of earlier frames
+    private static String inflate(Inflater inflater, byte[] frame) throws Exception {
+        int bodyStart = new String(frame, StandardCharsets.ISO_8859_1).indexOf("\n\n") + 2;
+        inflater.setInput(frame, bodyStart, frame.length - 1 - bodyStart);
+        byte[] out = new byte[4096];
+        int length = inflater.inflate(out);
+        return new String(out, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Stands in for the STOMP handler, keeping the session it was handed
+    private static final class CapturingHandler implements WebSocketHandler {
+        static volatile WebSocketSession last;
+
+        @Override public void afterConnectionEstablished(WebSocketSession session) { last = session; }
+        @Override public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) { }
+        @Override public void handleTransportError(WebSocketSession session, Throwable exception) { }
+        @Override public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) { }
+        @Override public boolean supportsPartialMessages() { return false; }
+    }
+
+    // Session whose socket write blocks until released, or until the socket is closed
+    private static final class BlockingSession implements WebSocketSession {
+        final String id;
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final List<WebSocketMessage<?>> messages = new CopyOnWriteArrayList<>();
+        volatile CloseStatus closeStatus;
+        volatile List<WebSocketExtension> extensions = List.of();
+
+        BlockingSession() {
+            this("s1");
+        }
+
+        BlockingSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (message instanceof TextMessage text) {
+                sent.add(text.getPayload());
+            }
+            messages.add(message);
+        }
+
+        List<String> bodies() {
+            return sent.stream().map(frame -> frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1)).toList();
+        }
+
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return null; }
+        @Override public HttpHeaders getHandshakeHeaders() { return HttpHeaders.EMPTY; }
+        @Override public Map<String, Object> getAttributes() { return Collections.emptyMap(); }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return "v12.stomp"; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getTextMessageSizeLimit() { return 0; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getBinaryMessageSizeLimit() { return 0; }
+        @Override public List<WebSocketExtension> getExtensions() { return extensions; }
+        @Override public boolean isOpen() { return closeStatus == null; }
+        @Override public void close() { close(CloseStatus.NORMAL); }
+        @Override public void close(CloseStatus status) {
+            closeStatus = status;
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.screenshare.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.screenshare.controller.ChatController;
+import com.screenshare.controller.ScreenShareController;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JSON vs CBOR payloads for chat and screen-share traffic: wire shape of the CBOR encoding, and
+ * size and encode/decode cost per message. The benchmark is excluded from the default build;
+ * run it with -Pbenchmark.
+ */
+public class BinaryPayloadCodecBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURED_ROUNDS = 50_000;
+    private static final int SCREEN_FRAME_BYTES = 48 * 1024;
+
+    private final BinaryPayloadCodec codec = new BinaryPayloadCodec();
+    // As configured by Spring Boot: ISO-8601 date strings
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @Test
+    public void cbor_writesEpochMillisAndRawBytes() throws Exception {
+        ChatController.ChatMessage chat = chatMessage(1);
+        JsonNode chatTree = codec.getObjectMapper().readTree(codec.encode(chat));
+        assertTrue(chatTree.get("timestamp").isIntegralNumber());
+        assertEquals(chat.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                chatTree.get("timestamp").asLong());
+
+        ScreenShareController.ScreenShareMessage frame = screenFrame(new Random(1));
+        JsonNode frameTree = codec.getObjectMapper().readTree(codec.encode(frame));
+        assertTrue(frameTree.get("data").isBinary());
+        assertArrayEquals(Base64.getDecoder().decode(frame.getData()), frameTree.get("data").binaryValue());
+
+        // JSON keeps the base64 text
+        assertEquals(frame.getData(), json.readTree(json.writeValueAsBytes(frame)).get("data").asText());
+    }
+
+    @Test
+    public void converter_readsOnlyCborFrames() throws Exception {
+        MessageConverter converter = codec.messageConverter();
+        ChatController.ChatMessage chat = chatMessage(7);
+
+        Message<byte[]> cborFrame = frame(codec.encode(chat), BinaryPayloadCodec.APPLICATION_CBOR.toString());
+        ChatController.ChatMessage decoded = (ChatController.ChatMessage) converter.fromMessage(cborFrame, ChatController.ChatMessage.class);
+        assertEquals(chat.getContent(), decoded.getContent());
+        assertEquals(chat.getTimestamp().withNano(chat.getTimestamp().getNano() / 1_000_000 * 1_000_000), decoded.getTimestamp());
+
+        ScreenShareController.ScreenShareMessage screen = screenFrame(new Random(2));
+        ScreenShareController.ScreenShareMessage decodedScreen = (ScreenShareController.ScreenShareMessage) converter.fromMessage(
+                frame(codec.encode(screen), BinaryPayloadCodec.APPLICATION_CBOR.toString()), ScreenShareController.ScreenShareMessage.class);
+        assertEquals(screen.getData(), decodedScreen.getData());
+
+        Message<byte[]> jsonFrame = frame(json.writeValueAsBytes(chat), MimeTypeUtils.APPLICATION_JSON_VALUE);
+        assertNull(converter.fromMessage(jsonFrame, ChatController.ChatMessage.class));
+    }
+
+    @Tag("benchmark")
+    @Test
+    public void cborVsJson_sizeAndCpu() throws Exception {
+        Random random = new Random(42);
+        List<Object> chats = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            chats.add(chatMessage(i));
+        }
+        List<Object> frames = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            frames.add(screenFrame(random));
+        }
+
+        System.out.printf("%n%-13s %-5s %9s %11s %11s%n", "traffic", "codec", "bytes/msg", "encode ns", "decode ns");
+        report("chat", chats, ChatController.ChatMessage.class);
+        report("screen-share", frames, ScreenShareController.ScreenShareMessage.class);
+    }
+
+    private void report(String traffic, List<Object> messages, Class<?> type) throws Exception {
+        int rounds = type == ChatController.ChatMessage.class ? MEASURED_ROUNDS : MEASURED_ROUNDS / 50;
+        for (ObjectMapper mapper : List.of(json, codec.getObjectMapper())) {
+            long bytes = 0;
+            for (Object message : messages) {
+                bytes += mapper.writeValueAsBytes(message).length;
+            }
+            List<byte[]> encoded = new ArrayList<>();
+            for (Object message : messages) {
+                encoded.add(mapper.writeValueAsBytes(message));
+            }
+
+            measureEncode(mapper, messages, WARMUP_ROUNDS / 10);
+            long encodeNanos = measureEncode(mapper, messages, rounds);
+            measureDecode(mapper, encoded, type, WARMUP_ROUNDS / 10);
+            long decodeNanos = measureDecode(mapper, encoded, type, rounds);
+
+            System.out.printf("%-13s %-5s %9d %11d %11d%n", traffic, mapper == json ? "json" : "cbor",
+                    bytes / messages.size(), encodeNanos / rounds, decodeNanos / rounds);
+        }
+    }
+
+    private static long measureEncode(ObjectMapper mapper, List<Object> messages, int rounds) throws Exception {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += mapper.writeValueAsBytes(messages.get(i % messages.size())).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink > 0);
+        return elapsed;
+    }
+
+    private static long measureDecode(ObjectMapper mapper, List<byte[]> encoded, Class<?> type, int rounds) throws Exception {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += mapper.readValue(encoded.get(i % encoded.size()), type).hashCode() & 1;
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink >= 0);
+        return elapsed;
+    }
+
+    private static Message<byte[]> frame(byte[] payload, String contentType) {
+        return MessageBuilder.withPayload(payload).setHeader(MessageHeaders.CONTENT_TYPE, contentType).build();
+    }
+
+    private static ChatController.ChatMessage chatMessage(int i) {
+        ChatController.ChatMessage message = new ChatController.ChatMessage();
+        message.setId(1_234_567_890_123_456L + i);
+        message.setContent("Sure, I'll push the fix after lunch and ping you when the build is green #" + i);
+        message.setSender("user" + (i % 20));
+        message.setSenderId((long) (i % 20));
+        message.setType(ChatController.ChatMessage.MessageType.CHAT);
+        message.setTimestamp(LocalDateTime.of(2025, 3, 14, 9, 26, 53).plusSeconds(i).plusNanos(123_456_789));
+        return message;
+    }
+
+    // A JPEG-sized frame of incompressible bytes, base64 encoded as the client sends it
+    private static ScreenShareController.ScreenShareMessage screenFrame(Random random) {
+        byte[] jpeg = new byte[SCREEN_FRAME_BYTES];
+        random.nextBytes(jpeg);
+        ScreenShareController.ScreenShareMessage message = new ScreenShareController.ScreenShareMessage();
+        message.setAction("data");
+        message.setUserId("42");
+        message.setRoomId("7");
+        message.setData(Base64.getEncoder().encodeToString(jpeg));
+        return message;
+    }
+}
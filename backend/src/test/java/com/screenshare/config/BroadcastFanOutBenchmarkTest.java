@@ -0,0 +1,229 @@
+package com.screenshare.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.screenshare.service.RoomBroadcaster;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Room fan-out through the simple broker and the STOMP encoder, before and after serialize-once
+ * broadcasting. The benchmark is excluded from the default build; run it with -Pbenchmark.
+ */
+public class BroadcastFanOutBenchmarkTest {
+
+    private static final String DESTINATION = "/topic/chat/1";
+    private static final int SUBSCRIBERS = 1000;
+    private static final int WARMUP_ROUNDS = 2000;
+    private static final int MEASURED_ROUNDS = 500;
+
+    @Test
+    public void sharedFrames_decodeToTheSameMessagesAsDefaultEncoding() throws Exception {
+        FanOut before = new FanOut(3, false);
+        FanOut after = new FanOut(3, true);
+        before.convertAndSend(payload());
+        after.broadcast(payload());
+
+        for (int i = 0; i < 3; i++) {
+            Message<byte[]> expected = decode(before.sessions.get(i).lastFrame);
+            Message<byte[]> actual = decode(after.sessions.get(i).lastFrame);
+            StompHeaderAccessor expectedHeaders = StompHeaderAccessor.wrap(expected);
+            StompHeaderAccessor actualHeaders = StompHeaderAccessor.wrap(actual);
+
+            assertArrayEquals(expected.getPayload(), actual.getPayload());
+            assertEquals(expectedHeaders.getCommand(), actualHeaders.getCommand());
+            assertEquals(expectedHeaders.getDestination(), actualHeaders.getDestination());
+            assertEquals(expectedHeaders.getSubscriptionId(), actualHeaders.getSubscriptionId());
+            assertEquals(expectedHeaders.getContentLength(), actualHeaders.getContentLength());
+            assertEquals(expectedHeaders.getContentType(), actualHeaders.getContentType());
+            assertNotNull(actualHeaders.getMessageId());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void allocationsPerFanOut() throws Exception {
+        FanOut before = new FanOut(SUBSCRIBERS, false);
+        FanOut after = new FanOut(SUBSCRIBERS, true);
+        Map<String, Object> payload = payload();
+
+        long beforeBytes = measure(() -> before.convertAndSend(payload));
+        long afterBytes = measure(() -> after.broadcast(payload));
+
+        System.out.printf("Fan-out to %d subscribers, %d-byte payload%n", SUBSCRIBERS, after.lastPayloadSize);
+        System.out.printf("  convertAndSend + default encoder: %,d bytes allocated per fan-out (%,d per subscriber)%n",
+                beforeBytes, beforeBytes / SUBSCRIBERS);
+        System.out.printf("  RoomBroadcaster + shared frames:  %,d bytes allocated per fan-out (%,d per subscriber)%n",
+                afterBytes, afterBytes / SUBSCRIBERS);
+        assertTrue(afterBytes < beforeBytes, "shared frames should allocate less per fan-out");
+    }
+
+    private static long measure(Runnable fanOut) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            fanOut.run();
+        }
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            fanOut.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - start) / MEASURED_ROUNDS;
+    }
+
+    private static Map<String, Object> payload() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("id", "369619147371315200");
+        payload.put("content", "Has everyone had a chance to look at the slides for tomorrow? ".repeat(4));
+        payload.put("sender", "alice");
+        payload.put("senderId", 1L);
+        payload.put("type", "CHAT");
+        payload.put("timestamp", LocalDateTime.of(2024, 5, 1, 12, 0));
+        return payload;
+    }
+
+    private static Message<byte[]> decode(byte[] frame) {
+        List<Message<byte[]>> messages = new StompDecoder().decode(ByteBuffer.wrap(frame));
+        assertEquals(1, messages.size());
+        return messages.get(0);
+    }
+
+    private static ObjectMapper objectMapper() {
+        return new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    /**
+     * A simple broker with subscribed sessions whose outbound messages go through a STOMP handler
+     * on the sending thread, as the client outbound channel would deliver them
+     */
+    private static final class FanOut {
+        private final List<RecordingSession> sessions = new ArrayList<>();
+        private final SimpMessagingTemplate template;
+        private final RoomBroadcaster broadcaster = new RoomBroadcaster();
+        private int lastPayloadSize;
+
+        FanOut(int subscribers, boolean sharedFrames) {
+            StompSubProtocolHandler stompHandler = new StompSubProtocolHandler();
+            if (sharedFrames) {
+                stompHandler.setEncoder(new SharedFrameStompEncoder());
+            }
+            Map<String, RecordingSession> sessionsById = new HashMap<>();
+            ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+            clientOutbound.subscribe(message -> {
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                stompHandler.handleMessageToClient(sessionsById.get(sessionId), message);
+            });
+
+            SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+                    clientOutbound, new ExecutorSubscribableChannel(), List.of("/topic"));
+            broker.start();
+            for (int i = 0; i < subscribers; i++) {
+                RecordingSession session = new RecordingSession("session-" + i);
+                sessions.add(session);
+                sessionsById.put(session.getId(), session);
+                broker.handleMessage(control(SimpMessageType.CONNECT, session.getId()));
+                broker.handleMessage(control(SimpMessageType.SUBSCRIBE, session.getId()));
+            }
+
+            template = new SimpMessagingTemplate((message, timeout) -> {
+                broker.handleMessage(message);
+                return true;
+            });
+            MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+            converter.setObjectMapper(objectMapper());
+            template.setMessageConverter(converter);
+
+            ReflectionTestUtils.setField(broadcaster, "messagingTemplate", template);
+            ReflectionTestUtils.setField(broadcaster, "objectMapper", objectMapper());
+        }
+
+        private static Message<byte[]> control(SimpMessageType type, String sessionId) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+            accessor.setSessionId(sessionId);
+            if (type == SimpMessageType.SUBSCRIBE) {
+                accessor.setSubscriptionId("sub-0");
+                accessor.setDestination(DESTINATION);
+            }
+            return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        }
+
+        void convertAndSend(Object payload) {
+            template.convertAndSend(DESTINATION, payload);
+        }
+
+        void broadcast(Object payload) {
+            byte[] json = broadcaster.encode(payload);
+            lastPayloadSize = json.length;
+            broadcaster.send(DESTINATION, json);
+        }
+    }
+
+    private static final class RecordingSession implements WebSocketSession {
+        private final String id;
+        private byte[] lastFrame;
+
+        RecordingSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            if (message instanceof TextMessage text) {
+                lastFrame = text.asBytes();
+            }
+        }
+
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return null; }
+        @Override public HttpHeaders getHandshakeHeaders() { return HttpHeaders.EMPTY; }
+        @Override public Map<String, Object> getAttributes() { return Collections.emptyMap(); }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return "v12.stomp"; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getTextMessageSizeLimit() { return 0; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getBinaryMessageSizeLimit() { return 0; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() { }
+        @Override public void close(CloseStatus status) { }
+    }
+}
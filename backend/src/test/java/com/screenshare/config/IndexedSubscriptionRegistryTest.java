@@ -0,0 +1,91 @@
+package com.screenshare.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedSubscriptionRegistryTest {
+
+    @Test
+    public void exactSubscriptions_areFoundAndRemoved() {
+        IndexedSubscriptionRegistry registry = new IndexedSubscriptionRegistry();
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/chat/1"));
+        registry.registerSubscription(subscribe("s1", "sub-1", "/topic/chat/1"));
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/chat/1"));
+        registry.registerSubscription(subscribe("s2", "sub-1", "/topic/chat/2"));
+
+        MultiValueMap<String, String> room1 = registry.findSubscriptions(publish("/topic/chat/1"));
+        assertEquals(List.of("sub-0", "sub-1"), room1.get("s1"));
+        assertEquals(List.of("sub-0"), room1.get("s2"));
+        assertEquals(List.of("sub-1"), registry.findSubscriptions(publish("/topic/chat/2")).get("s2"));
+        assertTrue(registry.findSubscriptions(publish("/topic/chat/3")).isEmpty());
+
+        registry.unregisterSubscription(unsubscribe("s1", "sub-0"));
+        assertEquals(List.of("sub-1"), registry.findSubscriptions(publish("/topic/chat/1")).get("s1"));
+
+        registry.unregisterAllSubscriptions("s2");
+        room1 = registry.findSubscriptions(publish("/topic/chat/1"));
+        assertFalse(room1.containsKey("s2"));
+        assertTrue(registry.findSubscriptions(publish("/topic/chat/2")).isEmpty());
+        assertEquals(1, registry.getStats().get("destinations"));
+    }
+
+    @Test
+    public void snapshotsHandedToPublishers_areNotChangedBySubscribes() {
+        IndexedSubscriptionRegistry registry = new IndexedSubscriptionRegistry();
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/chat/1"));
+        MultiValueMap<String, String> snapshot = registry.findSubscriptions(publish("/topic/chat/1"));
+
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/chat/1"));
+        registry.unregisterAllSubscriptions("s1");
+
+        assertEquals(1, snapshot.size());
+        assertEquals(List.of("sub-0"), snapshot.get("s1"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add("s3", "sub-0"));
+    }
+
+    @Test
+    public void patternSubscriptions_areMergedWithExactOnes() {
+        IndexedSubscriptionRegistry registry = new IndexedSubscriptionRegistry();
+        registry.registerSubscription(subscribe("s1", "sub-0", "/topic/chat/1"));
+        registry.registerSubscription(subscribe("s1", "sub-9", "/topic/chat/*"));
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/**"));
+
+        MultiValueMap<String, String> room1 = registry.findSubscriptions(publish("/topic/chat/1"));
+        assertEquals(List.of("sub-0", "sub-9"), room1.get("s1"));
+        assertEquals(List.of("sub-0"), room1.get("s2"));
+
+        registry.unregisterSubscription(unsubscribe("s1", "sub-9"));
+        registry.unregisterAllSubscriptions("s2");
+        assertEquals(List.of("sub-0"), registry.findSubscriptions(publish("/topic/chat/1")).get("s1"));
+        assertEquals(0, registry.getStats().get("patternSubscriptions"));
+    }
+
+    static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    static Message<byte[]> publish(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,131 @@
+package com.screenshare.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Signals sent to a user reach every device the user is connected with
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.springframework.web=WARN",
+        "logging.level.org.springframework.security=WARN",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql=WARN",
+        "logging.level.org.springframework.orm.jpa=WARN"})
+public class MultiSessionUserRegistryTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MultiSessionUserRegistry userRegistry;
+
+    @Test
+    public void registry_keepsEverySessionOfAUser_andLookupsReturnTheSameSnapshot() {
+        userRegistry.register("carol", "s1");
+        userRegistry.register("carol", "s2");
+        userRegistry.register("dave", "s3");
+        // A session registering under another name moves
+        userRegistry.register("dave", "s2");
+
+        SimpUser carol = userRegistry.getUser("carol");
+        assertEquals(1, carol.getSessions().size());
+        assertNotNull(carol.getSession("s1"));
+        assertEquals(2, userRegistry.getUser("dave").getSessions().size());
+        assertSame(userRegistry.getUser("dave").getSessions(), userRegistry.getUser("dave").getSessions());
+
+        userRegistry.unregister("s1");
+        assertNull(userRegistry.getUser("carol"));
+        userRegistry.unregister("s2");
+        userRegistry.unregister("s3");
+        assertNull(userRegistry.getUser("dave"));
+    }
+
+    @Test
+    public void signalToUser_reachesEachOfTheirSessionsOnce() throws Exception {
+        BlockingQueue<Map<?, ?>> laptop = new LinkedBlockingQueue<>();
+        BlockingQueue<Map<?, ?>> phone = new LinkedBlockingQueue<>();
+        // The laptop names itself in the destination, the phone on CONNECT
+        StompSession laptopSession = connect(null);
+        subscribe(laptopSession, "/user/bob/queue/screenshare", laptop);
+        StompSession phoneSession = connect("bob");
+        subscribe(phoneSession, "/user/queue/screenshare", phone);
+        StompSession alice = connect("alice");
+
+        // Subscriptions are registered asynchronously; probe until both devices get a signal
+        for (int i = 0; i < 100 && (laptop.isEmpty() || phone.isEmpty()); i++) {
+            alice.send("/app/screenshare.signal", Map.of("type", "probe", "from", "alice", "to", "bob"));
+            Thread.sleep(100);
+        }
+        assertFalse(laptop.isEmpty());
+        assertFalse(phone.isEmpty());
+        Thread.sleep(300);
+        laptop.clear();
+        phone.clear();
+
+        alice.send("/app/screenshare.signal", Map.of("type", "offer", "from", "alice", "to", "bob", "data", "sdp"));
+        assertEquals("offer", laptop.poll(5, TimeUnit.SECONDS).get("type"));
+        assertEquals("offer", phone.poll(5, TimeUnit.SECONDS).get("type"));
+        assertNull(laptop.poll(300, TimeUnit.MILLISECONDS));
+        assertNull(phone.poll(10, TimeUnit.MILLISECONDS));
+
+        assertEquals(2, userRegistry.getUser("bob").getSessions().size());
+        phoneSession.disconnect();
+        for (int i = 0; i < 50 && userRegistry.getUser("bob").getSessions().size() > 1; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, userRegistry.getUser("bob").getSessions().size());
+        assertEquals(2, userRegistry.getStats().get("users"));
+
+        laptopSession.disconnect();
+        alice.disconnect();
+    }
+
+    private StompSession connect(String username) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        StompHeaders connectHeaders = new StompHeaders();
+        if (username != null) {
+            connectHeaders.add("username", username);
+        }
+        return stompClient.connectAsync("ws://localhost:" + port + "/api/ws-native", new WebSocketHttpHeaders(),
+                connectHeaders, new StompSessionHandlerAdapter() {
+                }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static void subscribe(StompSession session, String destination, BlockingQueue<Map<?, ?>> received) {
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<?, ?>) payload);
+            }
+        });
+    }
+}
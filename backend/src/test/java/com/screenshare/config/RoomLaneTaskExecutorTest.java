@@ -0,0 +1,150 @@
+package com.screenshare.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoomLaneTaskExecutorTest {
+
+    @Test
+    public void roomIdOf_findsTheRoomSegment() {
+        RoomLaneTaskExecutor executor = new RoomLaneTaskExecutor("/app", 16);
+        assertEquals("42", executor.roomIdOf("/app/chat/42/sendMessage"));
+        assertEquals("42", executor.roomIdOf("/app/signal/42"));
+        assertEquals("42", executor.roomIdOf("/app/chat/rooms/42/read"));
+        assertEquals("42", executor.roomIdOf("/app/chat/rooms/42"));
+        assertNull(executor.roomIdOf("/app/chat/rooms"));
+        assertNull(executor.roomIdOf("/app/chat/rooms/"));
+        assertNull(executor.roomIdOf("/app/chat"));
+        assertNull(executor.roomIdOf("/topic/chat/42"));
+        assertNull(executor.roomIdOf(null));
+    }
+
+    @Test
+    public void readMarksForDifferentRooms_useDifferentLanes() {
+        RoomLaneTaskExecutor executor = new RoomLaneTaskExecutor("/app", 16);
+        int room1 = executor.laneOf("/app/chat/rooms/1/read");
+        int room2 = executor.laneOf("/app/chat/rooms/2/read");
+        assertNotEquals(room1, room2);
+        // A room's read marks share its lane with the rest of its frames
+        assertEquals(executor.laneOf("/app/chat/1/sendMessage"), room1);
+        assertEquals(-1, executor.laneOf("/app/chat/rooms"));
+    }
+
+    @Test
+    public void framesForOneRoom_runInArrivalOrder() throws InterruptedException {
+        RoomLaneTaskExecutor executor = start(new RoomLaneTaskExecutor("/app", 4));
+        try {
+            Map<Integer, List<Integer>> seen = new ConcurrentHashMap<>();
+            CountDownLatch done = new CountDownLatch(10_000);
+            for (int i = 0; i < 10_000; i++) {
+                int room = i % 37;
+                int sequence = i;
+                executor.execute(frame("/app/chat/" + room + "/sendMessage", () -> {
+                    seen.computeIfAbsent(room, r -> Collections.synchronizedList(new ArrayList<>())).add(sequence);
+                    done.countDown();
+                }));
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(37, seen.size());
+            seen.values().forEach(sequences -> {
+                for (int i = 1; i < sequences.size(); i++) {
+                    assertTrue(sequences.get(i) > sequences.get(i - 1));
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void roomsOnOtherLanes_runWhileOneRoomIsBusy() throws InterruptedException {
+        RoomLaneTaskExecutor executor = start(new RoomLaneTaskExecutor("/app", 4));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertNotEquals(executor.laneOf("/app/chat/1/sendMessage"), executor.laneOf("/app/chat/2/sendMessage"));
+            executor.execute(frame("/app/chat/1/sendMessage", () -> await(release)));
+            CountDownLatch otherRoom = new CountDownLatch(1);
+            executor.execute(frame("/app/chat/2/sendMessage", otherRoom::countDown));
+            assertTrue(otherRoom.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void framesForAFullLane_areRejected() throws InterruptedException {
+        RoomLaneTaskExecutor executor = start(new RoomLaneTaskExecutor("/app", 4, 2, false));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        try {
+            executor.execute(frame("/app/chat/1/sendMessage", () -> {
+                running.countDown();
+                await(release);
+            }));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            executor.execute(frame("/app/chat/1/sendMessage", () -> { }));
+            executor.execute(frame("/app/chat/1/sendMessage", () -> { }));
+            assertThrows(TaskRejectedException.class, () -> executor.execute(frame("/app/chat/1/sendMessage", () -> { })));
+            // Other lanes are unaffected
+            executor.execute(frame("/app/chat/2/sendMessage", () -> { }));
+
+            Map<String, Object> stats = executor.getStats();
+            assertEquals(1L, stats.get("laneRejected"));
+            assertEquals(2, stats.get("maxLaneQueueDepth"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static RoomLaneTaskExecutor start(RoomLaneTaskExecutor executor) {
+        executor.initialize();
+        return executor;
+    }
+
+    private static MessageHandlingRunnable frame(String destination, Runnable action) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setDestination(destination);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new MessageHandlingRunnable() {
+            @Override
+            public Message<?> getMessage() {
+                return message;
+            }
+
+            @Override
+            public MessageHandler getMessageHandler() {
+                return null;
+            }
+
+            @Override
+            public void run() {
+                action.run();
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.screenshare.config;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.util.MultiValueMap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.screenshare.config.IndexedSubscriptionRegistryTest.publish;
+import static com.screenshare.config.IndexedSubscriptionRegistryTest.subscribe;
+import static com.screenshare.config.IndexedSubscriptionRegistryTest.unsubscribe;
+
+/**
+ * JMH comparison of the simple broker's DefaultSubscriptionRegistry and IndexedSubscriptionRegistry
+ * with one /topic/chat/{id} destination per room and two subscribers each. Excluded from the
+ * default build; run it with -Pbenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionRegistryBenchmark {
+
+    private static final int SESSIONS = 20_000;
+
+    @Param({"default", "indexed"})
+    public String registryType;
+
+    @Param({"100000"})
+    public int destinationCount;
+
+    private SubscriptionRegistry registry;
+    private Message<?>[] publishes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = "indexed".equals(registryType) ? new IndexedSubscriptionRegistry() : defaultRegistry();
+        publishes = new Message<?>[destinationCount];
+        for (int i = 0; i < destinationCount; i++) {
+            String destination = "/topic/chat/" + i;
+            registry.registerSubscription(subscribe("session-" + (i % SESSIONS), "sub-" + i, destination));
+            registry.registerSubscription(subscribe("session-" + ((i + 1) % SESSIONS), "sub-" + i + "-b", destination));
+            publishes[i] = publish(destination);
+        }
+    }
+
+    // Configured as SimpleBrokerMessageHandler configures it: no selector support, default cache limit
+    private static SubscriptionRegistry defaultRegistry() {
+        DefaultSubscriptionRegistry registry = new DefaultSubscriptionRegistry();
+        registry.setSelectorHeaderName(null);
+        return registry;
+    }
+
+    // Look up the subscribers of a random room, as every broadcast does
+    @Benchmark
+    public MultiValueMap<String, String> findSubscribers() {
+        return registry.findSubscriptions(publishes[ThreadLocalRandom.current().nextInt(destinationCount)]);
+    }
+
+    // A client joining a random room and leaving it again
+    @Benchmark
+    public MultiValueMap<String, String> subscribeThenUnsubscribe() {
+        int room = ThreadLocalRandom.current().nextInt(destinationCount);
+        registry.registerSubscription(subscribe("churn", "sub-churn", "/topic/chat/" + room));
+        MultiValueMap<String, String> subscribers = registry.findSubscriptions(publishes[room]);
+        registry.unregisterSubscription(unsubscribe("churn", "sub-churn"));
+        return subscribers;
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void runBenchmark() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SubscriptionRegistryBenchmark.class.getName())
+                .build())
+                .run();
+    }
+}
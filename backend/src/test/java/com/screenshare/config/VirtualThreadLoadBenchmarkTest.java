@@ -0,0 +1,191 @@
+package com.screenshare.config;
+
+import com.screenshare.ScreenshareBackendApplication;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import com.screenshare.service.ChatService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Platform-thread vs virtual-thread request handling under database latency. Half of the
+ * requests list a user's rooms (JPA, with latency injected while a connection is held), the
+ * other half hit an endpoint that never touches the database. The benchmark is excluded from
+ * the default build; run it with -Pbenchmark.
+ */
+public class VirtualThreadLoadBenchmarkTest {
+
+    private static final int CONCURRENT_REQUESTS = Integer.getInteger("benchmark.requests", 10_000);
+    private static final long DB_LATENCY_MS = Long.getLong("benchmark.db-latency-ms", 10);
+    private static final int DB_POOL_SIZE = 10;
+
+    @Test
+    public void limitedDataSource_releasesPermitOncePerConnection() throws Exception {
+        DataSource h2 = new DriverManagerDataSource("jdbc:h2:mem:permits", "sa", "");
+        ConcurrencyLimitedDataSource limited = new ConcurrencyLimitedDataSource(h2, 2, 50);
+
+        Connection first = limited.getConnection();
+        Connection second = limited.getConnection();
+        assertEquals(2, limited.getStats().get("inUse"));
+        assertThrows(SQLTransientConnectionException.class, limited::getConnection);
+
+        first.close();
+        first.close();
+        assertEquals(1, limited.getStats().get("inUse"));
+        try (Connection third = limited.getConnection()) {
+            assertTrue(third.isValid(1));
+        }
+        second.close();
+        assertEquals(0, limited.getStats().get("inUse"));
+        assertEquals(1L, limited.getStats().get("timeouts"));
+    }
+
+    @Tag("benchmark")
+    @Test
+    public void virtualThreads_vsPlatformThreads_underDbLatency() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("%n%d concurrent requests, %d ms injected DB latency, %d connections%n",
+                CONCURRENT_REQUESTS, DB_LATENCY_MS, DB_POOL_SIZE);
+        System.out.printf("%-9s %9s %13s %13s %13s %13s %9s%n",
+                "mode", "wall ms", "db p50 ms", "db p99 ms", "no-db p50 ms", "no-db p99 ms", "failed");
+        for (Result result : List.of(platform, virtual)) {
+            System.out.printf("%-9s %9d %13d %13d %13d %13d %9d%n", result.mode, result.wallMs,
+                    percentile(result.dbLatencies, 50), percentile(result.dbLatencies, 99),
+                    percentile(result.plainLatencies, 50), percentile(result.plainLatencies, 99), result.failed);
+        }
+        assertEquals(0, platform.failed);
+        assertEquals(0, virtual.failed);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ScreenshareBackendApplication.class)
+                .profiles("dev")
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(latencyInjector()))
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.hikari.maximum-pool-size=" + DB_POOL_SIZE,
+                        "--spring.datasource.hikari.connection-timeout=120000",
+                        "--chat.db.max-concurrency=" + DB_POOL_SIZE,
+                        "--chat.db.acquire-timeout-ms=120000",
+                        "--server.tomcat.accept-count=4096",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.screenshare=WARN",
+                        "--logging.level.org.springframework=WARN",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.org.springframework.security=WARN",
+                        "--logging.level.org.springframework.orm.jpa=WARN",
+                        "--logging.level.org.hibernate=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql=WARN");
+        try {
+            User user = context.getBean(UserRepository.class).save(new User("load", "load@example.com", "password"));
+            ChatRoom room = context.getBean(ChatService.class).createGroupChat(user.getId(), "Load", "load test", false);
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api";
+            URI dbUri = URI.create(base + "/chat/rooms?userId=" + user.getId());
+            URI plainUri = URI.create(base + "/debug/metrics/broadcast");
+            assertNotNull(room.getId());
+
+            Result result = new Result(virtualThreads ? "virtual" : "platform");
+            try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(60))
+                        .executor(clientThreads)
+                        .build();
+                List<CompletableFuture<Void>> requests = new ArrayList<>(CONCURRENT_REQUESTS);
+                long start = System.nanoTime();
+                for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                    boolean db = i % 2 == 0;
+                    long sent = System.nanoTime();
+                    requests.add(client.sendAsync(HttpRequest.newBuilder(db ? dbUri : plainUri).build(),
+                                    HttpResponse.BodyHandlers.discarding())
+                            .handle((response, error) -> {
+                                if (error != null || response.statusCode() != 200) {
+                                    result.failures.incrementAndGet();
+                                } else {
+                                    (db ? result.dbLatencies : result.plainLatencies).add((System.nanoTime() - sent) / 1_000_000);
+                                }
+                                return null;
+                            }));
+                }
+                CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+                result.wallMs = (System.nanoTime() - start) / 1_000_000;
+            }
+            result.failed = result.failures.get();
+            return result;
+        } finally {
+            context.close();
+        }
+    }
+
+    // Holds every checked-out connection for DB_LATENCY_MS, like a slow query would
+    private static BeanPostProcessor latencyInjector() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                return new DelegatingDataSource(dataSource) {
+                    @Override
+                    public Connection getConnection() throws SQLException {
+                        Connection connection = super.getConnection();
+                        try {
+                            Thread.sleep(DB_LATENCY_MS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return connection;
+                    }
+                };
+            }
+        };
+    }
+
+    private static long percentile(List<Long> latencies, int percentile) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.isEmpty() ? 0 : sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+    }
+
+    private static class Result {
+        final String mode;
+        final List<Long> dbLatencies = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> plainLatencies = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger failures = new AtomicInteger();
+        long wallMs;
+        int failed;
+
+        Result(String mode) {
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.screenshare.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * STOMP over the native WebSocket endpoint vs the SockJS WebSocket transport. Both clients
+ * speak the wire protocol directly so the bytes on the socket can be counted: SockJS wraps
+ * every frame in a JSON array (escaping quotes in JSON bodies) and adds its own open and
+ * heartbeat frames. Latency is a SEND to a topic the client itself subscribes to, measured
+ * until the MESSAGE comes back. The benchmark is excluded from the default build; run it
+ * with -Pbenchmark.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.springframework.web=WARN",
+        "logging.level.org.springframework.security=WARN",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql=WARN",
+        "logging.level.org.springframework.orm.jpa=WARN"})
+public class WebSocketTransportBenchmarkTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void bothEndpoints_carryScreenShareSizedFrames() throws Exception {
+        // Larger than both Tomcat's 8K message buffer and Spring's 64K STOMP message default
+        String body = "{\"action\":\"data\",\"data\":\"" + base64(150 * 1024) + "\"}";
+        for (boolean sockJs : List.of(false, true)) {
+            try (RawStompClient client = RawStompClient.connect(port, sockJs)) {
+                client.subscribe("/topic/bench/large");
+                Received received = client.roundTrip("/topic/bench/large", body);
+                assertTrue(received.frame.endsWith(body + "\u0000"), sockJs ? "sockjs" : "native");
+            }
+        }
+    }
+
+    @Tag("benchmark")
+    @Test
+    public void nativeVsSockJs_overheadAndLatency() throws Exception {
+        String chat = "{\"id\":\"1234567890123456\",\"content\":\"Sure, I'll push the fix after lunch and ping you\","
+                + "\"sender\":\"alice\",\"senderId\":3,\"type\":\"CHAT\",\"timestamp\":\"2025-03-14T09:26:53.123\"}";
+        String screen = "{\"action\":\"data\",\"userId\":\"42\",\"roomId\":\"7\",\"data\":\"" + base64(48 * 1024) + "\"}";
+
+        System.out.printf("%n%-8s %-7s %8s %9s %11s %9s %11s %8s %8s%n", "endpoint", "payload", "body B",
+                "wire up B", "up overhead", "wire dn B", "dn overhead", "p50 us", "p99 us");
+        for (boolean sockJs : List.of(false, true)) {
+            try (RawStompClient client = RawStompClient.connect(port, sockJs)) {
+                client.subscribe("/topic/bench/chat");
+                client.subscribe("/topic/bench/screen");
+                report(client, "chat", "/topic/bench/chat", chat, 2_000, 10_000);
+                report(client, "screen", "/topic/bench/screen", screen, 200, 1_000);
+            }
+        }
+    }
+
+    private static void report(RawStompClient client, String label, String destination, String body,
+                               int warmup, int rounds) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            client.roundTrip(destination, body);
+        }
+        List<Long> latencies = new ArrayList<>(rounds);
+        Received last = null;
+        for (int i = 0; i < rounds; i++) {
+            last = client.roundTrip(destination, body);
+            latencies.add(last.nanos / 1_000);
+        }
+        Collections.sort(latencies);
+        int bodyBytes = body.length();
+        System.out.printf("%-8s %-7s %8d %9d %11d %9d %11d %8d %8d%n", client.sockJs ? "sockjs" : "native", label,
+                bodyBytes, last.wireUp, last.wireUp - bodyBytes, last.wireDown, last.wireDown - bodyBytes,
+                latencies.get(rounds / 2), latencies.get(rounds * 99 / 100));
+    }
+
+    private static String base64(int bytes) {
+        byte[] data = new byte[bytes];
+        new Random(bytes).nextBytes(data);
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    private record Received(String frame, int wireUp, int wireDown, long nanos) {
+    }
+
+    /**
+     * Minimal STOMP 1.2 client over a raw WebSocket, with SockJS framing when asked for
+     */
+    private static final class RawStompClient extends TextWebSocketHandler implements AutoCloseable {
+        private final boolean sockJs;
+        private final BlockingQueue<TextMessage> incoming = new LinkedBlockingQueue<>();
+        private WebSocketSession session;
+        private int subscriptions;
+
+        private RawStompClient(boolean sockJs) {
+            this.sockJs = sockJs;
+        }
+
+        static RawStompClient connect(int port, boolean sockJs) throws Exception {
+            RawStompClient client = new RawStompClient(sockJs);
+            String url = sockJs
+                    ? "ws://localhost:" + port + "/api/ws/000/" + UUID.randomUUID().toString().substring(0, 8) + "/websocket"
+                    : "ws://localhost:" + port + "/api/ws-native";
+            client.session = new StandardWebSocketClient().execute(client, url).get(10, TimeUnit.SECONDS);
+            client.session.setTextMessageSizeLimit(1024 * 1024);
+            client.send("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\n\n\u0000");
+            assertTrue(client.next().startsWith("CONNECTED"));
+            return client;
+        }
+
+        // The simple broker sends no RECEIPT, so probe until the subscription delivers
+        void subscribe(String destination) throws Exception {
+            send("SUBSCRIBE\nid:" + subscriptions++ + "\ndestination:" + destination + "\n\n\u0000");
+            for (int i = 0; i < 100 && incoming.poll(100, TimeUnit.MILLISECONDS) == null; i++) {
+                send("SEND\ndestination:" + destination + "\n\nprobe\u0000");
+            }
+            Thread.sleep(200);
+            incoming.clear();
+        }
+
+        Received roundTrip(String destination, String body) throws Exception {
+            String frame = "SEND\ndestination:" + destination + "\ncontent-type:application/json\n\n" + body + "\u0000";
+            long start = System.nanoTime();
+            int wireUp = send(frame);
+            TextMessage message = incoming.poll(10, TimeUnit.SECONDS);
+            long nanos = System.nanoTime() - start;
+            assertNotNull(message, "no MESSAGE for " + destination);
+            String received = unwrap(message.getPayload());
+            assertTrue(received.startsWith("MESSAGE"), received);
+            return new Received(received, wireUp, message.getPayloadLength(), nanos);
+        }
+
+        private int send(String frame) throws Exception {
+            String wire = sockJs ? mapper.writeValueAsString(List.of(frame)) : frame;
+            session.sendMessage(new TextMessage(wire));
+            return wire.length();
+        }
+
+        private String next() throws Exception {
+            TextMessage message = incoming.poll(10, TimeUnit.SECONDS);
+            assertNotNull(message);
+            return unwrap(message.getPayload());
+        }
+
+        // One STOMP frame per SockJS "a[...]" message at this send rate
+        private static String unwrap(String payload) throws Exception {
+            if (payload.startsWith("a[")) {
+                return mapper.readValue(payload.substring(1), String[].class)[0];
+            }
+            return payload;
+        }
+
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+            // SockJS open ("o") and heartbeat ("h") frames carry no STOMP
+            if (sockJs && (message.getPayload().equals("o") || message.getPayload().equals("h"))) {
+                return;
+            }
+            incoming.add(message);
+        }
+
+        @Override
+        public void close() throws Exception {
+            session.close();
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package com.screenshare.controller;
 
+import com.jayway.jsonpath.JsonPath;
+import com.screenshare.dto.MessageCursor;
+import com.screenshare.entity.ChatMessage;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.SnowflakeIdGenerator;
 import com.screenshare.entity.User;
 import com.screenshare.repository.ChatRoomRepository;
 import com.screenshare.repository.UserRepository;
+import com.screenshare.service.ChatService;
+import com.screenshare.service.RecentMessageCache;
+import com.screenshare.service.RoomAccessCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,11 +19,30 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(properties = {"spring.jpa.hibernate.ddl-auto=create-drop"})
@@ -23,6 +51,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
 public class ChatControllerIntegrationTest {
 
+    // chat.sync.max-messages-per-room
+    private static final int MAX_SYNC_MESSAGES_PER_ROOM = 100;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -32,12 +63,28 @@ public class ChatControllerIntegrationTest {
     @Autowired
     private ChatRoomRepository chatRoomRepository;
 
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
     private User alice;
 
     @BeforeEach
     public void setup() {
         // Rely on create-drop to provide a fresh schema; insert minimal test user
-        alice = new User("alice2", "alice2@example.com", "password");
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = new User("alice" + suffix, "alice" + suffix + "@example.com", "password");
         userRepository.save(alice);
     }
 
@@ -52,4 +99,229 @@ public class ChatControllerIntegrationTest {
                 .andExpect(jsonPath("$.roomType").value("PRIVATE"))
                 .andExpect(jsonPath("$.description").value("api desc"));
     }
+
+    @Test
+    public void export_streamsOneLinePerMessage_plainAndGzipped_toAdminsOnly() throws Exception {
+        User bob = userRepository.save(new User("bob" + alice.getUsername(), "bob" + alice.getEmail(), "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Export", "Exported room", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        for (int i = 0; i < 3; i++) {
+            chatService.saveMessage(room.getId(), alice.getId(), "message " + i, MessageType.TEXT);
+        }
+        ChatMessage deleted = chatService.saveMessage(room.getId(), bob.getId(), "gone", MessageType.TEXT);
+        chatService.deleteMessage(deleted.getId(), bob.getId());
+
+        MvcResult plain = export(room, alice, false);
+        assertNull(plain.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        List<String> lines = lines(plain.getResponse().getContentAsByteArray());
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"content\":\"message 0\""));
+
+        MvcResult gzipped = export(room, alice, true);
+        assertEquals("gzip", gzipped.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray()))) {
+            assertEquals(lines, lines(in.readAllBytes()));
+        }
+
+        // bob is a member but not an admin
+        mockMvc.perform(get("/chat/rooms/" + room.getId() + "/export").param("userId", bob.getId().toString()))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void leave_endpoint_removesMembership() throws Exception {
+        User bob = userRepository.save(new User("bob" + alice.getUsername(), "bob" + alice.getEmail(), "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Leaving", "Room to leave", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        assertTrue(roomAccessCache.isActiveMember(room.getId(), bob.getId()));
+
+        mockMvc.perform(post("/chat/rooms/" + room.getId() + "/leave").param("userId", bob.getId().toString()))
+                .andExpect(status().isOk());
+        assertFalse(roomAccessCache.isActiveMember(room.getId(), bob.getId()));
+
+        // No longer a member
+        mockMvc.perform(post("/chat/rooms/" + room.getId() + "/leave").param("userId", bob.getId().toString()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void editAndDelete_endpoints_updateCachedHistory() throws Exception {
+        User bob = userRepository.save(new User("bob" + alice.getUsername(), "bob" + alice.getEmail(), "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Edits", "Edited history", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(chatService.saveMessage(room.getId(), alice.getId(), "message " + i, MessageType.TEXT).getId());
+        }
+        mockMvc.perform(get("/chat/rooms/" + room.getId() + "/messages").param("userId", alice.getId().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(3));
+        assertTrue(recentMessageCache.isPrimed(room.getId()));
+
+        mockMvc.perform(put("/chat/messages/" + ids.get(1)).param("userId", alice.getId().toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\":\"edited\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content").value("edited"));
+        // Only the sender can edit or delete
+        mockMvc.perform(put("/chat/messages/" + ids.get(1)).param("userId", bob.getId().toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\":\"hijacked\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(delete("/chat/messages/" + ids.get(2)).param("userId", bob.getId().toString()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(delete("/chat/messages/" + ids.get(2)).param("userId", alice.getId().toString()))
+                .andExpect(status().isOk());
+
+        assertTrue(recentMessageCache.isPrimed(room.getId()));
+        mockMvc.perform(get("/chat/rooms/" + room.getId() + "/messages").param("userId", alice.getId().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(2))
+                .andExpect(jsonPath("$.messages[0].content").value("message 0"))
+                .andExpect(jsonPath("$.messages[1].content").value("edited"))
+                .andExpect(jsonPath("$.messages[1].isEdited").value(true));
+    }
+
+    @Test
+    public void messages_endpoint_pagesBothWaysByCursor() throws Exception {
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Paging", "Paged history", false);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(chatService.saveMessage(room.getId(), alice.getId(), "message " + i, MessageType.TEXT).getId());
+        }
+
+        // Latest page first, oldest message first within the page, in the shape the client reads
+        String cursor = page(room, "limit", "3")
+                .andExpect(jsonPath("$.messages.length()").value(3))
+                .andExpect(jsonPath("$.messages[0].id").value(ids.get(4).toString()))
+                .andExpect(jsonPath("$.messages[0].content").value("message 4"))
+                .andExpect(jsonPath("$.messages[0].senderId").value(alice.getId()))
+                .andExpect(jsonPath("$.messages[0].senderUsername").value(alice.getUsername()))
+                .andExpect(jsonPath("$.messages[0].createdAt").exists())
+                .andExpect(jsonPath("$.messages[2].id").value(ids.get(6).toString()))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andReturn().getResponse().getContentAsString();
+        String next = JsonPath.read(cursor, "$.nextCursor");
+
+        String older = page(room, "limit", "3", "cursor", next)
+                .andExpect(jsonPath("$.messages[0].id").value(ids.get(1).toString()))
+                .andExpect(jsonPath("$.messages[2].id").value(ids.get(3).toString()))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andReturn().getResponse().getContentAsString();
+        page(room, "limit", "3", "cursor", JsonPath.read(older, "$.nextCursor"))
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].id").value(ids.get(0).toString()))
+                .andExpect(jsonPath("$.hasMore").value(false))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        // Boundaries are exclusive; the same pages come from the database once the buffer is gone
+        recentMessageCache.evict(room.getId());
+        page(room, "limit", "3", "before", ids.get(4).toString())
+                .andExpect(jsonPath("$.messages[0].id").value(ids.get(1).toString()))
+                .andExpect(jsonPath("$.messages[2].id").value(ids.get(3).toString()));
+        page(room, "limit", "3", "after", ids.get(1).toString())
+                .andExpect(jsonPath("$.messages[0].id").value(ids.get(2).toString()))
+                .andExpect(jsonPath("$.messages[2].id").value(ids.get(4).toString()))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andExpect(jsonPath("$.nextCursor").value(MessageCursor.after(ids.get(4)).encode()));
+        page(room, "limit", "3", "after", ids.get(4).toString())
+                .andExpect(jsonPath("$.messages.length()").value(2))
+                .andExpect(jsonPath("$.hasMore").value(false));
+
+        // Nothing past either end
+        page(room, "before", ids.get(0).toString())
+                .andExpect(jsonPath("$.messages.length()").value(0))
+                .andExpect(jsonPath("$.hasMore").value(false));
+        page(room, "after", ids.get(6).toString())
+                .andExpect(jsonPath("$.messages.length()").value(0))
+                .andExpect(jsonPath("$.hasMore").value(false));
+
+        mockMvc.perform(get("/chat/rooms/" + room.getId() + "/messages")
+                        .param("userId", alice.getId().toString())
+                        .param("cursor", "bm90LWEtY3Vyc29y"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void sync_endpoint_returnsDeltasForAccessibleRoomsOnly() throws Exception {
+        User bob = userRepository.save(new User("bob" + alice.getUsername(), "bob" + alice.getEmail(), "password"));
+        ChatRoom joined = chatService.createGroupChat(alice.getId(), "Joined", "Alice's room", false);
+        ChatRoom open = chatService.createGroupChat(bob.getId(), "Open", "Public, not joined", false);
+        ChatRoom closed = chatService.createGroupChat(bob.getId(), "Closed", "Private to bob", true);
+        ChatRoom busy = chatService.createGroupChat(alice.getId(), "Busy", "Too much to sync", false);
+        List<Long> joinedIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            joinedIds.add(chatService.saveMessage(joined.getId(), alice.getId(), "joined " + i, MessageType.TEXT).getId());
+        }
+        Long openId = chatService.saveMessage(open.getId(), bob.getId(), "open 0", MessageType.TEXT).getId();
+        chatService.saveMessage(closed.getId(), bob.getId(), "secret", MessageType.TEXT);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i <= MAX_SYNC_MESSAGES_PER_ROOM; i++) {
+            rows.add(new Object[]{idGenerator.nextId(), alice.getId(), busy.getId(), "busy " + i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO chat_messages (id, sender_id, chat_room_id, content, message_type, is_edited, is_deleted, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, 'TEXT', FALSE, FALSE, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", rows);
+        // Rooms missing from the access cache are authorized from the database
+        roomAccessCache.evict(joined.getId());
+        roomAccessCache.evict(closed.getId());
+
+        String body = "{\"rooms\":{" +
+                "\"" + joined.getId() + "\":\"" + joinedIds.get(0) + "\"," +
+                "\"" + open.getId() + "\":null," +
+                "\"" + closed.getId() + "\":0," +
+                "\"" + busy.getId() + "\":0," +
+                "\"" + Long.MAX_VALUE + "\":0}}";
+        String joinedPath = "$.rooms['" + joined.getId() + "']";
+        String openPath = "$.rooms['" + open.getId() + "']";
+        String busyPath = "$.rooms['" + busy.getId() + "']";
+        mockMvc.perform(post("/chat/sync").param("userId", alice.getId().toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rooms.length()").value(3))
+                .andExpect(jsonPath(joinedPath + ".gapTooLarge").value(false))
+                .andExpect(jsonPath(joinedPath + ".messages.length()").value(2))
+                .andExpect(jsonPath(joinedPath + ".messages[0].id").value(joinedIds.get(1).toString()))
+                .andExpect(jsonPath(joinedPath + ".messages[1].id").value(joinedIds.get(2).toString()))
+                .andExpect(jsonPath(openPath + ".messages.length()").value(1))
+                .andExpect(jsonPath(openPath + ".messages[0].id").value(openId.toString()))
+                .andExpect(jsonPath(busyPath + ".gapTooLarge").value(true))
+                .andExpect(jsonPath(busyPath + ".messages.length()").value(0))
+                .andExpect(jsonPath("$.deniedRoomIds.length()").value(2))
+                .andExpect(jsonPath("$.deniedRoomIds[0]").value(closed.getId()))
+                .andExpect(jsonPath("$.deniedRoomIds[1]").value(Long.MAX_VALUE));
+
+        // One message short of the cap is still sent in full
+        mockMvc.perform(post("/chat/sync").param("userId", alice.getId().toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"rooms\":{\"" + busy.getId() + "\":\"" + rows.get(0)[0] + "\"}}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath(busyPath + ".gapTooLarge").value(false))
+                .andExpect(jsonPath(busyPath + ".messages.length()").value(MAX_SYNC_MESSAGES_PER_ROOM));
+    }
+
+    private ResultActions page(ChatRoom room, String... params) throws Exception {
+        MockHttpServletRequestBuilder request = get("/chat/rooms/" + room.getId() + "/messages")
+                .param("userId", alice.getId().toString());
+        for (int i = 0; i < params.length; i += 2) {
+            request.param(params[i], params[i + 1]);
+        }
+        return mockMvc.perform(request).andExpect(status().isOk());
+    }
+
+    private MvcResult export(ChatRoom room, User user, boolean gzip) throws Exception {
+        MvcResult started = mockMvc.perform(get("/chat/rooms/" + room.getId() + "/export")
+                        .param("userId", user.getId().toString())
+                        .param("gzip", String.valueOf(gzip)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn();
+    }
+
+    private static List<String> lines(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8).lines().toList();
+    }
 }
@@ -0,0 +1,40 @@
+package com.screenshare.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageCursorTest {
+
+    @Test
+    public void encodedCursors_decodeToTheSameDirectionAndId() {
+        MessageCursor before = MessageCursor.decode(MessageCursor.before(123_456_789_012_345L).encode());
+        assertEquals(MessageCursor.Direction.BEFORE, before.getDirection());
+        assertEquals(123_456_789_012_345L, before.getMessageId());
+
+        MessageCursor after = MessageCursor.decode(MessageCursor.after(Long.MAX_VALUE).encode());
+        assertEquals(MessageCursor.Direction.AFTER, after.getDirection());
+        assertEquals(Long.MAX_VALUE, after.getMessageId());
+
+        // URL-safe without padding, so it can go into a query string as is
+        assertTrue(MessageCursor.before(1L).encode().matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void malformedOrTamperedCursors_areRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(""));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(encode("x:42")));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(encode("b:")));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(encode("a:12abc")));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(encode("b:99999999999999999999")));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursor.decode(encode("b")));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,78 @@
+package com.screenshare.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnowflakeIdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 500_000;
+
+    @Test
+    public void concurrentIds_areUniqueAndIncreasingPerThread() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(42);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long[] ids = new long[IDS_PER_THREAD];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            long[] all = new long[THREADS * IDS_PER_THREAD];
+            int offset = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int i = 1; i < ids.length; i++) {
+                    assertTrue(ids[i] > ids[i - 1], "ids must increase within a thread");
+                }
+                System.arraycopy(ids, 0, all, offset, ids.length);
+                offset += ids.length;
+            }
+
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                assertNotEquals(all[i - 1], all[i], "duplicate id generated");
+            }
+            assertTrue(Arrays.stream(all).allMatch(id -> id > 0 && SnowflakeIdGenerator.nodeIdOf(id) == 42));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ids_carryTimestampAndSortByTime() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        long before = System.currentTimeMillis();
+        long first = generator.nextId();
+        Thread.sleep(5);
+        long second = new SnowflakeIdGenerator(0).nextId();
+
+        assertTrue(SnowflakeIdGenerator.timestampOf(first) >= before);
+        assertTrue(second > first, "a later id from another node must sort after an earlier one");
+        assertTrue(first >= SnowflakeIdGenerator.minIdAt(SnowflakeIdGenerator.timestampOf(first)));
+    }
+
+    @Test
+    public void nodeId_outOfRange_isRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+}
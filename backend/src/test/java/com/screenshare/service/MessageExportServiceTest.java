@@ -0,0 +1,91 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Exports reach the output stream in buffer-sized writes, not one write per message
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.hibernate.SQL=WARN"})
+public class MessageExportServiceTest {
+
+    private static final int MESSAGES = 1_200;
+
+    @Autowired
+    private MessageExportService messageExportService;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Test
+    public void export_isBufferedAcrossMessages() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Export", "Exported room", false);
+        List<Object[]> rows = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            rows.add(new Object[]{idGenerator.nextId(), alice.getId(), room.getId(), "message " + i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO chat_messages (id, sender_id, chat_room_id, content, message_type, is_edited, is_deleted, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, 'TEXT', FALSE, FALSE, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", rows);
+
+        CountingOutputStream out = new CountingOutputStream();
+        assertEquals(MESSAGES, messageExportService.exportRoom(room.getId(), out));
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(MESSAGES, lines.size());
+        assertTrue(lines.get(MESSAGES - 1).contains("\"content\":\"message " + (MESSAGES - 1) + "\""));
+        // One flush per fetch-sized chunk and one at the end
+        assertTrue(out.flushes <= MESSAGES / 500 + 2, "flushes: " + out.flushes);
+        assertTrue(out.writes < MESSAGES / 10, "writes: " + out.writes);
+    }
+
+    private static final class CountingOutputStream extends ByteArrayOutputStream {
+        private int writes;
+        private int flushes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.screenshare.service;
+
+import com.screenshare.dto.ChatMessageDto;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Queued messages reach the database in batches, in order, and survive bad rows and shutdown
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "chat.persistence.write-behind.enabled=true",
+        "chat.persistence.write-behind.queue-capacity=16",
+        "chat.persistence.write-behind.batch-size=8",
+        "chat.persistence.write-behind.flush-interval-ms=200",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.hibernate.SQL=WARN"})
+public class MessageWriteBehindServiceTest {
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MessageWriteBehindService writeBehind;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    private User alice;
+    private ChatRoom room;
+
+    @BeforeEach
+    public void setup() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        room = chatService.createGroupChat(alice.getId(), "Queued", "Write-behind", false);
+    }
+
+    @Test
+    public void queuedMessages_areInsertedInBatches_inOrder() throws InterruptedException {
+        Map<String, Object> before = writeBehind.getStats();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            ids.add(writeBehind.offer(room.getId(), alice.getId(), "message " + i, MessageType.TEXT));
+        }
+        assertFalse(ids.contains(null));
+        awaitRows(16);
+
+        List<Map<String, Object>> rows = rows();
+        for (int i = 0; i < 16; i++) {
+            assertEquals(ids.get(i), ((Number) rows.get(i).get("id")).longValue());
+            assertEquals("message " + i, rows.get(i).get("content"));
+        }
+        Map<String, Object> stats = writeBehind.getStats();
+        assertEquals(16L, (Long) stats.get("persisted") - (Long) before.get("persisted"));
+        assertTrue((Long) stats.get("batches") - (Long) before.get("batches") < 16);
+    }
+
+    @Test
+    public void failedBatch_isRetriedRowByRow_droppingOnlyTheBadRow() throws InterruptedException {
+        Map<String, Object> before = writeBehind.getStats();
+        for (int i = 0; i < 3; i++) {
+            writeBehind.offer(room.getId(), alice.getId(), "before " + i, MessageType.TEXT);
+        }
+        // No such room; its insert fails the foreign key and takes the batch down with it
+        writeBehind.offer(Long.MAX_VALUE, alice.getId(), "nowhere", MessageType.TEXT);
+        for (int i = 0; i < 3; i++) {
+            writeBehind.offer(room.getId(), alice.getId(), "after " + i, MessageType.TEXT);
+        }
+        awaitFailed(before, 1);
+        awaitRows(6);
+
+        assertEquals(List.of("before 0", "before 1", "before 2", "after 0", "after 1", "after 2"),
+                rows().stream().map(row -> row.get("content")).toList());
+        Map<String, Object> stats = writeBehind.getStats();
+        assertEquals(6L, (Long) stats.get("persisted") - (Long) before.get("persisted"));
+        assertEquals(1L, (Long) stats.get("failed") - (Long) before.get("failed"));
+    }
+
+    @Test
+    public void fullQueue_fallsBackToSynchronousSave() throws Exception {
+        Map<String, Object> before = writeBehind.getStats();
+        // Several senders outpace the single writer
+        ExecutorService senders = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> sent = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String content = "message " + i;
+                sent.add(senders.submit(() -> chatService.acceptMessage(room.getId(), alice.getId(), content, MessageType.TEXT)));
+            }
+            for (Future<?> future : sent) {
+                assertNotNull(future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            senders.shutdown();
+        }
+        awaitRows(400);
+
+        Map<String, Object> stats = writeBehind.getStats();
+        long queued = (Long) stats.get("accepted") - (Long) before.get("accepted");
+        long rejected = (Long) stats.get("rejected") - (Long) before.get("rejected");
+        assertTrue(rejected > 0, "queue never filled");
+        assertEquals(400L, queued + rejected);
+        assertEquals(400, rows().stream().map(row -> row.get("content")).distinct().count());
+    }
+
+    @Test
+    public void flush_keepsPrimedHistoryBuffersAndAppendsToThem() throws InterruptedException {
+        // The latest page primes the room's buffer
+        chatService.getMessagePage(room.getId(), alice.getId(), null, 50);
+        assertTrue(recentMessageCache.isPrimed(room.getId()));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(writeBehind.offer(room.getId(), alice.getId(), "buffered " + i, MessageType.TEXT));
+        }
+        awaitRows(3);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (recentMessageCache.latest(room.getId(), 50).map(List::size).orElse(0) < 3) {
+            assertTrue(recentMessageCache.isPrimed(room.getId()), "buffer dropped by the flush");
+            assertTrue(System.currentTimeMillis() < deadline, "buffer never got the messages");
+            Thread.sleep(20);
+        }
+
+        List<ChatMessageDto> buffered = recentMessageCache.latest(room.getId(), 50).orElseThrow();
+        assertEquals(ids, buffered.stream().map(ChatMessageDto::getId).toList());
+        assertEquals(List.of("buffered 0", "buffered 1", "buffered 2"), buffered.stream().map(ChatMessageDto::getContent).toList());
+        assertEquals(alice.getUsername(), buffered.get(0).getSenderUsername());
+    }
+
+    @Test
+    public void stop_drainsTheQueue() {
+        for (int i = 0; i < 5; i++) {
+            writeBehind.offer(room.getId(), alice.getId(), "message " + i, MessageType.TEXT);
+        }
+        try {
+            // The writer is still waiting for its first batch to fill
+            writeBehind.stop();
+            assertEquals(5, rows().size());
+            assertEquals(0, writeBehind.getStats().get("queueDepth"));
+            assertNull(writeBehind.offer(room.getId(), alice.getId(), "too late", MessageType.TEXT));
+        } finally {
+            writeBehind.start();
+        }
+    }
+
+    @Test
+    public void stop_persistsEveryMessageOfferedConcurrently() throws Exception {
+        List<Long> ids = new CopyOnWriteArrayList<>();
+        AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService senders = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                senders.submit(() -> {
+                    while (!stopped.get()) {
+                        Long id = writeBehind.offer(room.getId(), alice.getId(), "racing", MessageType.TEXT);
+                        if (id != null) {
+                            ids.add(id);
+                        }
+                    }
+                });
+            }
+            Thread.sleep(100);
+            writeBehind.stop();
+            stopped.set(true);
+            senders.shutdown();
+            assertTrue(senders.awaitTermination(10, TimeUnit.SECONDS));
+
+            // Every offer that handed out an id was written before stop() returned
+            assertFalse(ids.isEmpty());
+            assertEquals(ids.size(), rows().size());
+        } finally {
+            stopped.set(true);
+            senders.shutdownNow();
+            writeBehind.start();
+        }
+    }
+
+    private List<Map<String, Object>> rows() {
+        return jdbcTemplate.queryForList("SELECT id, content FROM chat_messages WHERE chat_room_id = ? ORDER BY id",
+                room.getId());
+    }
+
+    private void awaitRows(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (rows().size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "messages not written");
+            Thread.sleep(20);
+        }
+    }
+
+    private void awaitFailed(Map<String, Object> before, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((Long) writeBehind.getStats().get("failed") - (Long) before.get("failed") < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "bad row not dropped");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.OutboxEvent;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Outbox rows written with ChatService changes, relayed to a stand-in publisher on H2
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "chat.outbox.enabled=true",
+        "chat.outbox.poll-interval-ms=20",
+        "chat.outbox.batch-size=50",
+        "chat.outbox.retry-base-ms=20",
+        "chat.outbox.retry-max-ms=100"})
+@ActiveProfiles("dev")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+public class OutboxServiceTest {
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private StandInPublisher publisher;
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    public void setup() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        awaitOutboxEmpty();
+        publisher.published.clear();
+        publisher.failuresLeft.set(0);
+    }
+
+    @Test
+    public void committedChanges_arePublished_andRolledBackOnesAreNot() throws Exception {
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Outbox", "Outbox events", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        Long messageId = chatService.saveMessage(room.getId(), bob.getId(), "hello", MessageType.TEXT).getId();
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        assertThrows(IllegalStateException.class, () -> transaction.executeWithoutResult(status -> {
+            chatService.saveMessage(room.getId(), bob.getId(), "never committed", MessageType.TEXT);
+            throw new IllegalStateException("rollback");
+        }));
+
+        awaitOutboxEmpty();
+        List<OutboxEvent> events = new ArrayList<>(publisher.published);
+        assertEquals(List.of(OutboxService.MEMBER_JOINED, OutboxService.MESSAGE_SENT),
+                events.stream().map(OutboxEvent::getEventType).toList());
+        assertTrue(events.get(1).getPayload().contains("\"messageId\":" + messageId));
+        assertEquals(room.getId(), events.get(1).getAggregateId());
+    }
+
+    @Test
+    public void failedPublishes_areRetriedUntilTheyGoThrough() {
+        publisher.failuresLeft.set(3);
+        outboxService.record(OutboxService.MEMBER_JOINED, 1L, Map.of("roomId", 1L, "userId", 2L, "via", "public"));
+
+        awaitOutboxEmpty();
+        assertEquals(1, publisher.published.size());
+        Map<String, Object> stats = outboxService.getStats();
+        assertTrue((Long) stats.get("publishFailures") >= 3);
+        assertEquals(0L, stats.get("pending"));
+    }
+
+    @Test
+    public void concurrentRelays_claimEachEventOnce() throws Exception {
+        List<OutboxService.Event> backlog = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            backlog.add(new OutboxService.Event(OutboxService.MESSAGE_SENT, (long) i % 7, Map.of("n", i)));
+        }
+        outboxService.record(backlog);
+
+        // Three extra relays compete with the service's own relay thread
+        ExecutorService relays = Executors.newFixedThreadPool(3);
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            running.add(relays.submit(() -> {
+                while (outboxService.relayBatch() > 0) {
+                    Thread.onSpinWait();
+                }
+            }));
+        }
+        for (Future<?> relay : running) {
+            relay.get(30, TimeUnit.SECONDS);
+        }
+        relays.shutdown();
+        awaitOutboxEmpty();
+
+        Set<Long> ids = new HashSet<>();
+        for (OutboxEvent event : publisher.published) {
+            assertTrue(ids.add(event.getId()), "published twice: " + event.getId());
+        }
+        assertEquals(1_000, ids.size());
+    }
+
+    private void awaitOutboxEmpty() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events", Long.class) > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "outbox not drained");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class PublisherConfig {
+        @Bean
+        StandInPublisher standInPublisher() {
+            return new StandInPublisher();
+        }
+    }
+
+    /**
+     * Records what the relay publishes, failing the first few attempts on request
+     */
+    static class StandInPublisher implements OutboxPublisher {
+        final Queue<OutboxEvent> published = new ConcurrentLinkedQueue<>();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<Void> publish(OutboxEvent event) {
+            if (failuresLeft.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                return CompletableFuture.failedFuture(new RuntimeException("bus unavailable"));
+            }
+            published.add(event);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
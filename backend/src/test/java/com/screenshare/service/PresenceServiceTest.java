@@ -0,0 +1,254 @@
+package com.screenshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.User;
+import com.screenshare.entity.UserStatus;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Presence changes reach room peers once settled, and are written to the users table in batches
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "chat.presence.tick-ms=50",
+        "chat.presence.offline-grace-ms=1000",
+        "chat.presence.flush-interval-ms=200",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.springframework.web=WARN",
+        "logging.level.org.springframework.security=WARN",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql=WARN",
+        "logging.level.org.springframework.orm.jpa=WARN"})
+public class PresenceServiceTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void statusChanges_reachRoomPeersOnly_andReconnectsDoNotFlap() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        User carol = userRepository.save(new User("carol" + suffix, "carol" + suffix + "@example.com", "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Presence", "Presence updates", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+
+        BlockingQueue<List<Map<String, Object>>> toBob = new LinkedBlockingQueue<>();
+        BlockingQueue<List<Map<String, Object>>> toCarol = new LinkedBlockingQueue<>();
+        StompSession bobSession = connect(bob.getUsername());
+        subscribe(bobSession, toBob);
+        StompSession carolSession = connect(carol.getUsername());
+        subscribe(carolSession, toCarol);
+        awaitStatus(bob.getUsername(), UserStatus.ONLINE);
+        awaitStatus(carol.getUsername(), UserStatus.ONLINE);
+        Thread.sleep(300);
+        toBob.clear();
+        toCarol.clear();
+
+        StompSession aliceSession = connect(alice.getUsername());
+        List<Map<String, Object>> online = toBob.poll(5, TimeUnit.SECONDS);
+        assertNotNull(online);
+        assertEquals(alice.getUsername(), online.get(0).get("username"));
+        assertEquals("ONLINE", online.get(0).get("status"));
+
+        // A reconnect inside the grace period is not reported
+        aliceSession.disconnect();
+        aliceSession = connect(alice.getUsername());
+        assertNull(toBob.poll(1_500, TimeUnit.MILLISECONDS));
+
+        aliceSession.disconnect();
+        List<Map<String, Object>> offline = toBob.poll(5, TimeUnit.SECONDS);
+        assertNotNull(offline);
+        assertEquals("OFFLINE", offline.get(0).get("status"));
+        assertNotNull(offline.get(0).get("lastSeenAt"));
+        assertTrue(toCarol.isEmpty());
+
+        // The batched flush brings the users table in line
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (userRepository.findById(alice.getId()).get().getStatus() != UserStatus.OFFLINE
+                || userRepository.findById(bob.getId()).get().getStatus() != UserStatus.ONLINE) {
+            assertTrue(System.currentTimeMillis() < deadline, "presence not written");
+            Thread.sleep(50);
+        }
+        assertNotNull(userRepository.findById(alice.getId()).get().getLastSeenAt());
+        Map<String, Object> stats = presenceService.getStats();
+        assertTrue((Long) stats.get("flapsSuppressed") >= 1);
+        assertTrue((Long) stats.get("rowsWritten") >= 3);
+
+        bobSession.disconnect();
+        carolSession.disconnect();
+    }
+
+    @Test
+    public void manySimultaneousChanges_arePushedAcrossPeerLookupChunks() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Crowd", "Many changes at once", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+
+        BlockingQueue<List<Map<String, Object>>> toBob = new LinkedBlockingQueue<>();
+        StompSession bobSession = connect(bob.getUsername());
+        subscribe(bobSession, toBob);
+        awaitStatus(bob.getUsername(), UserStatus.ONLINE);
+        Thread.sleep(300);
+        toBob.clear();
+
+        // More users than fit in one lookup, settled together
+        int crowd = PresenceService.PEER_LOOKUP_CHUNK * 2 + 100;
+        for (int i = 0; i < crowd; i++) {
+            presenceService.sessionOpened("crowd-" + suffix + "-" + i, "crowd" + suffix + i);
+        }
+        presenceService.sessionOpened("crowd-" + suffix + "-alice", alice.getUsername());
+        Map<String, Object> before = presenceService.getStats();
+        presenceService.tick();
+
+        List<Map<String, Object>> online = toBob.poll(5, TimeUnit.SECONDS);
+        assertNotNull(online);
+        assertEquals(List.of(alice.getUsername()), online.stream().map(delta -> delta.get("username")).toList());
+        assertEquals(0L, (Long) presenceService.getStats().get("peerLookupFailures") - (Long) before.get("peerLookupFailures"));
+
+        // The whole crowd waits out the grace period together without stalling the tick
+        for (int i = 0; i < crowd; i++) {
+            presenceService.sessionClosed("crowd-" + suffix + "-" + i);
+        }
+        presenceService.sessionClosed("crowd-" + suffix + "-alice");
+        List<Map<String, Object>> offline = toBob.poll(5, TimeUnit.SECONDS);
+        assertNotNull(offline);
+        assertEquals("OFFLINE", offline.get(0).get("status"));
+        bobSession.disconnect();
+    }
+
+    @Test
+    public void usersHeldOnAnotherNode_stayOnlineUntilNoNodeHoldsThem() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        User carol = userRepository.save(new User("carol" + suffix, "carol" + suffix + "@example.com", "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Nodes", "Connected to several nodes", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        chatService.joinPublicRoom(room.getId(), carol.getId());
+
+        BlockingQueue<List<Map<String, Object>>> toBob = new LinkedBlockingQueue<>();
+        StompSession bobSession = connect(bob.getUsername());
+        subscribe(bobSession, toBob);
+        awaitStatus(bob.getUsername(), UserStatus.ONLINE);
+        Thread.sleep(300);
+        toBob.clear();
+
+        // Carol is only connected to node 7: pushed here, but written by node 7
+        presenceService.receive(nodePresence(List.of(carol.getUsername()), List.of()));
+        List<Map<String, Object>> online = toBob.poll(5, TimeUnit.SECONDS);
+        assertNotNull(online);
+        assertEquals(carol.getUsername(), online.get(0).get("username"));
+        assertEquals("ONLINE", online.get(0).get("status"));
+
+        // Alice leaves this node while node 7 still holds a session for her
+        presenceService.sessionOpened("nodes-" + suffix, alice.getUsername());
+        awaitStatus(alice.getUsername(), UserStatus.ONLINE);
+        presenceService.receive(nodePresence(List.of(alice.getUsername()), List.of()));
+        Thread.sleep(300);
+        toBob.clear();
+        presenceService.sessionClosed("nodes-" + suffix);
+        assertNull(toBob.poll(1_500, TimeUnit.MILLISECONDS));
+        assertEquals(UserStatus.ONLINE, presenceService.getStatus(alice.getUsername()));
+
+        // Once node 7 lets go of both, they go offline after the grace period
+        presenceService.receive(nodePresence(List.of(), List.of(alice.getUsername(), carol.getUsername())));
+        List<String> offline = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (offline.size() < 2 && System.currentTimeMillis() < deadline) {
+            List<Map<String, Object>> deltas = toBob.poll(100, TimeUnit.MILLISECONDS);
+            if (deltas != null) {
+                deltas.forEach(delta -> {
+                    assertEquals("OFFLINE", delta.get("status"));
+                    offline.add((String) delta.get("username"));
+                });
+            }
+        }
+        assertEquals(Set.of(alice.getUsername(), carol.getUsername()), new HashSet<>(offline));
+
+        // Alice was connected here, so this node writes her OFFLINE; carol's row is node 7's
+        while (userRepository.findById(alice.getId()).get().getStatus() != UserStatus.OFFLINE) {
+            assertTrue(System.currentTimeMillis() < deadline, "presence not written");
+            Thread.sleep(50);
+        }
+        assertNull(userRepository.findById(carol.getId()).get().getLastSeenAt());
+        bobSession.disconnect();
+    }
+
+    private byte[] nodePresence(List<String> online, List<String> offline) throws Exception {
+        return objectMapper.writeValueAsBytes(new PresenceService.NodePresence(7, online, offline, false));
+    }
+
+    private void awaitStatus(String username, UserStatus status) throws InterruptedException {
+        for (int i = 0; i < 100 && presenceService.getStatus(username) != status; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(status, presenceService.getStatus(username));
+    }
+
+    private StompSession connect(String username) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("username", username);
+        return stompClient.connectAsync("ws://localhost:" + port + "/api/ws-native", new WebSocketHttpHeaders(),
+                connectHeaders, new StompSessionHandlerAdapter() {
+                }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static void subscribe(StompSession session, BlockingQueue<List<Map<String, Object>>> received) {
+        session.subscribe("/user" + PresenceService.PRESENCE_DESTINATION, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return List.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((List<Map<String, Object>>) payload);
+            }
+        });
+    }
+}
@@ -0,0 +1,166 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Read watermarks only move forward, and reach the database in batches
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "chat.read-state.flush-interval-ms=3600000",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.hibernate.SQL=WARN"})
+public class ReadStateServiceTest {
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    private User alice;
+    private User bob;
+    private ChatRoom room;
+
+    @BeforeEach
+    public void setup() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        room = chatService.createGroupChat(alice.getId(), "Reading", "Read watermarks", false);
+    }
+
+    @Test
+    public void watermarks_onlyAdvance_andAreWrittenOncePerFlush() {
+        List<Long> ids = send(alice, 4);
+        Map<String, Object> before = readStateService.getStats();
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), ids.get(1)));
+        assertFalse(readStateService.markRead(room.getId(), alice.getId(), ids.get(0)));
+        assertFalse(readStateService.markRead(room.getId(), alice.getId(), ids.get(1)));
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), ids.get(2)));
+        // bob is not a member
+        assertFalse(readStateService.markRead(room.getId(), bob.getId(), ids.get(3)));
+
+        assertEquals(ids.get(2), readStateService.getLastRead(room.getId(), alice.getId()));
+        assertTrue(rows(alice).isEmpty());
+
+        readStateService.flush();
+        assertEquals(List.of(ids.get(2)), rows(alice));
+        assertTrue(rows(bob).isEmpty());
+
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), ids.get(3)));
+        readStateService.flush();
+        assertEquals(List.of(ids.get(3)), rows(alice));
+
+        Map<String, Object> stats = readStateService.getStats();
+        assertEquals(3L, (Long) stats.get("advances") - (Long) before.get("advances"));
+        assertEquals(2L, (Long) stats.get("stale") - (Long) before.get("stale"));
+        assertEquals(1L, (Long) stats.get("rowsInserted") - (Long) before.get("rowsInserted"));
+        assertEquals(1L, (Long) stats.get("rowsUpdated") - (Long) before.get("rowsUpdated"));
+    }
+
+    @Test
+    public void rowWrittenElsewhere_isNeverMovedBackwards() {
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        List<Long> ids = send(alice, 3);
+        assertTrue(readStateService.markRead(room.getId(), bob.getId(), ids.get(0)));
+        // Another node gets its row in first, further ahead
+        jdbcTemplate.update("INSERT INTO room_read_state (user_id, chat_room_id, last_read_message_id, updated_at) " +
+                "VALUES (?, ?, ?, CURRENT_TIMESTAMP)", bob.getId(), room.getId(), ids.get(1));
+
+        readStateService.flush();
+        assertEquals(List.of(ids.get(1)), rows(bob));
+
+        assertTrue(readStateService.markRead(room.getId(), bob.getId(), ids.get(2)));
+        readStateService.flush();
+        assertEquals(List.of(ids.get(2)), rows(bob));
+    }
+
+    @Test
+    public void advanceOnAnotherNode_catchesUpTheHeldWatermarkWithoutWritingIt() {
+        List<Long> ids = send(alice, 3);
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), ids.get(0)));
+        readStateService.flush();
+        Map<String, Object> before = readStateService.getStats();
+
+        readStateService.advancedElsewhere(room.getId(), alice.getId(), ids.get(2));
+        assertEquals(ids.get(2), readStateService.getCachedLastRead(room.getId(), alice.getId()));
+        assertFalse(readStateService.markRead(room.getId(), alice.getId(), ids.get(1)));
+
+        // The node that advanced it writes the row
+        readStateService.flush();
+        assertEquals(List.of(ids.get(0)), rows(alice));
+        Map<String, Object> stats = readStateService.getStats();
+        assertEquals(0L, (Long) stats.get("rowsUpdated") - (Long) before.get("rowsUpdated"));
+        assertEquals(0L, (Long) stats.get("advances") - (Long) before.get("advances"));
+    }
+
+    @Test
+    public void marksPastTheRoomsNewestMessage_areRejected() {
+        ChatRoom other = chatService.createGroupChat(alice.getId(), "Elsewhere", "Another room", false);
+        Long first = send(alice, 1).get(0);
+        Long fromOtherRoom = chatService.saveMessage(other.getId(), alice.getId(), "elsewhere", MessageType.TEXT).getId();
+        Map<String, Object> before = readStateService.getStats();
+
+        assertFalse(readStateService.markRead(room.getId(), alice.getId(), Long.MAX_VALUE));
+        assertFalse(readStateService.markRead(room.getId(), alice.getId(), fromOtherRoom));
+        assertEquals(0L, readStateService.getLastRead(room.getId(), alice.getId()));
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), first));
+
+        // Accepted for write-behind but not inserted yet
+        long queued = idGenerator.nextId();
+        readStateService.messageAccepted(room.getId(), queued);
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), queued));
+
+        // Inserted by another node; found in the database
+        long elsewhere = idGenerator.nextId();
+        jdbcTemplate.update("INSERT INTO chat_messages (id, sender_id, chat_room_id, content, message_type, is_edited, is_deleted, created_at, updated_at) " +
+                "VALUES (?, ?, ?, 'from another node', 'TEXT', FALSE, FALSE, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                elsewhere, alice.getId(), room.getId());
+        assertTrue(readStateService.markRead(room.getId(), alice.getId(), elsewhere));
+        assertEquals(elsewhere, readStateService.getLastRead(room.getId(), alice.getId()));
+
+        Map<String, Object> stats = readStateService.getStats();
+        assertEquals(2L, (Long) stats.get("rejected") - (Long) before.get("rejected"));
+        readStateService.flush();
+    }
+
+    private List<Long> send(User sender, int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(chatService.saveMessage(room.getId(), sender.getId(), "message " + i, MessageType.TEXT).getId());
+        }
+        return ids;
+    }
+
+    private List<Long> rows(User user) {
+        return jdbcTemplate.queryForList("SELECT last_read_message_id FROM room_read_state WHERE user_id = ? AND chat_room_id = ?",
+                Long.class, user.getId(), room.getId());
+    }
+}
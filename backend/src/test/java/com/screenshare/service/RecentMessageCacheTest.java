@@ -0,0 +1,114 @@
+package com.screenshare.service;
+
+import com.screenshare.dto.ChatMessageDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentMessageCacheTest {
+
+    private static final long ROOM = 1L;
+
+    @Test
+    public void ringBuffer_keepsTheNewestWindow_andOnlyAnswersWhatItCovers() {
+        RecentMessageCache cache = cache(5, 1_000);
+        assertTrue(cache.prime(ROOM, messages(1, 3), true, cache.writeStamp(ROOM)));
+        // Everything the room has is buffered, so any page can be answered
+        assertEquals(List.of(1L, 2L, 3L), ids(cache.latest(ROOM, 10)));
+        assertEquals(List.of(), ids(cache.before(ROOM, 1, 10)));
+
+        for (long id = 4; id <= 8; id++) {
+            cache.messageSaved(ROOM, message(id));
+        }
+        assertEquals(List.of(4L, 5L, 6L, 7L, 8L), ids(cache.latest(ROOM, 5)));
+        // Older messages fell out of the window
+        assertTrue(cache.latest(ROOM, 6).isEmpty());
+        assertEquals(List.of(5L, 6L), ids(cache.before(ROOM, 7, 2)));
+        assertTrue(cache.before(ROOM, 5, 2).isEmpty());
+        assertEquals(List.of(6L, 7L), ids(cache.after(ROOM, 5, 2)));
+        assertTrue(cache.after(ROOM, 2, 2).isEmpty());
+
+        // A late arrival goes into its place in id order
+        cache.messageSaved(ROOM, message(9));
+        cache.messageSaved(ROOM, message(8));
+        assertEquals(List.of(5L, 6L, 7L, 8L, 9L), ids(cache.latest(ROOM, 5)));
+    }
+
+    @Test
+    public void prime_isRefused_ifTheRoomWasWrittenMeanwhile() {
+        RecentMessageCache cache = cache(5, 1_000);
+        long stamp = cache.writeStamp(ROOM);
+        cache.messageSaved(ROOM, message(4));
+        assertFalse(cache.prime(ROOM, messages(1, 3), true, stamp));
+        assertFalse(cache.isPrimed(ROOM));
+    }
+
+    @Test
+    public void editsAndDeletes_changeTheBufferedEntries() {
+        RecentMessageCache cache = cache(5, 1_000);
+        cache.prime(ROOM, messages(1, 3), true, cache.writeStamp(ROOM));
+
+        ChatMessageDto edited = message(2);
+        edited.setContent("edited");
+        cache.messageEdited(ROOM, edited);
+        assertEquals("edited", cache.latest(ROOM, 3).orElseThrow().get(1).getContent());
+
+        cache.messageDeleted(ROOM, 1L);
+        assertEquals(List.of(2L, 3L), ids(cache.latest(ROOM, 3)));
+        assertEquals(2L, cache.getStats().get("cachedMessages"));
+
+        // A save without a DTO drops the buffer rather than miss the message
+        cache.messageSaved(ROOM, null);
+        assertFalse(cache.isPrimed(ROOM));
+        assertEquals(0L, cache.getStats().get("cachedMessages"));
+    }
+
+    @Test
+    public void overBudget_evictsTheLeastRecentlyUsedRooms() {
+        RecentMessageCache cache = cache(5, 12);
+        cache.prime(1L, messages(1, 5), true, cache.writeStamp(1L));
+        cache.prime(2L, messages(11, 15), true, cache.writeStamp(2L));
+        cache.latest(1L, 5);
+
+        // 15 messages: room 2 is the coldest and goes, leaving 10, under nine tenths of 12
+        cache.prime(3L, messages(21, 25), true, cache.writeStamp(3L));
+        assertTrue(cache.isPrimed(1L));
+        assertFalse(cache.isPrimed(2L));
+        assertTrue(cache.isPrimed(3L));
+        assertEquals(10L, cache.getStats().get("cachedMessages"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+
+        // The room being written to is never the one evicted
+        cache.latest(1L, 5);
+        cache.prime(2L, messages(11, 15), true, cache.writeStamp(2L));
+        assertTrue(cache.isPrimed(2L));
+        assertFalse(cache.isPrimed(3L));
+    }
+
+    private static RecentMessageCache cache(int windowSize, long maxCachedMessages) {
+        RecentMessageCache cache = new RecentMessageCache();
+        ReflectionTestUtils.setField(cache, "windowSize", windowSize);
+        ReflectionTestUtils.setField(cache, "maxCachedMessages", maxCachedMessages);
+        return cache;
+    }
+
+    private static List<ChatMessageDto> messages(long fromId, long toId) {
+        return LongStream.rangeClosed(fromId, toId).mapToObj(RecentMessageCacheTest::message).toList();
+    }
+
+    private static ChatMessageDto message(long id) {
+        ChatMessageDto dto = new ChatMessageDto();
+        dto.setId(id);
+        dto.setContent("message " + id);
+        return dto;
+    }
+
+    private static List<Long> ids(Optional<List<ChatMessageDto>> page) {
+        return page.orElseThrow().stream().map(ChatMessageDto::getId).toList();
+    }
+}
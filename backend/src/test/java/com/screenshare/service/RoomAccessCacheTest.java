@@ -0,0 +1,188 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.User;
+import com.screenshare.repository.ChatRoomRepository;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Room authorization is answered from memory and follows membership changes, commits and rollbacks
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.hibernate.SQL=WARN"})
+public class RoomAccessCacheTest {
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User alice;
+    private User bob;
+    private ChatRoom publicRoom;
+    private ChatRoom privateRoom;
+
+    @BeforeEach
+    public void setup() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        publicRoom = chatService.createGroupChat(alice.getId(), "Public", "Open to all", false);
+        privateRoom = chatService.createGroupChat(alice.getId(), "Private", "Members only", true);
+    }
+
+    @Test
+    public void firstLookup_loadsTheRoom_laterLookupsHit() {
+        roomAccessCache.evict(privateRoom.getId());
+        assertTrue(roomAccessCache.peek(privateRoom.getId()).isEmpty());
+
+        Map<String, Object> before = roomAccessCache.getStats();
+        assertTrue(roomAccessCache.isMember(privateRoom.getId(), alice.getId()));
+        assertTrue(roomAccessCache.isMember(privateRoom.getId(), alice.getId()));
+        assertFalse(roomAccessCache.isMember(privateRoom.getId(), bob.getId()));
+        Map<String, Object> stats = roomAccessCache.getStats();
+        assertEquals(1L, (Long) stats.get("misses") - (Long) before.get("misses"));
+        assertEquals(2L, (Long) stats.get("hits") - (Long) before.get("hits"));
+
+        // Unknown rooms are remembered as unknown, never handed out as entries
+        roomAccessCache.evict(Long.MAX_VALUE);
+        assertFalse(roomAccessCache.canAccess(Long.MAX_VALUE, alice.getId()));
+        Map<String, Object> afterUnknown = roomAccessCache.getStats();
+        assertFalse(roomAccessCache.canAccess(Long.MAX_VALUE, alice.getId()));
+        assertTrue(roomAccessCache.peek(Long.MAX_VALUE).isEmpty());
+        Map<String, Object> unknown = roomAccessCache.getStats();
+        assertEquals(afterUnknown.get("misses"), unknown.get("misses"));
+        assertEquals(1L, (Long) unknown.get("unknownRoomHits") - (Long) afterUnknown.get("unknownRoomHits"));
+    }
+
+    @Test
+    public void loadRacingAJoin_isNotInstalled() {
+        roomAccessCache.evict(publicRoom.getId());
+        ChatRoomRepository repository = (ChatRoomRepository) ReflectionTestUtils.getField(roomAccessCache, "chatRoomRepository");
+        // The member ids are read, then bob joins before the load is installed
+        ChatRoomRepository racing = (ChatRoomRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ChatRoomRepository.class}, (proxy, method, args) -> {
+                    Object result = method.invoke(repository, args);
+                    if (method.getName().equals("findMemberIds")) {
+                        chatService.joinPublicRoom(publicRoom.getId(), bob.getId());
+                    }
+                    return result;
+                });
+        ReflectionTestUtils.setField(roomAccessCache, "chatRoomRepository", racing);
+        Map<String, Object> before = roomAccessCache.getStats();
+        try {
+            assertFalse(roomAccessCache.isMember(publicRoom.getId(), bob.getId()));
+        } finally {
+            ReflectionTestUtils.setField(roomAccessCache, "chatRoomRepository", repository);
+        }
+        assertEquals(1L, (Long) roomAccessCache.getStats().get("staleLoads") - (Long) before.get("staleLoads"));
+        assertTrue(roomAccessCache.peek(publicRoom.getId()).isEmpty());
+        assertTrue(roomAccessCache.isMember(publicRoom.getId(), bob.getId()));
+    }
+
+    @Test
+    public void entries_expireAfterWrite_andRoomsAreCapped() throws InterruptedException {
+        long expireAfterWriteMs = (Long) ReflectionTestUtils.getField(roomAccessCache, "expireAfterWriteMs");
+        int maxRooms = (Integer) ReflectionTestUtils.getField(roomAccessCache, "maxRooms");
+        try {
+            ReflectionTestUtils.setField(roomAccessCache, "expireAfterWriteMs", 100L);
+            roomAccessCache.evict(privateRoom.getId());
+            assertTrue(roomAccessCache.isMember(privateRoom.getId(), alice.getId()));
+            // Changed behind the cache's back, and picked up once the entry expires
+            jdbcTemplate.update("UPDATE chat_rooms SET is_active = FALSE WHERE id = ?", privateRoom.getId());
+            assertTrue(roomAccessCache.isActiveMember(privateRoom.getId(), alice.getId()));
+            Thread.sleep(150);
+            Map<String, Object> before = roomAccessCache.getStats();
+            assertFalse(roomAccessCache.isActiveMember(privateRoom.getId(), alice.getId()));
+            assertEquals(1L, (Long) roomAccessCache.getStats().get("expirations") - (Long) before.get("expirations"));
+
+            ReflectionTestUtils.setField(roomAccessCache, "expireAfterWriteMs", 600_000L);
+            ReflectionTestUtils.setField(roomAccessCache, "maxRooms", 3);
+            for (int i = 0; i < 5; i++) {
+                chatService.createGroupChat(alice.getId(), "Room " + i, "Over the cap", false);
+            }
+            assertTrue((Integer) roomAccessCache.getStats().get("rooms") <= 3);
+            assertTrue(roomAccessCache.isMember(publicRoom.getId(), alice.getId()));
+            assertTrue(roomAccessCache.peek(publicRoom.getId()).isPresent());
+        } finally {
+            ReflectionTestUtils.setField(roomAccessCache, "expireAfterWriteMs", expireAfterWriteMs);
+            ReflectionTestUtils.setField(roomAccessCache, "maxRooms", maxRooms);
+        }
+    }
+
+    @Test
+    public void access_followsRoomTypeMembershipAndActiveFlag() {
+        assertTrue(roomAccessCache.canAccess(publicRoom.getId(), bob.getId()));
+        assertFalse(roomAccessCache.isActiveMember(publicRoom.getId(), bob.getId()));
+        assertFalse(roomAccessCache.canAccess(privateRoom.getId(), bob.getId()));
+        assertTrue(roomAccessCache.isActiveMember(privateRoom.getId(), alice.getId()));
+
+        chatService.joinPublicRoom(publicRoom.getId(), bob.getId());
+        assertTrue(roomAccessCache.isActiveMember(publicRoom.getId(), bob.getId()));
+
+        // Deactivated rooms refuse everyone, members included
+        jdbcTemplate.update("UPDATE chat_rooms SET is_active = FALSE WHERE id = ?", privateRoom.getId());
+        roomAccessCache.evict(privateRoom.getId());
+        assertFalse(roomAccessCache.canAccess(privateRoom.getId(), alice.getId()));
+        assertFalse(roomAccessCache.isActiveMember(privateRoom.getId(), alice.getId()));
+        assertTrue(roomAccessCache.isMember(privateRoom.getId(), alice.getId()));
+    }
+
+    @Test
+    public void leavingARoom_removesTheMember() {
+        chatService.joinPublicRoom(publicRoom.getId(), bob.getId());
+        assertTrue(roomAccessCache.isActiveMember(publicRoom.getId(), bob.getId()));
+
+        chatService.leaveRoom(publicRoom.getId(), bob.getId());
+        assertFalse(roomAccessCache.isActiveMember(publicRoom.getId(), bob.getId()));
+        assertTrue(roomAccessCache.canAccess(publicRoom.getId(), bob.getId()));
+
+        // The cached entry matches what a fresh load sees
+        roomAccessCache.evict(publicRoom.getId());
+        assertFalse(roomAccessCache.isMember(publicRoom.getId(), bob.getId()));
+        assertTrue(roomAccessCache.isMember(publicRoom.getId(), alice.getId()));
+    }
+
+    @Test
+    public void rolledBackJoin_isEvicted_andReloadedWithoutTheMember() {
+        assertFalse(roomAccessCache.isMember(publicRoom.getId(), bob.getId()));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            chatService.joinPublicRoom(publicRoom.getId(), bob.getId());
+            // Visible straight away inside the transaction
+            assertTrue(roomAccessCache.isMember(publicRoom.getId(), bob.getId()));
+            status.setRollbackOnly();
+        });
+
+        assertTrue(roomAccessCache.peek(publicRoom.getId()).isEmpty());
+        assertFalse(roomAccessCache.isMember(publicRoom.getId(), bob.getId()));
+        assertTrue(roomAccessCache.isMember(publicRoom.getId(), alice.getId()));
+    }
+}
@@ -0,0 +1,127 @@
+package com.screenshare.service;
+
+import com.screenshare.dto.ChatRoomDto;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Room activity is held in memory, shown in room lists, and written in batches that never go backwards
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "chat.activity.flush-interval-ms=3600000",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.hibernate.SQL=WARN"})
+public class RoomActivityTrackerTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusDays(1);
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private RoomActivityTracker roomActivityTracker;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User alice;
+
+    @BeforeEach
+    public void setup() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        // Start from a clean slate for every test
+        roomActivityTracker.flush();
+    }
+
+    @Test
+    public void touches_areWrittenInOneBatch_andNeverMoveActivityBack() {
+        ChatRoom quiet = room("Quiet", BASE);
+        ChatRoom busy = room("Busy", BASE);
+        ChatRoom aheadElsewhere = room("Ahead", BASE.plusHours(2));
+        Map<String, Object> before = roomActivityTracker.getStats();
+
+        for (int i = 1; i <= 50; i++) {
+            roomActivityTracker.touch(busy.getId(), BASE.plusSeconds(i));
+        }
+        // Out-of-order touches keep the newest
+        roomActivityTracker.touch(quiet.getId(), BASE.plusMinutes(5));
+        roomActivityTracker.touch(quiet.getId(), BASE.plusMinutes(1));
+        // Another node already wrote a later time for this room
+        roomActivityTracker.touch(aheadElsewhere.getId(), BASE.plusHours(1));
+        assertEquals(BASE, lastActivity(busy));
+
+        roomActivityTracker.flush();
+        assertEquals(BASE.plusSeconds(50), lastActivity(busy));
+        assertEquals(BASE.plusMinutes(5), lastActivity(quiet));
+        assertEquals(BASE.plusHours(2), lastActivity(aheadElsewhere));
+
+        Map<String, Object> stats = roomActivityTracker.getStats();
+        assertEquals(1L, (Long) stats.get("flushes") - (Long) before.get("flushes"));
+        assertEquals(3L, (Long) stats.get("roomsWritten") - (Long) before.get("roomsWritten"));
+        assertEquals(0, stats.get("pendingRooms"));
+        assertTrue(roomActivityTracker.lastActivity(busy.getId()).isEmpty());
+    }
+
+    @Test
+    public void unflushedActivity_isShownAndSortedInTheRoomList() {
+        ChatRoom older = room("Older", BASE);
+        ChatRoom newer = room("Newer", BASE.plusMinutes(1));
+        chatService.saveMessage(older.getId(), alice.getId(), "back to the top", MessageType.TEXT);
+        LocalDateTime pending = roomActivityTracker.lastActivity(older.getId()).orElseThrow();
+        assertTrue(pending.isAfter(BASE.plusMinutes(1)));
+
+        assertEquals(BASE, lastActivity(older));
+        List<ChatRoomDto> rooms = chatService.getUserChatRoomDtos(alice.getId()).stream()
+                .filter(room -> room.getId().equals(older.getId()) || room.getId().equals(newer.getId()))
+                .toList();
+        assertEquals(List.of(older.getId(), newer.getId()), rooms.stream().map(ChatRoomDto::getId).toList());
+        assertEquals(pending, rooms.get(0).getLastActivityAt());
+        assertEquals(BASE.plusMinutes(1), rooms.get(1).getLastActivityAt());
+    }
+
+    @Test
+    public void stop_flushesPendingActivity() {
+        ChatRoom room = room("Stopping", BASE);
+        roomActivityTracker.touch(room.getId(), BASE.plusMinutes(3));
+        try {
+            roomActivityTracker.stop();
+            assertEquals(BASE.plusMinutes(3), lastActivity(room));
+            assertFalse(roomActivityTracker.isRunning());
+        } finally {
+            roomActivityTracker.start();
+        }
+    }
+
+    private ChatRoom room(String name, LocalDateTime lastActivityAt) {
+        ChatRoom room = chatService.createGroupChat(alice.getId(), name, name + " room", false);
+        roomActivityTracker.flush();
+        jdbcTemplate.update("UPDATE chat_rooms SET last_activity_at = ? WHERE id = ?", lastActivityAt, room.getId());
+        return room;
+    }
+
+    private LocalDateTime lastActivity(ChatRoom room) {
+        return jdbcTemplate.queryForObject("SELECT last_activity_at FROM chat_rooms WHERE id = ?",
+                LocalDateTime.class, room.getId());
+    }
+}
@@ -0,0 +1,311 @@
+package com.screenshare.service;
+
+import com.screenshare.ScreenshareBackendApplication;
+import com.screenshare.config.MultiSessionUserRegistry;
+import com.screenshare.controller.ScreenShareController;
+import com.screenshare.entity.ChatMessage;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import com.screenshare.entity.User;
+import com.screenshare.model.SignalMessage;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes, each its own Spring context and database, joined by the in-memory cluster bus.
+ * A STOMP client on each node subscribes to the same room topic.
+ */
+public class RoomBroadcasterClusterTest {
+
+    private static final String TOPIC = "/topic/chat/7";
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+    private static StompSession clientA;
+    private static StompSession clientB;
+    private static final BlockingQueue<Map<?, ?>> receivedA = new LinkedBlockingQueue<>();
+    private static final BlockingQueue<Map<?, ?>> receivedB = new LinkedBlockingQueue<>();
+
+    @BeforeAll
+    public static void startNodes() throws Exception {
+        nodeA = startNode(1);
+        nodeB = startNode(2);
+        clientA = connect(nodeA, receivedA);
+        clientB = connect(nodeB, receivedB);
+
+        // Subscriptions are registered asynchronously; probe until both clients get a broadcast
+        for (int i = 0; i < 100 && (receivedA.isEmpty() || receivedB.isEmpty()); i++) {
+            broadcaster(nodeA).chat(7L, Map.of("content", "probe"));
+            Thread.sleep(100);
+        }
+        assertFalse(receivedA.isEmpty());
+        assertFalse(receivedB.isEmpty());
+        Thread.sleep(300);
+        receivedA.clear();
+        receivedB.clear();
+    }
+
+    @AfterAll
+    public static void stopNodes() throws InterruptedException {
+        for (StompSession client : new StompSession[]{clientA, clientB}) {
+            if (client != null) {
+                client.disconnect();
+            }
+        }
+        // Let the nodes handle the disconnects before their channels shut down
+        Thread.sleep(500);
+        for (ConfigurableApplicationContext node : new ConfigurableApplicationContext[]{nodeA, nodeB}) {
+            if (node != null) {
+                node.close();
+            }
+        }
+    }
+
+    @Test
+    public void broadcasts_reachEverySubscriberExactlyOnce() throws Exception {
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            broadcaster(nodeA).chat(7L, Map.of("content", "A" + i));
+            broadcaster(nodeB).chat(7L, Map.of("content", "B" + i));
+            expected.add("A" + i);
+            expected.add("B" + i);
+        }
+        assertEquals(expected, drain(receivedA));
+        assertEquals(expected, drain(receivedB));
+
+        Map<?, ?> cluster = (Map<?, ?>) broadcaster(nodeA).getStats().get("cluster");
+        assertEquals(2, cluster.get("members"));
+        assertTrue((Long) cluster.get("ownSuppressed") >= 10);
+    }
+
+    @Test
+    public void redeliveredEvent_isDroppedByOriginAndSequence() throws Exception {
+        ClusterEvent event = new ClusterEvent(3, "node-3-instance", 1, TOPIC,
+                "{\"content\":\"from node 3\"}".getBytes(StandardCharsets.UTF_8));
+        ClusterBus bus = nodeA.getBean(ClusterBus.class);
+        bus.publish(event);
+        bus.publish(event);
+
+        assertEquals(Set.of("from node 3"), drain(receivedA));
+        assertEquals(Set.of("from node 3"), drain(receivedB));
+        Map<?, ?> cluster = (Map<?, ?>) broadcaster(nodeB).getStats().get("cluster");
+        assertTrue((Long) cluster.get("duplicatesSuppressed") >= 1);
+    }
+
+    @Test
+    public void entityIds_carryTheNodeIdOfTheirOwnContext() {
+        assertEquals(1, SnowflakeIdGenerator.nodeIdOf(saveMessage(nodeA).getId()));
+        assertEquals(2, SnowflakeIdGenerator.nodeIdOf(saveMessage(nodeB).getId()));
+        assertEquals(1, SnowflakeIdGenerator.nodeIdOf(saveMessage(nodeA).getId()));
+    }
+
+    @Test
+    public void writesOnOneNode_invalidateTheCachesOfTheOthers() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        UserRepository users = nodeA.getBean(UserRepository.class);
+        User alice = users.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = users.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        ChatService chatService = nodeA.getBean(ChatService.class);
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Shared", "Cached on both nodes", false);
+
+        // Node B holds the room as if it had read it from the shared database
+        RoomAccessCache accessB = nodeB.getBean(RoomAccessCache.class);
+        RecentMessageCache recentB = nodeB.getBean(RecentMessageCache.class);
+        accessB.roomSaved(room);
+        assertTrue(recentB.prime(room.getId(), List.of(), true, recentB.writeStamp(room.getId())));
+
+        Long messageId = chatService.saveMessage(room.getId(), alice.getId(), "hello", MessageType.TEXT).getId();
+        awaitTrue(() -> !recentB.isPrimed(room.getId()));
+
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        awaitTrue(() -> accessB.peek(room.getId()).isEmpty());
+
+        long applied = applied(nodeB);
+        assertTrue(nodeA.getBean(ReadStateService.class).markRead(room.getId(), alice.getId(), messageId));
+        awaitTrue(() -> applied(nodeB) > applied);
+        assertTrue((Long) nodeA.getBean(ClusterInvalidationService.class).getStats().get("published") >= 3);
+    }
+
+    @Test
+    public void typingOnOneNode_isMergedIntoTheSetsOfTheOthers() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = nodeA.getBean(UserRepository.class).save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        ChatRoom room = nodeA.getBean(ChatService.class).createGroupChat(alice.getId(), "Typing", "Typed on node A", false);
+
+        BlockingQueue<Map<?, ?>> typingB = new LinkedBlockingQueue<>();
+        clientB.subscribe("/topic/typing/" + room.getId(), new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                typingB.add((Map<?, ?>) payload);
+            }
+        });
+        Thread.sleep(300);
+
+        TypingIndicatorService typingA = nodeA.getBean(TypingIndicatorService.class);
+        long published = (Long) ((Map<?, ?>) typingA.getStats().get("cluster")).get("published");
+        assertTrue(typingA.update(room.getId(), alice.getId(), true));
+        // Keystrokes within the interval are neither accepted nor published
+        for (int i = 0; i < 20; i++) {
+            assertFalse(typingA.update(room.getId(), alice.getId(), true));
+        }
+        assertEquals(List.of(alice.getUsername()), typingB.poll(5, TimeUnit.SECONDS).get("typing"));
+        assertEquals(1L, (Long) ((Map<?, ?>) typingA.getStats().get("cluster")).get("published") - published);
+
+        // A third node's member joins the set instead of replacing node A's
+        String members = "{\"node\":3,\"roomId\":" + room.getId()
+                + ",\"typing\":[{\"userId\":99,\"username\":\"carol\",\"expiresInMs\":5000}]}";
+        nodeA.getBean(ClusterBus.class).publish(new ClusterEvent(3, "node-3-instance", 2, TypingIndicatorService.DESTINATION,
+                members.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of(alice.getUsername(), "carol"), typingB.poll(5, TimeUnit.SECONDS).get("typing"));
+
+        assertTrue(typingA.update(room.getId(), alice.getId(), false));
+        assertEquals(List.of("carol"), typingB.poll(5, TimeUnit.SECONDS).get("typing"));
+    }
+
+    @Test
+    public void signalsToAUser_reachTheirSessionsOnOtherNodes() throws Exception {
+        String bob = "bob" + UUID.randomUUID().toString().substring(0, 8);
+        BlockingQueue<Map<?, ?>> signalsB = new LinkedBlockingQueue<>();
+        clientB.subscribe("/user/" + bob + "/queue/screenshare", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                signalsB.add((Map<?, ?>) payload);
+            }
+        });
+        awaitTrue(() -> nodeB.getBean(MultiSessionUserRegistry.class).getUser(bob) != null);
+        assertNull(nodeA.getBean(MultiSessionUserRegistry.class).getUser(bob));
+
+        SignalMessage offer = new SignalMessage();
+        offer.setType("offer");
+        offer.setFrom("alice");
+        offer.setTo(bob);
+        offer.setData("{\"sdp\":\"v=0\"}");
+        nodeA.getBean(ScreenShareController.class).handleSignal(offer);
+
+        Map<?, ?> received = signalsB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals("offer", received.get("type"));
+        assertEquals("alice", received.get("from"));
+        assertNull(signalsB.poll(500, TimeUnit.MILLISECONDS));
+        assertTrue((Long) nodeB.getBean(UserDestinationRouter.class).getStats().get("delivered") >= 1);
+    }
+
+    @Test
+    public void screenDataTooLargeForTheBus_isRefusedRatherThanKeptOnOneNode() {
+        ScreenShareController.ScreenShareMessage frame = new ScreenShareController.ScreenShareMessage();
+        frame.setRoomId("7");
+        frame.setData("x".repeat(broadcaster(nodeA).getMaxClusterPayloadBytes()));
+        assertFalse(broadcaster(nodeA).broadcastClusterWide("/topic/screenshare-data/7", frame));
+
+        frame.setData("x".repeat(1024));
+        assertTrue(broadcaster(nodeA).broadcastClusterWide("/topic/screenshare-data/7", frame));
+        Map<?, ?> cluster = (Map<?, ?>) broadcaster(nodeA).getStats().get("cluster");
+        assertTrue((Long) cluster.get("refused") >= 1);
+    }
+
+    private static long applied(ConfigurableApplicationContext node) {
+        return (Long) node.getBean(ClusterInvalidationService.class).getStats().get("applied");
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static ChatMessage saveMessage(ConfigurableApplicationContext node) {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = node.getBean(UserRepository.class).save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        ChatService chatService = node.getBean(ChatService.class);
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Ids", "Node ids", false);
+        return chatService.saveMessage(room.getId(), alice.getId(), "hello", MessageType.TEXT);
+    }
+
+    // Everything received until the queue stays empty, failing on any repeat
+    private static Set<String> drain(BlockingQueue<Map<?, ?>> received) throws InterruptedException {
+        Set<String> contents = new HashSet<>();
+        Map<?, ?> message;
+        while ((message = received.poll(1, TimeUnit.SECONDS)) != null) {
+            assertTrue(contents.add((String) message.get("content")), "delivered twice: " + message);
+        }
+        return contents;
+    }
+
+    private static RoomBroadcaster broadcaster(ConfigurableApplicationContext node) {
+        return node.getBean(RoomBroadcaster.class);
+    }
+
+    private static ConfigurableApplicationContext startNode(int nodeId) {
+        return new SpringApplicationBuilder(ScreenshareBackendApplication.class)
+                .profiles("dev")
+                .run("--server.port=0",
+                        "--chat.node-id=" + nodeId,
+                        "--chat.cluster.bus=in-memory",
+                        "--spring.datasource.url=jdbc:h2:mem:cluster-node-" + nodeId,
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jmx.enabled=false",
+                        "--logging.level.com.screenshare=WARN",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.org.springframework.security=WARN",
+                        "--logging.level.org.springframework.orm.jpa=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql=WARN");
+    }
+
+    private static StompSession connect(ConfigurableApplicationContext node, BlockingQueue<Map<?, ?>> received) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        String url = "ws://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/api/ws-native";
+        StompSession session = stompClient.connectAsync(url, new StompSessionHandlerAdapter() {
+        }).get(10, TimeUnit.SECONDS);
+        session.subscribe(TOPIC, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<?, ?>) payload);
+            }
+        });
+        return session;
+    }
+}
@@ -0,0 +1,137 @@
+package com.screenshare.service;
+
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Batching, retry and buffer limits of ServiceBusBatcher, against a local stand-in for the
+ * Service Bus client
+ */
+public class ServiceBusBatcherTest {
+
+    @Test
+    public void messages_areSentInFullBatchesAndTheRestAfterLinger() throws Exception {
+        LocalBatchSender sender = new LocalBatchSender();
+        ServiceBusBatcher batcher = new ServiceBusBatcher("test", sender, settings(100, 10, 200, 3));
+        batcher.start();
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                futures.add(batcher.submit(new ServiceBusMessage("message " + i)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+            assertEquals(List.of(10, 10, 5), sender.batchSizes());
+            assertEquals("message 24", sender.batches.get(2).get(4).getBody().toString());
+            Map<String, Object> stats = batcher.getStats();
+            assertEquals(25L, stats.get("sent"));
+            assertEquals(3L, stats.get("batches"));
+        } finally {
+            batcher.stop();
+        }
+    }
+
+    @Test
+    public void transientFailures_areRetriedAndOthersFailTheFuture() throws Exception {
+        LocalBatchSender sender = new LocalBatchSender();
+        ServiceBusBatcher batcher = new ServiceBusBatcher("test", sender, settings(100, 10, 5, 3));
+        batcher.start();
+        try {
+            sender.transientFailures.set(2);
+            batcher.submit(new ServiceBusMessage("retried")).get(5, TimeUnit.SECONDS);
+            assertEquals(3, sender.attempts.get());
+            assertEquals(2L, batcher.getStats().get("retries"));
+
+            sender.permanentFailure = true;
+            CompletableFuture<Void> rejected = batcher.submit(new ServiceBusMessage("too large"));
+            ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, error.getCause().getCause());
+            assertEquals(4, sender.attempts.get());
+            assertEquals(1L, batcher.getStats().get("failed"));
+        } finally {
+            batcher.stop();
+        }
+    }
+
+    @Test
+    public void fullBuffer_failsNewMessagesAtOnce_andStopSendsWhatIsBuffered() throws Exception {
+        LocalBatchSender sender = new LocalBatchSender();
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        sender.held = gate;
+        ServiceBusBatcher batcher = new ServiceBusBatcher("test", sender, settings(5, 1, 0, 1));
+        batcher.start();
+
+        // One batch is held in flight, one waits for a permit, five fill the buffer
+        List<CompletableFuture<Void>> accepted = new ArrayList<>();
+        CompletableFuture<Void> overflow = null;
+        for (int i = 0; i < 20 && overflow == null; i++) {
+            CompletableFuture<Void> future = batcher.submit(new ServiceBusMessage("message " + i));
+            if (future.isCompletedExceptionally()) {
+                overflow = future;
+            } else {
+                accepted.add(future);
+            }
+            Thread.sleep(20);
+        }
+        assertNotNull(overflow);
+        assertEquals(7, accepted.size());
+        assertEquals(1L, batcher.getStats().get("rejected"));
+
+        gate.complete(null);
+        batcher.stop();
+        CompletableFuture.allOf(accepted.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(7, sender.batchSizes().size());
+        assertTrue(batcher.submit(new ServiceBusMessage("late")).isCompletedExceptionally());
+    }
+
+    private static ServiceBusBatcher.Settings settings(int capacity, int maxMessages, long lingerMs, int maxInFlight) {
+        return new ServiceBusBatcher.Settings(capacity, maxMessages, lingerMs, maxInFlight, 3, 10, 50, 5_000);
+    }
+
+    /**
+     * Records every batch it is given instead of talking to Service Bus
+     */
+    private static class LocalBatchSender implements ServiceBusBatcher.BatchSender {
+        final List<List<ServiceBusMessage>> batches = new CopyOnWriteArrayList<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger transientFailures = new AtomicInteger();
+        volatile boolean permanentFailure;
+        volatile CompletableFuture<Void> held;
+
+        @Override
+        public CompletableFuture<Void> send(List<ServiceBusMessage> messages) {
+            attempts.incrementAndGet();
+            if (permanentFailure) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException("message too large"));
+            }
+            if (transientFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                return CompletableFuture.failedFuture(new IllegalStateException("link detached"));
+            }
+            batches.add(List.copyOf(messages));
+            CompletableFuture<Void> first = held;
+            held = null;
+            // Completes on another thread, like the async client
+            return first != null ? first : CompletableFuture.runAsync(() -> { });
+        }
+
+        @Override
+        public boolean isTransient(Throwable error) {
+            return !(error instanceof IllegalArgumentException);
+        }
+
+        List<Integer> batchSizes() {
+            return batches.stream().map(List::size).toList();
+        }
+    }
+}
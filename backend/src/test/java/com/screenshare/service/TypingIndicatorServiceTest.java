@@ -0,0 +1,132 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Typing updates from many keystrokes come out as one coalesced set per room and interval
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "chat.typing.min-update-interval-ms=1000",
+        "chat.typing.ttl-ms=1500",
+        "chat.typing.broadcast-interval-ms=100",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.springframework.web=WARN",
+        "logging.level.org.springframework.security=WARN",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql=WARN",
+        "logging.level.org.springframework.orm.jpa=WARN"})
+public class TypingIndicatorServiceTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    public void keystrokeBursts_areRateLimited_andBroadcastAsOneSetPerInterval() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        User mallory = userRepository.save(new User("mallory" + suffix, "mallory" + suffix + "@example.com", "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Typing", "Typing indicators", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+
+        BlockingQueue<Map<String, Object>> updates = new LinkedBlockingQueue<>();
+        StompSession session = connect();
+        session.subscribe("/topic/typing/" + room.getId(), new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(StompHeaders headers, Object payload) {
+                updates.add((Map<String, Object>) payload);
+            }
+        });
+        Thread.sleep(300);
+        Map<String, Object> before = typingIndicatorService.getStats();
+
+        // Both members type away; mallory is not a member, and bob's client claims another name
+        String destination = "/app/chat/" + room.getId() + "/typing";
+        for (int i = 0; i < 50; i++) {
+            session.send(destination, Map.of("userId", alice.getId(), "username", alice.getUsername(), "typing", true));
+            session.send(destination, Map.of("userId", bob.getId(), "username", "not-" + bob.getUsername(), "typing", true));
+            session.send(destination, Map.of("userId", mallory.getId(), "username", mallory.getUsername(), "typing", true));
+        }
+        Map<String, Object> first = updates.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        List<?> typing = (List<?>) first.get("typing");
+        if (typing.size() < 2) {
+            // The burst straddled a broadcast
+            typing = (List<?>) updates.poll(5, TimeUnit.SECONDS).get("typing");
+        }
+        assertEquals(List.of(alice.getUsername(), bob.getUsername()), typing);
+        assertNull(updates.poll(300, TimeUnit.MILLISECONDS));
+
+        Map<String, Object> stats = typingIndicatorService.getStats();
+        for (int i = 0; i < 100 && handled(stats) - handled(before) < 150; i++) {
+            Thread.sleep(50);
+            stats = typingIndicatorService.getStats();
+        }
+        assertEquals(2L, (Long) stats.get("accepted") - (Long) before.get("accepted"));
+        assertEquals(98L, (Long) stats.get("rateLimited") - (Long) before.get("rateLimited"));
+        assertEquals(50L, (Long) stats.get("rejected") - (Long) before.get("rejected"));
+        // Each name is read once, not per frame
+        assertEquals(2L, (Long) stats.get("usernameLookups") - (Long) before.get("usernameLookups"));
+
+        // Stopping goes through at once; bob's entry lapses on its own
+        session.send(destination, Map.of("userId", alice.getId(), "username", alice.getUsername(), "typing", false));
+        assertEquals(List.of(bob.getUsername()), updates.poll(5, TimeUnit.SECONDS).get("typing"));
+        assertEquals(List.of(), updates.poll(5, TimeUnit.SECONDS).get("typing"));
+        assertNull(updates.poll(300, TimeUnit.MILLISECONDS));
+
+        session.disconnect();
+    }
+
+    private static long handled(Map<String, Object> stats) {
+        return (Long) stats.get("accepted") + (Long) stats.get("rateLimited") + (Long) stats.get("rejected");
+    }
+
+    private StompSession connect() throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        return stompClient.connectAsync("ws://localhost:" + port + "/api/ws-native", new WebSocketHttpHeaders(),
+                new StompHeaders(), new StompSessionHandlerAdapter() {
+                }).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,118 @@
+package com.screenshare.service;
+
+import com.screenshare.entity.ChatMessage;
+import com.screenshare.entity.ChatRoom;
+import com.screenshare.entity.MessageType;
+import com.screenshare.entity.SnowflakeIdGenerator;
+import com.screenshare.entity.User;
+import com.screenshare.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unread counts follow saved messages and read watermarks without recounting history
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "chat.read-state.flush-interval-ms=3600000",
+        "logging.level.com.screenshare=WARN",
+        "logging.level.org.hibernate.SQL=WARN"})
+public class UnreadCounterServiceTest {
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ReadStateService readStateService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Test
+    public void counts_areLoadedOnce_thenFollowMessagesAndWatermarks() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        User carol = userRepository.save(new User("carol" + suffix, "carol" + suffix + "@example.com", "password"));
+        ChatRoom lobby = chatService.createGroupChat(alice.getId(), "Lobby", "Everyone", false);
+        ChatRoom pair = chatService.createGroupChat(alice.getId(), "Pair", "Two of us", false);
+        chatService.joinPublicRoom(lobby.getId(), bob.getId());
+        chatService.joinPublicRoom(lobby.getId(), carol.getId());
+        chatService.joinPublicRoom(pair.getId(), bob.getId());
+
+        for (int i = 0; i < 3; i++) {
+            chatService.saveMessage(lobby.getId(), alice.getId(), "lobby " + i, MessageType.TEXT);
+        }
+        ChatMessage firstInPair = chatService.saveMessage(pair.getId(), alice.getId(), "pair 0", MessageType.TEXT);
+        chatService.saveMessage(pair.getId(), alice.getId(), "pair 1", MessageType.TEXT);
+        chatService.saveMessage(pair.getId(), bob.getId(), "own messages do not count", MessageType.TEXT);
+
+        Map<String, Object> before = unreadCounterService.getStats();
+        assertEquals(Map.of(lobby.getId(), 3, pair.getId(), 2), unreadCounterService.getUnreadCounts(bob.getId()));
+
+        // Kept up to date without going back to the database
+        ChatMessage latest = chatService.saveMessage(lobby.getId(), carol.getId(), "from carol", MessageType.TEXT);
+        assertEquals(4, unreadCounterService.getUnreadCount(lobby.getId(), bob.getId()));
+        assertTrue(readStateService.markRead(lobby.getId(), bob.getId(), latest.getId()));
+        assertEquals(Map.of(pair.getId(), 2), unreadCounterService.getUnreadCounts(bob.getId()));
+        assertEquals(1L, (Long) unreadCounterService.getStats().get("loads") - (Long) before.get("loads"));
+
+        // Reading part of a room reloads the user; rooms with unwritten watermarks are counted from those
+        assertTrue(readStateService.markRead(pair.getId(), bob.getId(), firstInPair.getId()));
+        assertEquals(Map.of(pair.getId(), 1), unreadCounterService.getUnreadCounts(bob.getId()));
+        Map<String, Object> stats = unreadCounterService.getStats();
+        assertEquals(2L, (Long) stats.get("loads") - (Long) before.get("loads"));
+        assertEquals(2L, (Long) stats.get("roomRecounts") - (Long) before.get("roomRecounts"));
+
+        // The room list carries the same counts
+        Map<Long, Integer> listed = new HashMap<>();
+        chatService.getUserChatRoomDtos(bob.getId()).forEach(room -> listed.put(room.getId(), room.getUnreadCount()));
+        assertEquals(0, listed.get(lobby.getId()));
+        assertEquals(1, listed.get(pair.getId()));
+
+        // Leaving a room drops its count
+        chatService.leaveRoom(pair.getId(), bob.getId());
+        assertEquals(Map.of(), unreadCounterService.getUnreadCounts(bob.getId()));
+    }
+
+    @Test
+    public void messageReadBeforeItIsInserted_isNotCounted() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User alice = userRepository.save(new User("alice" + suffix, "alice" + suffix + "@example.com", "password"));
+        User bob = userRepository.save(new User("bob" + suffix, "bob" + suffix + "@example.com", "password"));
+        ChatRoom room = chatService.createGroupChat(alice.getId(), "Queued", "Write-behind", false);
+        chatService.joinPublicRoom(room.getId(), bob.getId());
+        assertEquals(Map.of(), unreadCounterService.getUnreadCounts(bob.getId()));
+
+        // Broadcast from the write-behind queue and read by bob before the writer inserts it
+        long queued = idGenerator.nextId();
+        readStateService.messageAccepted(room.getId(), queued);
+        assertTrue(readStateService.markRead(room.getId(), bob.getId(), queued));
+        jdbcTemplate.update("INSERT INTO chat_messages (id, sender_id, chat_room_id, content, message_type, is_edited, is_deleted, created_at, updated_at) " +
+                "VALUES (?, ?, ?, 'queued', 'TEXT', FALSE, FALSE, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                queued, alice.getId(), room.getId());
+        unreadCounterService.messageSaved(room.getId(), alice.getId(), queued);
+        assertEquals(Map.of(), unreadCounterService.getUnreadCounts(bob.getId()));
+
+        chatService.saveMessage(room.getId(), alice.getId(), "not read yet", MessageType.TEXT);
+        assertEquals(Map.of(room.getId(), 1), unreadCounterService.getUnreadCounts(bob.getId()));
+    }
+}
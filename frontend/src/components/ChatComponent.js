@@ -1,4 +1,4 @@
-import React, { useState, useEffect, useRef } from 'react';
+import React, { useState, useEffect, useLayoutEffect, useRef } from 'react';
 import {
   Box,
   Paper,
@@ -34,8 +34,18 @@ import { useAuth } from '../context/AuthContext';
 import SimplePeer from 'simple-peer';
 import ScreenShareView from './ScreenShareView';
 
+// Shape of a message from the history API, as used for live messages
+const toChatMessage = (m) => ({
+  content: m.content,
+  sender: m.senderDisplayName || m.senderUsername,
+  senderId: m.senderId,
+  timestamp: m.createdAt,
+});
+
 const ChatComponent = ({ chatRoom }) => {
   const [messages, setMessages] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null); // Cursor for the page before the oldest loaded message
+  const [loadingOlder, setLoadingOlder] = useState(false);
   const [newMessage, setNewMessage] = useState('');
   const [isConnected, setIsConnected] = useState(false);
   const [isScreensharing, setIsScreensharing] = useState(false);
@@ -47,6 +57,11 @@ const ChatComponent = ({ chatRoom }) => {
   const [activeShares, setActiveShares] = useState([]); // Array of { userId, username, displayName, stream, peer }
   const peersRef = useRef({}); // Map of userId -> peer connection
   const messagesEndRef = useRef(null);
+  const messagesContainerRef = useRef(null);
+  const scrollHeightBeforePrependRef = useRef(null);
+  const lastScrollTopRef = useRef(0);
+  const roomIdRef = useRef(chatRoom.id); // Room shown now, to drop pages that arrive after a switch
+  roomIdRef.current = chatRoom.id;
   const localVideoRef = useRef(null);
   const remoteVideoRef = useRef(null);
   const { connected, sendMessage, subscribe } = useSocket();
@@ -65,25 +80,28 @@ const ChatComponent = ({ chatRoom }) => {
   const signalTopic = chatRoom?.id ? `/topic/signal/${chatRoom.id}` : null;
   const screenshareTopic = chatRoom?.id ? `/topic/screenshare/${chatRoom.id}` : null; // Room-specific screen share topic
 
-  // Scroll to bottom of chat
-  const scrollToBottom = () => messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
-  useEffect(scrollToBottom, [messages]);
+  // Scroll to bottom of chat, unless older messages were just added above
+  useLayoutEffect(() => {
+    const container = messagesContainerRef.current;
+    if (scrollHeightBeforePrependRef.current !== null && container) {
+      // Keep the messages that were on screen where they were
+      container.scrollTop += container.scrollHeight - scrollHeightBeforePrependRef.current;
+      scrollHeightBeforePrependRef.current = null;
+      return;
+    }
+    messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
+  }, [messages]);
 
-  // Load historical messages
+  // Load the latest page of historical messages
   useEffect(() => {
+    setNextCursor(null);
     const loadMessages = async () => {
       try {
         const response = await fetch(`http://localhost:8080/api/chat/rooms/${chatRoom.id}/messages?userId=${user.id}`);
         if (response.ok) {
           const data = await response.json();
-          setMessages(
-            data.map((m) => ({
-              content: m.content,
-              sender: m.senderDisplayName || m.senderUsername,
-              senderId: m.senderId,
-              timestamp: m.createdAt,
-            }))
-          );
+          setMessages(data.messages.map(toChatMessage));
+          setNextCursor(data.hasMore ? data.nextCursor : null);
         }
       } catch (err) {
         console.error('Failed to load messages', err);
@@ -92,6 +110,37 @@ const ChatComponent = ({ chatRoom }) => {
     loadMessages();
   }, [chatRoom.id, user.id]);
 
+  // Load the page before the oldest loaded message
+  const loadOlderMessages = async () => {
+    if (!nextCursor || loadingOlder) return;
+    const roomId = chatRoom.id;
+    setLoadingOlder(true);
+    try {
+      const response = await fetch(
+        `http://localhost:8080/api/chat/rooms/${roomId}/messages?userId=${user.id}&cursor=${encodeURIComponent(nextCursor)}`
+      );
+      if (response.ok && roomId === roomIdRef.current) {
+        const data = await response.json();
+        scrollHeightBeforePrependRef.current = messagesContainerRef.current?.scrollHeight ?? null;
+        setMessages((prev) => [...data.messages.map(toChatMessage), ...prev]);
+        setNextCursor(data.hasMore ? data.nextCursor : null);
+      }
+    } catch (err) {
+      console.error('Failed to load older messages', err);
+    } finally {
+      setLoadingOlder(false);
+    }
+  };
+
+  // Scrolling up to near the top loads older messages; scrolling down to new ones never does
+  const handleMessagesScroll = (e) => {
+    const { scrollTop } = e.currentTarget;
+    if (scrollTop < lastScrollTopRef.current && scrollTop < 50) {
+      loadOlderMessages();
+    }
+    lastScrollTopRef.current = scrollTop;
+  };
+
   // Subscribe to chat and screen share notifications
   useEffect(() => {
     if (!connected || !subscribe || !chatRoom?.id || !chatTopic) return;
@@ -467,8 +516,19 @@ const ChatComponent = ({ chatRoom }) => {
       </Paper>
 
       {/* Messages */}
-      <Paper sx={{ flexGrow: 1, mb: 2, overflowY: 'auto', p: 2, bgcolor: '#1a1a1a' }}>
+      <Paper
+        ref={messagesContainerRef}
+        onScroll={handleMessagesScroll}
+        sx={{ flexGrow: 1, mb: 2, overflowY: 'auto', p: 2, bgcolor: '#1a1a1a' }}
+      >
         <List>
+          {(nextCursor || loadingOlder) && (
+            <Box sx={{ textAlign: 'center', mb: 1 }}>
+              <Button size="small" onClick={loadOlderMessages} disabled={loadingOlder} sx={{ color: '#aaa' }}>
+                {loadingOlder ? 'Loading…' : 'Load older messages'}
+              </Button>
+            </Box>
+          )}
           {messages.map((msg, i) => {
             const isOwn = msg.senderId === user.id;
             return (
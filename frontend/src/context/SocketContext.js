@@ -1,6 +1,7 @@
 import React, { createContext, useContext, useEffect, useState } from 'react';
 import SockJS from 'sockjs-client';
 import { Client } from '@stomp/stompjs';
+import { ACCEPT_ENCODING, createInflatingWebSocket } from '../utils/inflatingWebSocket';
 
 const SocketContext = createContext();
 
@@ -18,6 +19,11 @@ export const SocketProvider = ({ children }) => {
 
   useEffect(() => {
     const socketUrl = 'http://localhost:8080/api/ws';
+    const nativeSocketUrl = 'ws://localhost:8080/api/ws-native';
+
+    // Plain WebSocket first; fall back to SockJS if it never opens
+    let useSockJS = typeof WebSocket === 'undefined';
+    let socketOpened = false;
     
     // Get username from localStorage
     const savedUser = localStorage.getItem('user');
@@ -33,10 +39,21 @@ export const SocketProvider = ({ children }) => {
 
     // Create a new STOMP client
     const client = new Client({
-      webSocketFactory: () => new SockJS(socketUrl),
+      webSocketFactory: () => (useSockJS ? new SockJS(socketUrl) : createInflatingWebSocket(nativeSocketUrl)),
       reconnectDelay: 5000, // Try reconnecting every 5 seconds if disconnected
+      // Large message bodies come deflated on the native endpoint; SockJS relies on the browser's permessage-deflate
+      beforeConnect: () => {
+        client.connectHeaders = useSockJS ? {} : { 'accept-encoding': ACCEPT_ENCODING };
+      },
+      onWebSocketClose: () => {
+        if (!useSockJS && !socketOpened) {
+          console.warn('⚠️ Native WebSocket unavailable, falling back to SockJS');
+          useSockJS = true;
+        }
+      },
       onConnect: (frame) => {
         console.log('✅ Connected to WebSocket:', frame);
+        socketOpened = true;
         setConnected(true);
         setStompClient(client);
         
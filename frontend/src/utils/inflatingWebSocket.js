@@ -0,0 +1,71 @@
+// Native WebSocket that hands deflated STOMP frames on already inflated.
+// Clients that send accept-encoding:deflate on CONNECT get large message bodies raw-deflated by
+// the server, all of a session's bodies through one stream sync-flushed after each frame. Each
+// compressed frame is a binary message with a content-encoding:deflate header, so every one of
+// them has to go through the same Inflate, in the order they arrive.
+import pako from 'pako';
+
+const Z_SYNC_FLUSH = 2;
+const NEWLINE = 10;
+
+export const ACCEPT_ENCODING = 'deflate';
+
+export function createInflatingWebSocket(url) {
+  const socket = new WebSocket(url);
+  const inflater = new pako.Inflate({ raw: true });
+  let inflated = [];
+  inflater.onData = (chunk) => inflated.push(chunk);
+
+  const inflateFrame = (buffer) => {
+    const bytes = new Uint8Array(buffer);
+    let headersEnd = -1;
+    for (let i = 0; i + 1 < bytes.length; i++) {
+      if (bytes[i] === NEWLINE && bytes[i + 1] === NEWLINE) {
+        headersEnd = i;
+        break;
+      }
+    }
+    if (headersEnd < 0) return buffer;
+    const headerLines = new TextDecoder().decode(bytes.subarray(0, headersEnd)).split('\n');
+    if (!headerLines.some((line) => line.replace(/\r$/, '') === `content-encoding:${ACCEPT_ENCODING}`)) {
+      return buffer;
+    }
+
+    const lengthLine = headerLines.find((line) => line.startsWith('content-length:'));
+    const bodyStart = headersEnd + 2;
+    const bodyEnd = lengthLine ? bodyStart + parseInt(lengthLine.substring('content-length:'.length), 10) : bytes.length - 1;
+    inflated = [];
+    inflater.push(bytes.subarray(bodyStart, bodyEnd), Z_SYNC_FLUSH);
+    if (inflater.err) {
+      throw new Error(`Could not inflate STOMP frame: ${inflater.msg}`);
+    }
+    const body = new TextDecoder().decode(concat(inflated));
+    const headers = headerLines.filter((line) => !line.startsWith('content-encoding:') && !line.startsWith('content-length:'));
+    return `${headers.join('\n')}\n\n${body}\u0000`;
+  };
+
+  // The STOMP client sets onmessage; it gets the inflated frames instead of the raw ones
+  let handler = null;
+  Object.defineProperty(socket, 'onmessage', {
+    get: () => handler,
+    set: (value) => {
+      handler = value;
+    },
+  });
+  socket.addEventListener('message', (event) => {
+    if (!handler) return;
+    handler(event.data instanceof ArrayBuffer ? { data: inflateFrame(event.data) } : event);
+  });
+  return socket;
+}
+
+function concat(chunks) {
+  if (chunks.length === 1) return chunks[0];
+  const out = new Uint8Array(chunks.reduce((total, chunk) => total + chunk.length, 0));
+  let offset = 0;
+  for (const chunk of chunks) {
+    out.set(chunk, offset);
+    offset += chunk.length;
+  }
+  return out;
+}